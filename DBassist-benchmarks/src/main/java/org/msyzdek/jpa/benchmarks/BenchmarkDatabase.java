@@ -0,0 +1,101 @@
+package org.msyzdek.jpa.benchmarks;
+
+import liquibase.Contexts;
+import liquibase.Liquibase;
+import liquibase.database.Database;
+import liquibase.database.DatabaseFactory;
+import liquibase.database.jvm.JdbcConnection;
+import liquibase.resource.ClassLoaderResourceAccessor;
+
+import javax.persistence.EntityManagerFactory;
+import javax.persistence.Persistence;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.UUID;
+
+
+/**
+ * In-memory H2 database with the PRODUCTS/PRODUCT_DETAILS schema of createEmptyDB.xml and generated rows.
+ */
+public class BenchmarkDatabase implements AutoCloseable {
+
+    static final String CHANGELOG = "org.msyzdek.jpa.db.migrations/createEmptyDB.xml";
+
+    static final String[] DETAIL_TYPES = {"BOOK", "MUSIC", "MOVIE", "GAME"};
+
+    private final String url;
+
+    /**
+     * Keeps the in-memory database alive for the lifetime of the benchmark.
+     */
+    private final Connection connection;
+
+    private final EntityManagerFactory entityManagerFactory;
+
+    public BenchmarkDatabase(int products, int detailsPerProduct) throws Exception {
+        this.url = "jdbc:h2:mem:" + UUID.randomUUID() + ";DB_CLOSE_DELAY=-1";
+        this.connection = DriverManager.getConnection(url, "sa", "");
+
+        Database database = DatabaseFactory.getInstance().findCorrectDatabaseImplementation(new JdbcConnection(connection));
+        new Liquibase(CHANGELOG, new ClassLoaderResourceAccessor(), database).update(new Contexts());
+
+        seed(products, detailsPerProduct);
+
+        Map<String, String> properties = new HashMap<String, String>();
+        properties.put("javax.persistence.jdbc.driver", "org.h2.Driver");
+        properties.put("javax.persistence.jdbc.url", url);
+        properties.put("javax.persistence.jdbc.user", "sa");
+        properties.put("javax.persistence.jdbc.password", "");
+
+        this.entityManagerFactory = Persistence.createEntityManagerFactory("benchmarks", properties);
+    }
+
+    private void seed(int products, int detailsPerProduct) throws SQLException {
+        connection.setAutoCommit(false);
+
+        try (PreparedStatement insertProduct = connection.prepareStatement("insert into \"PRODUCTS\" (\"ID\", \"AMOUNT\") values (?, ?)");
+             PreparedStatement insertDetail = connection.prepareStatement(
+                     "insert into \"PRODUCT_DETAILS\" (\"ID\", \"TYPE\", \"PRICE\", \"NAME\", \"PRODUCT_ID\") values (?, ?, ?, ?, ?)")) {
+            long detailId = 1;
+
+            for (long productId = 1; productId <= products; productId++) {
+                insertProduct.setLong(1, productId);
+                insertProduct.setLong(2, productId % 100);
+                insertProduct.addBatch();
+
+                for (int i = 0; i < detailsPerProduct; i++, detailId++) {
+                    insertDetail.setLong(1, detailId);
+                    insertDetail.setString(2, DETAIL_TYPES[(int) (detailId % DETAIL_TYPES.length)]);
+                    insertDetail.setLong(3, detailId % 1000);
+                    insertDetail.setString(4, "detail " + detailId);
+                    insertDetail.setLong(5, productId);
+                    insertDetail.addBatch();
+                }
+
+                if (productId % 1000 == 0) {
+                    insertProduct.executeBatch();
+                    insertDetail.executeBatch();
+                }
+            }
+
+            insertProduct.executeBatch();
+            insertDetail.executeBatch();
+        }
+
+        connection.commit();
+    }
+
+    public EntityManagerFactory getEntityManagerFactory() {
+        return entityManagerFactory;
+    }
+
+    @Override
+    public void close() throws SQLException {
+        entityManagerFactory.close();
+        connection.close();
+    }
+}
@@ -0,0 +1,119 @@
+package org.msyzdek.jpa.benchmarks;
+
+import org.msyzdek.jpa.Conditions;
+import org.msyzdek.jpa.Product;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import javax.persistence.EntityManager;
+import javax.persistence.criteria.CriteriaBuilder;
+import javax.persistence.criteria.CriteriaQuery;
+import javax.persistence.criteria.JoinType;
+import javax.persistence.criteria.Root;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+
+/**
+ * Measures building Conditions, computing their fingerprint and applying them to a criteria query.
+ * No SQL is executed here, see {@link RepositoryBenchmark} for the round trip.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ConditionsBenchmark {
+
+    @Param({"1", "5", "20"})
+    public int predicates;
+
+    @Param({"0", "1", "2"})
+    public int joinDepth;
+
+    private BenchmarkDatabase database;
+
+    private EntityManager entityManager;
+
+    private CriteriaBuilder criteriaBuilder;
+
+    private Conditions prebuilt;
+
+    @Setup(Level.Trial)
+    public void setUp() throws Exception {
+        database = new BenchmarkDatabase(0, 0);
+        entityManager = database.getEntityManagerFactory().createEntityManager();
+        criteriaBuilder = entityManager.getCriteriaBuilder();
+        prebuilt = build();
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws Exception {
+        entityManager.close();
+        database.close();
+    }
+
+    private Conditions build() {
+        Conditions conditions = new Conditions();
+        List<Conditions> levels = new ArrayList<Conditions>();
+        levels.add(conditions);
+
+        Conditions current = conditions;
+        for (int depth = 0; depth < joinDepth; depth++) {
+            current = depth % 2 == 0
+                    ? current.getJoinConditions("details", JoinType.INNER)
+                    : current.getJoinConditions("product", JoinType.INNER);
+            levels.add(current);
+        }
+
+        for (int i = 0; i < predicates; i++) {
+            int depth = i % levels.size();
+            Conditions level = levels.get(depth);
+            if (depth % 2 == 0) {
+                level.greaterThanOrEqualTo("amount", (long) i);
+            } else {
+                level.equal("type", BenchmarkDatabase.DETAIL_TYPES[i % BenchmarkDatabase.DETAIL_TYPES.length]);
+            }
+        }
+        return conditions;
+    }
+
+    @Benchmark
+    public Conditions buildConditions() {
+        return build();
+    }
+
+    @Benchmark
+    public String fingerprint() {
+        return build().getFingerprint();
+    }
+
+    @Benchmark
+    public CriteriaQuery<Product> applyPrebuilt() {
+        CriteriaQuery<Product> criteriaQuery = criteriaBuilder.createQuery(Product.class);
+        Root<Product> root = criteriaQuery.from(Product.class);
+        prebuilt.apply(criteriaQuery, criteriaBuilder, root);
+        return criteriaQuery;
+    }
+
+    @Benchmark
+    public CriteriaQuery<Product> buildAndApply() {
+        CriteriaQuery<Product> criteriaQuery = criteriaBuilder.createQuery(Product.class);
+        Root<Product> root = criteriaQuery.from(Product.class);
+        build().apply(criteriaQuery, criteriaBuilder, root);
+        return criteriaQuery;
+    }
+}
@@ -0,0 +1,112 @@
+package org.msyzdek.jpa.benchmarks;
+
+import org.msyzdek.jpa.Conditions;
+import org.msyzdek.jpa.Product;
+import org.msyzdek.jpa.ProductRepository;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import javax.persistence.EntityManager;
+import javax.persistence.criteria.JoinType;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+
+/**
+ * Measures repository round trips against an in-memory H2 database seeded through the Liquibase changelog.
+ * The persistence context is cleared after every invocation so that each call hydrates fresh entities.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class RepositoryBenchmark {
+
+    @Param({"10000"})
+    public int products;
+
+    @Param({"4"})
+    public int detailsPerProduct;
+
+    @Param({"50"})
+    public int selectedAmount;
+
+    private BenchmarkDatabase database;
+
+    private EntityManager entityManager;
+
+    private ProductRepository repository;
+
+    @Setup(Level.Trial)
+    public void setUp() throws Exception {
+        database = new BenchmarkDatabase(products, detailsPerProduct);
+        entityManager = database.getEntityManagerFactory().createEntityManager();
+        repository = new ProductRepository(entityManager);
+    }
+
+    @TearDown(Level.Invocation)
+    public void clear() {
+        entityManager.clear();
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws Exception {
+        entityManager.close();
+        database.close();
+    }
+
+    private Conditions byAmount() {
+        Conditions conditions = new Conditions();
+        conditions.equal("amount", (long) selectedAmount);
+        return conditions;
+    }
+
+    private Conditions byAmountAndDetailType() {
+        Conditions conditions = byAmount();
+        conditions.getJoinConditions("details", JoinType.INNER).equal("type", BenchmarkDatabase.DETAIL_TYPES[0]);
+        return conditions;
+    }
+
+    @Benchmark
+    public List<Product> find() {
+        return repository.findProducts(byAmount(), false);
+    }
+
+    @Benchmark
+    public List<Product> findWithFetch() {
+        return repository.findProducts(byAmount(), true);
+    }
+
+    @Benchmark
+    public List<Product> findWithJoinCondition() {
+        return repository.findProducts(byAmountAndDetailType(), false);
+    }
+
+    @Benchmark
+    public List<Long> findAttribute() {
+        return repository.findAmounts(byAmount());
+    }
+
+    @Benchmark
+    public long count() {
+        return repository.countProducts(byAmount());
+    }
+
+    @Benchmark
+    public long countWithJoinCondition() {
+        return repository.countProducts(byAmountAndDetailType());
+    }
+}
@@ -0,0 +1,136 @@
+package org.msyzdek.jpa.benchmarks;
+
+import org.hibernate.type.descriptor.ValueBinder;
+import org.hibernate.type.descriptor.ValueExtractor;
+import org.hibernate.type.descriptor.WrapperOptions;
+import org.msyzdek.jpa.date.UtcInstantType;
+import org.msyzdek.jpa.date.UtcTimestampType;
+import org.msyzdek.utc.hibernate.types.UtcDateType;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.lang.reflect.Proxy;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.Calendar;
+import java.util.Date;
+import java.util.concurrent.TimeUnit;
+
+
+/**
+ * Measures binding and extracting the UTC date types in isolation. JDBC objects are stubbed, so the numbers
+ * reflect the cost of the type conversions only.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Threads(4)
+@Fork(1)
+public class UtcTypesBenchmark {
+
+    private static final long MILLIS = 1420070400000L;
+
+    private static final WrapperOptions OPTIONS = stub(WrapperOptions.class);
+
+    private static final PreparedStatement STATEMENT = stub(PreparedStatement.class);
+
+    private static final ResultSet RESULT_SET = stub(ResultSet.class);
+
+    private static final ValueBinder<Date> TIMESTAMP_BINDER = UtcTimestampType.INSTANCE.getSqlTypeDescriptor()
+            .getBinder(UtcTimestampType.INSTANCE.getJavaTypeDescriptor());
+
+    private static final ValueExtractor<Date> TIMESTAMP_EXTRACTOR = UtcTimestampType.INSTANCE.getSqlTypeDescriptor()
+            .getExtractor(UtcTimestampType.INSTANCE.getJavaTypeDescriptor());
+
+    private static final ValueBinder<Instant> INSTANT_BINDER = UtcInstantType.INSTANCE.getSqlTypeDescriptor()
+            .getBinder(UtcInstantType.INSTANCE.getJavaTypeDescriptor());
+
+    private static final ValueExtractor<Instant> INSTANT_EXTRACTOR = UtcInstantType.INSTANCE.getSqlTypeDescriptor()
+            .getExtractor(UtcInstantType.INSTANCE.getJavaTypeDescriptor());
+
+    private static final UtcDateType DATE_TYPE = new UtcDateType();
+
+    private final Date date = new Date(MILLIS);
+
+    private final Instant instant = Instant.ofEpochMilli(MILLIS);
+
+    /**
+     * Returns a JDBC stub that ignores setters and answers getters with a fixed instant.
+     */
+    @SuppressWarnings("unchecked")
+    private static <S> S stub(Class<S> type) {
+        return (S) Proxy.newProxyInstance(UtcTypesBenchmark.class.getClassLoader(), new Class<?>[]{type}, (proxy, method, args) -> {
+            Class<?> returnType = method.getReturnType();
+            if (method.getName().equals("getObject") && args.length == 2 && args[1] == LocalDate.class) {
+                return LocalDate.ofEpochDay(MILLIS / 86400000L);
+            } else if (method.getName().equals("getObject") && args.length == 2 && args[1] == LocalDateTime.class) {
+                return LocalDateTime.ofEpochSecond(MILLIS / 1000L, 0, ZoneOffset.UTC);
+            } else if (returnType == Timestamp.class) {
+                return new Timestamp(MILLIS);
+            } else if (returnType == java.sql.Date.class) {
+                return new java.sql.Date(MILLIS);
+            } else if (returnType == boolean.class) {
+                return false;
+            } else if (returnType == int.class) {
+                return 0;
+            } else if (returnType == long.class) {
+                return 0L;
+            }
+            return null;
+        });
+    }
+
+    @Benchmark
+    public void bindTimestamp() throws SQLException {
+        TIMESTAMP_BINDER.bind(STATEMENT, date, 1, OPTIONS);
+    }
+
+    @Benchmark
+    public Date extractTimestamp() throws SQLException {
+        return TIMESTAMP_EXTRACTOR.extract(RESULT_SET, "CREATED", OPTIONS);
+    }
+
+    @Benchmark
+    public void bindInstant() throws SQLException {
+        INSTANT_BINDER.bind(STATEMENT, instant, 1, OPTIONS);
+    }
+
+    @Benchmark
+    public Instant extractInstant() throws SQLException {
+        return INSTANT_EXTRACTOR.extract(RESULT_SET, "CREATED", OPTIONS);
+    }
+
+    @Benchmark
+    public void setDate() throws SQLException {
+        DATE_TYPE.set(STATEMENT, date, 1);
+    }
+
+    @Benchmark
+    public Object getDate() throws SQLException {
+        return DATE_TYPE.get(RESULT_SET, "CREATED");
+    }
+
+    /**
+     * Baseline: the UTC calendar the types allocated per value before they bound java.time values.
+     */
+    @Benchmark
+    public Calendar newUtcCalendar() {
+        return Calendar.getInstance(UtcTimestampType.UTCTimeZone);
+    }
+}
@@ -1,65 +1,1252 @@
 package org.msyzdek.jpa;
 
 
+import java.io.Serializable;
+import java.lang.reflect.Field;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Member;
+import java.lang.reflect.Method;
 import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
 import java.util.function.Function;
+import java.util.function.Supplier;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
 
+import javax.persistence.Cache;
 import javax.persistence.EntityManager;
+import javax.persistence.EntityTransaction;
 import javax.persistence.PersistenceContext;
+import javax.persistence.PersistenceException;
+import javax.persistence.PersistenceUnitUtil;
+import javax.persistence.Query;
+import javax.persistence.criteria.CommonAbstractCriteria;
 import javax.persistence.criteria.CriteriaBuilder;
+import javax.persistence.criteria.CriteriaDelete;
 import javax.persistence.criteria.CriteriaQuery;
+import javax.persistence.criteria.CriteriaUpdate;
+import javax.persistence.criteria.Fetch;
 import javax.persistence.criteria.FetchParent;
+import javax.persistence.criteria.From;
+import javax.persistence.criteria.Join;
+import javax.persistence.criteria.JoinType;
+import javax.persistence.criteria.Order;
 import javax.persistence.criteria.Path;
 import javax.persistence.criteria.Predicate;
 import javax.persistence.criteria.Root;
 import javax.persistence.criteria.Selection;
+import javax.persistence.criteria.Subquery;
+import javax.persistence.metamodel.Attribute;
+import javax.persistence.metamodel.ManagedType;
+import javax.persistence.metamodel.PluralAttribute;
+import javax.persistence.metamodel.SingularAttribute;
+import javax.persistence.Tuple;
 import javax.persistence.TypedQuery;
 
+import org.hibernate.FlushMode;
+import org.hibernate.ScrollMode;
+import org.hibernate.ScrollableResults;
+import org.hibernate.Session;
+import org.hibernate.StatelessSession;
+import org.hibernate.Transaction;
+import org.hibernate.engine.spi.EntityEntry;
+import org.hibernate.engine.spi.SessionImplementor;
+import org.hibernate.engine.spi.Status;
+import org.hibernate.jpa.QueryHints;
+import org.hibernate.persister.entity.EntityPersister;
+import org.msyzdek.jpa.CompiledQueryCache.CompiledQuery;
+import org.msyzdek.jpa.metrics.QueryEvent;
+import org.msyzdek.jpa.metrics.QueryMetrics;
+
 
 public abstract class AbstractRepository<T> {
 
-    @FunctionalInterface
-    interface SelectFunction<CB, P, S> {
-        public S apply(CB criteriaBuilder, P path);
+    @FunctionalInterface
+    interface SelectFunction<CB, P, S> {
+        public S apply(CB criteriaBuilder, P path);
+    }
+
+    protected interface OrderBy<T> {
+        void apply(CriteriaBuilder criteriaBuilder, CriteriaQuery<?> attributeCriteriaQuery, Root<?> root);
+    }
+
+    protected static final int DEFAULT_FETCH_SIZE = 500;
+
+    /**
+     * Identifiers per query of {@link #findAllById}.
+     */
+    protected static final int DEFAULT_ID_BATCH_SIZE = 100;
+
+    /**
+     * Partitions of a partitioned scan per worker, smaller partitions even out skewed identifier ranges.
+     */
+    private static final int PARTITIONS_PER_WORKER = 4;
+
+    private static final AsyncQueryExecutor DEFAULT_ASYNC_QUERY_EXECUTOR = new AsyncQueryExecutor(AsyncQueryExecutor.DEFAULT_MAX_CONCURRENCY);
+
+    private final Class<T> typeParameterClass;
+
+    /**
+     * JPQL rendered for the query shapes seen so far, null when caching is disabled.
+     */
+    private final CompiledQueryCache compiledQueries;
+
+    /**
+     * EntityManager of the asynchronous task running on the current thread, see {@link #currentEntityManager()}.
+     */
+    private final ThreadLocal<EntityManager> taskEntityManager = new ThreadLocal<EntityManager>();
+
+    private AsyncQueryExecutor asyncQueryExecutor = DEFAULT_ASYNC_QUERY_EXECUTOR;
+
+    private volatile QueryResultCache resultCache;
+
+    private volatile QueryMetrics queryMetrics;
+
+    private volatile IndexAdvisor indexAdvisor;
+
+    private volatile QueryMode defaultQueryMode = QueryMode.MANAGED;
+
+    private volatile QueryLimits defaultQueryLimits = QueryLimits.none();
+
+    private final AdaptiveFetchSize adaptiveFetchSizes = new AdaptiveFetchSize();
+
+    @PersistenceContext
+    protected EntityManager entityManager;
+
+    public AbstractRepository(Class<T> typeParameterClass) {
+        this(typeParameterClass, CompiledQueryCache.DEFAULT_MAX_SIZE);
+    }
+
+    /**
+     * @param compiledQueryCacheSize maximum number of query shapes whose JPQL is kept, 0 disables the cache
+     */
+    public AbstractRepository(Class<T> typeParameterClass, int compiledQueryCacheSize) {
+        this.typeParameterClass = typeParameterClass;
+        this.compiledQueries = compiledQueryCacheSize > 0 ? new CompiledQueryCache(compiledQueryCacheSize) : null;
+    }
+
+    protected <Z, X, A> List<T> find(Conditions conditions, List<Function<FetchParent<?, ?>, FetchParent<?, ?>>> fetchCallbacks, OrderBy<T> orderBy) {
+        return find(conditions, fetchCallbacks, orderBy, null);
+    }
+
+    /**
+     * @param queryMode mode of this call, null for the repository default (see {@link #setDefaultQueryMode})
+     */
+    protected List<T> find(Conditions conditions, List<Function<FetchParent<?, ?>, FetchParent<?, ?>>> fetchCallbacks, OrderBy<T> orderBy, QueryMode queryMode) {
+        return find(conditions, fetchCallbacks, orderBy, queryMode, null);
+    }
+
+    /**
+     * @param queryLimits limits of this call overriding the repository defaults (see {@link #setDefaultQueryLimits}), may be null
+     * @throws ResultSizeExceededException when more rows than the maximum match and the overflow fails
+     */
+    protected List<T> find(Conditions conditions,
+                           List<Function<FetchParent<?, ?>, FetchParent<?, ?>>> fetchCallbacks,
+                           OrderBy<T> orderBy,
+                           QueryMode queryMode,
+                           QueryLimits queryLimits) {
+        QueryShape shape = findShape(conditions, fetchCallbacks, orderBy);
+        QueryLimits limits = effectiveQueryLimits(queryLimits);
+
+        /**
+         * Fetched collections and joined collections multiply the rows of a root, a row limit has to count distinct
+         * roots. Conditions rendered as EXISTS keep one row per root.
+         */
+        if (limits.getMaxRows() > 0 && ((fetchCallbacks != null && !fetchCallbacks.isEmpty())
+                || (conditions != null && conditions.multipliesRows(currentEntityManager().getMetamodel().managedType(typeParameterClass))))) {
+            return findInTwoPhases(shape, conditions, fetchCallbacks, orderBy, queryMode, limits);
+        }
+
+        if (queryMode == QueryMode.STATELESS) {
+            return findStateless(shape, conditions, fetchCallbacks, orderBy, limits);
+        }
+
+        return cachedResult(shape, queryMode, resultKey(conditions, limits), this::identifiers, cached -> findCached(cached, fetchCallbacks, queryMode), () -> {
+            long startNanos = System.nanoTime();
+            TypedQuery<T> typedQuery = createFindQuery(shape, conditions, fetchCallbacks, orderBy);
+
+            if (queryMode != null) {
+                applyQueryMode(typedQuery, queryMode);
+            }
+
+            applyQueryLimits(typedQuery, shape, limits);
+
+            long builtNanos = System.nanoTime();
+            List<T> resultList = typedQuery.getResultList();
+
+            /**
+             * Make sure that duplicate query results will be eliminated (when fetching collection relations of the root entity).
+             */
+            List<T> result = new ArrayList<T>(new LinkedHashSet<T>(resultList));
+
+            observeResultSize(shape, limits, resultList.size());
+            record("find", shape, conditions, startNanos, builtNanos, result.size(), resultList.size() - result.size());
+            return checkRowLimit(result, limits);
+        });
+    }
+
+    /**
+     * Row limited find selecting the distinct identifiers of at most maxRows + 1 roots first, then loading those roots
+     * with the fetch graph, see {@link #findLimited}. The overflow is handled before the entities are loaded. Both
+     * queries get the timeout and the fetch size of the limits.
+     */
+    private List<T> findInTwoPhases(QueryShape shape,
+                                    Conditions conditions,
+                                    List<Function<FetchParent<?, ?>, FetchParent<?, ?>>> fetchCallbacks,
+                                    OrderBy<T> orderBy,
+                                    QueryMode queryMode,
+                                    QueryLimits limits) {
+        return cachedResult(shape, queryMode, resultKey(conditions, limits), this::identifiers, cached -> findCached(cached, fetchCallbacks, queryMode), () -> {
+            long startNanos = System.nanoTime();
+            List<Object> ids = checkRowLimit(findIds(conditions, orderBy, 0, limits.getMaxRows() + 1, limits), limits);
+            long builtNanos = System.nanoTime();
+            List<T> result = findByIds(ids, fetchCallbacks, queryMode, limits.withoutMaxRows());
+
+            record("find", shape, conditions, startNanos, builtNanos, result.size(), 0);
+            return result;
+        });
+    }
+
+    /**
+     * Streaming variant of {@link #find} for result sets that do not fit in memory. Rows are read through a forward-only
+     * cursor, evicted from the persistence context once the next row is requested and fetch-join duplicates are skipped
+     * as they go by (order by the root identifier when fetching collections). The stream must be closed and consumed
+     * within the transaction.
+     */
+    protected Stream<T> stream(Conditions conditions, List<Function<FetchParent<?, ?>, FetchParent<?, ?>>> fetchCallbacks, OrderBy<T> orderBy) {
+        return stream(conditions, fetchCallbacks, orderBy, DEFAULT_FETCH_SIZE);
+    }
+
+    protected Stream<T> stream(Conditions conditions, List<Function<FetchParent<?, ?>, FetchParent<?, ?>>> fetchCallbacks, OrderBy<T> orderBy, int fetchSize) {
+        PersistenceUnitUtil persistenceUnitUtil = currentEntityManager().getEntityManagerFactory().getPersistenceUnitUtil();
+
+        return scroll(createFindQuery(findShape(conditions, fetchCallbacks, orderBy), conditions, fetchCallbacks, orderBy), fetchSize, persistenceUnitUtil::getIdentifier);
+    }
+
+    /**
+     * Streamed rows are always read-only, {@link QueryMode#STATELESS} reads them through a StatelessSession instead so
+     * that nothing is registered in the persistence context at all. Stateless streams can not fetch collections. As the
+     * stream outlives the call, the StatelessSession reads on a connection of its own in a read transaction of its own,
+     * outside the current transaction (changes not committed yet are not visible). Closing the stream rolls the read
+     * transaction back and returns the connection.
+     */
+    protected Stream<T> stream(Conditions conditions,
+                               List<Function<FetchParent<?, ?>, FetchParent<?, ?>>> fetchCallbacks,
+                               OrderBy<T> orderBy,
+                               int fetchSize,
+                               QueryMode queryMode) {
+        if (queryMode != QueryMode.STATELESS) {
+            return stream(conditions, fetchCallbacks, orderBy, fetchSize);
+        }
+
+        PersistenceUnitUtil persistenceUnitUtil = currentEntityManager().getEntityManagerFactory().getPersistenceUnitUtil();
+        TypedQuery<T> typedQuery = createFindQuery(findShape(conditions, fetchCallbacks, orderBy), conditions, fetchCallbacks, orderBy);
+        StatelessSession statelessSession = currentEntityManager().unwrap(Session.class).getSessionFactory().openStatelessSession();
+
+        try {
+            statelessSession.beginTransaction();
+            ScrollableResults results = createStatelessQuery(statelessSession, typedQuery, conditions)
+                    .setFetchSize(fetchSize)
+                    .scroll(ScrollMode.FORWARD_ONLY);
+
+            ScrollingIterator<T> iterator = new ScrollingIterator<T>(null, results, persistenceUnitUtil::getIdentifier);
+
+            return StreamSupport.stream(Spliterators.spliteratorUnknownSize(iterator, Spliterator.ORDERED), false)
+                    .onClose(() -> {
+                        try {
+                            iterator.close();
+                        } finally {
+                            closeStateless(statelessSession);
+                        }
+                    });
+        } catch (RuntimeException e) {
+            closeStateless(statelessSession);
+            throw e;
+        }
+    }
+
+    /**
+     * Rolls back the read transaction of a stateless stream, when it was begun, and closes its session.
+     */
+    private static void closeStateless(StatelessSession statelessSession) {
+        try {
+            Transaction transaction = statelessSession.getTransaction();
+
+            if (transaction.isActive()) {
+                transaction.rollback();
+            }
+        } finally {
+            statelessSession.close();
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private List<T> findStateless(QueryShape shape,
+                                  Conditions conditions,
+                                  List<Function<FetchParent<?, ?>, FetchParent<?, ?>>> fetchCallbacks,
+                                  OrderBy<T> orderBy,
+                                  QueryLimits limits) {
+        long startNanos = System.nanoTime();
+        TypedQuery<T> typedQuery = createFindQuery(shape, conditions, fetchCallbacks, orderBy);
+        PersistenceUnitUtil persistenceUnitUtil = currentEntityManager().getEntityManagerFactory().getPersistenceUnitUtil();
+
+        return doStatelessWork(statelessSession -> {
+            org.hibernate.Query query = createStatelessQuery(statelessSession, typedQuery, conditions);
+            int fetchSize = fetchSize(shape, limits);
+
+            if (limits.getMaxRows() > 0) {
+                query.setMaxResults(limits.getMaxRows() + 1);
+            }
+
+            if (limits.getTimeoutMillis() > 0) {
+                query.setTimeout((int) Math.min(Integer.MAX_VALUE, TimeUnit.MILLISECONDS.toSeconds(limits.getTimeoutMillis() + 999)));
+            }
+
+            if (fetchSize > 0) {
+                query.setFetchSize(fetchSize);
+            }
+
+            long builtNanos = System.nanoTime();
+            List<T> resultList = query.list();
+
+            /**
+             * Without a persistence context every row is an instance of its own, fetch-join duplicates are removed by
+             * identifier. The duplicates share the fetched collections.
+             */
+            Map<Object, T> rowsById = new LinkedHashMap<Object, T>();
+
+            for (T row : resultList) {
+                rowsById.putIfAbsent(persistenceUnitUtil.getIdentifier(row), row);
+            }
+
+            List<T> result = new ArrayList<T>(rowsById.values());
+
+            observeResultSize(shape, limits, resultList.size());
+            record("findStateless", shape, conditions, startNanos, builtNanos, result.size(), resultList.size() - result.size());
+            return checkRowLimit(result, limits);
+        });
+    }
+
+    /**
+     * Runs the work on a StatelessSession opened on the connection of the EntityManager, so that it joins the current
+     * transaction. The connection is only borrowed for the duration of the work, closing the StatelessSession leaves
+     * it open.
+     */
+    private <R> R doStatelessWork(Function<StatelessSession, R> work) {
+        Session session = currentEntityManager().unwrap(Session.class);
+
+        return session.doReturningWork(connection -> {
+            StatelessSession statelessSession = session.getSessionFactory().openStatelessSession(connection);
+
+            try {
+                return work.apply(statelessSession);
+            } finally {
+                statelessSession.close();
+            }
+        });
+    }
+
+    /**
+     * Runs the JPQL rendered for the typed query on the stateless session, binding the parameters of the conditions.
+     */
+    private org.hibernate.Query createStatelessQuery(StatelessSession statelessSession, TypedQuery<?> typedQuery, Conditions conditions) {
+        org.hibernate.Query hibernateQuery = typedQuery.unwrap(org.hibernate.Query.class);
+        Set<String> parameterNames = conditions != null ? conditions.getParameterNames() : Collections.<String>emptySet();
+
+        for (String namedParameter : hibernateQuery.getNamedParameters()) {
+            if (!parameterNames.contains(namedParameter)) {
+                throw new UnsupportedOperationException("Query binds literals as implicit parameters and can not run stateless: "
+                        + hibernateQuery.getQueryString());
+            }
+        }
+
+        org.hibernate.Query statelessQuery = statelessSession.createQuery(hibernateQuery.getQueryString());
+
+        if (conditions != null) {
+            Iterator<String> names = parameterNames.iterator();
+
+            for (Object value : conditions.getParameterValues()) {
+                String name = names.next();
+
+                if (value instanceof Collection) {
+                    statelessQuery.setParameterList(name, (Collection<?>) value);
+                } else {
+                    statelessQuery.setParameter(name, value);
+                }
+            }
+        }
+
+        return statelessQuery;
+    }
+
+    /**
+     * Streaming variant of {@link #findAttribute}, rows are neither de-duplicated nor evicted.
+     */
+    protected <A> Stream<A> streamAttribute(Class<A> attributeClass,
+                                            String attributeName,
+                                            Conditions conditions,
+                                            List<Function<FetchParent<?, ?>, FetchParent<?, ?>>> fetchCallbacks,
+                                            OrderBy<T> orderBy,
+                                            SelectFunction<CriteriaBuilder, Path<A>, Selection<A>> selectCallback,
+                                            int fetchSize) {
+        return scroll(createFindAttributeQuery(findAttributeShape(attributeClass, attributeName, false, conditions, fetchCallbacks, orderBy, selectCallback),
+                attributeClass, attributeName, false, conditions, fetchCallbacks, orderBy, selectCallback), fetchSize, null);
+    }
+
+    private <R> Stream<R> scroll(TypedQuery<R> typedQuery, int fetchSize, Function<Object, Object> identifier) {
+        ScrollableResults results = typedQuery.unwrap(org.hibernate.Query.class)
+                .setFetchSize(fetchSize)
+                .setReadOnly(true)
+                .scroll(ScrollMode.FORWARD_ONLY);
+
+        ScrollingIterator<R> iterator = new ScrollingIterator<R>(currentEntityManager().unwrap(Session.class), results, identifier);
+
+        return StreamSupport.stream(Spliterators.spliteratorUnknownSize(iterator, Spliterator.ORDERED), false)
+                .onClose(iterator::close);
+    }
+
+    /**
+     * Reads all rows matching the conditions in parallel: the range of the (integral) identifier is split into
+     * partitions, read by {@code parallelism} workers, each on its own EntityManager and connection through the
+     * {@link #setAsyncQueryExecutor asynchronous executor}, so its concurrency limit applies as well. Batches of rows are
+     * passed to the consumer on the calling thread, in no particular order; workers block while
+     * {@code parallelism * 2} batches wait for the consumer.
+     * <p>
+     * Conditions are not thread safe, the supplier is called once more for every partition and must return fresh,
+     * modifiable conditions, which receive the identifier range. Conditions bound from a {@link ConditionsTemplate} are
+     * read only and rejected, add the identifier range placeholders to the template instead or build the conditions
+     * directly.
+     * <p>
+     * Rows are streamed as by {@link #stream} and are detached when they reach the consumer, their EntityManager is
+     * cleared after every partition: lazy associations the consumer navigates must be fetched by the fetch callbacks,
+     * otherwise initializing them fails with a LazyInitializationException. Workers run in resource-local read
+     * transactions when possible.
+     *
+     * @return number of rows consumed
+     * @throws IllegalArgumentException when the supplier returns read only conditions
+     */
+    protected long scanPartitioned(Supplier<Conditions> conditions,
+                                   List<Function<FetchParent<?, ?>, FetchParent<?, ?>>> fetchCallbacks,
+                                   int parallelism,
+                                   int batchSize,
+                                   Consumer<List<T>> consumer) {
+        if (parallelism < 1 || batchSize < 1) {
+            throw new IllegalArgumentException("Parallelism and batch size must be positive, got " + parallelism + " and " + batchSize);
+        }
+
+        String idAttributeName = getIdAttributeName();
+        Class<?> idType = currentEntityManager().getMetamodel().entity(typeParameterClass).getIdType().getJavaType();
+
+        if (idType != Long.class && idType != long.class && idType != Integer.class && idType != int.class) {
+            throw new IllegalArgumentException("Partitioned scans require a long or int identifier, " + typeParameterClass.getName() + " has " + idType.getName());
+        }
+
+        Conditions boundsConditions = conditions.get();
+
+        if (boundsConditions != null && boundsConditions.isFrozen()) {
+            throw new IllegalArgumentException("Partitioned scans add the identifier range to the conditions, conditions of a template are read only");
+        }
+
+        Object[] bounds = findIdBounds(boundsConditions, idAttributeName);
+
+        if (bounds[0] == null) {
+            return 0;
+        }
+
+        ConcurrentLinkedQueue<long[]> ranges = splitIdRange(((Number) bounds[0]).longValue(), ((Number) bounds[1]).longValue(), parallelism * PARTITIONS_PER_WORKER);
+        PartitionedScan<T> scan = new PartitionedScan<T>(parallelism * 2);
+        OrderBy<T> orderById = (criteriaBuilder, criteriaQuery, root) -> criteriaQuery.orderBy(criteriaBuilder.asc(root.get(idAttributeName)));
+
+        for (int i = 0; i < parallelism; i++) {
+            async(() -> {
+                scanPartitions(scan, ranges, conditions, fetchCallbacks, orderById, idAttributeName, idType, batchSize);
+                return null;
+            }).whenComplete((result, failure) -> scan.workerDone(failure));
+        }
+
+        return scan.consume(parallelism, consumer);
+    }
+
+    private Object[] findIdBounds(Conditions conditions, String idAttributeName) {
+        QueryShape shape = QueryShape.of("idBounds", Object[].class, idAttributeName, false, conditions, null);
+
+        return createQuery(shape, Object[].class, conditions, () -> {
+            CriteriaBuilder criteriaBuilder = currentEntityManager().getCriteriaBuilder();
+            CriteriaQuery<Object[]> criteriaQuery = criteriaBuilder.createQuery(Object[].class);
+            Root<T> root = criteriaQuery.from(typeParameterClass);
+            Path<Number> id = root.get(idAttributeName);
+
+            criteriaQuery.multiselect(criteriaBuilder.min(id), criteriaBuilder.max(id));
+            applyConditions(conditions, criteriaBuilder, criteriaQuery, root);
+
+            return criteriaQuery;
+        }).getSingleResult();
+    }
+
+    /**
+     * Splits [min, max] into contiguous ranges of equal width, the upper bound is exclusive except for the last range.
+     * Distances are computed as unsigned longs, so ranges spanning most of the long domain do not overflow.
+     */
+    static ConcurrentLinkedQueue<long[]> splitIdRange(long min, long max, int partitions) {
+        if (min > max || partitions < 1) {
+            throw new IllegalArgumentException("Can not split [" + min + ", " + max + "] into " + partitions + " ranges");
+        }
+
+        ConcurrentLinkedQueue<long[]> ranges = new ConcurrentLinkedQueue<long[]>();
+
+        /**
+         * Zero when the width of a single range over the whole long domain does not fit in 64 bits.
+         */
+        long width = Long.divideUnsigned(max - min, partitions) + 1;
+
+        for (long lower = min; ; lower += width) {
+            boolean lastRange = width == 0 || Long.compareUnsigned(max - lower, width) < 0;
+            long upper = lastRange ? max : lower + width;
+
+            ranges.add(new long[]{lower, upper, lastRange ? 1 : 0});
+
+            if (lastRange) {
+                return ranges;
+            }
+        }
+    }
+
+    private void scanPartitions(PartitionedScan<T> scan,
+                                ConcurrentLinkedQueue<long[]> ranges,
+                                Supplier<Conditions> conditions,
+                                List<Function<FetchParent<?, ?>, FetchParent<?, ?>>> fetchCallbacks,
+                                OrderBy<T> orderById,
+                                String idAttributeName,
+                                Class<?> idType,
+                                int batchSize) {
+        EntityManager currentEntityManager = currentEntityManager();
+        EntityTransaction transaction = beginScanTransaction(currentEntityManager);
+
+        try {
+            long[] range;
+
+            while (!scan.isCancelled() && (range = ranges.poll()) != null) {
+                Conditions partitionConditions = conditions.get();
+
+                addIdRange(partitionConditions, idAttributeName, idType, range[0], range[1], range[2] == 1);
+
+                try (Stream<T> rows = stream(partitionConditions, fetchCallbacks, orderById, Math.max(batchSize, DEFAULT_FETCH_SIZE))) {
+                    Iterator<T> iterator = rows.iterator();
+                    List<T> batch = new ArrayList<T>(batchSize);
+
+                    // A full batch waits for the next row: moving past its last row detaches it and completes its
+                    // fetched collections
+                    while (iterator.hasNext()) {
+                        if (batch.size() == batchSize) {
+                            if (!scan.publish(batch)) {
+                                return;
+                            }
+
+                            batch = new ArrayList<T>(batchSize);
+                        }
+
+                        batch.add(iterator.next());
+                    }
+
+                    if (!batch.isEmpty() && !scan.publish(batch)) {
+                        return;
+                    }
+                }
+
+                currentEntityManager.clear();
+            }
+        } finally {
+            if (transaction != null && transaction.isActive()) {
+                transaction.rollback();
+            }
+        }
+    }
+
+    /**
+     * Read transaction of a worker, needed by some drivers (e.g. PostgreSQL) to stream rows with a fetch size. Null for
+     * JTA entity managers.
+     */
+    private static EntityTransaction beginScanTransaction(EntityManager entityManager) {
+        try {
+            EntityTransaction transaction = entityManager.getTransaction();
+            transaction.begin();
+
+            return transaction;
+        } catch (IllegalStateException e) {
+            return null;
+        }
+    }
+
+    private static void addIdRange(Conditions conditions, String idAttributeName, Class<?> idType, long lower, long upper, boolean lastRange) {
+        if (idType == Integer.class || idType == int.class) {
+            conditions.greaterThanOrEqualTo(idAttributeName, (int) lower);
+
+            if (lastRange) {
+                conditions.lessThanOrEqualTo(idAttributeName, (int) upper);
+            } else {
+                conditions.lessThan(idAttributeName, (int) upper);
+            }
+        } else {
+            conditions.greaterThanOrEqualTo(idAttributeName, lower);
+
+            if (lastRange) {
+                conditions.lessThanOrEqualTo(idAttributeName, upper);
+            } else {
+                conditions.lessThan(idAttributeName, upper);
+            }
+        }
+    }
+
+    /**
+     * Keyset (seek) pagination: returns the page of rows ordered after the continuation token, so every page costs the
+     * same no matter how deep it is. The identifier is appended to the keyset when missing to make it unique. Pass a
+     * null token for the first page. The keyset predicate is added to a copy, the given conditions (or conditions bound
+     * from a template) can be passed again for the next page.
+     * <p>
+     * Keyset attributes must be singular attributes of the root that are never null (primitive or mapped not
+     * nullable), a NULL sort key would not be ordered consistently nor matched by the keyset predicate.
+     * <p>
+     * With fetch callbacks or conditions joining a collection the page is loaded in two phases, see
+     * {@link #findLimited}.
+     *
+     * @throws IllegalArgumentException when the page size is not positive, a keyset attribute is nullable or the token
+     *                                  does not match the keyset
+     */
+    protected KeysetPage<T> findPage(Conditions conditions,
+                                     List<Function<FetchParent<?, ?>, FetchParent<?, ?>>> fetchCallbacks,
+                                     Keyset keyset,
+                                     int pageSize,
+                                     String continuationToken) {
+        if (pageSize < 1) {
+            throw new IllegalArgumentException("Page size must be positive, got " + pageSize);
+        }
+
+        String idAttributeName = getIdAttributeName();
+        Keyset uniqueKeyset = keyset.contains(idAttributeName) ? keyset : keyset.thenAscending(idAttributeName);
+        Class<?>[] keysetTypes = keysetTypes(uniqueKeyset);
+        Conditions pageConditions = conditions != null ? conditions.extend() : new Conditions();
+
+        if (continuationToken != null) {
+            pageConditions.after(uniqueKeyset, KeysetToken.decode(continuationToken, keysetTypes));
+        }
+
+        List<T> rows;
+
+        // One extra row tells whether there is a next page
+        if (multipliesRows(conditions, fetchCallbacks)) {
+            OrderBy<T> keysetOrderBy = (criteriaBuilder, criteriaQuery, root) -> criteriaQuery.orderBy(uniqueKeyset.toOrders(criteriaBuilder, root));
+
+            rows = findByIds(findIds(pageConditions, keysetOrderBy, 0, pageSize + 1, QueryLimits.none()), fetchCallbacks, null, QueryLimits.none());
+        } else {
+            QueryShape shape = QueryShape.of("findPage", typeParameterClass, uniqueKeyset.toString(), false, pageConditions, null);
+
+            TypedQuery<T> typedQuery = createQuery(shape, typeParameterClass, pageConditions, () -> {
+                CriteriaBuilder criteriaBuilder = currentEntityManager().getCriteriaBuilder();
+                CriteriaQuery<T> criteriaQuery = criteriaBuilder.createQuery(typeParameterClass);
+                Root<T> root = criteriaQuery.from(typeParameterClass);
+
+                criteriaQuery.select(root);
+
+                applyConditions(pageConditions, criteriaBuilder, criteriaQuery, root);
+
+                criteriaQuery.orderBy(uniqueKeyset.toOrders(criteriaBuilder, root));
+
+                return criteriaQuery;
+            });
+
+            typedQuery.setMaxResults(pageSize + 1);
+
+            rows = new ArrayList<T>(typedQuery.getResultList());
+        }
+
+        if (rows.size() <= pageSize) {
+            return new KeysetPage<T>(rows, null);
+        }
+
+        rows = new ArrayList<T>(rows.subList(0, pageSize));
+
+        return new KeysetPage<T>(rows, KeysetToken.encode(readAttributes(rows.get(pageSize - 1), uniqueKeyset)));
+    }
+
+    /**
+     * Whether the query repeats a root for every element of a collection it fetches or joins, so that a row limit has
+     * to be applied to the distinct root identifiers. Conditions rendered as EXISTS keep one row per root.
+     */
+    private boolean multipliesRows(Conditions conditions, List<Function<FetchParent<?, ?>, FetchParent<?, ?>>> fetchCallbacks) {
+        return (fetchCallbacks != null && !fetchCallbacks.isEmpty())
+                || (conditions != null && conditions.multipliesRows(currentEntityManager().getMetamodel().managedType(typeParameterClass)));
+    }
+
+    /**
+     * Limited variant of {@link #find} that stays in SQL when fetch callbacks or conditions join collections. The first
+     * query selects only the distinct root identifiers matching the conditions, ordered and limited by the database;
+     * the second one loads those roots with the fetch graph, which are returned in the order of the first query.
+     * Otherwise a single limited query is executed.
+     */
+    protected List<T> findLimited(Conditions conditions,
+                                  List<Function<FetchParent<?, ?>, FetchParent<?, ?>>> fetchCallbacks,
+                                  OrderBy<T> orderBy,
+                                  int firstResult,
+                                  int maxResults) {
+        if (!multipliesRows(conditions, fetchCallbacks)) {
+            TypedQuery<T> typedQuery = createFindQuery(findShape(conditions, null, orderBy), conditions, null, orderBy);
+
+            typedQuery.setFirstResult(firstResult);
+            typedQuery.setMaxResults(maxResults);
+
+            return new ArrayList<T>(typedQuery.getResultList());
+        }
+
+        return findByIds(findIds(conditions, orderBy, firstResult, maxResults, QueryLimits.none()), fetchCallbacks, null, QueryLimits.none());
+    }
+
+    /**
+     * Selects the distinct identifiers of the matching roots. The order expressions are selected next to the identifier
+     * so that the database accepts them together with DISTINCT.
+     */
+    private List<Object> findIds(Conditions conditions, OrderBy<T> orderBy, int firstResult, int maxResults, QueryLimits limits) {
+        CriteriaBuilder criteriaBuilder = currentEntityManager().getCriteriaBuilder();
+        CriteriaQuery<Object[]> criteriaQuery = criteriaBuilder.createQuery(Object[].class);
+        Root<T> root = criteriaQuery.from(typeParameterClass);
+
+        applyConditions(conditions, criteriaBuilder, criteriaQuery, root);
+
+        if (orderBy != null) {
+            orderBy.apply(criteriaBuilder, criteriaQuery, root);
+        }
+
+        List<Selection<?>> selections = new ArrayList<Selection<?>>();
+        selections.add(root.get(getIdAttributeName()));
+
+        for (Order order : criteriaQuery.getOrderList()) {
+            selections.add(order.getExpression());
+        }
+
+        criteriaQuery.multiselect(selections).distinct(true);
+
+        TypedQuery<Object[]> typedQuery = currentEntityManager().createQuery(criteriaQuery);
+        setParameters(conditions, typedQuery);
+        applyQueryLimits(typedQuery, null, limits);
+
+        typedQuery.setFirstResult(firstResult);
+        typedQuery.setMaxResults(maxResults);
+
+        /**
+         * Ordering by a collection attribute may still yield the same identifier more than once.
+         */
+        LinkedHashSet<Object> ids = new LinkedHashSet<Object>();
+
+        for (Object[] row : typedQuery.getResultList()) {
+            ids.add(row[0]);
+        }
+
+        return new ArrayList<Object>(ids);
+    }
+
+    /**
+     * Loads the roots with the given identifiers applying the fetch callbacks, in the order of the identifiers.
+     *
+     * @param limits timeout and fetch size of the query, without a maximum row count
+     */
+    private List<T> findByIds(List<Object> ids, List<Function<FetchParent<?, ?>, FetchParent<?, ?>>> fetchCallbacks, QueryMode queryMode, QueryLimits limits) {
+        if (ids.isEmpty()) {
+            return new ArrayList<T>();
+        }
+
+        Conditions idConditions = new Conditions();
+        idConditions.in(getIdAttributeName(), ids);
+
+        PersistenceUnitUtil persistenceUnitUtil = currentEntityManager().getEntityManagerFactory().getPersistenceUnitUtil();
+        Map<Object, T> rowsById = new HashMap<Object, T>();
+
+        QueryShape shape = findShape(idConditions, fetchCallbacks, null);
+        List<T> resultList;
+
+        if (queryMode == QueryMode.STATELESS) {
+            resultList = findStateless(shape, idConditions, fetchCallbacks, null, limits);
+        } else {
+            TypedQuery<T> typedQuery = createFindQuery(shape, idConditions, fetchCallbacks, null);
+
+            if (queryMode != null) {
+                applyQueryMode(typedQuery, queryMode);
+            }
+
+            applyQueryLimits(typedQuery, shape, limits);
+            resultList = typedQuery.getResultList();
+            observeResultSize(shape, limits, resultList.size());
+        }
+
+        for (T row : resultList) {
+            rowsById.put(persistenceUnitUtil.getIdentifier(row), row);
+        }
+
+        List<T> rows = new ArrayList<T>(ids.size());
+
+        for (Object id : ids) {
+            T row = rowsById.get(id);
+
+            if (row != null) {
+                rows.add(row);
+            }
+        }
+
+        return rows;
+    }
+
+    protected List<T> findAllById(Collection<?> ids) {
+        return findAllById(ids, null, DEFAULT_ID_BATCH_SIZE);
+    }
+
+    protected List<T> findAllById(Collection<?> ids, List<Function<FetchParent<?, ?>, FetchParent<?, ?>>> fetchCallbacks) {
+        return findAllById(ids, fetchCallbacks, DEFAULT_ID_BATCH_SIZE);
+    }
+
+    /**
+     * Entities with the given identifiers (of the identifier type) in the order of the identifiers. Unknown identifiers
+     * are skipped, repeated ones yield the same instance again.
+     * <p>
+     * Without fetch callbacks the entities already in the persistence context or in the second level cache are taken
+     * from there. The remaining identifiers are loaded by IN queries of at most batchSize identifiers, padded to a power
+     * of two so that only a few statements exist. With fetch callbacks every identifier is queried, which initializes
+     * the fetched associations of entities loaded earlier as well.
+     */
+    protected List<T> findAllById(Collection<?> ids, List<Function<FetchParent<?, ?>, FetchParent<?, ?>>> fetchCallbacks, int batchSize) {
+        if (batchSize < 1) {
+            throw new IllegalArgumentException("Batch size must be positive, got " + batchSize);
+        }
+
+        EntityManager currentEntityManager = currentEntityManager();
+        boolean fetching = fetchCallbacks != null && !fetchCallbacks.isEmpty();
+        Map<Object, T> entitiesById = new HashMap<Object, T>();
+        List<Object> queriedIds = new ArrayList<Object>();
+
+        for (Object id : new LinkedHashSet<Object>(ids)) {
+            T entity = fetching ? null : findLoaded(currentEntityManager, id);
+
+            if (entity != null) {
+                entitiesById.put(id, entity);
+            } else {
+                queriedIds.add(id);
+            }
+        }
+
+        PersistenceUnitUtil persistenceUnitUtil = currentEntityManager.getEntityManagerFactory().getPersistenceUnitUtil();
+        String idAttributeName = getIdAttributeName();
+
+        for (int from = 0; from < queriedIds.size(); from += batchSize) {
+            Conditions idConditions = new Conditions();
+            idConditions.in(idAttributeName, queriedIds.subList(from, Math.min(from + batchSize, queriedIds.size())), InListStrategy.padded());
+
+            QueryShape shape = findShape(idConditions, fetchCallbacks, null);
+            long startNanos = System.nanoTime();
+            TypedQuery<T> typedQuery = createFindQuery(shape, idConditions, fetchCallbacks, null);
+            long builtNanos = System.nanoTime();
+            List<T> resultList = typedQuery.getResultList();
+            int loaded = entitiesById.size();
+
+            for (T entity : resultList) {
+                entitiesById.put(persistenceUnitUtil.getIdentifier(entity), entity);
+            }
+
+            record("findAllById", shape, idConditions, startNanos, builtNanos, entitiesById.size() - loaded, resultList.size() - (entitiesById.size() - loaded));
+        }
+
+        List<T> entities = new ArrayList<T>(ids.size());
+
+        for (Object id : ids) {
+            T entity = entitiesById.get(id);
+
+            if (entity != null) {
+                entities.add(entity);
+            }
+        }
+
+        return entities;
+    }
+
+    /**
+     * Entity of the identifier held by the persistence context or the second level cache, null when it has to be
+     * queried. Entities removed in the persistence context are queried, the flush before the query deletes them.
+     */
+    private T findLoaded(EntityManager currentEntityManager, Object id) {
+        SessionImplementor session = currentEntityManager.unwrap(SessionImplementor.class);
+        EntityPersister persister = session.getFactory().getEntityPersister(session.getFactory().getClassMetadata(typeParameterClass).getEntityName());
+        Object entity = session.getPersistenceContext().getEntity(session.generateEntityKey((Serializable) id, persister));
+
+        if (entity != null) {
+            EntityEntry entry = session.getPersistenceContext().getEntry(entity);
+            boolean removed = entry != null && (entry.getStatus() == Status.DELETED || entry.getStatus() == Status.GONE);
+
+            return typeParameterClass.isInstance(entity) && !removed ? typeParameterClass.cast(entity) : null;
+        }
+
+        Cache cache = currentEntityManager.getEntityManagerFactory().getCache();
+
+        if (cache != null && cache.contains(typeParameterClass, id)) {
+            return currentEntityManager.find(typeParameterClass, id);
+        }
+
+        return null;
+    }
+
+    /**
+     * Java types of the keyset attributes, which must not be nullable.
+     */
+    private Class<?>[] keysetTypes(Keyset keyset) {
+        ManagedType<T> managedType = currentEntityManager().getMetamodel().managedType(typeParameterClass);
+        Class<?>[] types = new Class<?>[keyset.size()];
+
+        for (int i = 0; i < types.length; i++) {
+            Attribute<? super T, ?> attribute = managedType.getAttribute(keyset.getAttributeName(i));
+
+            if (!(attribute instanceof SingularAttribute)) {
+                throw new IllegalArgumentException("Keyset attribute " + attribute.getName() + " is not singular");
+            }
+
+            if (((SingularAttribute<? super T, ?>) attribute).isOptional() && !attribute.getJavaType().isPrimitive()) {
+                throw new IllegalArgumentException("Keyset attribute " + attribute.getName() + " of " + typeParameterClass.getName()
+                        + " is nullable, map it not nullable or paginate by other attributes");
+            }
+
+            types[i] = attribute.getJavaType();
+        }
+
+        return types;
+    }
+
+    private Object[] readAttributes(T entity, Keyset keyset) {
+        ManagedType<T> managedType = currentEntityManager().getMetamodel().managedType(typeParameterClass);
+        Object[] values = new Object[keyset.size()];
+
+        for (int i = 0; i < values.length; i++) {
+            values[i] = readAttribute(entity, managedType.getAttribute(keyset.getAttributeName(i)).getJavaMember());
+        }
+
+        return values;
+    }
+
+    private Object readAttribute(T entity, Member member) {
+        try {
+            if (member instanceof Field) {
+                Field field = (Field) member;
+                field.setAccessible(true);
+                return field.get(entity);
+            }
+
+            Method getter = (Method) member;
+            getter.setAccessible(true);
+            return getter.invoke(entity);
+        } catch (IllegalAccessException | InvocationTargetException e) {
+            throw new PersistenceException("Can not read " + member.getName() + " of " + typeParameterClass.getName(), e);
+        }
+    }
+
+    protected String getIdAttributeName() {
+        for (SingularAttribute<? super T, ?> attribute : currentEntityManager().getMetamodel().entity(typeParameterClass).getSingularAttributes()) {
+            if (attribute.isId()) {
+                return attribute.getName();
+            }
+        }
+
+        throw new PersistenceException(typeParameterClass.getName() + " has no single identifier attribute");
+    }
+
+    private QueryShape findShape(Conditions conditions, List<Function<FetchParent<?, ?>, FetchParent<?, ?>>> fetchCallbacks, OrderBy<T> orderBy) {
+        return QueryShape.of("find", typeParameterClass, null, false, conditions, fetchCallbacks, orderBy);
+    }
+
+    private TypedQuery<T> createFindQuery(QueryShape shape,
+                                          Conditions conditions,
+                                          List<Function<FetchParent<?, ?>, FetchParent<?, ?>>> fetchCallbacks,
+                                          OrderBy<T> orderBy) {
+        return createQuery(shape, typeParameterClass, conditions, () -> {
+            CriteriaBuilder criteriaBuilder = currentEntityManager().getCriteriaBuilder();
+            CriteriaQuery<T> criteriaQuery = criteriaBuilder.createQuery(typeParameterClass);
+            Root<T> root = criteriaQuery.from(typeParameterClass);
+
+            applyFetchCallbacks(fetchCallbacks, root);
+
+            criteriaQuery.select(root);
+
+            applyConditions(conditions, criteriaBuilder, criteriaQuery, root);
+
+            if (orderBy != null) {
+                orderBy.apply(criteriaBuilder, criteriaQuery, root);
+            }
+
+            return criteriaQuery;
+        });
+    }
+
+    /**
+     * Asynchronous variants run each query on the repository's {@link AsyncQueryExecutor} with an EntityManager of its
+     * own, so independent queries can execute in parallel. Returned entities are detached.
+     */
+    protected CompletableFuture<List<T>> findAsync(Conditions conditions, List<Function<FetchParent<?, ?>, FetchParent<?, ?>>> fetchCallbacks, OrderBy<T> orderBy) {
+        return async(() -> find(conditions, fetchCallbacks, orderBy));
+    }
+
+    protected CompletableFuture<Long> countAsync(Conditions conditions) {
+        return async(() -> count(conditions));
+    }
+
+    protected CompletableFuture<Long> countDistinctAsync(Conditions conditions) {
+        return async(() -> countDistinct(conditions));
+    }
+
+    protected <A> CompletableFuture<List<A>> findAttributeAsync(Class<A> attributeClass,
+                                                                String attributeName,
+                                                                Conditions conditions,
+                                                                List<Function<FetchParent<?, ?>, FetchParent<?, ?>>> fetchCallbacks,
+                                                                OrderBy<T> orderBy,
+                                                                SelectFunction<CriteriaBuilder, Path<A>, Selection<A>> selectCallback) {
+        return async(() -> findAttribute(attributeClass, attributeName, conditions, fetchCallbacks, orderBy, selectCallback));
+    }
+
+    protected <A> CompletableFuture<List<A>> findAttributeDistinctAsync(Class<A> attributeClass,
+                                                                        String attributeName,
+                                                                        Conditions conditions,
+                                                                        List<Function<FetchParent<?, ?>, FetchParent<?, ?>>> fetchCallbacks,
+                                                                        OrderBy<T> orderBy,
+                                                                        SelectFunction<CriteriaBuilder, Path<A>, Selection<A>> selectCallback) {
+        return async(() -> findAttributeDistinct(attributeClass, attributeName, conditions, fetchCallbacks, orderBy, selectCallback));
+    }
+
+    /**
+     * Set-based update of all rows matching the conditions, executed as a single JPQL bulk update. Join conditions are
+     * compiled into an identifier subquery. Pending changes are flushed before and managed instances of the entity are
+     * detached after the update, so the persistence context does not serve stale state.
+     *
+     * @param assignments new values by attribute name, null values set the column to NULL
+     * @return number of updated rows
+     */
+    protected int updateWhere(Conditions conditions, Map<String, ?> assignments) {
+        if (conditions == null) {
+            throw new IllegalArgumentException("Conditions are required, pass empty conditions to update all rows");
+        }
+
+        CriteriaBuilder criteriaBuilder = currentEntityManager().getCriteriaBuilder();
+        CriteriaUpdate<T> criteriaUpdate = criteriaBuilder.createCriteriaUpdate(typeParameterClass);
+        Root<T> root = criteriaUpdate.from(typeParameterClass);
+
+        assignments.forEach((attributeName, value) -> {
+            Path<Object> path = root.get(attributeName);
+
+            if (value != null) {
+                criteriaUpdate.set(path, value);
+            } else {
+                criteriaUpdate.<Object>set(path, criteriaBuilder.nullLiteral(path.getJavaType()));
+            }
+        });
+
+        criteriaUpdate.where(getBulkPredicate(conditions, criteriaUpdate, criteriaBuilder, root));
+
+        return executeBulk(conditions, currentEntityManager().createQuery(criteriaUpdate));
+    }
+
+    /**
+     * Set-based delete of all rows matching the conditions, see {@link #updateWhere} for join conditions and the
+     * persistence context. Cascades and orphan removal are not applied.
+     *
+     * @return number of deleted rows
+     */
+    protected int deleteWhere(Conditions conditions) {
+        if (conditions == null) {
+            throw new IllegalArgumentException("Conditions are required, pass empty conditions to delete all rows");
+        }
+
+        CriteriaBuilder criteriaBuilder = currentEntityManager().getCriteriaBuilder();
+        CriteriaDelete<T> criteriaDelete = criteriaBuilder.createCriteriaDelete(typeParameterClass);
+        Root<T> root = criteriaDelete.from(typeParameterClass);
+
+        criteriaDelete.where(getBulkPredicate(conditions, criteriaDelete, criteriaBuilder, root));
+
+        return executeBulk(conditions, currentEntityManager().createQuery(criteriaDelete));
+    }
+
+    /**
+     * Bulk statements can not join, rows matched through join conditions are selected by identifier in a subquery.
+     */
+    private Predicate getBulkPredicate(Conditions conditions, CommonAbstractCriteria criteria, CriteriaBuilder criteriaBuilder, Root<T> root) {
+        if (!conditions.hasJoinConditions()) {
+            return conditions.toPredicate(criteria, criteriaBuilder, root);
+        }
+
+        String idAttributeName = getIdAttributeName();
+        Subquery<Object> ids = criteria.subquery(Object.class);
+        Root<T> subqueryRoot = ids.from(typeParameterClass);
+
+        ids.select(subqueryRoot.get(idAttributeName)).where(conditions.toPredicate(ids, criteriaBuilder, subqueryRoot));
+
+        return root.get(idAttributeName).in(ids);
+    }
+
+    private int executeBulk(Conditions conditions, Query query) {
+        EntityManager currentEntityManager = currentEntityManager();
+
+        currentEntityManager.flush();
+
+        int affectedRows = conditions.setParameters(query).executeUpdate();
+
+        detachManagedInstances(currentEntityManager);
+        EntityWriteTracker.written(typeParameterClass);
+
+        return affectedRows;
+    }
+
+    private void detachManagedInstances(EntityManager currentEntityManager) {
+        SessionImplementor session = currentEntityManager.unwrap(SessionImplementor.class);
+
+        for (Map.Entry<Object, EntityEntry> entry : session.getPersistenceContext().reentrantSafeEntityEntries()) {
+            if (typeParameterClass.isInstance(entry.getKey())) {
+                currentEntityManager.detach(entry.getKey());
+            }
+        }
+    }
+
+    /**
+     * Persists new and merges detached entities, flushing and clearing the persistence context every batchSize entities.
+     * Entities already managed are only flushed. Whether an entity is new is decided by Hibernate's unsaved-value
+     * rules (null or unsaved identifier, e.g. 0 for primitive generated identifiers, or null version), entities it
+     * can not tell apart, such as assigned identifiers without a version, are merged.
+     * Set {@code hibernate.jdbc.batch_size} (and {@code hibernate.order_inserts}/{@code hibernate.order_updates}) to the
+     * same value so that each flush is sent as JDBC batches.
+     */
+    protected List<T> saveAll(Collection<T> entities, int batchSize) {
+        return saveAll(entities, batchSize, batchSize);
+    }
+
+    /**
+     * @param flushInterval number of entities after which the persistence context is flushed
+     * @param clearInterval number of entities after which the persistence context is flushed and cleared, which also
+     *                      detaches entities loaded by the caller and the previously saved ones
+     * @return the managed (or, once cleared, detached) saved instances in the order of the input
+     */
+    protected List<T> saveAll(Collection<T> entities, int flushInterval, int clearInterval) {
+        EntityManager currentEntityManager = currentEntityManager();
+        SessionImplementor session = currentEntityManager.unwrap(SessionImplementor.class);
+        List<T> saved = new ArrayList<T>(entities.size());
+        int count = 0;
+
+        for (T entity : entities) {
+            if (currentEntityManager.contains(entity)) {
+                saved.add(entity);
+            } else if (Boolean.TRUE.equals(session.getEntityPersister(null, entity).isTransient(entity, session))) {
+                currentEntityManager.persist(entity);
+                saved.add(entity);
+            } else {
+                saved.add(currentEntityManager.merge(entity));
+            }
+
+            count++;
+
+            if (clearInterval > 0 && count % clearInterval == 0) {
+                currentEntityManager.flush();
+                currentEntityManager.clear();
+            } else if (flushInterval > 0 && count % flushInterval == 0) {
+                currentEntityManager.flush();
+            }
+        }
+
+        currentEntityManager.flush();
+
+        return saved;
     }
 
-    protected interface OrderBy<T> {
-        void apply(CriteriaBuilder criteriaBuilder, CriteriaQuery<?> attributeCriteriaQuery, Root<?> root);
+    /**
+     * Opts the repository in to caching the results of find, findAttribute, count and countDistinct per query shape and
+     * parameter values. Entries expire after the time to live or as soon as an entity type the query reads from is
+     * written through Hibernate.
+     * <p>
+     * Entities are cached by identifier only: a hit loads them into the persistence context of the caller like
+     * {@link #findAllById}, so no entity instance is shared between sessions or threads. Attributes, projections and
+     * aggregates are cached only when they select basic attributes, those values are shared, treat them as read only.
+     */
+    protected void enableResultCache(int maxSize, long timeToLive, TimeUnit unit) {
+        this.resultCache = new QueryResultCache(maxSize, unit.toNanos(timeToLive));
     }
 
-    private final Class<T> typeParameterClass;
+    protected void disableResultCache() {
+        this.resultCache = null;
+    }
 
-    @PersistenceContext
-    protected EntityManager entityManager;
+    /**
+     * Mode of every query of the repository unless a call overrides it, {@link QueryMode#MANAGED} by default.
+     * {@link QueryMode#STATELESS} can only be requested per call.
+     */
+    protected void setDefaultQueryMode(QueryMode queryMode) {
+        if (queryMode == QueryMode.STATELESS) {
+            throw new IllegalArgumentException("Stateless mode can only be requested per call");
+        }
 
-    public AbstractRepository(Class<T> typeParameterClass) {
-        this.typeParameterClass = typeParameterClass;
+        this.defaultQueryMode = queryMode;
     }
 
-    protected <Z, X, A> List<T> find(Conditions conditions, List<Function<FetchParent<?, ?>, FetchParent<?, ?>>> fetchCallbacks, OrderBy<T> orderBy) {
-        CriteriaBuilder criteriaBuilder = entityManager.getCriteriaBuilder();
-        CriteriaQuery<T> criteriaQuery = criteriaBuilder.createQuery(typeParameterClass);
-        Root<T> root = criteriaQuery.from(typeParameterClass);
+    /**
+     * Limits of find and findAttribute unless a call passes its own, {@link QueryLimits#none()} by default.
+     */
+    protected void setDefaultQueryLimits(QueryLimits queryLimits) {
+        this.defaultQueryLimits = queryLimits != null ? queryLimits : QueryLimits.none();
+    }
+
+    /**
+     * Instruments find, findAllById, findAttribute, the projections, count and countDistinct (including their asynchronous
+     * variants), null disables instrumentation. Combine e.g. {@link org.msyzdek.jpa.metrics.JmxQueryMetrics} and
+     * {@link org.msyzdek.jpa.metrics.SlowQueryLog} with {@link QueryMetrics#composite}.
+     */
+    protected void setQueryMetrics(QueryMetrics queryMetrics) {
+        this.queryMetrics = queryMetrics;
+    }
 
-        applyFetchCallbacks(fetchCallbacks, root);
+    /**
+     * Reports the access patterns of every query to the advisor, null (the default) stops reporting. The advisor may be
+     * shared by several repositories.
+     */
+    protected void setIndexAdvisor(IndexAdvisor indexAdvisor) {
+        this.indexAdvisor = indexAdvisor;
+    }
 
-        criteriaQuery.select(root);
+    /**
+     * Executor for the asynchronous variants, by default a shared pool of {@link AsyncQueryExecutor#DEFAULT_MAX_CONCURRENCY} threads.
+     */
+    protected void setAsyncQueryExecutor(AsyncQueryExecutor asyncQueryExecutor) {
+        this.asyncQueryExecutor = asyncQueryExecutor;
+    }
 
-        conditions = applyConditions(conditions, criteriaBuilder, criteriaQuery, root);
+    private <R> CompletableFuture<R> async(Supplier<R> query) {
+        return asyncQueryExecutor.submit(currentEntityManager().getEntityManagerFactory(), ownEntityManager -> {
+            taskEntityManager.set(ownEntityManager);
 
-        if (orderBy != null) {
-            orderBy.apply(criteriaBuilder, criteriaQuery, root);
-        }
+            try {
+                return query.get();
+            } finally {
+                taskEntityManager.remove();
+            }
+        });
+    }
 
-        TypedQuery<T> typedQuery = entityManager.createQuery(criteriaQuery);
-        setParameters(conditions, typedQuery);
+    /**
+     * The injected EntityManager, or the task's own one while an asynchronous query runs on the current thread.
+     */
+    protected EntityManager currentEntityManager() {
+        EntityManager currentTaskEntityManager = taskEntityManager.get();
 
-        /**
-         * Make sure that duplicate query results will be eliminated (when fetching collection relations of the root entity).
-         */
-        return new ArrayList<T>(new LinkedHashSet<T>(typedQuery.getResultList()));
+        return currentTaskEntityManager != null ? currentTaskEntityManager : entityManager;
     }
 
     protected long count(Conditions conditions) {
@@ -76,7 +1263,21 @@ public abstract class AbstractRepository<T> {
                                               List<Function<FetchParent<?, ?>, FetchParent<?, ?>>> fetchCallbacks,
                                               OrderBy<T> orderBy,
                                               SelectFunction<CriteriaBuilder, Path<A>, Selection<A>> selectCallback) {
-        return findAttribute(attributeClass, attributeName, false, conditions, fetchCallbacks, orderBy, selectCallback);
+        return findAttribute(attributeClass, attributeName, false, conditions, fetchCallbacks, orderBy, selectCallback, null);
+    }
+
+    /**
+     * @param queryLimits limits of this call overriding the repository defaults (see {@link #setDefaultQueryLimits}), may be null
+     * @throws ResultSizeExceededException when more rows than the maximum match and the overflow fails
+     */
+    protected <A> List<A> findAttribute(Class<A> attributeClass,
+                                        String attributeName,
+                                        Conditions conditions,
+                                        List<Function<FetchParent<?, ?>, FetchParent<?, ?>>> fetchCallbacks,
+                                        OrderBy<T> orderBy,
+                                        SelectFunction<CriteriaBuilder, Path<A>, Selection<A>> selectCallback,
+                                        QueryLimits queryLimits) {
+        return findAttribute(attributeClass, attributeName, false, conditions, fetchCallbacks, orderBy, selectCallback, queryLimits);
     }
 
     protected <Z, X, A> List<A> findAttributeDistinct(Class<A> attributeClass,
@@ -86,7 +1287,17 @@ public abstract class AbstractRepository<T> {
                                                       OrderBy<T> orderBy,
                                                       SelectFunction<CriteriaBuilder,
                                                               Path<A>, Selection<A>> selectCallback) {
-        return findAttribute(attributeClass, attributeName, true, conditions, fetchCallbacks, orderBy, selectCallback);
+        return findAttribute(attributeClass, attributeName, true, conditions, fetchCallbacks, orderBy, selectCallback, null);
+    }
+
+    protected <A> List<A> findAttributeDistinct(Class<A> attributeClass,
+                                                String attributeName,
+                                                Conditions conditions,
+                                                List<Function<FetchParent<?, ?>, FetchParent<?, ?>>> fetchCallbacks,
+                                                OrderBy<T> orderBy,
+                                                SelectFunction<CriteriaBuilder, Path<A>, Selection<A>> selectCallback,
+                                                QueryLimits queryLimits) {
+        return findAttribute(attributeClass, attributeName, true, conditions, fetchCallbacks, orderBy, selectCallback, queryLimits);
     }
 
     private <Z, X, A> List<A> findAttribute(Class<A> attributeClass,
@@ -95,38 +1306,627 @@ public abstract class AbstractRepository<T> {
                                             Conditions conditions,
                                             List<Function<FetchParent<?, ?>, FetchParent<?, ?>>> fetchCallbacks,
                                             OrderBy<T> orderBy,
-                                            SelectFunction<CriteriaBuilder, Path<A>, Selection<A>> selectCallback) {
-        CriteriaBuilder criteriaBuilder = entityManager.getCriteriaBuilder();
-        CriteriaQuery<A> criteriaQuery = criteriaBuilder.createQuery(attributeClass);
-        Root<T> root = criteriaQuery.from(typeParameterClass);
+                                            SelectFunction<CriteriaBuilder, Path<A>, Selection<A>> selectCallback,
+                                            QueryLimits queryLimits) {
+        QueryShape shape = findAttributeShape(attributeClass, attributeName, selectDistinct, conditions, fetchCallbacks, orderBy, selectCallback);
+        QueryLimits limits = effectiveQueryLimits(queryLimits);
 
-        applyFetchCallbacks(fetchCallbacks, root);
+        /**
+         * Associations would be cached as entities of the persistence context that loaded them.
+         */
+        QueryShape cacheShape = isBasicAttributePath(attributeName) ? shape : null;
 
-        Selection<? extends A> selection;
+        return cachedResult(cacheShape, null, resultKey(conditions, limits), ArrayList::new, AbstractRepository::copyList, () -> {
+            long startNanos = System.nanoTime();
+            TypedQuery<A> typedQuery = createFindAttributeQuery(shape, attributeClass, attributeName, selectDistinct, conditions, fetchCallbacks, orderBy, selectCallback);
 
-        if (selectCallback != null) {
-            selection = selectCallback.apply(criteriaBuilder, root.get(attributeName));
-        } else {
-            selection = root.get(attributeName);
+            applyQueryLimits(typedQuery, shape, limits);
+
+            long builtNanos = System.nanoTime();
+            List<A> result = typedQuery.getResultList();
+
+            observeResultSize(shape, limits, result.size());
+            record(selectDistinct ? "findAttributeDistinct" : "findAttribute", shape, conditions, startNanos, builtNanos, result.size(), 0);
+            return checkRowLimit(result, limits);
+        });
+    }
+
+    private <A> QueryShape findAttributeShape(Class<A> attributeClass,
+                                              String attributeName,
+                                              boolean selectDistinct,
+                                              Conditions conditions,
+                                              List<Function<FetchParent<?, ?>, FetchParent<?, ?>>> fetchCallbacks,
+                                              OrderBy<T> orderBy,
+                                              SelectFunction<CriteriaBuilder, Path<A>, Selection<A>> selectCallback) {
+        return QueryShape.of("findAttribute", attributeClass, attributeName, selectDistinct, conditions, fetchCallbacks, orderBy, selectCallback);
+    }
+
+    private <A> TypedQuery<A> createFindAttributeQuery(QueryShape shape,
+                                                       Class<A> attributeClass,
+                                                       String attributeName,
+                                                       boolean selectDistinct,
+                                                       Conditions conditions,
+                                                       List<Function<FetchParent<?, ?>, FetchParent<?, ?>>> fetchCallbacks,
+                                                       OrderBy<T> orderBy,
+                                                       SelectFunction<CriteriaBuilder, Path<A>, Selection<A>> selectCallback) {
+        return createQuery(shape, attributeClass, conditions, () -> {
+            CriteriaBuilder criteriaBuilder = currentEntityManager().getCriteriaBuilder();
+            CriteriaQuery<A> criteriaQuery = criteriaBuilder.createQuery(attributeClass);
+            Root<T> root = criteriaQuery.from(typeParameterClass);
+
+            applyFetchCallbacks(fetchCallbacks, root);
+
+            Selection<? extends A> selection;
+
+            if (selectCallback != null) {
+                selection = selectCallback.apply(criteriaBuilder, root.get(attributeName));
+            } else {
+                selection = root.get(attributeName);
+            }
+
+            criteriaQuery.select(selection);
+
+            if (selectDistinct) {
+                criteriaQuery.distinct(true);
+            }
+
+            applyConditions(conditions, criteriaBuilder, criteriaQuery, root);
+
+            if (orderBy != null) {
+                orderBy.apply(criteriaBuilder, criteriaQuery, root);
+            }
+
+            return criteriaQuery;
+        });
+    }
+
+    /**
+     * Selects the given attributes into instances of the projection class through its constructor taking them in the
+     * same order, without loading entities. Attribute paths may navigate associations ("details.name"), which are
+     * joined with the join type of the matching {@link Conditions#getJoinConditions join conditions}, or a left join
+     * when there are none, and shared with the conditions.
+     */
+    protected <P> List<P> findProjection(Class<P> projectionClass,
+                                         List<String> attributePaths,
+                                         Conditions conditions,
+                                         OrderBy<T> orderBy,
+                                         boolean selectDistinct) {
+        QueryShape shape = QueryShape.of("findProjection", projectionClass, String.join(",", attributePaths), selectDistinct, conditions, null, orderBy);
+
+        QueryShape cacheShape = attributePaths.stream().allMatch(this::isBasicAttributePath) ? shape : null;
+
+        return cachedResult(cacheShape, conditions, ArrayList::new, AbstractRepository::copyList, () -> {
+            long startNanos = System.nanoTime();
+            TypedQuery<P> typedQuery = createQuery(shape, projectionClass, conditions, () -> {
+                CriteriaBuilder criteriaBuilder = currentEntityManager().getCriteriaBuilder();
+                CriteriaQuery<P> criteriaQuery = criteriaBuilder.createQuery(projectionClass);
+                Root<T> root = criteriaQuery.from(typeParameterClass);
+
+                criteriaQuery.select(criteriaBuilder.construct(projectionClass, resolvePaths(root, conditions, attributePaths)));
+
+                return projectionQuery(criteriaBuilder, criteriaQuery, root, conditions, orderBy, selectDistinct);
+            });
+            long builtNanos = System.nanoTime();
+            List<P> result = typedQuery.getResultList();
+
+            record("findProjection", shape, conditions, startNanos, builtNanos, result.size(), 0);
+            return result;
+        });
+    }
+
+    /**
+     * Variant of {@link #findProjection} returning tuples whose elements are aliased by their attribute path.
+     */
+    protected List<Tuple> findTuples(List<String> attributePaths, Conditions conditions, OrderBy<T> orderBy, boolean selectDistinct) {
+        QueryShape shape = QueryShape.of("findTuples", Tuple.class, String.join(",", attributePaths), selectDistinct, conditions, null, orderBy);
+        long startNanos = System.nanoTime();
+
+        /**
+         * Tuple aliases are only known to the criteria query, JPQL rendered from it can not be reused nor cached.
+         */
+        TypedQuery<Tuple> typedQuery = createQuery(null, Tuple.class, conditions, () -> {
+            CriteriaBuilder criteriaBuilder = currentEntityManager().getCriteriaBuilder();
+            CriteriaQuery<Tuple> criteriaQuery = criteriaBuilder.createTupleQuery();
+            Root<T> root = criteriaQuery.from(typeParameterClass);
+            Selection<?>[] selections = resolvePaths(root, conditions, attributePaths);
+
+            for (int i = 0; i < selections.length; i++) {
+                selections[i].alias(attributePaths.get(i));
+            }
+
+            criteriaQuery.multiselect(selections);
+
+            return projectionQuery(criteriaBuilder, criteriaQuery, root, conditions, orderBy, selectDistinct);
+        });
+        long builtNanos = System.nanoTime();
+        List<Tuple> result = typedQuery.getResultList();
+
+        record("findTuples", shape, conditions, startNanos, builtNanos, result.size(), 0);
+        return result;
+    }
+
+    /**
+     * Aggregates the rows matching the conditions in the database, see {@link Aggregation}. Rows are mapped through the
+     * constructor of the row class taking the grouping attributes followed by the aggregates. Groups are not ordered.
+     * Joins of the attribute paths are shared with the conditions, so aggregates over a collection count every
+     * matching element.
+     */
+    protected <R> List<R> aggregate(Class<R> rowClass, Aggregation aggregation, Conditions conditions) {
+        QueryShape shape = QueryShape.of("aggregate", rowClass, aggregation.toString(), false, conditions, null);
+        Map<String, Object> havingParameters = aggregation.getParameters();
+
+        QueryShape cacheShape = aggregation.getAttributePaths().stream().allMatch(this::isBasicAttributePath) ? shape : null;
+
+        return cachedResult(cacheShape, null, aggregateParameterValues(conditions, havingParameters), ArrayList::new, AbstractRepository::copyList, () -> {
+            long startNanos = System.nanoTime();
+            TypedQuery<R> typedQuery = createQuery(shape, rowClass, conditions, havingParameters, () -> {
+                CriteriaBuilder criteriaBuilder = currentEntityManager().getCriteriaBuilder();
+                CriteriaQuery<R> criteriaQuery = criteriaBuilder.createQuery(rowClass);
+                Root<T> root = criteriaQuery.from(typeParameterClass);
+                Map<String, Path<?>> paths = resolveAggregationPaths(root, conditions, aggregation);
+
+                criteriaQuery.select(criteriaBuilder.construct(rowClass, aggregation.getSelections(criteriaBuilder, root, paths::get)));
+
+                return aggregationQuery(criteriaBuilder, criteriaQuery, root, conditions, aggregation, paths);
+            });
+            long builtNanos = System.nanoTime();
+            List<R> result = typedQuery.getResultList();
+
+            record("aggregate", shape, conditions, startNanos, builtNanos, result.size(), 0);
+            return result;
+        });
+    }
+
+    /**
+     * Variant of {@link #aggregate(Class, Aggregation, Conditions)} returning tuples, the grouping attributes are aliased
+     * by their path and the aggregates by their description, e.g. {@code sum(details.price)}.
+     */
+    protected List<Tuple> aggregateTuples(Aggregation aggregation, Conditions conditions) {
+        QueryShape shape = QueryShape.of("aggregateTuples", Tuple.class, aggregation.toString(), false, conditions, null);
+        long startNanos = System.nanoTime();
+
+        /**
+         * Tuple aliases are only known to the criteria query, see findTuples.
+         */
+        TypedQuery<Tuple> typedQuery = createQuery(null, Tuple.class, conditions, aggregation.getParameters(), () -> {
+            CriteriaBuilder criteriaBuilder = currentEntityManager().getCriteriaBuilder();
+            CriteriaQuery<Tuple> criteriaQuery = criteriaBuilder.createTupleQuery();
+            Root<T> root = criteriaQuery.from(typeParameterClass);
+            Map<String, Path<?>> paths = resolveAggregationPaths(root, conditions, aggregation);
+            Selection<?>[] selections = aggregation.getSelections(criteriaBuilder, root, paths::get);
+            List<String> aliases = aggregation.getAliases();
+
+            for (int i = 0; i < selections.length; i++) {
+                selections[i].alias(aliases.get(i));
+            }
+
+            criteriaQuery.multiselect(selections);
+
+            return aggregationQuery(criteriaBuilder, criteriaQuery, root, conditions, aggregation, paths);
+        });
+        long builtNanos = System.nanoTime();
+        List<Tuple> result = typedQuery.getResultList();
+
+        record("aggregateTuples", shape, conditions, startNanos, builtNanos, result.size(), 0);
+        return result;
+    }
+
+    private Map<String, Path<?>> resolveAggregationPaths(Root<T> root, Conditions conditions, Aggregation aggregation) {
+        Map<String, Path<?>> paths = new HashMap<String, Path<?>>();
+
+        for (String attributePath : aggregation.getAttributePaths()) {
+            paths.put(attributePath, resolvePath(root, conditions, attributePath));
         }
 
-        criteriaQuery.select(selection);
+        return paths;
+    }
+
+    private <R> CriteriaQuery<R> aggregationQuery(CriteriaBuilder criteriaBuilder,
+                                                  CriteriaQuery<R> criteriaQuery,
+                                                  Root<T> root,
+                                                  Conditions conditions,
+                                                  Aggregation aggregation,
+                                                  Map<String, Path<?>> paths) {
+        applyConditions(conditions, criteriaBuilder, criteriaQuery, root);
+        aggregation.apply(criteriaQuery, criteriaBuilder, root, paths::get);
 
+        return criteriaQuery;
+    }
+
+    private static List<Object> aggregateParameterValues(Conditions conditions, Map<String, Object> havingParameters) {
+        List<Object> parameterValues = conditions != null ? conditions.getParameterValues() : new ArrayList<Object>();
+
+        parameterValues.addAll(havingParameters.values());
+
+        return parameterValues;
+    }
+
+    private <P> CriteriaQuery<P> projectionQuery(CriteriaBuilder criteriaBuilder,
+                                                 CriteriaQuery<P> criteriaQuery,
+                                                 Root<T> root,
+                                                 Conditions conditions,
+                                                 OrderBy<T> orderBy,
+                                                 boolean selectDistinct) {
         if (selectDistinct) {
             criteriaQuery.distinct(true);
         }
 
-        conditions = applyConditions(conditions, criteriaBuilder, criteriaQuery, root);
+        applyConditions(conditions, criteriaBuilder, criteriaQuery, root);
 
         if (orderBy != null) {
             orderBy.apply(criteriaBuilder, criteriaQuery, root);
         }
 
-        TypedQuery<A> typedQuery = entityManager.createQuery(criteriaQuery);
+        return criteriaQuery;
+    }
+
+    /**
+     * Resolves the attribute paths before the conditions are applied, so that the conditions reuse the joins.
+     */
+    private Selection<?>[] resolvePaths(Root<T> root, Conditions conditions, List<String> attributePaths) {
+        Selection<?>[] selections = new Selection<?>[attributePaths.size()];
+
+        for (int i = 0; i < selections.length; i++) {
+            selections[i] = resolvePath(root, conditions, attributePaths.get(i));
+        }
+
+        return selections;
+    }
+
+    private Path<?> resolvePath(Root<T> root, Conditions conditions, String attributePath) {
+        String[] attributeNames = attributePath.split("\\.");
+        From<?, ?> from = root;
+        Conditions joinConditions = conditions;
+
+        for (int i = 0; i < attributeNames.length - 1; i++) {
+            joinConditions = joinConditions != null ? joinConditions.findJoinConditions(attributeNames[i]) : null;
+            from = join(from, attributeNames[i], joinConditions != null ? joinConditions.getJoinType() : JoinType.LEFT);
+        }
+
+        return from.get(attributeNames[attributeNames.length - 1]);
+    }
+
+    private From<?, ?> join(From<?, ?> from, String attributeName, JoinType joinType) {
+        for (Join<?, ?> join : from.getJoins()) {
+            if (join.getAttribute().getName().equals(attributeName)) {
+                return join;
+            }
+        }
+
+        return from.join(attributeName, joinType);
+    }
+
+    /**
+     * Creates the typed query for the given shape, reusing the JPQL rendered by an earlier call of the same shape so
+     * that only the parameters have to be bound. The criteria supplier is only invoked on a cache miss.
+     */
+    private <R> TypedQuery<R> createQuery(QueryShape shape, Class<R> resultClass, Conditions conditions, Supplier<CriteriaQuery<R>> criteriaQuery) {
+        return createQuery(shape, resultClass, conditions, Collections.<String, Object>emptyMap(), criteriaQuery);
+    }
+
+    /**
+     * @param parameters parameters bound in addition to the ones of the conditions
+     */
+    private <R> TypedQuery<R> createQuery(QueryShape shape,
+                                          Class<R> resultClass,
+                                          Conditions conditions,
+                                          Map<String, Object> parameters,
+                                          Supplier<CriteriaQuery<R>> criteriaQuery) {
+        CompiledQuery compiledQuery = shape != null && compiledQueries != null ? compiledQueries.get(shape) : null;
+        TypedQuery<R> typedQuery;
+
+        if (compiledQuery != null) {
+            typedQuery = currentEntityManager().createQuery(compiledQuery.getJpql(), resultClass);
+        } else {
+            CriteriaQuery<R> builtCriteriaQuery = criteriaQuery.get();
+            typedQuery = currentEntityManager().createQuery(builtCriteriaQuery);
+
+            if (shape != null && compiledQueries != null) {
+                cacheCompiledQuery(shape, builtCriteriaQuery, typedQuery, conditions, parameters.keySet());
+            }
+        }
 
         setParameters(conditions, typedQuery);
+        parameters.forEach(typedQuery::setParameter);
+
+        if (defaultQueryMode == QueryMode.READ_ONLY) {
+            applyQueryMode(typedQuery, QueryMode.READ_ONLY);
+        }
 
-        return typedQuery.getResultList();
+        return typedQuery;
+    }
+
+    /**
+     * Read-only queries load entities without snapshots and do not flush the persistence context before executing.
+     */
+    private void applyQueryMode(TypedQuery<?> typedQuery, QueryMode queryMode) {
+        boolean readOnly = queryMode == QueryMode.READ_ONLY;
+
+        typedQuery.setHint(QueryHints.HINT_READONLY, readOnly);
+        typedQuery.setHint(QueryHints.HINT_FLUSH_MODE, readOnly ? FlushMode.COMMIT : currentEntityManager().unwrap(Session.class).getFlushMode());
+    }
+
+    private QueryLimits effectiveQueryLimits(QueryLimits queryLimits) {
+        return queryLimits != null ? queryLimits.orElse(defaultQueryLimits) : defaultQueryLimits;
+    }
+
+    /**
+     * Parameter values keying the result cache, a truncated result differs from the complete one.
+     */
+    private static List<Object> resultKey(Conditions conditions, QueryLimits limits) {
+        List<Object> values = conditions != null ? conditions.getParameterValues() : new ArrayList<Object>();
+
+        if (limits.getMaxRows() > 0) {
+            values.add(limits.getOverflow());
+            values.add(limits.getMaxRows());
+        }
+
+        return values;
+    }
+
+    /**
+     * Applies the timeout and fetch size hints and reads one row more than the maximum to detect an overflow.
+     */
+    private void applyQueryLimits(TypedQuery<?> typedQuery, QueryShape shape, QueryLimits limits) {
+        if (limits.getTimeoutMillis() > 0) {
+            /**
+             * Hibernate truncates the hint to whole seconds.
+             */
+            long timeoutSeconds = TimeUnit.MILLISECONDS.toSeconds(limits.getTimeoutMillis() + 999);
+
+            typedQuery.setHint(QueryHints.SPEC_HINT_TIMEOUT, (int) Math.min(Integer.MAX_VALUE / 1000, timeoutSeconds) * 1000);
+        }
+
+        int fetchSize = fetchSize(shape, limits);
+
+        if (fetchSize > 0) {
+            typedQuery.setHint(QueryHints.HINT_FETCH_SIZE, fetchSize);
+        }
+
+        if (limits.getMaxRows() > 0) {
+            typedQuery.setMaxResults(limits.getMaxRows() + 1);
+        }
+    }
+
+    /**
+     * Fetch size of the query, 0 for the driver default. Adaptive fetch sizes need the row width of a compiled shape,
+     * other queries use {@link #DEFAULT_FETCH_SIZE}.
+     */
+    private int fetchSize(QueryShape shape, QueryLimits limits) {
+        int fetchSize = limits.getFetchSize();
+
+        if (limits.isAdaptiveFetchSize()) {
+            CompiledQuery compiledQuery = shape != null && compiledQueries != null ? compiledQueries.get(shape) : null;
+
+            fetchSize = compiledQuery != null
+                    ? adaptiveFetchSizes.fetchSize(shape, compiledQuery.getRowWidth(), DEFAULT_FETCH_SIZE)
+                    : DEFAULT_FETCH_SIZE;
+        }
+
+        return fetchSize > 0 && limits.getMaxRows() > 0 ? Math.min(fetchSize, limits.getMaxRows() + 1) : fetchSize;
+    }
+
+    private void observeResultSize(QueryShape shape, QueryLimits limits, int rows) {
+        if (shape != null && limits.isAdaptiveFetchSize()) {
+            adaptiveFetchSizes.observe(shape, rows);
+        }
+    }
+
+    /**
+     * Fails or truncates a result holding more rows than the maximum.
+     */
+    private <R> List<R> checkRowLimit(List<R> rows, QueryLimits limits) {
+        int maxRows = limits.getMaxRows();
+
+        if (maxRows <= 0 || rows.size() <= maxRows) {
+            return rows;
+        }
+
+        if (limits.getOverflow() == QueryLimits.Overflow.FAIL) {
+            throw new ResultSizeExceededException(typeParameterClass, maxRows);
+        }
+
+        return new ArrayList<R>(rows.subList(0, maxRows));
+    }
+
+    private void cacheCompiledQuery(QueryShape shape, CriteriaQuery<?> criteriaQuery, TypedQuery<?> typedQuery, Conditions conditions, Set<String> boundParameterNames) {
+        try {
+            org.hibernate.Query hibernateQuery = typedQuery.unwrap(org.hibernate.Query.class);
+            Set<String> parameterNames = new HashSet<String>(boundParameterNames);
+
+            if (conditions != null) {
+                parameterNames.addAll(conditions.getParameterNames());
+            }
+
+            /**
+             * Literals rendered by Hibernate as implicit parameters are bound by the criteria adapter only, such JPQL can not be reused.
+             */
+            for (String namedParameter : hibernateQuery.getNamedParameters()) {
+                if (!parameterNames.contains(namedParameter)) {
+                    return;
+                }
+            }
+
+            Set<Class<?>> entityTypes = QueryResultCache.entityTypes(criteriaQuery);
+
+            if (conditions != null) {
+                conditions.addJoinedEntityTypes(currentEntityManager().getMetamodel().managedType(typeParameterClass), entityTypes);
+            }
+
+            compiledQueries.put(shape, new CompiledQuery(hibernateQuery.getQueryString(), entityTypes, orderPaths(criteriaQuery), rowWidth(criteriaQuery)));
+        } catch (PersistenceException e) {
+            // Provider does not expose the rendered query, keep building criteria
+        }
+    }
+
+    /**
+     * Root relative paths of the attributes the query is ordered by, other order expressions are skipped.
+     */
+    private static List<String> orderPaths(CriteriaQuery<?> criteriaQuery) {
+        List<String> orderPaths = new ArrayList<String>();
+
+        for (Order order : criteriaQuery.getOrderList()) {
+            String orderPath = order.getExpression() instanceof Path ? attributePath((Path<?>) order.getExpression()) : null;
+
+            if (orderPath != null && !orderPath.isEmpty()) {
+                orderPaths.add(orderPath);
+            }
+        }
+
+        return orderPaths;
+    }
+
+    private static int rowWidth(CriteriaQuery<?> criteriaQuery) {
+        Selection<?> selection = criteriaQuery.getSelection();
+
+        if (selection == null) {
+            return 1;
+        }
+
+        if (selection.isCompoundSelection()) {
+            return selection.getCompoundSelectionItems().size();
+        }
+
+        return selection instanceof From ? attributeCount((From<?, ?>) selection, ((From<?, ?>) selection).getModel()) : 1;
+    }
+
+    /**
+     * Singular attributes of the managed type and of the associations fetched below it.
+     */
+    private static int attributeCount(FetchParent<?, ?> fetchParent, Object model) {
+        int count = model instanceof ManagedType ? ((ManagedType<?>) model).getSingularAttributes().size() : 1;
+
+        for (Fetch<?, ?> fetch : fetchParent.getFetches()) {
+            Attribute<?, ?> attribute = fetch.getAttribute();
+            Object target = attribute instanceof PluralAttribute
+                    ? ((PluralAttribute<?, ?, ?>) attribute).getElementType()
+                    : ((SingularAttribute<?, ?>) attribute).getType();
+
+            count += attributeCount(fetch, target);
+        }
+
+        return count;
+    }
+
+    private static String attributePath(Path<?> path) {
+        Path<?> parentPath = path.getParentPath();
+
+        if (parentPath == null) {
+            return "";
+        }
+
+        String parentAttributePath = attributePath(parentPath);
+        Object model = path instanceof Join ? ((Join<?, ?>) path).getAttribute() : path.getModel();
+
+        if (parentAttributePath == null || !(model instanceof Attribute)) {
+            return null;
+        }
+
+        String attributeName = ((Attribute<?, ?>) model).getName();
+
+        return parentAttributePath.isEmpty() ? attributeName : parentAttributePath + "." + attributeName;
+    }
+
+    /**
+     * Returns the cached result of the query when the result cache is enabled and holds a valid entry for the shape, mode
+     * and parameter values, otherwise executes the query and caches its result. A null shape is not cached. Results are
+     * converted on the way in (store) and out (load), so that callers never share what they may modify.
+     */
+    private <R> R cachedResult(QueryShape shape, Conditions conditions, Function<R, Object> store, Function<Object, R> load, Supplier<R> query) {
+        return cachedResult(shape, null, conditions != null ? conditions.getParameterValues() : Collections.emptyList(), store, load, query);
+    }
+
+    private <R> R cachedResult(QueryShape shape,
+                               QueryMode queryMode,
+                               List<Object> parameterValues,
+                               Function<R, Object> store,
+                               Function<Object, R> load,
+                               Supplier<R> query) {
+        QueryResultCache cache = resultCache;
+
+        if (cache == null || shape == null || compiledQueries == null) {
+            return query.get();
+        }
+
+        QueryResultCache.Key key = new QueryResultCache.Key(shape, queryMode, parameterValues);
+        Object cached = cache.get(key);
+
+        if (cached != null) {
+            return load.apply(cached);
+        }
+
+        long generation = EntityWriteTracker.currentGeneration();
+        R result = query.get();
+        CompiledQuery compiledQuery = compiledQueries.get(shape);
+
+        if (compiledQuery != null && result != null) {
+            cache.put(key, store.apply(result), compiledQuery.getEntityTypes(), generation);
+        }
+
+        return result;
+    }
+
+    /**
+     * Entities are cached by identifier, see {@link #findCached}.
+     */
+    private Object identifiers(List<T> entities) {
+        PersistenceUnitUtil persistenceUnitUtil = currentEntityManager().getEntityManagerFactory().getPersistenceUnitUtil();
+        List<Object> ids = new ArrayList<Object>(entities.size());
+
+        for (T entity : entities) {
+            ids.add(persistenceUnitUtil.getIdentifier(entity));
+        }
+
+        return ids;
+    }
+
+    /**
+     * Entities of cached identifiers loaded into the persistence context of the caller, from the persistence context or
+     * the second level cache where possible (see {@link #findAllById}). Entities deleted meanwhile are skipped.
+     */
+    private List<T> findCached(Object cachedIds, List<Function<FetchParent<?, ?>, FetchParent<?, ?>>> fetchCallbacks, QueryMode queryMode) {
+        List<Object> ids = copyList(cachedIds);
+
+        return queryMode == null ? findAllById(ids, fetchCallbacks, DEFAULT_ID_BATCH_SIZE) : findByIds(ids, fetchCallbacks, queryMode, QueryLimits.none());
+    }
+
+    @SuppressWarnings("unchecked")
+    private static <E> List<E> copyList(Object cached) {
+        return new ArrayList<E>((List<E>) cached);
+    }
+
+    /**
+     * Whether the attribute path of the repository's entity ends in a basic attribute, whose values are not managed.
+     */
+    private boolean isBasicAttributePath(String attributePath) {
+        ManagedType<?> managedType = currentEntityManager().getMetamodel().managedType(typeParameterClass);
+        String[] attributeNames = attributePath.split("\\.");
+
+        for (int i = 0; i < attributeNames.length; i++) {
+            Attribute<?, ?> attribute;
+
+            try {
+                attribute = managedType.getAttribute(attributeNames[i]);
+            } catch (IllegalArgumentException e) {
+                return false;
+            }
+
+            if (i == attributeNames.length - 1) {
+                return attribute.getPersistentAttributeType() == Attribute.PersistentAttributeType.BASIC;
+            }
+
+            Class<?> targetType = attribute instanceof PluralAttribute
+                    ? ((PluralAttribute<?, ?, ?>) attribute).getElementType().getJavaType()
+                    : attribute.getJavaType();
+
+            try {
+                managedType = currentEntityManager().getMetamodel().managedType(targetType);
+            } catch (IllegalArgumentException e) {
+                return false;
+            }
+        }
+
+        return false;
     }
 
     private <X> Conditions applyConditions(Conditions conditions, CriteriaBuilder criteriaBuilder, CriteriaQuery<X> criteriaQuery, Root<T> root) {
@@ -154,19 +1954,61 @@ public abstract class AbstractRepository<T> {
     }
 
     private long count(Conditions conditions, boolean countDistinct) {
-        CriteriaBuilder criteriaBuilder = entityManager.getCriteriaBuilder();
-        CriteriaQuery<Long> criteriaQuery = criteriaBuilder.createQuery(Long.class);
-        Root<T> root = criteriaQuery.from(typeParameterClass);
+        QueryShape shape = QueryShape.of("count", Long.class, null, countDistinct, conditions, null);
 
-        if (countDistinct) {
-            criteriaQuery.select(criteriaBuilder.countDistinct(root));
-        } else {
-            criteriaQuery.select(criteriaBuilder.count(root));
+        return cachedResult(shape, conditions, result -> result, cached -> (Long) cached, () -> {
+            long startNanos = System.nanoTime();
+            TypedQuery<Long> typedQuery = createCountQuery(shape, conditions, countDistinct);
+            long builtNanos = System.nanoTime();
+            Long result = typedQuery.getSingleResult();
+
+            record(countDistinct ? "countDistinct" : "count", shape, conditions, startNanos, builtNanos, 1, 0);
+            return result;
+        });
+    }
+
+    private TypedQuery<Long> createCountQuery(QueryShape shape, Conditions conditions, boolean countDistinct) {
+        return createQuery(shape, Long.class, conditions, () -> {
+            CriteriaBuilder criteriaBuilder = currentEntityManager().getCriteriaBuilder();
+            CriteriaQuery<Long> criteriaQuery = criteriaBuilder.createQuery(Long.class);
+            Root<T> root = criteriaQuery.from(typeParameterClass);
+
+            if (countDistinct) {
+                criteriaQuery.select(criteriaBuilder.countDistinct(root));
+            } else {
+                criteriaQuery.select(criteriaBuilder.count(root));
+            }
+
+            conditions.apply(criteriaQuery, criteriaBuilder, root);
+
+            return criteriaQuery;
+        });
+    }
+
+    private void record(String operation, QueryShape shape, Conditions conditions, long startNanos, long builtNanos, int rows, int duplicatesRemoved) {
+        QueryMetrics metrics = queryMetrics;
+        IndexAdvisor advisor = indexAdvisor;
+
+        if (metrics == null && advisor == null) {
+            return;
         }
 
-        conditions.apply(criteriaQuery, criteriaBuilder, root);
+        long endNanos = System.nanoTime();
 
-        return (Long) conditions.setParameters(entityManager.createQuery(criteriaQuery)).getSingleResult();
+        if (metrics != null) {
+            metrics.record(new QueryEvent(getClass(), operation, shape != null ? shape.toString() : null, conditions,
+                    builtNanos - startNanos, endNanos - builtNanos, rows, duplicatesRemoved));
+        }
+
+        if (advisor != null) {
+            /**
+             * Orders are only known for compiled shapes, the order by callback is opaque otherwise.
+             */
+            CompiledQuery compiledQuery = shape != null && compiledQueries != null ? compiledQueries.get(shape) : null;
+
+            advisor.record(typeParameterClass, shape, conditions,
+                    compiledQuery != null ? compiledQuery.getOrderPaths() : Collections.<String>emptyList(), endNanos - startNanos);
+        }
     }
 
     protected Predicate conjoinPredicates(CriteriaBuilder builder, List<Predicate> predicates) {
@@ -0,0 +1,63 @@
+package org.msyzdek.jpa;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+
+/**
+ * JDBC fetch size per query shape derived from the results seen so far.
+ * <p>
+ * Each shape keeps a moving average of the rows its executions returned. The fetch size covers the average result in
+ * a single round trip, but a fetch buffers at most {@link #MAX_BUFFERED_VALUES} values (rows times row width): small
+ * results do not allocate large buffers, narrow rows of large results are read in few round trips and wide rows stay
+ * within the memory budget. Shapes not seen yet use the default fetch size, capped the same way.
+ */
+class AdaptiveFetchSize {
+
+    static final int MIN_FETCH_SIZE = 10;
+
+    static final int MAX_BUFFERED_VALUES = 100000;
+
+    /**
+     * Weight of the latest execution in the moving average.
+     */
+    private static final double SMOOTHING = 0.2;
+
+    private static final int MAX_SHAPES = 1024;
+
+    private final ConcurrentMap<QueryShape, double[]> averageRows = new ConcurrentHashMap<QueryShape, double[]>();
+
+    /**
+     * @param rowWidth values per row of the shape, e.g. the columns of an entity and of its fetched associations
+     */
+    int fetchSize(QueryShape shape, int rowWidth, int defaultFetchSize) {
+        double[] average = averageRows.get(shape);
+        int fetchSize;
+
+        if (average == null) {
+            fetchSize = defaultFetchSize;
+        } else {
+            synchronized (average) {
+                fetchSize = (int) Math.min(Integer.MAX_VALUE - 1, Math.ceil(average[0])) + 1;
+            }
+        }
+
+        return Math.max(MIN_FETCH_SIZE, Math.min(fetchSize, MAX_BUFFERED_VALUES / Math.max(1, rowWidth)));
+    }
+
+    void observe(QueryShape shape, int rows) {
+        double[] average = averageRows.get(shape);
+
+        if (average == null) {
+            if (averageRows.size() >= MAX_SHAPES) {
+                return;
+            }
+
+            average = averageRows.computeIfAbsent(shape, s -> new double[]{rows});
+        }
+
+        synchronized (average) {
+            average[0] += SMOOTHING * (rows - average[0]);
+        }
+    }
+}
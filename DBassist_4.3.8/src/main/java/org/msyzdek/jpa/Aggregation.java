@@ -0,0 +1,298 @@
+package org.msyzdek.jpa;
+
+import javax.persistence.criteria.CriteriaBuilder;
+import javax.persistence.criteria.CriteriaQuery;
+import javax.persistence.criteria.Expression;
+import javax.persistence.criteria.Predicate;
+import javax.persistence.criteria.Root;
+import javax.persistence.criteria.Selection;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.Function;
+
+
+/**
+ * Grouping attributes, aggregate functions and having restrictions of an aggregate query, e.g. the total price per
+ * detail type:
+ * <pre>
+ * Aggregation.groupBy("details.type").sum("details.price")
+ * </pre>
+ * Rows hold the grouping attributes followed by the aggregates, in the order they were added. Attribute paths are
+ * resolved like the paths of projections. Instances are immutable.
+ */
+public final class Aggregation {
+
+    public enum AggregateFunction {
+        COUNT, COUNT_DISTINCT, SUM, AVG, MIN, MAX
+    }
+
+    public enum Comparison {
+        EQUAL, GREATER_THAN, GREATER_THAN_OR_EQUAL_TO, LESS_THAN, LESS_THAN_OR_EQUAL_TO
+    }
+
+    private static final String HAVING_PARAMETER_PREFIX = "having";
+
+    private static final class Aggregate {
+
+        private final AggregateFunction function;
+
+        /**
+         * Null to aggregate the root entity, only for counts.
+         */
+        private final String attributePath;
+
+        private Aggregate(AggregateFunction function, String attributePath) {
+            this.function = function;
+            this.attributePath = attributePath;
+        }
+
+        @SuppressWarnings({"unchecked", "rawtypes"})
+        private Expression<?> toExpression(CriteriaBuilder cb, Expression path) {
+            switch (function) {
+                case COUNT:
+                    return cb.count(path);
+                case COUNT_DISTINCT:
+                    return cb.countDistinct(path);
+                case SUM:
+                    return cb.sum(path);
+                case AVG:
+                    return cb.avg(path);
+                case MIN:
+                    return cb.least(path);
+                case MAX:
+                    return cb.greatest(path);
+                default:
+                    throw new IllegalStateException("Unknown aggregate function " + function);
+            }
+        }
+
+        @Override
+        public String toString() {
+            return function.name().toLowerCase() + "(" + (attributePath != null ? attributePath : "*") + ")";
+        }
+    }
+
+    private static final class Having {
+
+        private final Aggregate aggregate;
+
+        private final Comparison comparison;
+
+        private final Object value;
+
+        private Having(Aggregate aggregate, Comparison comparison, Object value) {
+            this.aggregate = aggregate;
+            this.comparison = comparison;
+            this.value = value;
+        }
+
+        @SuppressWarnings({"unchecked", "rawtypes"})
+        private Predicate toPredicate(CriteriaBuilder cb, Expression aggregateExpression, String parameterName) {
+            Expression parameter = cb.parameter(value.getClass(), parameterName);
+
+            switch (comparison) {
+                case EQUAL:
+                    return cb.equal(aggregateExpression, parameter);
+                case GREATER_THAN:
+                    return cb.greaterThan(aggregateExpression, parameter);
+                case GREATER_THAN_OR_EQUAL_TO:
+                    return cb.greaterThanOrEqualTo(aggregateExpression, parameter);
+                case LESS_THAN:
+                    return cb.lessThan(aggregateExpression, parameter);
+                case LESS_THAN_OR_EQUAL_TO:
+                    return cb.lessThanOrEqualTo(aggregateExpression, parameter);
+                default:
+                    throw new IllegalStateException("Unknown comparison " + comparison);
+            }
+        }
+    }
+
+    private final List<String> groupBy;
+
+    private final List<Aggregate> aggregates;
+
+    private final List<Having> having;
+
+    private Aggregation(List<String> groupBy, List<Aggregate> aggregates, List<Having> having) {
+        this.groupBy = Collections.unmodifiableList(groupBy);
+        this.aggregates = Collections.unmodifiableList(aggregates);
+        this.having = Collections.unmodifiableList(having);
+    }
+
+    public static Aggregation groupBy(String... attributePaths) {
+        return new Aggregation(Arrays.asList(attributePaths.clone()), Collections.<Aggregate>emptyList(), Collections.<Having>emptyList());
+    }
+
+    /**
+     * Aggregates over all matching rows, a single row.
+     */
+    public static Aggregation total() {
+        return groupBy();
+    }
+
+    /**
+     * Number of matching root entities in the group.
+     */
+    public Aggregation count() {
+        return aggregate(AggregateFunction.COUNT, null);
+    }
+
+    public Aggregation count(String attributePath) {
+        return aggregate(AggregateFunction.COUNT, attributePath);
+    }
+
+    public Aggregation countDistinct(String attributePath) {
+        return aggregate(AggregateFunction.COUNT_DISTINCT, attributePath);
+    }
+
+    public Aggregation sum(String attributePath) {
+        return aggregate(AggregateFunction.SUM, attributePath);
+    }
+
+    public Aggregation avg(String attributePath) {
+        return aggregate(AggregateFunction.AVG, attributePath);
+    }
+
+    public Aggregation min(String attributePath) {
+        return aggregate(AggregateFunction.MIN, attributePath);
+    }
+
+    public Aggregation max(String attributePath) {
+        return aggregate(AggregateFunction.MAX, attributePath);
+    }
+
+    private Aggregation aggregate(AggregateFunction function, String attributePath) {
+        if (attributePath == null && function != AggregateFunction.COUNT) {
+            throw new IllegalArgumentException(function + " requires an attribute");
+        }
+
+        List<Aggregate> extendedAggregates = new ArrayList<Aggregate>(aggregates);
+        extendedAggregates.add(new Aggregate(function, attributePath));
+
+        return new Aggregation(groupBy, extendedAggregates, having);
+    }
+
+    /**
+     * Keeps the groups whose aggregate compares to the value, e.g. {@code having(SUM, "details.price", GREATER_THAN, 100L)}.
+     * The attribute path is null for the count of root entities. The aggregate does not need to be selected.
+     */
+    public <Y extends Comparable<? super Y>> Aggregation having(AggregateFunction function, String attributePath, Comparison comparison, Y value) {
+        if (value == null) {
+            throw new IllegalArgumentException("Having value must not be null");
+        }
+
+        List<Having> extendedHaving = new ArrayList<Having>(having);
+        extendedHaving.add(new Having(new Aggregate(function, attributePath), comparison, value));
+
+        return new Aggregation(groupBy, aggregates, extendedHaving);
+    }
+
+    /**
+     * All attribute paths referenced by the aggregation, resolved before the conditions are applied.
+     */
+    Set<String> getAttributePaths() {
+        Set<String> attributePaths = new LinkedHashSet<String>(groupBy);
+
+        aggregates.forEach(aggregate -> addAttributePath(aggregate, attributePaths));
+        having.forEach(restriction -> addAttributePath(restriction.aggregate, attributePaths));
+
+        return attributePaths;
+    }
+
+    private static void addAttributePath(Aggregate aggregate, Set<String> attributePaths) {
+        if (aggregate.attributePath != null) {
+            attributePaths.add(aggregate.attributePath);
+        }
+    }
+
+    /**
+     * Grouping attributes followed by the aggregates, aliased by their description.
+     */
+    Selection<?>[] getSelections(CriteriaBuilder cb, Root<?> root, Function<String, Expression<?>> paths) {
+        List<Selection<?>> selections = new ArrayList<Selection<?>>();
+
+        for (String attributePath : groupBy) {
+            selections.add(paths.apply(attributePath));
+        }
+
+        for (Aggregate aggregate : aggregates) {
+            selections.add(toExpression(aggregate, cb, root, paths));
+        }
+
+        return selections.toArray(new Selection<?>[selections.size()]);
+    }
+
+    List<String> getAliases() {
+        List<String> aliases = new ArrayList<String>(groupBy);
+
+        aggregates.forEach(aggregate -> aliases.add(aggregate.toString()));
+
+        return aliases;
+    }
+
+    void apply(CriteriaQuery<?> criteriaQuery, CriteriaBuilder cb, Root<?> root, Function<String, Expression<?>> paths) {
+        List<Expression<?>> grouping = new ArrayList<Expression<?>>();
+
+        for (String attributePath : groupBy) {
+            grouping.add(paths.apply(attributePath));
+        }
+
+        criteriaQuery.groupBy(grouping);
+
+        if (!having.isEmpty()) {
+            Predicate[] restrictions = new Predicate[having.size()];
+
+            for (int i = 0; i < restrictions.length; i++) {
+                Having restriction = having.get(i);
+
+                restrictions[i] = restriction.toPredicate(cb, toExpression(restriction.aggregate, cb, root, paths), HAVING_PARAMETER_PREFIX + i);
+            }
+
+            criteriaQuery.having(restrictions);
+        }
+    }
+
+    private static Expression<?> toExpression(Aggregate aggregate, CriteriaBuilder cb, Root<?> root, Function<String, Expression<?>> paths) {
+        return aggregate.toExpression(cb, aggregate.attributePath != null ? paths.apply(aggregate.attributePath) : root);
+    }
+
+    /**
+     * Values of the having restrictions by parameter name.
+     */
+    Map<String, Object> getParameters() {
+        Map<String, Object> parameters = new LinkedHashMap<String, Object>();
+
+        for (int i = 0; i < having.size(); i++) {
+            parameters.put(HAVING_PARAMETER_PREFIX + i, having.get(i).value);
+        }
+
+        return parameters;
+    }
+
+    /**
+     * Shape of the aggregation, parameter values excluded.
+     */
+    @Override
+    public String toString() {
+        StringBuilder description = new StringBuilder("group by ").append(String.join(", ", groupBy)).append(" select ");
+
+        for (int i = 0; i < aggregates.size(); i++) {
+            description.append(i > 0 ? ", " : "").append(aggregates.get(i));
+        }
+
+        for (int i = 0; i < having.size(); i++) {
+            Having restriction = having.get(i);
+
+            description.append(i > 0 ? " and " : " having ")
+                    .append(restriction.aggregate).append(' ').append(restriction.comparison).append(" :").append(HAVING_PARAMETER_PREFIX).append(i);
+        }
+
+        return description.toString();
+    }
+}
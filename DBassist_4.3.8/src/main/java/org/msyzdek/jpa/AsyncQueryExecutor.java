@@ -0,0 +1,74 @@
+package org.msyzdek.jpa;
+
+import javax.persistence.EntityManager;
+import javax.persistence.EntityManagerFactory;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+
+
+/**
+ * Runs repository queries off the caller thread, each task on its own EntityManager.
+ * <p>
+ * The number of tasks holding an EntityManager at the same time is bounded independently of the executor, so an
+ * unbounded executor (e.g. {@code Executors.newVirtualThreadPerTaskExecutor()}) can be used as long as the limit
+ * matches the connection pool size. Share one instance between all repositories using the same pool.
+ */
+public class AsyncQueryExecutor {
+
+    public static final int DEFAULT_MAX_CONCURRENCY = 10;
+
+    private final Executor executor;
+
+    private final Semaphore permits;
+
+    public AsyncQueryExecutor(Executor executor, int maxConcurrency) {
+        this.executor = executor;
+        this.permits = new Semaphore(maxConcurrency, true);
+    }
+
+    /**
+     * Bounded executor with one daemon thread per permitted concurrent query.
+     */
+    public AsyncQueryExecutor(int maxConcurrency) {
+        this(newDaemonThreadPool(maxConcurrency), maxConcurrency);
+    }
+
+    private static ExecutorService newDaemonThreadPool(int threads) {
+        AtomicInteger threadCount = new AtomicInteger();
+
+        return Executors.newFixedThreadPool(threads, runnable -> {
+            Thread thread = new Thread(runnable, "dbassist-query-" + threadCount.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    public <R> CompletableFuture<R> submit(EntityManagerFactory entityManagerFactory, Function<EntityManager, R> task) {
+        return CompletableFuture.supplyAsync(() -> {
+            try {
+                permits.acquire();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new CompletionException(e);
+            }
+
+            try {
+                EntityManager entityManager = entityManagerFactory.createEntityManager();
+
+                try {
+                    return task.apply(entityManager);
+                } finally {
+                    entityManager.close();
+                }
+            } finally {
+                permits.release();
+            }
+        }, executor);
+    }
+}
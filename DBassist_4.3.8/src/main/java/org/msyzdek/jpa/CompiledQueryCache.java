@@ -0,0 +1,92 @@
+package org.msyzdek.jpa;
+
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+
+/**
+ * Bounded LRU cache of JPQL rendered from criteria queries, keyed by {@link QueryShape}.
+ * <p>
+ * A hit lets the repository skip building the criteria tree and rendering it; since the JPQL string is identical for
+ * every call of the same shape, Hibernate's query plan cache hits as well.
+ */
+class CompiledQueryCache {
+
+    static final int DEFAULT_MAX_SIZE = 256;
+
+    static final class CompiledQuery {
+
+        private final String jpql;
+
+        private final Set<Class<?>> entityTypes;
+
+        private final List<String> orderPaths;
+
+        private final int rowWidth;
+
+        CompiledQuery(String jpql, Set<Class<?>> entityTypes, List<String> orderPaths, int rowWidth) {
+            this.jpql = jpql;
+            this.entityTypes = Collections.unmodifiableSet(entityTypes);
+            this.orderPaths = Collections.unmodifiableList(orderPaths);
+            this.rowWidth = rowWidth;
+        }
+
+        String getJpql() {
+            return jpql;
+        }
+
+        /**
+         * Entity types read by the query (root, joins and fetches).
+         */
+        Set<Class<?>> getEntityTypes() {
+            return entityTypes;
+        }
+
+        /**
+         * Attribute paths the query is ordered by, relative to the root (e.g. "amount", "details.price").
+         */
+        List<String> getOrderPaths() {
+            return orderPaths;
+        }
+
+        /**
+         * Approximate number of values per result row: the singular attributes of a selected entity and of its fetched
+         * associations, or the number of selected expressions.
+         */
+        int getRowWidth() {
+            return rowWidth;
+        }
+    }
+
+    private final Map<QueryShape, CompiledQuery> queries;
+
+    CompiledQueryCache(int maxSize) {
+        this.queries = new LinkedHashMap<QueryShape, CompiledQuery>(16, 0.75f, true) {
+            private static final long serialVersionUID = 1L;
+
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<QueryShape, CompiledQuery> eldest) {
+                return size() > maxSize;
+            }
+        };
+    }
+
+    synchronized CompiledQuery get(QueryShape shape) {
+        return queries.get(shape);
+    }
+
+    synchronized void put(QueryShape shape, CompiledQuery compiledQuery) {
+        queries.put(shape, compiledQuery);
+    }
+
+    synchronized void clear() {
+        queries.clear();
+    }
+
+    synchronized int size() {
+        return queries.size();
+    }
+}
@@ -2,9 +2,14 @@ package org.msyzdek.jpa;
 
 import org.hibernate.jpa.criteria.path.AbstractJoinImpl;
 
+import javax.persistence.Query;
 import javax.persistence.TypedQuery;
 import javax.persistence.criteria.*;
 import javax.persistence.metamodel.Attribute;
+import javax.persistence.metamodel.ManagedType;
+import javax.persistence.metamodel.PluralAttribute;
+import javax.persistence.metamodel.SingularAttribute;
+import javax.persistence.metamodel.Type;
 import java.util.*;
 
 
@@ -14,97 +19,231 @@ public class Conditions {
         Predicate apply(CriteriaBuilder cb, From<?, ?> root);
     }
 
+    /**
+     * Condition carrying a readable description of its shape (attribute, operator and parameter names, never values).
+     */
+    private static final class DescribedCondition implements Condition {
+
+        private final String description;
+
+        // Attribute an index can serve the condition with, null for conditions no index helps with (not in, not like, ...)
+        private final String attributeName;
+
+        private final boolean equality;
+
+        private final Condition condition;
+
+        private DescribedCondition(String description, String attributeName, boolean equality, Condition condition) {
+            this.description = description;
+            this.attributeName = attributeName;
+            this.equality = equality;
+            this.condition = condition;
+        }
+
+        @Override
+        public Predicate apply(CriteriaBuilder cb, From<?, ?> root) {
+            return condition.apply(cb, root);
+        }
+
+        @Override
+        public String toString() {
+            return description;
+        }
+    }
+
+    private static final String PARAMETER_PREFIX = "p";
+
     // Per single join
-    private HashMap<String, Conditions> joinConditions = new HashMap<String, Conditions>();
+    private LinkedHashMap<String, Conditions> joinConditions = new LinkedHashMap<String, Conditions>();
 
     private LinkedList<Condition> whereConditions = new LinkedList<Condition>();
 
-    private HashMap<String, Object> parameters = new HashMap<String, Object>();
+    // Shared by the whole join tree, parameter names are assigned in creation order
+    private LinkedHashMap<String, Object> parameters;
+
+    private final Conditions root;
+
+    private int parameterCount;
+
+    private InListStrategy inListStrategy = InListStrategy.single();
 
     private String joinAttribute;
 
     private JoinType joinType;
 
-    public Conditions() {}
+    private JoinStrategy joinStrategy;
+
+    // The join must be shared with the predicate of an or condition, it can not move into a subquery
+    private boolean referencedByOr;
 
-    private Conditions(String joinAttribute, JoinType joinType) {
+    // Set on the root of a template and of the conditions bound from it, the whole tree is then read only
+    private boolean frozen;
+
+    private String frozenFingerprint;
+
+    public Conditions() {
+        this.root = this;
+        this.parameters = new LinkedHashMap<String, Object>();
+    }
+
+    private Conditions(Conditions root, String joinAttribute, JoinType joinType, JoinStrategy joinStrategy) {
+        this.root = root;
+        this.parameters = root.parameters;
         this.joinAttribute = joinAttribute;
         this.joinType = joinType;
+        this.joinStrategy = joinStrategy;
+    }
+
+    /**
+     * Conditions bound from a frozen template, sharing its predicates and join conditions.
+     */
+    private Conditions(Conditions template, LinkedHashMap<String, Object> parameters) {
+        this.root = this;
+        this.parameters = parameters;
+        this.joinConditions = template.joinConditions;
+        this.whereConditions = template.whereConditions;
+        this.inListStrategy = template.inListStrategy;
+        this.frozen = true;
+        this.frozenFingerprint = template.frozenFingerprint;
+    }
+
+    /**
+     * Conditions extending the given tree: its joins are shared, the conditions of the root and the parameters are
+     * copied, so that conditions added to the root of the copy leave the tree (or the template it was bound from)
+     * unchanged. Join conditions must not be added to the copy.
+     */
+    private Conditions(Conditions conditions) {
+        this.root = this;
+        this.parameters = new LinkedHashMap<String, Object>(conditions.parameters);
+        this.parameterCount = conditions.root.parameterCount;
+        this.joinConditions = conditions.joinConditions;
+        this.whereConditions = new LinkedList<Condition>(conditions.whereConditions);
+        this.inListStrategy = conditions.inListStrategy;
     }
 
     public Condition equal(String attributeName, String value) {
-        return addToWhereConditionsAndReturn((cb, root) -> {
-            return cb.equal(root.get(attributeName), getExpression(cb, value, String.class));
+        String name = addParameter(value);
+        return addToWhereConditionsAndReturn(attributeName, true, attributeName + " = :" + name, (cb, root) -> {
+            return cb.equal(root.get(attributeName), getExpression(cb, name, String.class));
         });
     }
 
     public Condition equal(String attributeName, Number value) {
-        return addToWhereConditionsAndReturn((cb, root) -> {
-            return cb.equal(root.get(attributeName), getExpression(cb, value, Number.class));
+        String name = addParameter(value);
+        return addToWhereConditionsAndReturn(attributeName, true, attributeName + " = :" + name, (cb, root) -> {
+            return cb.equal(root.get(attributeName), getExpression(cb, name, Number.class));
         });
     }
 
-    public Condition greaterThan(String attributeName, Date value) {
-        return addToWhereConditionsAndReturn((cb, root) -> {
-            return cb.greaterThan(root.get(attributeName), getExpression(cb, value, Date.class));
+    /**
+     * Comparisons accept any comparable value: {@link Date}, java.time types mapped by the UTC types, numbers, strings.
+     */
+    public <Y extends Comparable<? super Y>> Condition greaterThan(String attributeName, Y value) {
+        String name = addParameter(value);
+        Class<? extends Y> type = getParameterType(value);
+        return addToWhereConditionsAndReturn(attributeName, false, attributeName + " > :" + name, (cb, root) -> {
+            return cb.greaterThan(root.<Y>get(attributeName), getExpression(cb, name, type));
         });
     }
 
-    public Condition greaterThanOrEqualTo(String attributeName, Date value) {
-        return addToWhereConditionsAndReturn((cb, root) -> {
-            return cb.greaterThanOrEqualTo(root.get(attributeName), getExpression(cb, value, Date.class));
+    public <Y extends Comparable<? super Y>> Condition greaterThanOrEqualTo(String attributeName, Y value) {
+        String name = addParameter(value);
+        Class<? extends Y> type = getParameterType(value);
+        return addToWhereConditionsAndReturn(attributeName, false, attributeName + " >= :" + name, (cb, root) -> {
+            return cb.greaterThanOrEqualTo(root.<Y>get(attributeName), getExpression(cb, name, type));
         });
     }
 
-    public Condition lessThan(String attributeName, Date value) {
-        return addToWhereConditionsAndReturn((cb, root) -> {
-            return cb.lessThan(root.get(attributeName), getExpression(cb, value, Date.class));
+    public <Y extends Comparable<? super Y>> Condition lessThan(String attributeName, Y value) {
+        String name = addParameter(value);
+        Class<? extends Y> type = getParameterType(value);
+        return addToWhereConditionsAndReturn(attributeName, false, attributeName + " < :" + name, (cb, root) -> {
+            return cb.lessThan(root.<Y>get(attributeName), getExpression(cb, name, type));
         });
     }
 
-    public Condition lessThanOrEqualTo(String attributeName, Date value) {
-        return addToWhereConditionsAndReturn((cb, root) -> {
-            return cb.lessThanOrEqualTo(root.get(attributeName), getExpression(cb, value, Date.class));
+    public <Y extends Comparable<? super Y>> Condition lessThanOrEqualTo(String attributeName, Y value) {
+        String name = addParameter(value);
+        Class<? extends Y> type = getParameterType(value);
+        return addToWhereConditionsAndReturn(attributeName, false, attributeName + " <= :" + name, (cb, root) -> {
+            return cb.lessThanOrEqualTo(root.<Y>get(attributeName), getExpression(cb, name, type));
         });
     }
 
-    public Condition in(String attributeName, List<String> values) {
-        return addToWhereConditionsAndReturn((cb, root) -> {
-            return getInPredicate(attributeName, values, cb, root);
+    public Condition in(String attributeName, Collection<?> values) {
+        return in(attributeName, values, root.inListStrategy);
+    }
+
+    public Condition in(String attributeName, Collection<?> values, InListStrategy inListStrategy) {
+        List<String> names = addInParameters(values, inListStrategy);
+        return addToWhereConditionsAndReturn(attributeName, true, attributeName + " in " + inListStrategy + "(:" + String.join(", :", names) + ")", (cb, root) -> {
+            return inListStrategy.toPredicate(cb, root.get(attributeName), names);
         });
     }
 
-    public Condition notIn(String attributeName, List<String> values) {
-        return addToWhereConditionsAndReturn((cb, root) -> {
-            return getInPredicate(attributeName, values, cb, root).not();
+    public Condition notIn(String attributeName, Collection<?> values) {
+        return notIn(attributeName, values, root.inListStrategy);
+    }
+
+    public Condition notIn(String attributeName, Collection<?> values, InListStrategy inListStrategy) {
+        List<String> names = addInParameters(values, inListStrategy);
+        return addToWhereConditionsAndReturn(attributeName + " not in " + inListStrategy + "(:" + String.join(", :", names) + ")", (cb, root) -> {
+            return inListStrategy.toPredicate(cb, root.get(attributeName), names).not();
         });
     }
 
+    /**
+     * Strategy used by {@link #in(String, Collection)} and {@link #notIn(String, Collection)} in the whole tree,
+     * {@link InListStrategy#single()} by default.
+     */
+    public Conditions setInListStrategy(InListStrategy inListStrategy) {
+        checkNotFrozen();
+        root.inListStrategy = inListStrategy;
+
+        return this;
+    }
+
+    private List<String> addInParameters(Collection<?> values, InListStrategy inListStrategy) {
+        List<Object> boundValues = inListStrategy.bind(values);
+        List<String> names = new ArrayList<String>(boundValues.size());
+
+        boundValues.forEach(value -> names.add(addParameter(value)));
+
+        return names;
+    }
+
     public Condition notLike(String attributeName, String value) {
-        return addToWhereConditionsAndReturn((cb, root) -> {
-            return cb.like(root.get(attributeName), getExpression(cb, value, String.class)).not();
+        String name = addParameter(value);
+        return addToWhereConditionsAndReturn(attributeName + " not like :" + name, (cb, root) -> {
+            return cb.like(root.get(attributeName), getExpression(cb, name, String.class)).not();
         });
     }
 
     public Condition isNull(String attributeName) {
-        return addToWhereConditionsAndReturn((cb, root) -> {
+        return addToWhereConditionsAndReturn(attributeName, true, attributeName + " is null", (cb, root) -> {
             return root.get(attributeName).isNull();
         });
     }
 
     public Condition isNotNull(String attributeName) {
-        return addToWhereConditionsAndReturn((cb, root) -> {
+        return addToWhereConditionsAndReturn(attributeName + " is not null", (cb, root) -> {
             return root.get(attributeName).isNotNull();
         });
     }
 
-    public Condition isBetween(String attributeName, Date leftOperand, Date rightOperand) {
-        return addToWhereConditionsAndReturn((cb, root) -> {
-            return cb.between(root.get(attributeName), getExpression(cb, leftOperand, Date.class), getExpression(cb, rightOperand, Date.class));
+    public <Y extends Comparable<? super Y>> Condition isBetween(String attributeName, Y leftOperand, Y rightOperand) {
+        String leftName = addParameter(leftOperand);
+        String rightName = addParameter(rightOperand);
+        Class<? extends Y> leftType = getParameterType(leftOperand);
+        Class<? extends Y> rightType = getParameterType(rightOperand);
+        return addToWhereConditionsAndReturn(attributeName, false, attributeName + " between :" + leftName + " and :" + rightName, (cb, root) -> {
+            return cb.between(root.<Y>get(attributeName), getExpression(cb, leftName, leftType), getExpression(cb, rightName, rightType));
         });
     }
 
     public Condition or(Condition leftOperandCondition, Conditions joinConditions, Condition rightOperandCondition) {
+        checkNotFrozen();
+
         if (whereConditions.contains(leftOperandCondition)) {
             whereConditions.remove(leftOperandCondition);
         }
@@ -113,30 +252,113 @@ public class Conditions {
             joinConditions.whereConditions.remove(rightOperandCondition);
         }
 
+        joinConditions.referencedByOr = true;
+
         Condition condition = (cb, root) -> {
             From<?, ?> from = getFrom(root, joinConditions);
 
             return cb.or(leftOperandCondition.apply(cb, root), rightOperandCondition.apply(cb, from));
         };
 
-        return addToWhereConditionsAndReturn(condition);
+        return addToWhereConditionsAndReturn(describeOr(leftOperandCondition, joinConditions, rightOperandCondition), condition);
     }
 
-    private Predicate getInPredicate(String attributeName, List<String> values, CriteriaBuilder cb, From<?, ?> root) {
-        return root.get(attributeName).in(getExpression(cb, values, List.class));
+    /**
+     * Keyset pagination predicate selecting the rows ordered after the given sort-key values, the expanded form of
+     * {@code (a, b) > (:a, :b)} respecting the direction of every key. The redundant bound {@code a >= :a} (or
+     * {@code a <= :a} descending) is added in front, so that the database can seek an index on the first key instead of
+     * evaluating the alternatives on every row.
+     */
+    public Condition after(Keyset keyset, Object... values) {
+        if (values.length != keyset.size()) {
+            throw new IllegalArgumentException("Expected " + keyset.size() + " keyset values, got " + values.length);
+        }
+
+        String[] names = new String[values.length];
+
+        for (int i = 0; i < values.length; i++) {
+            if (values[i] == null) {
+                throw new IllegalArgumentException("Keyset value of " + keyset.getAttributeName(i) + " must not be null");
+            }
+
+            names[i] = addParameter(values[i]);
+        }
+
+        return addToWhereConditionsAndReturn("(" + keyset + ") after (:" + String.join(", :", names) + ")", (cb, root) -> {
+            Predicate[] alternatives = new Predicate[names.length];
+
+            for (int i = 0; i < names.length; i++) {
+                Predicate[] conjunction = new Predicate[i + 1];
+
+                for (int j = 0; j < i; j++) {
+                    conjunction[j] = cb.equal(root.get(keyset.getAttributeName(j)), getExpression(cb, names[j], values[j].getClass()));
+                }
+
+                conjunction[i] = compare(cb, root.get(keyset.getAttributeName(i)), getExpression(cb, names[i], values[i].getClass()), keyset.isDescending(i));
+                alternatives[i] = cb.and(conjunction);
+            }
+
+            if (alternatives.length == 1) {
+                return alternatives[0];
+            }
+
+            Predicate leadingBound = compareOrEqual(cb, root.get(keyset.getAttributeName(0)), getExpression(cb, names[0], values[0].getClass()), keyset.isDescending(0));
+
+            return cb.and(leadingBound, cb.or(alternatives));
+        });
+    }
+
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    private static Predicate compare(CriteriaBuilder cb, Expression path, Expression value, boolean descending) {
+        return descending ? cb.lessThan(path, value) : cb.greaterThan(path, value);
+    }
+
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    private static Predicate compareOrEqual(CriteriaBuilder cb, Expression path, Expression value, boolean descending) {
+        return descending ? cb.lessThanOrEqualTo(path, value) : cb.greaterThanOrEqualTo(path, value);
+    }
+
+    private String describeOr(Condition leftOperandCondition, Conditions joinConditions, Condition rightOperandCondition) {
+        if (!(leftOperandCondition instanceof DescribedCondition) || !(rightOperandCondition instanceof DescribedCondition)) {
+            return null;
+        }
+
+        return "(" + leftOperandCondition + " or " + joinConditions.joinAttribute + "." + rightOperandCondition + ")";
+    }
+
+    private Condition addToWhereConditionsAndReturn(String description, Condition condition) {
+        return addToWhereConditionsAndReturn(null, false, description, condition);
     }
 
-    private Condition addToWhereConditionsAndReturn(Condition condition) {
+    /**
+     * @param attributeName attribute the condition restricts in an index friendly way, null if none
+     * @param equality      whether the attribute is compared to single values (=, in, is null) rather than a range
+     */
+    private Condition addToWhereConditionsAndReturn(String attributeName, boolean equality, String description, Condition condition) {
+        checkNotFrozen();
+
+        if (description != null) {
+            condition = new DescribedCondition(description, attributeName, equality, condition);
+        }
+
         whereConditions.add(condition);
 
         return condition;
     }
 
     public Conditions getJoinConditions(String joinAttribute, JoinType joinType) {
+        return getJoinConditions(joinAttribute, joinType, JoinStrategy.AUTO);
+    }
+
+    /**
+     * Conditions on the associated entity, created on first use. Join type and strategy of the first call win.
+     */
+    public Conditions getJoinConditions(String joinAttribute, JoinType joinType, JoinStrategy joinStrategy) {
         Conditions conditions = joinConditions.get(joinAttribute);
 
         if (conditions == null) {
-            conditions = new Conditions(joinAttribute, joinType);
+            checkNotFrozen();
+            conditions = new Conditions(root, joinAttribute, joinType, joinStrategy);
             joinConditions.put(joinAttribute, conditions);
         }
 
@@ -150,22 +372,184 @@ public class Conditions {
     public TypedQuery<?> setParameters(TypedQuery<?> typedQuery) {
         parameters.forEach((k, v) -> typedQuery.setParameter(k, v));
 
-        if (joinConditions != null && !joinConditions.isEmpty()) {
-            joinConditions.forEach((joinAttribute, joinCondition) -> joinCondition.setParameters(typedQuery));
+        return typedQuery;
+    }
+
+    public Query setParameters(Query query) {
+        parameters.forEach((k, v) -> query.setParameter(k, v));
+
+        return query;
+    }
+
+    /**
+     * Conjunction of all predicates of the tree for criteria other than a select, e.g. bulk updates and subqueries.
+     */
+    Predicate toPredicate(CommonAbstractCriteria query, CriteriaBuilder criteriaBuilder, From<?, ?> root) {
+        List<Predicate> predicates = getPredicates(query, criteriaBuilder, root);
+
+        return criteriaBuilder.and(predicates.toArray(new Predicate[predicates.size()]));
+    }
+
+    boolean hasJoinConditions() {
+        return !joinConditions.isEmpty();
+    }
+
+    /**
+     * Join conditions of the attribute or null, unlike {@link #getJoinConditions} nothing is registered.
+     */
+    Conditions findJoinConditions(String joinAttribute) {
+        return joinConditions.get(joinAttribute);
+    }
+
+    JoinType getJoinType() {
+        return joinType;
+    }
+
+    String getJoinAttribute() {
+        return joinAttribute;
+    }
+
+    Collection<Conditions> getAllJoinConditions() {
+        return Collections.unmodifiableCollection(joinConditions.values());
+    }
+
+    /**
+     * Attributes of this node (not of its joins) compared to single values or to a range, in the order the conditions
+     * were added. Conditions of unknown shape, negations and disjunctions are left out since no index serves them alone.
+     */
+    List<String> getFilteredAttributes(boolean equality) {
+        List<String> attributeNames = new ArrayList<String>();
+
+        for (Condition condition : whereConditions) {
+            if (condition instanceof DescribedCondition) {
+                DescribedCondition describedCondition = (DescribedCondition) condition;
+
+                if (describedCondition.attributeName != null && describedCondition.equality == equality
+                        && !attributeNames.contains(describedCondition.attributeName)) {
+                    attributeNames.add(describedCondition.attributeName);
+                }
+            }
         }
 
-        return typedQuery;
+        return attributeNames;
+    }
+
+    /**
+     * Adds a condition built by a {@link ConditionsTemplate}, whose parameters are named after its placeholders.
+     */
+    Condition addTemplateCondition(String attributeName, boolean equality, String description, Condition condition) {
+        return addToWhereConditionsAndReturn(attributeName, equality, description, condition);
+    }
+
+    /**
+     * Makes the tree read only, called once the template is complete.
+     */
+    void freeze() {
+        frozenFingerprint = getFingerprint();
+        frozen = true;
+    }
+
+    /**
+     * Conditions sharing the predicates of this frozen tree, bound to the given values.
+     */
+    Conditions bind(LinkedHashMap<String, Object> parameters) {
+        return new Conditions(this, parameters);
+    }
+
+    /**
+     * Copy of the root of this tree to add conditions to, see {@link #Conditions(Conditions)}.
+     */
+    Conditions extend() {
+        return new Conditions(root);
+    }
+
+    boolean isFrozen() {
+        return root.frozen;
+    }
+
+    private void checkNotFrozen() {
+        if (root.frozen) {
+            throw new UnsupportedOperationException("Conditions of a template are read only");
+        }
+    }
+
+    /**
+     * Names of all parameters bound by this conditions tree.
+     */
+    public Set<String> getParameterNames() {
+        return Collections.unmodifiableSet(parameters.keySet());
+    }
+
+    /**
+     * Bound parameter values in parameter name order.
+     */
+    public List<Object> getParameterValues() {
+        return new ArrayList<Object>(parameters.values());
+    }
+
+    /**
+     * Deterministic description of the query shape (attributes, operators, joins and parameter names).
+     * Two conditions trees built the same way have the same fingerprint and render the same JPQL, no matter which
+     * values were bound. Returns null when the tree contains conditions of unknown shape.
+     */
+    public String getFingerprint() {
+        if (frozenFingerprint != null) {
+            return frozenFingerprint;
+        }
+
+        StringBuilder fingerprint = new StringBuilder();
+
+        return appendFingerprint(fingerprint) ? fingerprint.toString() : null;
+    }
+
+    private boolean appendFingerprint(StringBuilder fingerprint) {
+        boolean first = true;
+
+        for (Condition condition : whereConditions) {
+            if (!(condition instanceof DescribedCondition)) {
+                return false;
+            }
+
+            fingerprint.append(first ? "" : " and ").append(condition);
+            first = false;
+        }
+
+        for (Conditions joinCondition : joinConditions.values()) {
+            fingerprint.append(first ? "" : " and ")
+                    .append("join ").append(joinCondition.joinAttribute).append(' ').append(joinCondition.joinType)
+                    .append(joinCondition.joinStrategy != JoinStrategy.AUTO ? " " + joinCondition.joinStrategy : "").append(" {");
+
+            if (!joinCondition.appendFingerprint(fingerprint)) {
+                return false;
+            }
+
+            fingerprint.append('}');
+            first = false;
+        }
+
+        return true;
+    }
+
+    @Override
+    public String toString() {
+        String fingerprint = getFingerprint();
+
+        return fingerprint != null ? fingerprint : super.toString();
     }
 
-    private List<Predicate> getPredicates(CriteriaQuery<?> query, CriteriaBuilder cb, From<?, ?> root) {
+    private List<Predicate> getPredicates(CommonAbstractCriteria query, CriteriaBuilder cb, From<?, ?> root) {
         List<Predicate> predicates = new LinkedList<Predicate>();
 
         whereConditions.forEach(condition -> predicates.add(condition.apply(cb, root)));
 
         if (joinConditions != null && !joinConditions.isEmpty()) {
             joinConditions.forEach((joinAttribute, joinCondition) -> {
-                From<?, ?> from = getFrom(root, joinCondition);
-                predicates.addAll(joinCondition.getPredicates(query, cb, from));
+                if (joinCondition.isExists(root)) {
+                    predicates.add(joinCondition.getExistsPredicate(query, cb, root));
+                } else {
+                    From<?, ?> from = getFrom(root, joinCondition);
+                    predicates.addAll(joinCondition.getPredicates(query, cb, from));
+                }
             });
         }
 
@@ -176,15 +560,112 @@ public class Conditions {
         return query.where(cb.and(predicates.toArray(new Predicate[predicates.size()])));
     }
 
-    private <T> ParameterExpression<T> getExpression(CriteriaBuilder cb, Object value, Class<T> typeParameterClass) {
-        String name = getRandomName();
+    private String addParameter(Object value) {
+        checkNotFrozen();
+
+        String name = PARAMETER_PREFIX + root.parameterCount++;
         parameters.put(name, value);
 
+        return name;
+    }
+
+    @SuppressWarnings("unchecked")
+    private static <Y> Class<? extends Y> getParameterType(Y value) {
+        return (Class<? extends Y>) (value != null ? value.getClass() : Object.class);
+    }
+
+    private <T> ParameterExpression<T> getExpression(CriteriaBuilder cb, String name, Class<T> typeParameterClass) {
         return cb.parameter(typeParameterClass, name);
     }
 
-    private String getRandomName() {
-        return UUID.randomUUID().toString().replaceAll("-", "").replaceAll("\\d", "");
+    private boolean isExists(From<?, ?> from) {
+        return isExists(getManagedType(from)) && (joinStrategy != JoinStrategy.AUTO
+                || checkExisting(this, null, from.getJoins()) == null && checkExisting(this, null, from.getFetches()) == null);
+    }
+
+    /**
+     * Whether the conditions on the association of the managed type are rendered as EXISTS, as long as the query does
+     * not join nor fetch the association itself.
+     */
+    private boolean isExists(ManagedType<?> managedType) {
+        if (joinStrategy != JoinStrategy.AUTO) {
+            return joinStrategy == JoinStrategy.EXISTS;
+        }
+
+        if (joinType != JoinType.INNER || referencedByOr) {
+            return false;
+        }
+
+        return managedType != null && managedType.getAttribute(joinAttribute).isCollection();
+    }
+
+    /**
+     * Whether the join conditions repeat a row of the managed type for every matching element, i.e. a collection is
+     * joined instead of being tested by an EXISTS subquery. Joins and fetches added by the query are not considered.
+     */
+    boolean multipliesRows(ManagedType<?> managedType) {
+        for (Conditions joinCondition : joinConditions.values()) {
+            if (joinCondition.isExists(managedType)) {
+                continue;
+            }
+
+            Attribute<?, ?> attribute = managedType.getAttribute(joinCondition.joinAttribute);
+            Type<?> targetType = getTargetType(attribute);
+
+            if (attribute.isCollection() || targetType instanceof ManagedType && joinCondition.multipliesRows((ManagedType<?>) targetType)) {
+                return true;
+            }
+        }
+
+        return false;
+    }
+
+    /**
+     * {@code exists (select e from <from>.<joinAttribute> e where ...)} correlated with the outer query, the nested
+     * join conditions are resolved inside the subquery.
+     */
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    private Predicate getExistsPredicate(CommonAbstractCriteria query, CriteriaBuilder cb, From<?, ?> from) {
+        Subquery subquery = query.subquery(Object.class);
+        From<?, ?> correlated = from instanceof Root ? subquery.correlate((Root) from) : subquery.correlate((Join) from);
+        Join<?, ?> join = correlated.join(joinAttribute, JoinType.INNER);
+        List<Predicate> predicates = getPredicates(subquery, cb, join);
+
+        subquery.select(join).where(predicates.toArray(new Predicate[predicates.size()]));
+
+        return cb.exists(subquery);
+    }
+
+    private static ManagedType<?> getManagedType(From<?, ?> from) {
+        if (from instanceof Root) {
+            return ((Root<?>) from).getModel();
+        }
+
+        Type<?> type = getTargetType(((Join<?, ?>) from).getAttribute());
+
+        return type instanceof ManagedType ? (ManagedType<?>) type : null;
+    }
+
+    private static Type<?> getTargetType(Attribute<?, ?> attribute) {
+        return attribute instanceof PluralAttribute
+                ? ((PluralAttribute<?, ?, ?>) attribute).getElementType()
+                : ((SingularAttribute<?, ?>) attribute).getType();
+    }
+
+    /**
+     * Adds the entity types reached through the join conditions of the tree. Joins rendered as exists subqueries are
+     * not visible among the joins of the criteria query.
+     */
+    void addJoinedEntityTypes(ManagedType<?> managedType, Set<Class<?>> entityTypes) {
+        for (Conditions joinCondition : joinConditions.values()) {
+            Type<?> type = getTargetType(managedType.getAttribute(joinCondition.joinAttribute));
+
+            entityTypes.add(type.getJavaType());
+
+            if (type instanceof ManagedType) {
+                joinCondition.addJoinedEntityTypes((ManagedType<?>) type, entityTypes);
+            }
+        }
     }
 
     private From<?, ?> getFrom(From<?, ?> from, Conditions joinCondition) {
@@ -0,0 +1,227 @@
+package org.msyzdek.jpa;
+
+import javax.persistence.criteria.CriteriaBuilder;
+import javax.persistence.criteria.Expression;
+import javax.persistence.criteria.JoinType;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.regex.Pattern;
+
+
+/**
+ * Immutable, thread safe conditions tree with named placeholders instead of values, meant to be kept in a static field
+ * and bound per call:
+ * <pre>
+ * static final ConditionsTemplate SEARCH = ConditionsTemplate.builder()
+ *         .greaterThanOrEqualTo("amount", "minAmount", Long.class)
+ *         .join("details", JoinType.INNER).in("type", "types")
+ *         .build();
+ *
+ * Conditions conditions = SEARCH.bind(values);
+ * </pre>
+ * Bound conditions share the predicates of the template and only hold their parameter values, placeholders become the
+ * parameter names. They render the same predicates as the equivalent {@link Conditions} (in-lists bind the collection
+ * as a single parameter) and can not be modified, e.g. they can not receive the identifier range of a partitioned scan.
+ * Keyset pagination adds its predicate to a copy and accepts them.
+ */
+public final class ConditionsTemplate {
+
+    private static final Pattern PLACEHOLDER = Pattern.compile("[A-Za-z_][A-Za-z0-9_]*");
+
+    private final Conditions conditions;
+
+    private final Map<String, Class<?>> placeholders;
+
+    private ConditionsTemplate(Conditions conditions, Map<String, Class<?>> placeholders) {
+        this.conditions = conditions;
+        this.placeholders = placeholders;
+    }
+
+    public static Builder builder() {
+        return new Builder(new Conditions(), new LinkedHashMap<String, Class<?>>());
+    }
+
+    /**
+     * Binds a value to every placeholder. Values must be instances of the placeholder type, collections for in-lists.
+     */
+    public Conditions bind(Map<String, ?> values) {
+        if (!placeholders.keySet().containsAll(values.keySet())) {
+            List<String> unknown = new ArrayList<String>(values.keySet());
+            unknown.removeAll(placeholders.keySet());
+            throw new IllegalArgumentException("Unknown placeholders " + unknown + ", expected " + placeholders.keySet());
+        }
+
+        LinkedHashMap<String, Object> parameters = new LinkedHashMap<String, Object>();
+
+        placeholders.forEach((placeholder, type) -> {
+            Object value = values.get(placeholder);
+
+            if (value == null) {
+                throw new IllegalArgumentException("No value bound to placeholder " + placeholder);
+            }
+
+            if (!type.isInstance(value)) {
+                throw new IllegalArgumentException("Placeholder " + placeholder + " expects " + type.getName() + ", got " + value.getClass().getName());
+            }
+
+            parameters.put(placeholder, value);
+        });
+
+        return conditions.bind(parameters);
+    }
+
+    public Map<String, Class<?>> getPlaceholders() {
+        return placeholders;
+    }
+
+    @Override
+    public String toString() {
+        return conditions.toString();
+    }
+
+    /**
+     * Collects the conditions of one node of the tree, {@link #join} descends into the joined entity. Not thread safe.
+     */
+    public static final class Builder {
+
+        private final Conditions conditions;
+
+        private final Map<String, Class<?>> placeholders;
+
+        private final Builder rootBuilder;
+
+        private Builder(Conditions conditions, Map<String, Class<?>> placeholders) {
+            this.conditions = conditions;
+            this.placeholders = placeholders;
+            this.rootBuilder = this;
+        }
+
+        private Builder(Conditions conditions, Builder rootBuilder) {
+            this.conditions = conditions;
+            this.placeholders = rootBuilder.placeholders;
+            this.rootBuilder = rootBuilder;
+        }
+
+        private void placeholder(String placeholder, Class<?> type) {
+            if (!PLACEHOLDER.matcher(placeholder).matches()) {
+                throw new IllegalArgumentException("Placeholder must be a valid identifier: " + placeholder);
+            }
+
+            if (placeholders.containsKey(placeholder)) {
+                throw new IllegalArgumentException("Duplicate placeholder " + placeholder);
+            }
+
+            placeholders.put(placeholder, type);
+        }
+
+        private Builder add(String attributeName, boolean equality, String description, Conditions.Condition condition) {
+            conditions.addTemplateCondition(attributeName, equality, description, condition);
+
+            return this;
+        }
+
+        public <Y> Builder equal(String attributeName, String placeholder, Class<Y> type) {
+            placeholder(placeholder, type);
+            return add(attributeName, true, attributeName + " = :" + placeholder, (cb, root) -> {
+                return cb.equal(root.get(attributeName), cb.parameter(type, placeholder));
+            });
+        }
+
+        public <Y extends Comparable<? super Y>> Builder greaterThan(String attributeName, String placeholder, Class<Y> type) {
+            placeholder(placeholder, type);
+            return add(attributeName, false, attributeName + " > :" + placeholder, (cb, root) -> {
+                return cb.greaterThan(root.<Y>get(attributeName), cb.parameter(type, placeholder));
+            });
+        }
+
+        public <Y extends Comparable<? super Y>> Builder greaterThanOrEqualTo(String attributeName, String placeholder, Class<Y> type) {
+            placeholder(placeholder, type);
+            return add(attributeName, false, attributeName + " >= :" + placeholder, (cb, root) -> {
+                return cb.greaterThanOrEqualTo(root.<Y>get(attributeName), cb.parameter(type, placeholder));
+            });
+        }
+
+        public <Y extends Comparable<? super Y>> Builder lessThan(String attributeName, String placeholder, Class<Y> type) {
+            placeholder(placeholder, type);
+            return add(attributeName, false, attributeName + " < :" + placeholder, (cb, root) -> {
+                return cb.lessThan(root.<Y>get(attributeName), cb.parameter(type, placeholder));
+            });
+        }
+
+        public <Y extends Comparable<? super Y>> Builder lessThanOrEqualTo(String attributeName, String placeholder, Class<Y> type) {
+            placeholder(placeholder, type);
+            return add(attributeName, false, attributeName + " <= :" + placeholder, (cb, root) -> {
+                return cb.lessThanOrEqualTo(root.<Y>get(attributeName), cb.parameter(type, placeholder));
+            });
+        }
+
+        public <Y extends Comparable<? super Y>> Builder isBetween(String attributeName, String leftPlaceholder, String rightPlaceholder, Class<Y> type) {
+            placeholder(leftPlaceholder, type);
+            placeholder(rightPlaceholder, type);
+            return add(attributeName, false, attributeName + " between :" + leftPlaceholder + " and :" + rightPlaceholder, (cb, root) -> {
+                return cb.between(root.<Y>get(attributeName), cb.parameter(type, leftPlaceholder), cb.parameter(type, rightPlaceholder));
+            });
+        }
+
+        /**
+         * The placeholder is bound to a collection, expanded by the provider when the query is executed.
+         */
+        public Builder in(String attributeName, String placeholder) {
+            placeholder(placeholder, Collection.class);
+            return add(attributeName, true, attributeName + " in (:" + placeholder + ")", (cb, root) -> {
+                return root.get(attributeName).in(collectionParameter(cb, placeholder));
+            });
+        }
+
+        public Builder notIn(String attributeName, String placeholder) {
+            placeholder(placeholder, Collection.class);
+            return add(null, false, attributeName + " not in (:" + placeholder + ")", (cb, root) -> {
+                return root.get(attributeName).in(collectionParameter(cb, placeholder)).not();
+            });
+        }
+
+        public Builder notLike(String attributeName, String placeholder) {
+            placeholder(placeholder, String.class);
+            return add(null, false, attributeName + " not like :" + placeholder, (cb, root) -> {
+                return cb.like(root.get(attributeName), cb.parameter(String.class, placeholder)).not();
+            });
+        }
+
+        public Builder isNull(String attributeName) {
+            return add(attributeName, true, attributeName + " is null", (cb, root) -> root.get(attributeName).isNull());
+        }
+
+        public Builder isNotNull(String attributeName) {
+            return add(null, false, attributeName + " is not null", (cb, root) -> root.get(attributeName).isNotNull());
+        }
+
+        /**
+         * Builder of the conditions on the joined entity, see {@link Conditions#getJoinConditions}.
+         */
+        public Builder join(String joinAttribute, JoinType joinType) {
+            return join(joinAttribute, joinType, JoinStrategy.AUTO);
+        }
+
+        public Builder join(String joinAttribute, JoinType joinType, JoinStrategy joinStrategy) {
+            return new Builder(conditions.getJoinConditions(joinAttribute, joinType, joinStrategy), rootBuilder);
+        }
+
+        /**
+         * Freezes the whole tree, whichever node this builder belongs to. The builder must not be used afterwards.
+         */
+        public ConditionsTemplate build() {
+            rootBuilder.conditions.freeze();
+
+            return new ConditionsTemplate(rootBuilder.conditions, Collections.unmodifiableMap(new LinkedHashMap<String, Class<?>>(placeholders)));
+        }
+
+        @SuppressWarnings({"unchecked", "rawtypes"})
+        private static Expression<Collection<?>> collectionParameter(CriteriaBuilder cb, String placeholder) {
+            return (Expression) cb.parameter(Collection.class, placeholder);
+        }
+    }
+}
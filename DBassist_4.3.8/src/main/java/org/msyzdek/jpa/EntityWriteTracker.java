@@ -0,0 +1,43 @@
+package org.msyzdek.jpa;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+
+/**
+ * Records the generation of the last write per entity type, fed by {@link ResultCacheInvalidationListener}.
+ * <p>
+ * A cached result read at generation g is stale as soon as one of the entity types it was read from has been written
+ * at a later generation. Writes are recorded for the entity class and all its superclasses, so queries on a mapped
+ * hierarchy root see writes of subclasses.
+ */
+public final class EntityWriteTracker {
+
+    private static final AtomicLong GENERATION = new AtomicLong();
+
+    private static final ConcurrentMap<Class<?>, Long> LAST_WRITES = new ConcurrentHashMap<Class<?>, Long>();
+
+    private EntityWriteTracker() {}
+
+    public static long currentGeneration() {
+        return GENERATION.get();
+    }
+
+    /**
+     * Marks the entity type as written, call it after changes Hibernate does not see (native SQL, other applications).
+     */
+    public static void written(Class<?> entityType) {
+        long generation = GENERATION.incrementAndGet();
+
+        for (Class<?> type = entityType; type != null && type != Object.class; type = type.getSuperclass()) {
+            LAST_WRITES.merge(type, generation, Math::max);
+        }
+    }
+
+    static boolean writtenSince(Class<?> entityType, long generation) {
+        Long lastWrite = LAST_WRITES.get(entityType);
+
+        return lastWrite != null && lastWrite > generation;
+    }
+}
@@ -0,0 +1,191 @@
+package org.msyzdek.jpa;
+
+import org.msyzdek.jpa.postgresql.PostgreSQLArrayDialect;
+import org.msyzdek.jpa.postgresql.SqlArray;
+
+import javax.persistence.criteria.CriteriaBuilder;
+import javax.persistence.criteria.Expression;
+import javax.persistence.criteria.Predicate;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+
+
+/**
+ * Decides how the values of {@link Conditions#in} and {@link Conditions#notIn} are bound.
+ * <p>
+ * Binding a collection expands to one bind variable per element, so every list size renders a different SQL statement.
+ * Strategies trade that off against prepared statement cache hits and database limits on the number of bind variables.
+ */
+public interface InListStrategy {
+
+    /**
+     * Values of the parameters to bind, one parameter is registered per returned element.
+     */
+    List<Object> bind(Collection<?> values);
+
+    /**
+     * Predicate matching the path against the parameters registered for the values returned by {@link #bind}.
+     */
+    Predicate toPredicate(CriteriaBuilder cb, Expression<?> path, List<String> parameterNames);
+
+    /**
+     * Binds the whole collection as a single parameter, Hibernate's default behaviour.
+     */
+    static InListStrategy single() {
+        return Single.INSTANCE;
+    }
+
+    /**
+     * Pads the collection with its last value up to the next power of two so that only log2(n) statements exist per
+     * attribute, which keeps the prepared statement caches warm.
+     */
+    static InListStrategy padded() {
+        return Padded.INSTANCE;
+    }
+
+    /**
+     * Splits the collection into padded chunks of at most maxChunkSize values ORed together, for databases limiting the
+     * size of an IN list (e.g. 1000 on Oracle) or the number of bind variables.
+     */
+    static InListStrategy chunked(int maxChunkSize) {
+        return new Chunked(maxChunkSize);
+    }
+
+    /**
+     * Binds a single SQL array and matches it with {@code = any(?)}, so the statement is the same for every list size.
+     * Requires {@link PostgreSQLArrayDialect}. The element type is derived from the first value, see {@link SqlArray#of}.
+     */
+    static InListStrategy postgreSQLArray() {
+        return PostgreSQLArray.INSTANCE;
+    }
+
+    final class Single implements InListStrategy {
+
+        private static final Single INSTANCE = new Single();
+
+        @Override
+        public List<Object> bind(Collection<?> values) {
+            return Collections.<Object>singletonList(values instanceof List ? values : new ArrayList<Object>(values));
+        }
+
+        @Override
+        public Predicate toPredicate(CriteriaBuilder cb, Expression<?> path, List<String> parameterNames) {
+            return path.in(cb.parameter(List.class, parameterNames.get(0)));
+        }
+
+        @Override
+        public String toString() {
+            return "";
+        }
+    }
+
+    final class Padded implements InListStrategy {
+
+        private static final Padded INSTANCE = new Padded();
+
+        @Override
+        public List<Object> bind(Collection<?> values) {
+            return Collections.<Object>singletonList(pad(new ArrayList<Object>(values)));
+        }
+
+        @Override
+        public Predicate toPredicate(CriteriaBuilder cb, Expression<?> path, List<String> parameterNames) {
+            return path.in(cb.parameter(List.class, parameterNames.get(0)));
+        }
+
+        @Override
+        public String toString() {
+            return "padded";
+        }
+
+        static List<Object> pad(List<Object> values) {
+            return pad(values, Integer.MAX_VALUE);
+        }
+
+        /**
+         * Repeats the last value up to the next power of two, capped at maxSize.
+         */
+        static List<Object> pad(List<Object> values, int maxSize) {
+            if (values.isEmpty()) {
+                return values;
+            }
+
+            int size = Math.min(Integer.highestOneBit(values.size() - 1) << 1, maxSize);
+            Object last = values.get(values.size() - 1);
+
+            while (values.size() < size) {
+                values.add(last);
+            }
+
+            return values;
+        }
+    }
+
+    final class Chunked implements InListStrategy {
+
+        private final int maxChunkSize;
+
+        private Chunked(int maxChunkSize) {
+            if (maxChunkSize < 1) {
+                throw new IllegalArgumentException("Chunk size must be positive");
+            }
+
+            this.maxChunkSize = maxChunkSize;
+        }
+
+        @Override
+        public List<Object> bind(Collection<?> values) {
+            List<Object> list = new ArrayList<Object>(values);
+            List<Object> chunks = new ArrayList<Object>();
+
+            for (int from = 0; from < list.size(); from += maxChunkSize) {
+                List<Object> chunk = new ArrayList<Object>(list.subList(from, Math.min(from + maxChunkSize, list.size())));
+                chunks.add(chunk.size() < maxChunkSize ? Padded.pad(chunk, maxChunkSize) : chunk);
+            }
+
+            if (chunks.isEmpty()) {
+                chunks.add(list);
+            }
+
+            return chunks;
+        }
+
+        @Override
+        public Predicate toPredicate(CriteriaBuilder cb, Expression<?> path, List<String> parameterNames) {
+            Predicate[] predicates = new Predicate[parameterNames.size()];
+
+            for (int i = 0; i < predicates.length; i++) {
+                predicates[i] = path.in(cb.parameter(List.class, parameterNames.get(i)));
+            }
+
+            return predicates.length == 1 ? predicates[0] : cb.or(predicates);
+        }
+
+        @Override
+        public String toString() {
+            return "chunked";
+        }
+    }
+
+    final class PostgreSQLArray implements InListStrategy {
+
+        private static final PostgreSQLArray INSTANCE = new PostgreSQLArray();
+
+        @Override
+        public List<Object> bind(Collection<?> values) {
+            return Collections.<Object>singletonList(SqlArray.of(values));
+        }
+
+        @Override
+        public Predicate toPredicate(CriteriaBuilder cb, Expression<?> path, List<String> parameterNames) {
+            return cb.isTrue(cb.function(PostgreSQLArrayDialect.IN_ARRAY_FUNCTION, Boolean.class, path, cb.parameter(SqlArray.class, parameterNames.get(0))));
+        }
+
+        @Override
+        public String toString() {
+            return "any";
+        }
+    }
+}
@@ -0,0 +1,672 @@
+package org.msyzdek.jpa;
+
+import org.hibernate.HibernateException;
+import org.hibernate.engine.spi.SessionFactoryImplementor;
+import org.hibernate.metadata.ClassMetadata;
+import org.hibernate.persister.collection.CollectionPersister;
+import org.hibernate.persister.collection.QueryableCollection;
+import org.hibernate.persister.entity.AbstractEntityPersister;
+
+import javax.persistence.EntityManagerFactory;
+import javax.persistence.metamodel.Attribute;
+import javax.persistence.metamodel.Metamodel;
+import javax.persistence.metamodel.PluralAttribute;
+import java.io.IOException;
+import java.io.Writer;
+import java.sql.Connection;
+import java.sql.DatabaseMetaData;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Function;
+
+
+/**
+ * Collects the access patterns of repository queries and proposes the composite indexes serving them, written as a
+ * Liquibase change log. Enable it with {@code AbstractRepository#setIndexAdvisor}.
+ * <p>
+ * Every query contributes, per table it reads, one candidate index: the join key columns of a collection join first,
+ * then the columns compared to single values (=, in, is null), the columns the root is ordered by and finally the
+ * first column compared to a range. Candidates are weighted by their number of calls and the time spent in them.
+ * <p>
+ * Proposals leave out candidates already served by an index of the database (read from the JDBC metadata) and merge
+ * candidates served by a longer proposal on the same table. Review them before applying, the advisor knows neither
+ * the selectivity of the columns nor the write load of the tables.
+ */
+public class IndexAdvisor {
+
+    /**
+     * Composite index proposed for a table.
+     */
+    public static final class Proposal {
+
+        private final String tableName;
+
+        private final String indexName;
+
+        private final List<String> columnNames;
+
+        private final long calls;
+
+        private final long totalNanos;
+
+        private final List<String> queries;
+
+        private Proposal(String tableName, String indexName, List<String> columnNames, long calls, long totalNanos, List<String> queries) {
+            this.tableName = tableName;
+            this.indexName = indexName;
+            this.columnNames = Collections.unmodifiableList(columnNames);
+            this.calls = calls;
+            this.totalNanos = totalNanos;
+            this.queries = Collections.unmodifiableList(queries);
+        }
+
+        public String getTableName() {
+            return tableName;
+        }
+
+        public String getIndexName() {
+            return indexName;
+        }
+
+        public List<String> getColumnNames() {
+            return columnNames;
+        }
+
+        /**
+         * Number of queries the index would have served.
+         */
+        public long getCalls() {
+            return calls;
+        }
+
+        /**
+         * Time spent in the queries the index would have served.
+         */
+        public long getTotalNanos() {
+            return totalNanos;
+        }
+
+        /**
+         * Shapes of some of the queries the index would have served.
+         */
+        public List<String> getQueries() {
+            return queries;
+        }
+
+        @Override
+        public String toString() {
+            return indexName + " on " + tableName + columnNames + ": " + calls + " calls, "
+                    + (totalNanos / 1000000) + " ms";
+        }
+    }
+
+    /**
+     * Index wanted by a query, the order of the leading columns does not matter.
+     */
+    static final class Candidate {
+
+        private final String tableName;
+
+        private final List<String> leadingColumnNames;
+
+        private final List<String> orderedColumnNames;
+
+        Candidate(String tableName, List<String> leadingColumnNames, List<String> orderedColumnNames) {
+            this.tableName = tableName;
+            this.leadingColumnNames = leadingColumnNames;
+            this.orderedColumnNames = orderedColumnNames;
+        }
+
+        List<String> getColumnNames() {
+            List<String> columnNames = new ArrayList<String>(leadingColumnNames);
+            columnNames.addAll(orderedColumnNames);
+
+            return columnNames;
+        }
+
+        /**
+         * Whether an index on the given columns serves this candidate: the candidate is a prefix of the index up to
+         * the order of the leading columns, or the index is unique on some of the leading columns.
+         */
+        boolean isServedBy(List<String> indexColumnNames, boolean unique) {
+            Set<String> leading = normalize(leadingColumnNames);
+
+            if (unique && !indexColumnNames.isEmpty() && leading.containsAll(normalize(indexColumnNames))) {
+                return true;
+            }
+
+            int leadingCount = leadingColumnNames.size();
+
+            if (indexColumnNames.size() < leadingCount + orderedColumnNames.size()
+                    || !leading.equals(normalize(indexColumnNames.subList(0, leadingCount)))) {
+                return false;
+            }
+
+            for (int i = 0; i < orderedColumnNames.size(); i++) {
+                if (!normalize(orderedColumnNames.get(i)).equals(normalize(indexColumnNames.get(leadingCount + i)))) {
+                    return false;
+                }
+            }
+
+            return true;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+
+            if (!(o instanceof Candidate)) {
+                return false;
+            }
+
+            Candidate other = (Candidate) o;
+
+            return tableName.equals(other.tableName)
+                    && leadingColumnNames.equals(other.leadingColumnNames)
+                    && orderedColumnNames.equals(other.orderedColumnNames);
+        }
+
+        @Override
+        public int hashCode() {
+            return (tableName.hashCode() * 31 + leadingColumnNames.hashCode()) * 31 + orderedColumnNames.hashCode();
+        }
+    }
+
+    private static final class Usage {
+
+        private final LongAdder calls = new LongAdder();
+
+        private final LongAdder totalNanos = new LongAdder();
+
+        private final Set<String> queries = new LinkedHashSet<String>();
+
+        void add(String query, long nanos) {
+            calls.increment();
+            totalNanos.add(nanos);
+
+            synchronized (queries) {
+                if (queries.size() < MAX_QUERIES_PER_PROPOSAL) {
+                    queries.add(query);
+                }
+            }
+        }
+
+        List<String> getQueries() {
+            synchronized (queries) {
+                return new ArrayList<String>(queries);
+            }
+        }
+    }
+
+    private static final class ExistingIndex {
+
+        private final List<String> columnNames;
+
+        private final boolean unique;
+
+        private ExistingIndex(List<String> columnNames, boolean unique) {
+            this.columnNames = columnNames;
+            this.unique = unique;
+        }
+    }
+
+    private static final int MAX_QUERIES_PER_PROPOSAL = 3;
+
+    /**
+     * Candidates are derived once per entity type and query shape, up to this many shapes.
+     */
+    private static final int MAX_CACHED_SHAPES = 1024;
+
+    private static final int MAX_INDEX_NAME_LENGTH = 60;
+
+    private final SessionFactoryImplementor sessionFactory;
+
+    private final Metamodel metamodel;
+
+    private final ConcurrentMap<List<Object>, List<Candidate>> candidatesByShape = new ConcurrentHashMap<List<Object>, List<Candidate>>();
+
+    private final ConcurrentMap<Candidate, Usage> usages = new ConcurrentHashMap<Candidate, Usage>();
+
+    public IndexAdvisor(EntityManagerFactory entityManagerFactory) {
+        this.sessionFactory = entityManagerFactory.unwrap(SessionFactoryImplementor.class);
+        this.metamodel = entityManagerFactory.getMetamodel();
+    }
+
+    /**
+     * Records a query of the entity type, called by the repository once the query completed.
+     *
+     * @param shape      shape of the query, null when unknown
+     * @param orderPaths attribute paths the query was ordered by, relative to the root
+     */
+    void record(Class<?> entityType, QueryShape shape, Conditions conditions, List<String> orderPaths, long nanos) {
+        List<Candidate> candidates;
+
+        if (shape != null) {
+            List<Object> key = Arrays.<Object>asList(entityType, shape);
+            candidates = candidatesByShape.get(key);
+
+            if (candidates == null) {
+                candidates = candidates(entityType, conditions, orderPaths);
+
+                if (candidatesByShape.size() < MAX_CACHED_SHAPES) {
+                    candidatesByShape.putIfAbsent(key, candidates);
+                }
+            }
+        } else {
+            candidates = candidates(entityType, conditions, orderPaths);
+        }
+
+        String query = shape != null ? shape.toString() : entityType.getName() + " where " + conditions;
+
+        for (Candidate candidate : candidates) {
+            usages.computeIfAbsent(candidate, c -> new Usage()).add(query, nanos);
+        }
+    }
+
+    /**
+     * Proposed indexes missing in the database, the most time consuming queries first.
+     */
+    public List<Proposal> propose(Connection connection) throws SQLException {
+        DatabaseMetaData metaData = connection.getMetaData();
+        Map<String, Function<String, String>> identifierCases = new LinkedHashMap<String, Function<String, String>>();
+        Map<String, List<ExistingIndex>> existingIndexes = new LinkedHashMap<String, List<ExistingIndex>>();
+        List<Map.Entry<Candidate, Usage>> missing = new ArrayList<Map.Entry<Candidate, Usage>>();
+
+        for (Map.Entry<Candidate, Usage> usage : usages.entrySet()) {
+            String tableName = usage.getKey().tableName;
+
+            if (!existingIndexes.containsKey(tableName)) {
+                existingIndexes.put(tableName, existingIndexes(metaData, connection.getCatalog(), tableName, identifierCases));
+            }
+
+            if (!isServed(usage.getKey(), existingIndexes.get(tableName))) {
+                missing.add(usage);
+            }
+        }
+
+        // Longest candidates first, so that shorter ones served by them are merged into them
+        missing.sort(Comparator.comparingInt((Map.Entry<Candidate, Usage> usage) -> usage.getKey().getColumnNames().size()).reversed());
+
+        Map<Candidate, List<Usage>> merged = new LinkedHashMap<Candidate, List<Usage>>();
+
+        for (Map.Entry<Candidate, Usage> usage : missing) {
+            Candidate target = usage.getKey();
+
+            for (Candidate proposed : merged.keySet()) {
+                if (proposed.tableName.equals(target.tableName) && target.isServedBy(proposed.getColumnNames(), false)) {
+                    target = proposed;
+                    break;
+                }
+            }
+
+            merged.computeIfAbsent(target, c -> new ArrayList<Usage>()).add(usage.getValue());
+        }
+
+        List<Proposal> proposals = new ArrayList<Proposal>();
+
+        merged.forEach((candidate, candidateUsages) -> proposals.add(proposal(candidate, candidateUsages, identifierCases.get(candidate.tableName))));
+        proposals.sort(Comparator.comparingLong(Proposal::getTotalNanos).reversed());
+
+        return proposals;
+    }
+
+    /**
+     * Writes the proposals as a Liquibase change log, one changeSet per index.
+     */
+    public void writeChangeLog(Connection connection, Writer writer, String author) throws SQLException, IOException {
+        List<Proposal> proposals = propose(connection);
+
+        writer.write("<?xml version=\"1.0\" encoding=\"UTF-8\" standalone=\"no\"?>\n");
+        writer.write("<databaseChangeLog xmlns=\"http://www.liquibase.org/xml/ns/dbchangelog\""
+                + " xmlns:xsi=\"http://www.w3.org/2001/XMLSchema-instance\""
+                + " xsi:schemaLocation=\"http://www.liquibase.org/xml/ns/dbchangelog http://www.liquibase.org/xml/ns/dbchangelog/dbchangelog-3.3.xsd\">\n");
+
+        for (Proposal proposal : proposals) {
+            writer.write("    <changeSet author=\"" + escape(author) + "\" id=\"" + escape(proposal.getIndexName())
+                    + "\" objectQuotingStrategy=\"QUOTE_ALL_OBJECTS\">\n");
+            writer.write("        <comment>" + escape(proposal.getCalls() + " calls, " + (proposal.getTotalNanos() / 1000000)
+                    + " ms: " + String.join("; ", proposal.getQueries())) + "</comment>\n");
+            writer.write("        <createIndex indexName=\"" + escape(proposal.getIndexName()) + "\" tableName=\""
+                    + escape(proposal.getTableName()) + "\">\n");
+
+            for (String columnName : proposal.getColumnNames()) {
+                writer.write("            <column name=\"" + escape(columnName) + "\"/>\n");
+            }
+
+            writer.write("        </createIndex>\n");
+            writer.write("    </changeSet>\n");
+        }
+
+        writer.write("</databaseChangeLog>\n");
+        writer.flush();
+    }
+
+    /**
+     * Forgets the recorded queries, e.g. once the proposals were applied.
+     */
+    public void reset() {
+        usages.clear();
+    }
+
+    private List<Candidate> candidates(Class<?> entityType, Conditions conditions, List<String> orderPaths) {
+        List<String> orderAttributes = new ArrayList<String>();
+
+        for (String orderPath : orderPaths) {
+            if (orderPath.indexOf('.') < 0) {
+                orderAttributes.add(orderPath);
+            }
+        }
+
+        List<Candidate> candidates = new ArrayList<Candidate>();
+        collect(entityType, Collections.<String>emptyList(), conditions, orderAttributes, candidates);
+
+        return candidates;
+    }
+
+    /**
+     * Adds the candidate of the entity table and of the tables joined by the conditions.
+     *
+     * @param joinColumnNames columns of the entity table joined to the parent entity, leading the candidate
+     */
+    private void collect(Class<?> entityType, List<String> joinColumnNames, Conditions conditions, List<String> orderAttributes, List<Candidate> candidates) {
+        AbstractEntityPersister persister = persister(entityType);
+
+        if (persister == null) {
+            return;
+        }
+
+        String tableName = persister.getTableName();
+        List<String> equalityColumnNames = columnNames(persister, conditions != null ? conditions.getFilteredAttributes(true) : Collections.<String>emptyList());
+        Collections.sort(equalityColumnNames);
+
+        Set<String> leadingColumnNames = new LinkedHashSet<String>(joinColumnNames);
+        leadingColumnNames.addAll(equalityColumnNames);
+
+        Set<String> orderedColumnNames = new LinkedHashSet<String>(columnNames(persister, orderAttributes));
+
+        /**
+         * Only the first range can be searched through the index, the following ones filter the matches.
+         */
+        for (String rangeAttribute : conditions != null ? conditions.getFilteredAttributes(false) : Collections.<String>emptyList()) {
+            List<String> rangeColumnNames = columnNames(persister, Collections.singletonList(rangeAttribute));
+
+            if (!rangeColumnNames.isEmpty()) {
+                orderedColumnNames.addAll(rangeColumnNames);
+                break;
+            }
+        }
+
+        orderedColumnNames.removeAll(leadingColumnNames);
+        addCandidate(candidates, tableName, new ArrayList<String>(leadingColumnNames), new ArrayList<String>(orderedColumnNames));
+
+        if (conditions == null) {
+            return;
+        }
+
+        for (Conditions joinConditions : conditions.getAllJoinConditions()) {
+            collectJoin(entityType, persister, joinConditions, candidates);
+        }
+    }
+
+    private void collectJoin(Class<?> entityType, AbstractEntityPersister persister, Conditions joinConditions, List<Candidate> candidates) {
+        Attribute<?, ?> attribute;
+
+        try {
+            attribute = metamodel.managedType(entityType).getAttribute(joinConditions.getJoinAttribute());
+        } catch (IllegalArgumentException e) {
+            return;
+        }
+
+        if (!(attribute instanceof PluralAttribute)) {
+            /**
+             * To-one joins reach the target through its primary key.
+             */
+            collect(attribute.getJavaType(), Collections.<String>emptyList(), joinConditions, Collections.<String>emptyList(), candidates);
+            return;
+        }
+
+        Class<?> elementType = ((PluralAttribute<?, ?, ?>) attribute).getElementType().getJavaType();
+        QueryableCollection collection = collectionPersister(persister.getEntityName() + "." + attribute.getName());
+
+        if (collection == null) {
+            return;
+        }
+
+        List<String> keyColumnNames = unquote(Arrays.asList(collection.getKeyColumnNames()));
+        AbstractEntityPersister elementPersister = persister(elementType);
+
+        if (collection.isOneToMany() && elementPersister != null && collection.getTableName().equals(elementPersister.getTableName())) {
+            collect(elementType, keyColumnNames, joinConditions, Collections.<String>emptyList(), candidates);
+        } else {
+            addCandidate(candidates, collection.getTableName(), keyColumnNames, Collections.<String>emptyList());
+            collect(elementType, Collections.<String>emptyList(), joinConditions, Collections.<String>emptyList(), candidates);
+        }
+    }
+
+    private static void addCandidate(List<Candidate> candidates, String tableName, List<String> leadingColumnNames, List<String> orderedColumnNames) {
+        if (leadingColumnNames.isEmpty() && orderedColumnNames.isEmpty()) {
+            return;
+        }
+
+        Candidate candidate = new Candidate(unquote(tableName), leadingColumnNames, orderedColumnNames);
+
+        if (!candidates.contains(candidate)) {
+            candidates.add(candidate);
+        }
+    }
+
+    /**
+     * Columns of the attributes stored in the entity table, attributes of other tables (joined inheritance) and
+     * formulas are skipped.
+     */
+    private static List<String> columnNames(AbstractEntityPersister persister, List<String> attributeNames) {
+        List<String> columnNames = new ArrayList<String>();
+
+        for (String attributeName : attributeNames) {
+            String[] attributeColumnNames;
+
+            try {
+                if (attributeName.equals(persister.getIdentifierPropertyName())) {
+                    attributeColumnNames = persister.getIdentifierColumnNames();
+                } else if (persister.getTableName().equals(persister.getPropertyTableName(attributeName))) {
+                    attributeColumnNames = persister.getPropertyColumnNames(attributeName);
+                } else {
+                    continue;
+                }
+            } catch (HibernateException e) {
+                continue;
+            }
+
+            if (!Arrays.asList(attributeColumnNames).contains(null)) {
+                columnNames.addAll(unquote(Arrays.asList(attributeColumnNames)));
+            }
+        }
+
+        return columnNames;
+    }
+
+    private AbstractEntityPersister persister(Class<?> entityType) {
+        ClassMetadata classMetadata = sessionFactory.getClassMetadata(entityType);
+
+        return classMetadata instanceof AbstractEntityPersister ? (AbstractEntityPersister) classMetadata : null;
+    }
+
+    private QueryableCollection collectionPersister(String role) {
+        try {
+            CollectionPersister collectionPersister = sessionFactory.getCollectionPersister(role);
+
+            return collectionPersister instanceof QueryableCollection ? (QueryableCollection) collectionPersister : null;
+        } catch (HibernateException e) {
+            return null;
+        }
+    }
+
+    private static boolean isServed(Candidate candidate, List<ExistingIndex> indexes) {
+        for (ExistingIndex index : indexes) {
+            if (candidate.isServedBy(index.columnNames, index.unique)) {
+                return true;
+            }
+        }
+
+        return false;
+    }
+
+    /**
+     * Indexes and primary key of the table. The table is looked up as mapped, then upper and lower case; the case it
+     * was found in is remembered so that the change log names the table and its columns the way the database does.
+     */
+    private static List<ExistingIndex> existingIndexes(DatabaseMetaData metaData,
+                                                       String catalog,
+                                                       String qualifiedTableName,
+                                                       Map<String, Function<String, String>> identifierCases) throws SQLException {
+        int dot = qualifiedTableName.lastIndexOf('.');
+        String schema = dot >= 0 ? qualifiedTableName.substring(0, dot) : null;
+        String tableName = qualifiedTableName.substring(dot + 1);
+        List<Function<String, String>> cases = Arrays.<Function<String, String>>asList(
+                Function.identity(), name -> name.toUpperCase(Locale.ROOT), name -> name.toLowerCase(Locale.ROOT));
+
+        for (Function<String, String> identifierCase : cases) {
+            Map<String, TreeMap<Integer, String>> indexColumns = new LinkedHashMap<String, TreeMap<Integer, String>>();
+            Set<String> uniqueIndexes = new HashSet<String>();
+
+            try (ResultSet resultSet = metaData.getIndexInfo(catalog, schema != null ? identifierCase.apply(schema) : null,
+                    identifierCase.apply(tableName), false, true)) {
+                while (resultSet.next()) {
+                    String indexName = resultSet.getString("INDEX_NAME");
+                    String columnName = resultSet.getString("COLUMN_NAME");
+
+                    if (resultSet.getShort("TYPE") == DatabaseMetaData.tableIndexStatistic || indexName == null || columnName == null) {
+                        continue;
+                    }
+
+                    indexColumns.computeIfAbsent(indexName, name -> new TreeMap<Integer, String>())
+                            .put((int) resultSet.getShort("ORDINAL_POSITION"), columnName);
+
+                    if (!resultSet.getBoolean("NON_UNIQUE")) {
+                        uniqueIndexes.add(indexName);
+                    }
+                }
+            }
+
+            TreeMap<Integer, String> primaryKeyColumns = new TreeMap<Integer, String>();
+
+            try (ResultSet resultSet = metaData.getPrimaryKeys(catalog, schema != null ? identifierCase.apply(schema) : null,
+                    identifierCase.apply(tableName))) {
+                while (resultSet.next()) {
+                    primaryKeyColumns.put((int) resultSet.getShort("KEY_SEQ"), resultSet.getString("COLUMN_NAME"));
+                }
+            }
+
+            if (indexColumns.isEmpty() && primaryKeyColumns.isEmpty()) {
+                continue;
+            }
+
+            List<ExistingIndex> indexes = new ArrayList<ExistingIndex>();
+
+            indexColumns.forEach((indexName, columns) -> indexes.add(new ExistingIndex(new ArrayList<String>(columns.values()), uniqueIndexes.contains(indexName))));
+
+            if (!primaryKeyColumns.isEmpty()) {
+                indexes.add(new ExistingIndex(new ArrayList<String>(primaryKeyColumns.values()), true));
+            }
+
+            identifierCases.put(qualifiedTableName, identifierCase);
+
+            return indexes;
+        }
+
+        /**
+         * Table without any index or not visible to the connection, everything is missing.
+         */
+        identifierCases.put(qualifiedTableName, Function.identity());
+
+        return Collections.emptyList();
+    }
+
+    private static Proposal proposal(Candidate candidate, List<Usage> candidateUsages, Function<String, String> identifierCase) {
+        long calls = 0;
+        long totalNanos = 0;
+        Set<String> queries = new LinkedHashSet<String>();
+
+        for (Usage usage : candidateUsages) {
+            calls += usage.calls.sum();
+            totalNanos += usage.totalNanos.sum();
+
+            for (String query : usage.getQueries()) {
+                if (queries.size() < MAX_QUERIES_PER_PROPOSAL) {
+                    queries.add(query);
+                }
+            }
+        }
+
+        String tableName = identifierCase.apply(candidate.tableName);
+        List<String> columnNames = new ArrayList<String>();
+
+        candidate.getColumnNames().forEach(columnName -> columnNames.add(identifierCase.apply(columnName)));
+
+        return new Proposal(tableName, indexName(tableName, columnNames), columnNames, calls, totalNanos, new ArrayList<String>(queries));
+    }
+
+    /**
+     * Named like the constraints of the change logs, e.g. PRODUCT_DETAILS_PRODUCT_ID_IX, shortened by a hash if needed.
+     */
+    private static String indexName(String tableName, List<String> columnNames) {
+        String baseName = tableName.substring(tableName.lastIndexOf('.') + 1) + "_" + String.join("_", columnNames);
+        boolean lowerCase = baseName.equals(baseName.toLowerCase(Locale.ROOT));
+        String suffix = lowerCase ? "_ix" : "_IX";
+
+        if (baseName.length() + suffix.length() > MAX_INDEX_NAME_LENGTH) {
+            String hash = String.format("%08x", baseName.hashCode());
+            baseName = baseName.substring(0, MAX_INDEX_NAME_LENGTH - suffix.length() - hash.length() - 1) + "_" + hash;
+        }
+
+        return baseName + suffix;
+    }
+
+    private static List<String> unquote(List<String> names) {
+        List<String> unquoted = new ArrayList<String>(names.size());
+
+        names.forEach(name -> unquoted.add(unquote(name)));
+
+        return unquoted;
+    }
+
+    /**
+     * Strips the quotes of identifiers mapped with quoting, e.g. with hibernate.globally_quoted_identifiers.
+     */
+    private static String unquote(String name) {
+        return name.replaceAll("[\"`\\[\\]]", "");
+    }
+
+    private static Set<String> normalize(List<String> names) {
+        Set<String> normalized = new HashSet<String>();
+
+        names.forEach(name -> normalized.add(normalize(name)));
+
+        return normalized;
+    }
+
+    private static String normalize(String name) {
+        return unquote(name).toUpperCase(Locale.ROOT);
+    }
+
+    private static String escape(String text) {
+        return text.replace("&", "&amp;").replace("<", "&lt;").replace(">", "&gt;").replace("\"", "&quot;");
+    }
+}
@@ -0,0 +1,26 @@
+package org.msyzdek.jpa;
+
+
+/**
+ * How the conditions on an association are rendered, see {@link Conditions#getJoinConditions(String, javax.persistence.criteria.JoinType, JoinStrategy)}.
+ */
+public enum JoinStrategy {
+
+    /**
+     * Join the association and restrict the joined rows. Joining a collection repeats the root for every matching
+     * element.
+     */
+    JOIN,
+
+    /**
+     * Correlated {@code exists} subquery on the association: one row per root, whatever the number of matching
+     * elements. Roots without a matching element are excluded whatever the join type.
+     */
+    EXISTS,
+
+    /**
+     * {@link #EXISTS} for inner joins of collections that are neither joined nor fetched by the query already and are
+     * not referenced by {@link Conditions#or}, {@link #JOIN} otherwise.
+     */
+    AUTO
+}
@@ -0,0 +1,88 @@
+package org.msyzdek.jpa;
+
+import javax.persistence.criteria.CriteriaBuilder;
+import javax.persistence.criteria.From;
+import javax.persistence.criteria.Order;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+
+/**
+ * Ordered list of root attributes used for keyset (seek) pagination. The combination of all attributes must be unique,
+ * the repository appends the identifier when it is missing.
+ */
+public final class Keyset {
+
+    private final List<String> attributeNames;
+
+    private final List<Boolean> descending;
+
+    private Keyset(List<String> attributeNames, List<Boolean> descending) {
+        this.attributeNames = Collections.unmodifiableList(attributeNames);
+        this.descending = Collections.unmodifiableList(descending);
+    }
+
+    public static Keyset ascending(String attributeName) {
+        return new Keyset(Collections.<String>emptyList(), Collections.<Boolean>emptyList()).thenAscending(attributeName);
+    }
+
+    public static Keyset descending(String attributeName) {
+        return new Keyset(Collections.<String>emptyList(), Collections.<Boolean>emptyList()).thenDescending(attributeName);
+    }
+
+    public Keyset thenAscending(String attributeName) {
+        return then(attributeName, false);
+    }
+
+    public Keyset thenDescending(String attributeName) {
+        return then(attributeName, true);
+    }
+
+    private Keyset then(String attributeName, boolean descendingOrder) {
+        List<String> names = new ArrayList<String>(attributeNames);
+        List<Boolean> orders = new ArrayList<Boolean>(descending);
+
+        names.add(attributeName);
+        orders.add(descendingOrder);
+
+        return new Keyset(names, orders);
+    }
+
+    public int size() {
+        return attributeNames.size();
+    }
+
+    public String getAttributeName(int index) {
+        return attributeNames.get(index);
+    }
+
+    public boolean isDescending(int index) {
+        return descending.get(index);
+    }
+
+    public boolean contains(String attributeName) {
+        return attributeNames.contains(attributeName);
+    }
+
+    List<Order> toOrders(CriteriaBuilder cb, From<?, ?> root) {
+        List<Order> orders = new ArrayList<Order>(attributeNames.size());
+
+        for (int i = 0; i < attributeNames.size(); i++) {
+            orders.add(descending.get(i) ? cb.desc(root.get(attributeNames.get(i))) : cb.asc(root.get(attributeNames.get(i))));
+        }
+
+        return orders;
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder description = new StringBuilder();
+
+        for (int i = 0; i < attributeNames.size(); i++) {
+            description.append(i > 0 ? ", " : "").append(attributeNames.get(i)).append(descending.get(i) ? " desc" : " asc");
+        }
+
+        return description.toString();
+    }
+}
@@ -0,0 +1,35 @@
+package org.msyzdek.jpa;
+
+import java.util.Collections;
+import java.util.List;
+
+
+/**
+ * One page of a keyset paginated query together with the opaque token continuing after its last row.
+ */
+public class KeysetPage<T> {
+
+    private final List<T> content;
+
+    private final String continuationToken;
+
+    public KeysetPage(List<T> content, String continuationToken) {
+        this.content = Collections.unmodifiableList(content);
+        this.continuationToken = continuationToken;
+    }
+
+    public List<T> getContent() {
+        return content;
+    }
+
+    /**
+     * Token to pass for the next page, null when this is the last page.
+     */
+    public String getContinuationToken() {
+        return continuationToken;
+    }
+
+    public boolean hasNext() {
+        return continuationToken != null;
+    }
+}
@@ -0,0 +1,205 @@
+package org.msyzdek.jpa;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.sql.Time;
+import java.sql.Timestamp;
+import java.time.DateTimeException;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.OffsetDateTime;
+import java.util.Base64;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.Map;
+
+
+/**
+ * Encodes the sort-key values of the last row of a page into an URL safe continuation token.
+ * <p>
+ * Only a fixed set of value types is written with explicit tags, tokens come from clients and are never deserialized
+ * into arbitrary classes.
+ */
+final class KeysetToken {
+
+    private static final byte VERSION = 1;
+
+    private static final Map<Class<?>, Class<?>> BOXED_TYPES = new HashMap<Class<?>, Class<?>>();
+
+    static {
+        BOXED_TYPES.put(long.class, Long.class);
+        BOXED_TYPES.put(int.class, Integer.class);
+        BOXED_TYPES.put(short.class, Short.class);
+        BOXED_TYPES.put(double.class, Double.class);
+        BOXED_TYPES.put(float.class, Float.class);
+        BOXED_TYPES.put(boolean.class, Boolean.class);
+    }
+
+    private KeysetToken() {}
+
+    static String encode(Object[] values) {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+
+        try (DataOutputStream out = new DataOutputStream(bytes)) {
+            out.writeByte(VERSION);
+            out.writeShort(values.length);
+
+            for (Object value : values) {
+                write(out, value);
+            }
+        } catch (IOException e) {
+            throw new IllegalStateException(e);
+        }
+
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(bytes.toByteArray());
+    }
+
+    /**
+     * Values of the token converted to the types of the keyset attributes.
+     *
+     * @throws IllegalArgumentException when the token is malformed or its values do not match the types
+     */
+    static Object[] decode(String token, Class<?>[] types) {
+        try (DataInputStream in = new DataInputStream(new ByteArrayInputStream(Base64.getUrlDecoder().decode(token)))) {
+            if (in.readByte() != VERSION) {
+                throw new IllegalArgumentException("Unsupported continuation token version");
+            }
+
+            int size = in.readShort();
+
+            if (size != types.length) {
+                throw new IllegalArgumentException("Continuation token does not match the keyset");
+            }
+
+            Object[] values = new Object[size];
+
+            for (int i = 0; i < size; i++) {
+                values[i] = convert(read(in), types[i]);
+            }
+
+            if (in.read() != -1) {
+                throw new IllegalArgumentException("Malformed continuation token");
+            }
+
+            return values;
+        } catch (IOException | DateTimeException e) {
+            throw new IllegalArgumentException("Malformed continuation token", e);
+        }
+    }
+
+    /**
+     * Dates are written without their JDBC subtype, other values have to be of the attribute type already.
+     */
+    private static Object convert(Object value, Class<?> type) {
+        Class<?> valueType = type.isPrimitive() ? BOXED_TYPES.get(type) : type;
+
+        if (value.getClass() == Date.class && valueType == java.sql.Date.class) {
+            return new java.sql.Date(((Date) value).getTime());
+        }
+
+        if (value.getClass() == Date.class && valueType == Time.class) {
+            return new Time(((Date) value).getTime());
+        }
+
+        if (valueType == null || !valueType.isInstance(value)) {
+            throw new IllegalArgumentException("Continuation token does not match the keyset, expected " + type.getName()
+                    + " but got " + value.getClass().getName());
+        }
+
+        return value;
+    }
+
+    private static void write(DataOutputStream out, Object value) throws IOException {
+        if (value instanceof String) {
+            out.writeByte('S');
+            out.writeUTF((String) value);
+        } else if (value instanceof Long) {
+            out.writeByte('L');
+            out.writeLong((Long) value);
+        } else if (value instanceof Integer) {
+            out.writeByte('I');
+            out.writeInt((Integer) value);
+        } else if (value instanceof Short) {
+            out.writeByte('H');
+            out.writeShort((Short) value);
+        } else if (value instanceof Double) {
+            out.writeByte('D');
+            out.writeDouble((Double) value);
+        } else if (value instanceof Float) {
+            out.writeByte('F');
+            out.writeFloat((Float) value);
+        } else if (value instanceof BigDecimal) {
+            out.writeByte('N');
+            out.writeUTF(value.toString());
+        } else if (value instanceof BigInteger) {
+            out.writeByte('G');
+            out.writeUTF(value.toString());
+        } else if (value instanceof Timestamp) {
+            out.writeByte('T');
+            out.writeLong(((Timestamp) value).getTime());
+            out.writeInt(((Timestamp) value).getNanos());
+        } else if (value instanceof Date) {
+            out.writeByte('d');
+            out.writeLong(((Date) value).getTime());
+        } else if (value instanceof Instant) {
+            out.writeByte('i');
+            out.writeLong(((Instant) value).getEpochSecond());
+            out.writeInt(((Instant) value).getNano());
+        } else if (value instanceof OffsetDateTime) {
+            out.writeByte('o');
+            out.writeUTF(value.toString());
+        } else if (value instanceof LocalDate) {
+            out.writeByte('l');
+            out.writeLong(((LocalDate) value).toEpochDay());
+        } else if (value instanceof Boolean) {
+            out.writeByte('B');
+            out.writeBoolean((Boolean) value);
+        } else {
+            throw new IllegalArgumentException("Unsupported keyset value " + (value != null ? value.getClass().getName() : "null"));
+        }
+    }
+
+    private static Object read(DataInputStream in) throws IOException {
+        byte tag = in.readByte();
+
+        switch (tag) {
+            case 'S':
+                return in.readUTF();
+            case 'L':
+                return in.readLong();
+            case 'I':
+                return in.readInt();
+            case 'H':
+                return in.readShort();
+            case 'D':
+                return in.readDouble();
+            case 'F':
+                return in.readFloat();
+            case 'N':
+                return new BigDecimal(in.readUTF());
+            case 'G':
+                return new BigInteger(in.readUTF());
+            case 'T':
+                Timestamp timestamp = new Timestamp(in.readLong());
+                timestamp.setNanos(in.readInt());
+                return timestamp;
+            case 'd':
+                return new Date(in.readLong());
+            case 'i':
+                return Instant.ofEpochSecond(in.readLong(), in.readInt());
+            case 'o':
+                return OffsetDateTime.parse(in.readUTF());
+            case 'l':
+                return LocalDate.ofEpochDay(in.readLong());
+            case 'B':
+                return in.readBoolean();
+            default:
+                throw new IllegalArgumentException("Malformed continuation token");
+        }
+    }
+}
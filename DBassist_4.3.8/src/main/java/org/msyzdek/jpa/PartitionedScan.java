@@ -0,0 +1,108 @@
+package org.msyzdek.jpa;
+
+import javax.persistence.PersistenceException;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+
+/**
+ * Hands the batches read by the workers of a partitioned scan to the caller thread through a bounded queue, so that
+ * workers block once the consumer falls behind. A failing worker or consumer cancels the whole scan.
+ */
+final class PartitionedScan<T> {
+
+    private static final long OFFER_TIMEOUT_MILLIS = 100;
+
+    private static final Object WORKER_DONE = new Object();
+
+    private static final class WorkerFailure {
+
+        private final Throwable cause;
+
+        private WorkerFailure(Throwable cause) {
+            this.cause = cause instanceof CompletionException && cause.getCause() != null ? cause.getCause() : cause;
+        }
+    }
+
+    private final BlockingQueue<Object> queue;
+
+    private volatile boolean cancelled;
+
+    PartitionedScan(int capacity) {
+        this.queue = new ArrayBlockingQueue<Object>(capacity);
+    }
+
+    boolean isCancelled() {
+        return cancelled;
+    }
+
+    /**
+     * Blocks while the queue is full, returns false when the scan was cancelled meanwhile.
+     */
+    boolean publish(List<T> batch) {
+        return offer(batch);
+    }
+
+    void workerDone(Throwable failure) {
+        offer(failure != null ? new WorkerFailure(failure) : WORKER_DONE);
+    }
+
+    private boolean offer(Object element) {
+        try {
+            while (!cancelled) {
+                if (queue.offer(element, OFFER_TIMEOUT_MILLIS, TimeUnit.MILLISECONDS)) {
+                    return true;
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            cancelled = true;
+        }
+
+        return false;
+    }
+
+    /**
+     * Passes every batch to the consumer on the calling thread until all workers are done.
+     *
+     * @return number of rows consumed
+     */
+    @SuppressWarnings("unchecked")
+    long consume(int workers, Consumer<List<T>> consumer) {
+        long rows = 0;
+        int runningWorkers = workers;
+
+        try {
+            while (runningWorkers > 0) {
+                Object element = queue.take();
+
+                if (element == WORKER_DONE) {
+                    runningWorkers--;
+                } else if (element instanceof WorkerFailure) {
+                    Throwable cause = ((WorkerFailure) element).cause;
+
+                    throw cause instanceof RuntimeException ? (RuntimeException) cause : new PersistenceException("Partitioned scan failed", cause);
+                } else {
+                    List<T> batch = (List<T>) element;
+
+                    consumer.accept(batch);
+                    rows += batch.size();
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new PersistenceException("Partitioned scan interrupted", e);
+        } finally {
+            if (runningWorkers > 0) {
+                cancelled = true;
+                queue.clear();
+            }
+        }
+
+        return rows;
+    }
+}
@@ -0,0 +1,150 @@
+package org.msyzdek.jpa;
+
+import java.util.concurrent.TimeUnit;
+
+
+/**
+ * Guardrails of find and findAttribute: maximum number of rows, statement timeout and JDBC fetch size, e.g.
+ * <pre>
+ * QueryLimits.none().withMaxRows(1000, Overflow.FAIL).withTimeout(5, TimeUnit.SECONDS).withAdaptiveFetchSize()
+ * </pre>
+ * Limits passed to a call override the repository defaults value by value, values left unset fall back to them.
+ * Instances are immutable.
+ */
+public final class QueryLimits {
+
+    public enum Overflow {
+
+        /**
+         * The query fails with a {@link ResultSizeExceededException}.
+         */
+        FAIL,
+
+        /**
+         * The first maxRows rows are returned.
+         */
+        TRUNCATE
+    }
+
+    private static final int ADAPTIVE_FETCH_SIZE = -1;
+
+    private static final QueryLimits NONE = new QueryLimits(0, Overflow.FAIL, 0, 0);
+
+    private final int maxRows;
+
+    private final Overflow overflow;
+
+    private final long timeoutMillis;
+
+    private final int fetchSize;
+
+    private QueryLimits(int maxRows, Overflow overflow, long timeoutMillis, int fetchSize) {
+        this.maxRows = maxRows;
+        this.overflow = overflow;
+        this.timeoutMillis = timeoutMillis;
+        this.fetchSize = fetchSize;
+    }
+
+    public static QueryLimits none() {
+        return NONE;
+    }
+
+    /**
+     * One row more than the maximum is read to detect the overflow. When fetch callbacks or joined collections
+     * multiply the rows of a root, the limit is applied in two phases: the distinct identifiers first, then their
+     * entities. Conditions rendered as EXISTS subqueries do not multiply rows.
+     */
+    public QueryLimits withMaxRows(int maxRows, Overflow overflow) {
+        if (maxRows < 1) {
+            throw new IllegalArgumentException("Maximum row count must be positive, got " + maxRows);
+        }
+
+        return new QueryLimits(maxRows, overflow, timeoutMillis, fetchSize);
+    }
+
+    /**
+     * Statement timeout applied as the javax.persistence.query.timeout hint. JDBC timeouts have a granularity of
+     * seconds, the timeout is rounded up.
+     */
+    public QueryLimits withTimeout(long timeout, TimeUnit unit) {
+        if (timeout < 1) {
+            throw new IllegalArgumentException("Timeout must be positive, got " + timeout);
+        }
+
+        return new QueryLimits(maxRows, overflow, unit.toMillis(timeout), fetchSize);
+    }
+
+    /**
+     * Rows the driver reads per round trip. The PostgreSQL driver streams rows only with a fetch size and
+     * auto-commit disabled, otherwise it reads the whole result at once.
+     */
+    public QueryLimits withFetchSize(int fetchSize) {
+        if (fetchSize < 1) {
+            throw new IllegalArgumentException("Fetch size must be positive, got " + fetchSize);
+        }
+
+        return new QueryLimits(maxRows, overflow, timeoutMillis, fetchSize);
+    }
+
+    /**
+     * Fetch size derived per query shape from the result sizes and the row width seen so far, see
+     * {@link AdaptiveFetchSize}.
+     */
+    public QueryLimits withAdaptiveFetchSize() {
+        return new QueryLimits(maxRows, overflow, timeoutMillis, ADAPTIVE_FETCH_SIZE);
+    }
+
+    /**
+     * Maximum number of rows, 0 when unlimited.
+     */
+    public int getMaxRows() {
+        return maxRows;
+    }
+
+    public Overflow getOverflow() {
+        return overflow;
+    }
+
+    /**
+     * Statement timeout, 0 when none.
+     */
+    public long getTimeoutMillis() {
+        return timeoutMillis;
+    }
+
+    /**
+     * Fixed fetch size, 0 for the driver default or when adaptive.
+     */
+    public int getFetchSize() {
+        return Math.max(fetchSize, 0);
+    }
+
+    public boolean isAdaptiveFetchSize() {
+        return fetchSize == ADAPTIVE_FETCH_SIZE;
+    }
+
+    /**
+     * These limits without a maximum number of rows, for queries whose row count is bounded already.
+     */
+    QueryLimits withoutMaxRows() {
+        return new QueryLimits(0, Overflow.FAIL, timeoutMillis, fetchSize);
+    }
+
+    /**
+     * These limits with the values left unset taken from the defaults.
+     */
+    QueryLimits orElse(QueryLimits defaults) {
+        boolean ownMaxRows = maxRows > 0;
+
+        return new QueryLimits(ownMaxRows ? maxRows : defaults.maxRows,
+                ownMaxRows ? overflow : defaults.overflow,
+                timeoutMillis > 0 ? timeoutMillis : defaults.timeoutMillis,
+                fetchSize != 0 ? fetchSize : defaults.fetchSize);
+    }
+
+    @Override
+    public String toString() {
+        return "maxRows " + maxRows + " " + overflow + ", timeout " + timeoutMillis + " ms, fetch size "
+                + (isAdaptiveFetchSize() ? "adaptive" : String.valueOf(fetchSize));
+    }
+}
@@ -0,0 +1,27 @@
+package org.msyzdek.jpa;
+
+
+/**
+ * How repository queries load entities.
+ */
+public enum QueryMode {
+
+    /**
+     * Entities are managed and dirty checked, the persistence context is flushed before queries as configured.
+     */
+    MANAGED,
+
+    /**
+     * Entities are managed in read-only mode: no snapshot is kept for dirty checking, changes are not flushed and the
+     * query does not trigger an automatic flush of the persistence context.
+     */
+    READ_ONLY,
+
+    /**
+     * The query runs through a StatelessSession sharing the connection and transaction of the EntityManager. Entities
+     * are detached, bypass the persistence context, caches and interceptors and lazy associations can not be
+     * initialized. Pending changes of the persistence context are not flushed first. Meant for large scans. Streams
+     * read on a connection of their own instead, outside the current transaction.
+     */
+    STATELESS
+}
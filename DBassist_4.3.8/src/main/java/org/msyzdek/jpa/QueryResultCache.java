@@ -0,0 +1,175 @@
+package org.msyzdek.jpa;
+
+import javax.persistence.criteria.AbstractQuery;
+import javax.persistence.criteria.Fetch;
+import javax.persistence.criteria.FetchParent;
+import javax.persistence.criteria.From;
+import javax.persistence.criteria.Join;
+import javax.persistence.criteria.Root;
+import javax.persistence.metamodel.Attribute;
+import javax.persistence.metamodel.PluralAttribute;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+
+
+/**
+ * Bounded, time limited cache of query results keyed by the query shape and the bound parameter values.
+ * <p>
+ * Entries are dropped once one of the entity types they were read from is written through Hibernate, see
+ * {@link EntityWriteTracker}. Entities are never cached, only their identifiers, which each caller loads into its own
+ * persistence context; cached values are shared between callers, treat them as read only.
+ */
+class QueryResultCache {
+
+    static final class Key {
+
+        private final QueryShape shape;
+
+        private final QueryMode queryMode;
+
+        private final List<Object> parameterValues;
+
+        /**
+         * @param queryMode mode the cached result is loaded in, null for the repository default
+         */
+        Key(QueryShape shape, QueryMode queryMode, List<Object> parameterValues) {
+            this.shape = shape;
+            this.queryMode = queryMode;
+            this.parameterValues = parameterValues;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+
+            if (!(o instanceof Key)) {
+                return false;
+            }
+
+            Key other = (Key) o;
+
+            return shape.equals(other.shape) && queryMode == other.queryMode && parameterValues.equals(other.parameterValues);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(shape, queryMode, parameterValues);
+        }
+    }
+
+    private static final class CacheEntry {
+
+        private final Object result;
+
+        private final Set<Class<?>> entityTypes;
+
+        private final long generation;
+
+        private final long expiresAt;
+
+        private CacheEntry(Object result, Set<Class<?>> entityTypes, long generation, long expiresAt) {
+            this.result = result;
+            this.entityTypes = entityTypes;
+            this.generation = generation;
+            this.expiresAt = expiresAt;
+        }
+
+        private boolean isValid(long now) {
+            if (now > expiresAt) {
+                return false;
+            }
+
+            for (Class<?> entityType : entityTypes) {
+                if (EntityWriteTracker.writtenSince(entityType, generation)) {
+                    return false;
+                }
+            }
+
+            return true;
+        }
+    }
+
+    private final long timeToLiveNanos;
+
+    private final Map<Key, CacheEntry> entries;
+
+    QueryResultCache(int maxSize, long timeToLiveNanos) {
+        this.timeToLiveNanos = timeToLiveNanos;
+        this.entries = new LinkedHashMap<Key, CacheEntry>(16, 0.75f, true) {
+            private static final long serialVersionUID = 1L;
+
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Key, CacheEntry> eldest) {
+                return size() > maxSize;
+            }
+        };
+    }
+
+    synchronized Object get(Key key) {
+        CacheEntry entry = entries.get(key);
+
+        if (entry == null) {
+            return null;
+        }
+
+        if (!entry.isValid(System.nanoTime())) {
+            entries.remove(key);
+            return null;
+        }
+
+        return entry.result;
+    }
+
+    /**
+     * @param generation {@link EntityWriteTracker#currentGeneration()} read before the query was executed
+     */
+    synchronized void put(Key key, Object result, Set<Class<?>> entityTypes, long generation) {
+        CacheEntry entry = new CacheEntry(result, entityTypes, generation, System.nanoTime() + timeToLiveNanos);
+
+        if (entry.isValid(System.nanoTime())) {
+            entries.put(key, entry);
+        }
+    }
+
+    synchronized void clear() {
+        entries.clear();
+    }
+
+    /**
+     * Entity types of the roots, joins and fetches of the query.
+     */
+    static Set<Class<?>> entityTypes(AbstractQuery<?> query) {
+        Set<Class<?>> entityTypes = new HashSet<Class<?>>();
+
+        for (Root<?> root : query.getRoots()) {
+            entityTypes.add(root.getJavaType());
+            addJoinedEntityTypes(root, entityTypes);
+        }
+
+        return entityTypes;
+    }
+
+    private static void addJoinedEntityTypes(FetchParent<?, ?> parent, Set<Class<?>> entityTypes) {
+        if (parent instanceof From) {
+            for (Join<?, ?> join : ((From<?, ?>) parent).getJoins()) {
+                entityTypes.add(getTargetType(join.getAttribute()));
+                addJoinedEntityTypes(join, entityTypes);
+            }
+        }
+
+        for (Fetch<?, ?> fetch : parent.getFetches()) {
+            entityTypes.add(getTargetType(fetch.getAttribute()));
+            addJoinedEntityTypes(fetch, entityTypes);
+        }
+    }
+
+    private static Class<?> getTargetType(Attribute<?, ?> attribute) {
+        return attribute instanceof PluralAttribute ? ((PluralAttribute<?, ?, ?>) attribute).getElementType().getJavaType() : attribute.getJavaType();
+    }
+}
@@ -0,0 +1,122 @@
+package org.msyzdek.jpa;
+
+import java.lang.reflect.Field;
+import java.lang.reflect.Modifier;
+import java.util.List;
+
+
+/**
+ * Key identifying everything that influences the JPQL rendered for a repository call: the kind of query, its result
+ * type, the conditions fingerprint and the callbacks shaping the criteria (fetches, order by, select).
+ * <p>
+ * Callbacks are compared by identity and only stateless ones (non-capturing lambdas, method references to static
+ * methods, classes without instance fields) are accepted, so the same callback always builds the same criteria.
+ */
+final class QueryShape {
+
+    private static final ClassValue<Boolean> STATELESS = new ClassValue<Boolean>() {
+        @Override
+        protected Boolean computeValue(Class<?> type) {
+            for (Class<?> current = type; current != null && current != Object.class; current = current.getSuperclass()) {
+                for (Field field : current.getDeclaredFields()) {
+                    if (!Modifier.isStatic(field.getModifiers())) {
+                        return false;
+                    }
+                }
+            }
+
+            return true;
+        }
+    };
+
+    private final String description;
+
+    private final Object[] callbacks;
+
+    private final int hashCode;
+
+    private QueryShape(String description, Object[] callbacks) {
+        this.description = description;
+        this.callbacks = callbacks;
+
+        int hash = description.hashCode();
+        for (Object callback : callbacks) {
+            hash = 31 * hash + System.identityHashCode(callback);
+        }
+        this.hashCode = hash;
+    }
+
+    /**
+     * Returns null when the shape can not be determined, i.e. the query must not be cached.
+     */
+    static QueryShape of(String kind,
+                         Class<?> resultClass,
+                         String attributeName,
+                         boolean distinct,
+                         Conditions conditions,
+                         List<?> fetchCallbacks,
+                         Object... callbacks) {
+        String fingerprint = conditions != null ? conditions.getFingerprint() : "";
+
+        if (fingerprint == null) {
+            return null;
+        }
+
+        int fetchCallbackCount = fetchCallbacks != null ? fetchCallbacks.size() : 0;
+        Object[] shapeCallbacks = new Object[fetchCallbackCount + callbacks.length];
+
+        for (int i = 0; i < fetchCallbackCount; i++) {
+            shapeCallbacks[i] = fetchCallbacks.get(i);
+        }
+        System.arraycopy(callbacks, 0, shapeCallbacks, fetchCallbackCount, callbacks.length);
+
+        for (Object callback : shapeCallbacks) {
+            if (callback != null && !STATELESS.get(callback.getClass())) {
+                return null;
+            }
+        }
+
+        String description = kind + ' ' + resultClass.getName()
+                + (attributeName != null ? " " + attributeName : "")
+                + (distinct ? " distinct" : "")
+                + " where " + fingerprint
+                + (fetchCallbackCount > 0 ? " fetches " + fetchCallbackCount : "");
+
+        return new QueryShape(description, shapeCallbacks);
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) {
+            return true;
+        }
+
+        if (!(o instanceof QueryShape)) {
+            return false;
+        }
+
+        QueryShape other = (QueryShape) o;
+
+        if (hashCode != other.hashCode || callbacks.length != other.callbacks.length || !description.equals(other.description)) {
+            return false;
+        }
+
+        for (int i = 0; i < callbacks.length; i++) {
+            if (callbacks[i] != other.callbacks[i]) {
+                return false;
+            }
+        }
+
+        return true;
+    }
+
+    @Override
+    public int hashCode() {
+        return hashCode;
+    }
+
+    @Override
+    public String toString() {
+        return description;
+    }
+}
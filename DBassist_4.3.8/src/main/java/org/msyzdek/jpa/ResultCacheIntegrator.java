@@ -0,0 +1,45 @@
+package org.msyzdek.jpa;
+
+import org.hibernate.cfg.Configuration;
+import org.hibernate.engine.spi.SessionFactoryImplementor;
+import org.hibernate.event.service.spi.EventListenerRegistry;
+import org.hibernate.event.spi.EventType;
+import org.hibernate.integrator.spi.Integrator;
+import org.hibernate.metamodel.source.MetadataImplementor;
+import org.hibernate.service.spi.SessionFactoryServiceRegistry;
+
+
+/**
+ * Registers {@link ResultCacheInvalidationListener}, discovered by Hibernate through META-INF/services.
+ */
+public class ResultCacheIntegrator implements Integrator {
+
+    @Override
+    public void integrate(Configuration configuration, SessionFactoryImplementor sessionFactory, SessionFactoryServiceRegistry serviceRegistry) {
+        register(serviceRegistry);
+    }
+
+    @Override
+    public void integrate(MetadataImplementor metadata, SessionFactoryImplementor sessionFactory, SessionFactoryServiceRegistry serviceRegistry) {
+        register(serviceRegistry);
+    }
+
+    private void register(SessionFactoryServiceRegistry serviceRegistry) {
+        EventListenerRegistry listenerRegistry = serviceRegistry.getService(EventListenerRegistry.class);
+        ResultCacheInvalidationListener listener = ResultCacheInvalidationListener.INSTANCE;
+
+        listenerRegistry.appendListeners(EventType.POST_INSERT, listener);
+        listenerRegistry.appendListeners(EventType.POST_UPDATE, listener);
+        listenerRegistry.appendListeners(EventType.POST_DELETE, listener);
+        listenerRegistry.appendListeners(EventType.POST_COMMIT_INSERT, listener);
+        listenerRegistry.appendListeners(EventType.POST_COMMIT_UPDATE, listener);
+        listenerRegistry.appendListeners(EventType.POST_COMMIT_DELETE, listener);
+        listenerRegistry.appendListeners(EventType.POST_COLLECTION_RECREATE, listener);
+        listenerRegistry.appendListeners(EventType.POST_COLLECTION_UPDATE, listener);
+        listenerRegistry.appendListeners(EventType.POST_COLLECTION_REMOVE, listener);
+    }
+
+    @Override
+    public void disintegrate(SessionFactoryImplementor sessionFactory, SessionFactoryServiceRegistry serviceRegistry) {
+    }
+}
@@ -0,0 +1,24 @@
+package org.msyzdek.jpa;
+
+import javax.persistence.PersistenceException;
+
+
+/**
+ * Thrown when a query returns more rows than allowed by {@link QueryLimits#withMaxRows} with
+ * {@link QueryLimits.Overflow#FAIL}.
+ */
+public class ResultSizeExceededException extends PersistenceException {
+
+    private static final long serialVersionUID = 1L;
+
+    private final int maxRows;
+
+    public ResultSizeExceededException(Class<?> entityClass, int maxRows) {
+        super("Query of " + entityClass.getName() + " returned more than " + maxRows + " rows");
+        this.maxRows = maxRows;
+    }
+
+    public int getMaxRows() {
+        return maxRows;
+    }
+}
@@ -0,0 +1,171 @@
+package org.msyzdek.jpa;
+
+import org.hibernate.Hibernate;
+import org.hibernate.ScrollableResults;
+import org.hibernate.Session;
+import org.hibernate.engine.spi.SessionFactoryImplementor;
+import org.hibernate.metadata.ClassMetadata;
+import org.hibernate.type.CollectionType;
+import org.hibernate.type.Type;
+
+import java.io.Closeable;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Objects;
+import java.util.function.Function;
+
+
+/**
+ * Forward-only iterator over Hibernate {@link ScrollableResults} that keeps only the current row in memory.
+ * <p>
+ * For entity results each row is evicted from the session (together with its initialized associations) as soon as the
+ * next one is requested, and consecutive rows of the same root entity, as produced by fetch-joins, are emitted once.
+ * Rows of the same root are adjacent only when the query is ordered by the root identifier.
+ */
+class ScrollingIterator<R> implements Iterator<R>, Closeable {
+
+    /**
+     * Session the rows are evicted from, null for rows of a StatelessSession which are never attached.
+     */
+    private final Session session;
+
+    private final ScrollableResults results;
+
+    /**
+     * Identifier of an entity row, null for attribute streams where rows are neither evicted nor de-duplicated.
+     */
+    private final Function<Object, Object> identifier;
+
+    private R next;
+
+    private boolean hasNext;
+
+    private boolean advanced;
+
+    private R previous;
+
+    private Object previousId;
+
+    private boolean closed;
+
+    ScrollingIterator(Session session, ScrollableResults results, Function<Object, Object> identifier) {
+        this.session = session;
+        this.results = results;
+        this.identifier = identifier;
+    }
+
+    @Override
+    public boolean hasNext() {
+        if (!advanced) {
+            advance();
+        }
+
+        return hasNext;
+    }
+
+    @Override
+    public R next() {
+        if (!hasNext()) {
+            throw new NoSuchElementException();
+        }
+
+        advanced = false;
+        previous = next;
+        next = null;
+
+        return previous;
+    }
+
+    @SuppressWarnings("unchecked")
+    private void advance() {
+        advanced = true;
+        hasNext = false;
+
+        if (closed) {
+            return;
+        }
+
+        while (results.next()) {
+            R row = (R) results.get(0);
+
+            if (identifier != null && row != null) {
+                Object id = identifier.apply(row);
+
+                if (previous != null && Objects.equals(id, previousId)) {
+                    continue;
+                }
+
+                if (previous != null && session != null) {
+                    evict(previous);
+                }
+
+                previousId = id;
+            }
+
+            next = row;
+            hasNext = true;
+
+            return;
+        }
+
+        close();
+    }
+
+    private void evict(Object entity) {
+        session.evict(entity);
+
+        ClassMetadata metadata = session.getSessionFactory().getClassMetadata(Hibernate.getClass(entity));
+
+        if (metadata == null) {
+            return;
+        }
+
+        String[] propertyNames = metadata.getPropertyNames();
+        Type[] propertyTypes = metadata.getPropertyTypes();
+
+        for (int i = 0; i < propertyTypes.length; i++) {
+            if (!isEntityAssociation(propertyTypes[i])) {
+                continue;
+            }
+
+            Object value = metadata.getPropertyValue(entity, propertyNames[i]);
+
+            if (value == null || !Hibernate.isInitialized(value)) {
+                continue;
+            }
+
+            if (value instanceof Collection) {
+                ((Collection<?>) value).forEach(session::evict);
+            } else if (value instanceof Map) {
+                ((Map<?, ?>) value).values().forEach(session::evict);
+            } else {
+                session.evict(value);
+            }
+        }
+    }
+
+    private boolean isEntityAssociation(Type type) {
+        if (type.isCollectionType()) {
+            return ((CollectionType) type).getElementType((SessionFactoryImplementor) session.getSessionFactory()).isEntityType();
+        }
+
+        return type.isEntityType();
+    }
+
+    @Override
+    public void close() {
+        if (closed) {
+            return;
+        }
+
+        closed = true;
+
+        if (previous != null && identifier != null && session != null) {
+            evict(previous);
+        }
+
+        results.close();
+    }
+}
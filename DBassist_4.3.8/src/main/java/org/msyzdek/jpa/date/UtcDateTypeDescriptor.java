@@ -0,0 +1,77 @@
+package org.msyzdek.jpa.date;
+
+import org.hibernate.type.descriptor.ValueBinder;
+import org.hibernate.type.descriptor.ValueExtractor;
+import org.hibernate.type.descriptor.WrapperOptions;
+import org.hibernate.type.descriptor.java.JavaTypeDescriptor;
+import org.hibernate.type.descriptor.sql.BasicBinder;
+import org.hibernate.type.descriptor.sql.BasicExtractor;
+import org.hibernate.type.descriptor.sql.DateTypeDescriptor;
+
+import java.sql.CallableStatement;
+import java.sql.Date;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.time.LocalDate;
+
+
+/**
+ * DATE columns bound and extracted in UTC, the counterpart of {@link UtcTimestampType.UtcTimestampTypeDescriptor}. The
+ * UTC date is passed to the driver as a {@link LocalDate}, or through a UTC calendar to drivers without the java.time
+ * mappings, see {@link UtcJdbcValues}.
+ */
+public class UtcDateTypeDescriptor extends DateTypeDescriptor {
+
+    private static final long serialVersionUID = 1L;
+
+    public static final UtcDateTypeDescriptor INSTANCE = new UtcDateTypeDescriptor();
+
+    @Override
+    public <X> ValueBinder<X> getBinder(final JavaTypeDescriptor<X> javaTypeDescriptor) {
+        return new BasicBinder<X>(javaTypeDescriptor, this) {
+
+            @Override
+            protected void doBind(PreparedStatement st, X value, int index, WrapperOptions options) throws SQLException {
+                if (value instanceof LocalDate) {
+                    UtcJdbcValues.setLocalDate(st, index, (LocalDate) value);
+                } else {
+                    long epochMillis = value instanceof java.util.Date
+                            ? ((java.util.Date) value).getTime()
+                            : javaTypeDescriptor.unwrap(value, Date.class, options).getTime();
+
+                    UtcJdbcValues.setLocalDate(st, index, UtcJdbcValues.toLocalDate(epochMillis));
+                }
+            }
+        };
+    }
+
+    @Override
+    public <X> ValueExtractor<X> getExtractor(final JavaTypeDescriptor<X> javaTypeDescriptor) {
+        return new BasicExtractor<X>(javaTypeDescriptor, this) {
+
+            @Override
+            protected X doExtract(ResultSet rs, String name, WrapperOptions options) throws SQLException {
+                return wrap(javaTypeDescriptor, UtcJdbcValues.getLocalDate(rs, name), options);
+            }
+
+            @Override
+            protected X doExtract(CallableStatement statement, int index, WrapperOptions options) throws SQLException {
+                return wrap(javaTypeDescriptor, UtcJdbcValues.getLocalDate(statement, index), options);
+            }
+
+            @Override
+            protected X doExtract(CallableStatement statement, String name, WrapperOptions options) throws SQLException {
+                return wrap(javaTypeDescriptor, UtcJdbcValues.getLocalDate(statement, name), options);
+            }
+        };
+    }
+
+    private static <X> X wrap(JavaTypeDescriptor<X> javaTypeDescriptor, LocalDate value, WrapperOptions options) {
+        if (javaTypeDescriptor.getJavaTypeClass() == LocalDate.class) {
+            return javaTypeDescriptor.wrap(value, options);
+        }
+
+        return javaTypeDescriptor.wrap(UtcJdbcValues.toSqlDate(value), options);
+    }
+}
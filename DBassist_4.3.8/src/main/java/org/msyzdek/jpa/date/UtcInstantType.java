@@ -0,0 +1,106 @@
+package org.msyzdek.jpa.date;
+
+import org.hibernate.type.AbstractSingleColumnStandardBasicType;
+import org.hibernate.type.descriptor.WrapperOptions;
+import org.hibernate.type.descriptor.java.AbstractTypeDescriptor;
+
+import java.sql.Timestamp;
+import java.time.Instant;
+import java.util.Date;
+
+
+/**
+ * {@link Instant} mapped to a TIMESTAMP column in UTC.
+ */
+public class UtcInstantType extends AbstractSingleColumnStandardBasicType<Instant> {
+
+    private static final long serialVersionUID = 1L;
+
+    public static final UtcInstantType INSTANCE = new UtcInstantType();
+
+    public static class InstantJavaDescriptor extends AbstractTypeDescriptor<Instant> {
+
+        private static final long serialVersionUID = 1L;
+
+        public static final InstantJavaDescriptor INSTANCE = new InstantJavaDescriptor();
+
+        public InstantJavaDescriptor() {
+            super(Instant.class);
+        }
+
+        @Override
+        public String toString(Instant value) {
+            return value.toString();
+        }
+
+        @Override
+        public Instant fromString(String string) {
+            return Instant.parse(string);
+        }
+
+        @Override
+        @SuppressWarnings("unchecked")
+        public <X> X unwrap(Instant value, Class<X> type, WrapperOptions options) {
+            if (value == null) {
+                return null;
+            }
+
+            if (Instant.class.isAssignableFrom(type)) {
+                return (X) value;
+            }
+
+            if (Timestamp.class.isAssignableFrom(type)) {
+                return (X) Timestamp.from(value);
+            }
+
+            if (Date.class.isAssignableFrom(type)) {
+                return (X) Date.from(value);
+            }
+
+            if (Long.class.isAssignableFrom(type)) {
+                return (X) Long.valueOf(value.toEpochMilli());
+            }
+
+            throw unknownUnwrap(type);
+        }
+
+        @Override
+        public <X> Instant wrap(X value, WrapperOptions options) {
+            if (value == null) {
+                return null;
+            }
+
+            if (value instanceof Instant) {
+                return (Instant) value;
+            }
+
+            if (value instanceof Timestamp) {
+                return ((Timestamp) value).toInstant();
+            }
+
+            if (value instanceof Date) {
+                return Instant.ofEpochMilli(((Date) value).getTime());
+            }
+
+            if (value instanceof Long) {
+                return Instant.ofEpochMilli((Long) value);
+            }
+
+            throw unknownWrap(value.getClass());
+        }
+    }
+
+    public UtcInstantType() {
+        super(UtcTimestampType.UtcTimestampTypeDescriptor.INSTANCE, InstantJavaDescriptor.INSTANCE);
+    }
+
+    @Override
+    public String getName() {
+        return "utc_instant";
+    }
+
+    @Override
+    public String[] getRegistrationKeys() {
+        return new String[] {getName(), Instant.class.getName()};
+    }
+}
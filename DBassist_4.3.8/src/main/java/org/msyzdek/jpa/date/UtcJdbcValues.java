@@ -0,0 +1,185 @@
+package org.msyzdek.jpa.date;
+
+import java.sql.CallableStatement;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.SQLFeatureNotSupportedException;
+import java.sql.Timestamp;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.Calendar;
+import java.util.Date;
+import java.util.Set;
+import java.util.TimeZone;
+import java.util.concurrent.ConcurrentHashMap;
+
+
+/**
+ * Conversions of temporal values to and from their UTC wall-clock form. The UTC types bind and read that form through
+ * the JDBC 4.2 java.time mappings ({@link LocalDate} for DATE, {@link LocalDateTime} for TIMESTAMP) instead of handing a
+ * UTC calendar to the driver.
+ * <p>
+ * The conversions are plain epoch arithmetic on immutable values: no calendar is allocated per value nor kept per
+ * thread, where it would not be reused under virtual threads anyway. Drivers older than JDBC 4.2 fall back to a UTC
+ * calendar, detected by their first failed java.time call and remembered per statement and result set class.
+ */
+public final class UtcJdbcValues {
+
+    static final long MILLIS_PER_DAY = 86400000L;
+
+    private static final TimeZone UTC = TimeZone.getTimeZone("UTC");
+
+    private static final Set<Class<?>> CALENDAR_FALLBACK = ConcurrentHashMap.newKeySet();
+
+    private UtcJdbcValues() {}
+
+    /**
+     * UTC date of the instant.
+     */
+    public static LocalDate toLocalDate(long epochMillis) {
+        return LocalDate.ofEpochDay(Math.floorDiv(epochMillis, MILLIS_PER_DAY));
+    }
+
+    /**
+     * UTC date time of the date, keeping the nanoseconds of a {@link Timestamp}.
+     */
+    public static LocalDateTime toLocalDateTime(Date value) {
+        long epochMillis = value.getTime();
+        int nanos = value instanceof Timestamp
+                ? ((Timestamp) value).getNanos()
+                : (int) Math.floorMod(epochMillis, 1000L) * 1000000;
+
+        return LocalDateTime.ofEpochSecond(Math.floorDiv(epochMillis, 1000L), nanos, ZoneOffset.UTC);
+    }
+
+    public static java.sql.Date toSqlDate(LocalDate value) {
+        return value != null ? new java.sql.Date(value.toEpochDay() * MILLIS_PER_DAY) : null;
+    }
+
+    public static Timestamp toTimestamp(LocalDateTime value) {
+        if (value == null) {
+            return null;
+        }
+
+        Timestamp timestamp = new Timestamp(value.toEpochSecond(ZoneOffset.UTC) * 1000L);
+        timestamp.setNanos(value.getNano());
+
+        return timestamp;
+    }
+
+    public static void setLocalDateTime(PreparedStatement st, int index, LocalDateTime value) throws SQLException {
+        if (supportsJavaTime(st)) {
+            try {
+                st.setObject(index, value);
+                return;
+            } catch (SQLFeatureNotSupportedException | AbstractMethodError e) {
+                fallBackToCalendar(st);
+            }
+        }
+
+        st.setTimestamp(index, toTimestamp(value), Calendar.getInstance(UTC));
+    }
+
+    public static LocalDateTime getLocalDateTime(ResultSet rs, String name) throws SQLException {
+        if (supportsJavaTime(rs)) {
+            try {
+                return rs.getObject(name, LocalDateTime.class);
+            } catch (SQLFeatureNotSupportedException | AbstractMethodError e) {
+                fallBackToCalendar(rs);
+            }
+        }
+
+        return toLocalDateTimeOrNull(rs.getTimestamp(name, Calendar.getInstance(UTC)));
+    }
+
+    public static LocalDateTime getLocalDateTime(CallableStatement statement, String name) throws SQLException {
+        if (supportsJavaTime(statement)) {
+            try {
+                return statement.getObject(name, LocalDateTime.class);
+            } catch (SQLFeatureNotSupportedException | AbstractMethodError e) {
+                fallBackToCalendar(statement);
+            }
+        }
+
+        return toLocalDateTimeOrNull(statement.getTimestamp(name, Calendar.getInstance(UTC)));
+    }
+
+    public static LocalDateTime getLocalDateTime(CallableStatement statement, int index) throws SQLException {
+        if (supportsJavaTime(statement)) {
+            try {
+                return statement.getObject(index, LocalDateTime.class);
+            } catch (SQLFeatureNotSupportedException | AbstractMethodError e) {
+                fallBackToCalendar(statement);
+            }
+        }
+
+        return toLocalDateTimeOrNull(statement.getTimestamp(index, Calendar.getInstance(UTC)));
+    }
+
+    public static void setLocalDate(PreparedStatement st, int index, LocalDate value) throws SQLException {
+        if (supportsJavaTime(st)) {
+            try {
+                st.setObject(index, value);
+                return;
+            } catch (SQLFeatureNotSupportedException | AbstractMethodError e) {
+                fallBackToCalendar(st);
+            }
+        }
+
+        st.setDate(index, toSqlDate(value), Calendar.getInstance(UTC));
+    }
+
+    public static LocalDate getLocalDate(ResultSet rs, String name) throws SQLException {
+        if (supportsJavaTime(rs)) {
+            try {
+                return rs.getObject(name, LocalDate.class);
+            } catch (SQLFeatureNotSupportedException | AbstractMethodError e) {
+                fallBackToCalendar(rs);
+            }
+        }
+
+        return toLocalDateOrNull(rs.getDate(name, Calendar.getInstance(UTC)));
+    }
+
+    public static LocalDate getLocalDate(CallableStatement statement, String name) throws SQLException {
+        if (supportsJavaTime(statement)) {
+            try {
+                return statement.getObject(name, LocalDate.class);
+            } catch (SQLFeatureNotSupportedException | AbstractMethodError e) {
+                fallBackToCalendar(statement);
+            }
+        }
+
+        return toLocalDateOrNull(statement.getDate(name, Calendar.getInstance(UTC)));
+    }
+
+    public static LocalDate getLocalDate(CallableStatement statement, int index) throws SQLException {
+        if (supportsJavaTime(statement)) {
+            try {
+                return statement.getObject(index, LocalDate.class);
+            } catch (SQLFeatureNotSupportedException | AbstractMethodError e) {
+                fallBackToCalendar(statement);
+            }
+        }
+
+        return toLocalDateOrNull(statement.getDate(index, Calendar.getInstance(UTC)));
+    }
+
+    private static boolean supportsJavaTime(Object jdbcObject) {
+        return !CALENDAR_FALLBACK.contains(jdbcObject.getClass());
+    }
+
+    private static void fallBackToCalendar(Object jdbcObject) {
+        CALENDAR_FALLBACK.add(jdbcObject.getClass());
+    }
+
+    private static LocalDateTime toLocalDateTimeOrNull(Timestamp value) {
+        return value != null ? toLocalDateTime(value) : null;
+    }
+
+    private static LocalDate toLocalDateOrNull(java.sql.Date value) {
+        return value != null ? toLocalDate(value.getTime()) : null;
+    }
+}
@@ -0,0 +1,97 @@
+package org.msyzdek.jpa.date;
+
+import org.hibernate.type.AbstractSingleColumnStandardBasicType;
+import org.hibernate.type.descriptor.WrapperOptions;
+import org.hibernate.type.descriptor.java.AbstractTypeDescriptor;
+
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.ZoneOffset;
+import java.util.Date;
+
+
+/**
+ * {@link LocalDate} mapped to a DATE column, bound and read in UTC so the date never shifts with the JVM time zone.
+ */
+public class UtcLocalDateType extends AbstractSingleColumnStandardBasicType<LocalDate> {
+
+    private static final long serialVersionUID = 1L;
+
+    public static final UtcLocalDateType INSTANCE = new UtcLocalDateType();
+
+    public static class LocalDateJavaDescriptor extends AbstractTypeDescriptor<LocalDate> {
+
+        private static final long serialVersionUID = 1L;
+
+        public static final LocalDateJavaDescriptor INSTANCE = new LocalDateJavaDescriptor();
+
+        public LocalDateJavaDescriptor() {
+            super(LocalDate.class);
+        }
+
+        @Override
+        public String toString(LocalDate value) {
+            return value.toString();
+        }
+
+        @Override
+        public LocalDate fromString(String string) {
+            return LocalDate.parse(string);
+        }
+
+        @Override
+        @SuppressWarnings("unchecked")
+        public <X> X unwrap(LocalDate value, Class<X> type, WrapperOptions options) {
+            if (value == null) {
+                return null;
+            }
+
+            if (LocalDate.class.isAssignableFrom(type)) {
+                return (X) value;
+            }
+
+            long epochMillis = value.atStartOfDay(ZoneOffset.UTC).toInstant().toEpochMilli();
+
+            if (java.sql.Date.class.isAssignableFrom(type)) {
+                return (X) new java.sql.Date(epochMillis);
+            }
+
+            if (Date.class.isAssignableFrom(type)) {
+                return (X) new Date(epochMillis);
+            }
+
+            throw unknownUnwrap(type);
+        }
+
+        @Override
+        public <X> LocalDate wrap(X value, WrapperOptions options) {
+            if (value == null) {
+                return null;
+            }
+
+            if (value instanceof LocalDate) {
+                return (LocalDate) value;
+            }
+
+            if (value instanceof Date) {
+                return Instant.ofEpochMilli(((Date) value).getTime()).atZone(ZoneOffset.UTC).toLocalDate();
+            }
+
+            throw unknownWrap(value.getClass());
+        }
+    }
+
+    public UtcLocalDateType() {
+        super(UtcDateTypeDescriptor.INSTANCE, LocalDateJavaDescriptor.INSTANCE);
+    }
+
+    @Override
+    public String getName() {
+        return "utc_local_date";
+    }
+
+    @Override
+    public String[] getRegistrationKeys() {
+        return new String[] {getName(), LocalDate.class.getName()};
+    }
+}
@@ -0,0 +1,108 @@
+package org.msyzdek.jpa.date;
+
+import org.hibernate.type.AbstractSingleColumnStandardBasicType;
+import org.hibernate.type.descriptor.WrapperOptions;
+import org.hibernate.type.descriptor.java.AbstractTypeDescriptor;
+
+import java.sql.Timestamp;
+import java.time.Instant;
+import java.time.OffsetDateTime;
+import java.time.ZoneOffset;
+import java.util.Date;
+
+
+/**
+ * {@link OffsetDateTime} mapped to a TIMESTAMP column in UTC, values are read back with the UTC offset.
+ */
+public class UtcOffsetDateTimeType extends AbstractSingleColumnStandardBasicType<OffsetDateTime> {
+
+    private static final long serialVersionUID = 1L;
+
+    public static final UtcOffsetDateTimeType INSTANCE = new UtcOffsetDateTimeType();
+
+    public static class OffsetDateTimeJavaDescriptor extends AbstractTypeDescriptor<OffsetDateTime> {
+
+        private static final long serialVersionUID = 1L;
+
+        public static final OffsetDateTimeJavaDescriptor INSTANCE = new OffsetDateTimeJavaDescriptor();
+
+        public OffsetDateTimeJavaDescriptor() {
+            super(OffsetDateTime.class);
+        }
+
+        @Override
+        public String toString(OffsetDateTime value) {
+            return value.toString();
+        }
+
+        @Override
+        public OffsetDateTime fromString(String string) {
+            return OffsetDateTime.parse(string);
+        }
+
+        @Override
+        @SuppressWarnings("unchecked")
+        public <X> X unwrap(OffsetDateTime value, Class<X> type, WrapperOptions options) {
+            if (value == null) {
+                return null;
+            }
+
+            if (OffsetDateTime.class.isAssignableFrom(type)) {
+                return (X) value;
+            }
+
+            if (Timestamp.class.isAssignableFrom(type)) {
+                return (X) Timestamp.from(value.toInstant());
+            }
+
+            if (Date.class.isAssignableFrom(type)) {
+                return (X) Date.from(value.toInstant());
+            }
+
+            if (Long.class.isAssignableFrom(type)) {
+                return (X) Long.valueOf(value.toInstant().toEpochMilli());
+            }
+
+            throw unknownUnwrap(type);
+        }
+
+        @Override
+        public <X> OffsetDateTime wrap(X value, WrapperOptions options) {
+            if (value == null) {
+                return null;
+            }
+
+            if (value instanceof OffsetDateTime) {
+                return (OffsetDateTime) value;
+            }
+
+            if (value instanceof Timestamp) {
+                return ((Timestamp) value).toInstant().atOffset(ZoneOffset.UTC);
+            }
+
+            if (value instanceof Date) {
+                return Instant.ofEpochMilli(((Date) value).getTime()).atOffset(ZoneOffset.UTC);
+            }
+
+            if (value instanceof Long) {
+                return Instant.ofEpochMilli((Long) value).atOffset(ZoneOffset.UTC);
+            }
+
+            throw unknownWrap(value.getClass());
+        }
+    }
+
+    public UtcOffsetDateTimeType() {
+        super(UtcTimestampType.UtcTimestampTypeDescriptor.INSTANCE, OffsetDateTimeJavaDescriptor.INSTANCE);
+    }
+
+    @Override
+    public String getName() {
+        return "utc_offset_date_time";
+    }
+
+    @Override
+    public String[] getRegistrationKeys() {
+        return new String[] {getName(), OffsetDateTime.class.getName()};
+    }
+}
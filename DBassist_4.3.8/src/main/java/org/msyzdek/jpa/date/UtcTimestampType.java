@@ -20,7 +20,10 @@ import org.hibernate.type.descriptor.sql.BasicExtractor;
 import org.hibernate.type.descriptor.sql.TimestampTypeDescriptor;
 
 import java.sql.*;
-import java.util.Calendar;
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.OffsetDateTime;
+import java.time.ZoneOffset;
 import java.util.Comparator;
 import java.util.Date;
 import java.util.TimeZone;
@@ -40,36 +43,63 @@ public class UtcTimestampType extends AbstractSingleColumnStandardBasicType<Date
 
         public static final UtcTimestampTypeDescriptor INSTANCE = new UtcTimestampTypeDescriptor();
 
-        private static final TimeZone UTC = UTCTimeZone;
-
         @Override
         public <X> ValueBinder<X> getBinder(final JavaTypeDescriptor<X> javaTypeDescriptor) {
             return new BasicBinder<X>(javaTypeDescriptor, this) {
 
                 @Override
                 protected void doBind(PreparedStatement st, X value, int index, WrapperOptions options) throws SQLException {
-                    st.setTimestamp(index, javaTypeDescriptor.unwrap(value, Timestamp.class, options), Calendar.getInstance(UTC));
+                    UtcJdbcValues.setLocalDateTime(st, index, toLocalDateTime(javaTypeDescriptor, value, options));
                 }
             };
         }
 
+        /**
+         * UTC wall-clock time of the value, see {@link UtcJdbcValues}.
+         */
+        private static <X> LocalDateTime toLocalDateTime(JavaTypeDescriptor<X> javaTypeDescriptor, X value, WrapperOptions options) {
+            if (value instanceof Instant) {
+                Instant instant = (Instant) value;
+
+                return LocalDateTime.ofEpochSecond(instant.getEpochSecond(), instant.getNano(), ZoneOffset.UTC);
+            }
+
+            if (value instanceof OffsetDateTime) {
+                return ((OffsetDateTime) value).withOffsetSameInstant(ZoneOffset.UTC).toLocalDateTime();
+            }
+
+            if (value instanceof Date) {
+                return UtcJdbcValues.toLocalDateTime((Date) value);
+            }
+
+            return UtcJdbcValues.toLocalDateTime(javaTypeDescriptor.unwrap(value, Timestamp.class, options));
+        }
+
+        private static <X> X wrap(JavaTypeDescriptor<X> javaTypeDescriptor, LocalDateTime value, WrapperOptions options) {
+            if (value != null && javaTypeDescriptor.getJavaTypeClass() == Instant.class) {
+                return javaTypeDescriptor.wrap(value.toInstant(ZoneOffset.UTC), options);
+            }
+
+            return javaTypeDescriptor.wrap(UtcJdbcValues.toTimestamp(value), options);
+        }
+
         @Override
         public <X> ValueExtractor<X> getExtractor(final JavaTypeDescriptor<X> javaTypeDescriptor) {
             return new BasicExtractor<X>(javaTypeDescriptor, this) {
 
                 @Override
                 protected X doExtract(CallableStatement statement, String name, WrapperOptions options) throws SQLException {
-                    return javaTypeDescriptor.wrap(statement.getTimestamp(name, Calendar.getInstance(UTC)), options);
+                    return wrap(javaTypeDescriptor, UtcJdbcValues.getLocalDateTime(statement, name), options);
                 }
 
                 @Override
                 protected X doExtract(ResultSet rs, String name, WrapperOptions options) throws SQLException {
-                    return javaTypeDescriptor.wrap(rs.getTimestamp(name, Calendar.getInstance(UTC)), options);
+                    return wrap(javaTypeDescriptor, UtcJdbcValues.getLocalDateTime(rs, name), options);
                 }
 
                 @Override
                 protected X doExtract(CallableStatement statement, int index, WrapperOptions options) throws SQLException {
-                    return javaTypeDescriptor.wrap(statement.getTimestamp(index, Calendar.getInstance(UTC)), options);
+                    return wrap(javaTypeDescriptor, UtcJdbcValues.getLocalDateTime(statement, index), options);
                 }
 
             };
@@ -0,0 +1,20 @@
+package org.msyzdek.jpa.date;
+
+import org.hibernate.metamodel.spi.TypeContributions;
+import org.hibernate.metamodel.spi.TypeContributor;
+import org.hibernate.service.ServiceRegistry;
+
+
+/**
+ * Registers the java.time UTC types for {@link java.time.Instant}, {@link java.time.OffsetDateTime} and
+ * {@link java.time.LocalDate} attributes and parameters, discovered by Hibernate through META-INF/services.
+ */
+public class UtcTypeContributor implements TypeContributor {
+
+    @Override
+    public void contribute(TypeContributions typeContributions, ServiceRegistry serviceRegistry) {
+        typeContributions.contributeType(UtcInstantType.INSTANCE);
+        typeContributions.contributeType(UtcOffsetDateTimeType.INSTANCE);
+        typeContributions.contributeType(UtcLocalDateType.INSTANCE);
+    }
+}
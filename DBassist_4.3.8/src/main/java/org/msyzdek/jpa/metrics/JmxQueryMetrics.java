@@ -0,0 +1,80 @@
+package org.msyzdek.jpa.metrics;
+
+import javax.management.InstanceAlreadyExistsException;
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+
+/**
+ * Registers a {@link QueryStatisticsMBean} per repository, operation and query shape on first use, named
+ * {@code <domain>:type=QueryStatistics,repository=<simple name>,operation=<operation>,shape=<shape id>}.
+ * Queries without a shape are aggregated under {@code shape=unshaped}.
+ */
+public class JmxQueryMetrics implements QueryMetrics {
+
+    public static final String DEFAULT_DOMAIN = "org.msyzdek.jpa";
+
+    private final MBeanServer mBeanServer;
+
+    private final String domain;
+
+    private final ConcurrentMap<String, QueryStatistics> statistics = new ConcurrentHashMap<String, QueryStatistics>();
+
+    public JmxQueryMetrics(MBeanServer mBeanServer, String domain) {
+        this.mBeanServer = mBeanServer;
+        this.domain = domain;
+    }
+
+    public JmxQueryMetrics() {
+        this(ManagementFactory.getPlatformMBeanServer(), DEFAULT_DOMAIN);
+    }
+
+    @Override
+    public void record(QueryEvent event) {
+        String name = domain + ":type=QueryStatistics"
+                + ",repository=" + ObjectName.quote(event.getRepositoryClass().getSimpleName())
+                + ",operation=" + event.getOperation()
+                + ",shape=" + event.getShapeId();
+
+        QueryStatistics queryStatistics = statistics.get(name);
+
+        if (queryStatistics == null) {
+            queryStatistics = statistics.computeIfAbsent(name, key -> register(key, event));
+        }
+
+        queryStatistics.record(event);
+    }
+
+    private QueryStatistics register(String name, QueryEvent event) {
+        QueryStatistics queryStatistics = new QueryStatistics(event.getRepositoryClass().getName(), event.getOperation(), event.getShape());
+
+        try {
+            mBeanServer.registerMBean(queryStatistics, new ObjectName(name));
+        } catch (InstanceAlreadyExistsException e) {
+            // Registered by another instance for the same server and domain, keep counting locally
+        } catch (JMException e) {
+            throw new IllegalStateException("Can not register query statistics " + name, e);
+        }
+
+        return queryStatistics;
+    }
+
+    /**
+     * Unregisters all MBeans registered by this instance.
+     */
+    public void close() {
+        for (String name : statistics.keySet()) {
+            try {
+                mBeanServer.unregisterMBean(new ObjectName(name));
+            } catch (JMException e) {
+                // Already unregistered
+            }
+        }
+
+        statistics.clear();
+    }
+}
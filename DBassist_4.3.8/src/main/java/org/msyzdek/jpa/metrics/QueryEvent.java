@@ -0,0 +1,110 @@
+package org.msyzdek.jpa.metrics;
+
+import org.msyzdek.jpa.Conditions;
+
+
+/**
+ * Timings and row counts of a single repository query.
+ * <p>
+ * The shape identifies the query independently of the bound values (operation, result type and conditions
+ * fingerprint), so events of the same shape can be aggregated. It is null when the query has no deterministic shape,
+ * e.g. because a capturing callback was passed.
+ */
+public final class QueryEvent {
+
+    private final Class<?> repositoryClass;
+
+    private final String operation;
+
+    private final String shape;
+
+    private final Conditions conditions;
+
+    private final long buildNanos;
+
+    private final long executeNanos;
+
+    private final int rows;
+
+    private final int duplicatesRemoved;
+
+    public QueryEvent(Class<?> repositoryClass,
+                      String operation,
+                      String shape,
+                      Conditions conditions,
+                      long buildNanos,
+                      long executeNanos,
+                      int rows,
+                      int duplicatesRemoved) {
+        this.repositoryClass = repositoryClass;
+        this.operation = operation;
+        this.shape = shape;
+        this.conditions = conditions;
+        this.buildNanos = buildNanos;
+        this.executeNanos = executeNanos;
+        this.rows = rows;
+        this.duplicatesRemoved = duplicatesRemoved;
+    }
+
+    public Class<?> getRepositoryClass() {
+        return repositoryClass;
+    }
+
+    /**
+     * Name of the repository method: find, findStateless, findAllById, findAttribute, findAttributeDistinct,
+     * findProjection, findTuples, aggregate, aggregateTuples, count or countDistinct.
+     */
+    public String getOperation() {
+        return operation;
+    }
+
+    public String getShape() {
+        return shape;
+    }
+
+    /**
+     * Short stable identifier of the shape (hex of its hash code), "unshaped" when the shape is unknown.
+     */
+    public String getShapeId() {
+        return shape != null ? String.format("%08x", shape.hashCode()) : "unshaped";
+    }
+
+    /**
+     * Conditions the query was built from, may be null. Do not modify.
+     */
+    public Conditions getConditions() {
+        return conditions;
+    }
+
+    /**
+     * Time spent building the criteria (or reusing compiled JPQL) and binding parameters.
+     */
+    public long getBuildNanos() {
+        return buildNanos;
+    }
+
+    /**
+     * Time spent executing the query and reading its results.
+     */
+    public long getExecuteNanos() {
+        return executeNanos;
+    }
+
+    public long getTotalNanos() {
+        return buildNanos + executeNanos;
+    }
+
+    /**
+     * Rows returned to the caller, 1 for counts.
+     */
+    public int getRows() {
+        return rows;
+    }
+
+    /**
+     * Rows dropped by the duplicate removal of find (fetch join duplicates).
+     */
+    public int getDuplicatesRemoved() {
+        return duplicatesRemoved;
+    }
+}
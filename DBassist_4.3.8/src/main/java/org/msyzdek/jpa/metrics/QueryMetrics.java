@@ -0,0 +1,30 @@
+package org.msyzdek.jpa.metrics;
+
+import java.util.Arrays;
+import java.util.List;
+
+
+/**
+ * Receives one {@link QueryEvent} per query executed by a repository, see {@code AbstractRepository#setQueryMetrics}.
+ * <p>
+ * Implementations are called on the thread that ran the query, right after it completed, and must be thread safe and
+ * cheap. Results served from the result cache are not reported.
+ */
+@FunctionalInterface
+public interface QueryMetrics {
+
+    void record(QueryEvent event);
+
+    /**
+     * Forwards every event to all the given metrics, e.g. a {@link JmxQueryMetrics} and a {@link SlowQueryLog}.
+     */
+    static QueryMetrics composite(QueryMetrics... metrics) {
+        List<QueryMetrics> targets = Arrays.asList(metrics.clone());
+
+        return event -> {
+            for (QueryMetrics target : targets) {
+                target.record(event);
+            }
+        };
+    }
+}
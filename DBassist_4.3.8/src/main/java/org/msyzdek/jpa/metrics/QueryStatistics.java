@@ -0,0 +1,133 @@
+package org.msyzdek.jpa.metrics;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+
+/**
+ * Aggregated {@link QueryEvent}s of one repository, operation and query shape.
+ */
+public class QueryStatistics implements QueryStatisticsMBean {
+
+    private static final double NANOS_PER_MILLI = TimeUnit.MILLISECONDS.toNanos(1);
+
+    private final String repository;
+
+    private final String operation;
+
+    private final String shape;
+
+    private final LatencyHistogram latencies = new LatencyHistogram();
+
+    private final LongAdder count = new LongAdder();
+
+    private final LongAdder rows = new LongAdder();
+
+    private final LongAdder duplicatesRemoved = new LongAdder();
+
+    private final LongAdder buildNanos = new LongAdder();
+
+    private final LongAdder executeNanos = new LongAdder();
+
+    private final LongAccumulator maxNanos = new LongAccumulator(Math::max, 0);
+
+    public QueryStatistics(String repository, String operation, String shape) {
+        this.repository = repository;
+        this.operation = operation;
+        this.shape = shape;
+    }
+
+    public void record(QueryEvent event) {
+        long totalNanos = event.getTotalNanos();
+
+        latencies.record(totalNanos);
+        count.increment();
+        rows.add(event.getRows());
+        duplicatesRemoved.add(event.getDuplicatesRemoved());
+        buildNanos.add(event.getBuildNanos());
+        executeNanos.add(event.getExecuteNanos());
+        maxNanos.accumulate(totalNanos);
+    }
+
+    private static double toMillis(double nanos) {
+        return nanos / NANOS_PER_MILLI;
+    }
+
+    private double average(LongAdder nanos) {
+        long executions = count.sum();
+
+        return executions > 0 ? toMillis((double) nanos.sum() / executions) : 0;
+    }
+
+    @Override
+    public String getRepository() {
+        return repository;
+    }
+
+    @Override
+    public String getOperation() {
+        return operation;
+    }
+
+    @Override
+    public String getShape() {
+        return shape;
+    }
+
+    @Override
+    public long getCount() {
+        return count.sum();
+    }
+
+    @Override
+    public long getRows() {
+        return rows.sum();
+    }
+
+    @Override
+    public long getDuplicatesRemoved() {
+        return duplicatesRemoved.sum();
+    }
+
+    @Override
+    public double getAverageBuildMillis() {
+        return average(buildNanos);
+    }
+
+    @Override
+    public double getAverageExecuteMillis() {
+        return average(executeNanos);
+    }
+
+    @Override
+    public double getMaxMillis() {
+        return toMillis(maxNanos.get());
+    }
+
+    @Override
+    public double getP50Millis() {
+        return toMillis(latencies.getPercentile(50));
+    }
+
+    @Override
+    public double getP99Millis() {
+        return toMillis(latencies.getPercentile(99));
+    }
+
+    @Override
+    public double getP999Millis() {
+        return toMillis(latencies.getPercentile(99.9));
+    }
+
+    @Override
+    public void reset() {
+        latencies.reset();
+        count.reset();
+        rows.reset();
+        duplicatesRemoved.reset();
+        buildNanos.reset();
+        executeNanos.reset();
+        maxNanos.reset();
+    }
+}
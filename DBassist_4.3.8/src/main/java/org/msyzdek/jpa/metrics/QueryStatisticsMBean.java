@@ -0,0 +1,35 @@
+package org.msyzdek.jpa.metrics;
+
+
+/**
+ * Management interface of the statistics {@link JmxQueryMetrics} registers per repository, operation and query shape.
+ * Times are reported in milliseconds.
+ */
+public interface QueryStatisticsMBean {
+
+    String getRepository();
+
+    String getOperation();
+
+    String getShape();
+
+    long getCount();
+
+    long getRows();
+
+    long getDuplicatesRemoved();
+
+    double getAverageBuildMillis();
+
+    double getAverageExecuteMillis();
+
+    double getMaxMillis();
+
+    double getP50Millis();
+
+    double getP99Millis();
+
+    double getP999Millis();
+
+    void reset();
+}
@@ -0,0 +1,83 @@
+package org.msyzdek.jpa.metrics;
+
+import org.msyzdek.jpa.Conditions;
+
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+
+/**
+ * Logs queries slower than a threshold through java.util.logging, with the conditions tree in readable form. Values
+ * are masked: only parameter names and value types are printed, e.g.
+ * <pre>
+ * Slow query (1520.3 ms: build 0.2 ms, execute 1520.1 ms, 12 rows, 36 duplicates removed) ProductRepository.find
+ * find com.example.Product where amount >= :p0 and join details INNER {type = :p1} fetches 1 [p0: Long, p1: String]
+ * </pre>
+ */
+public class SlowQueryLog implements QueryMetrics {
+
+    private static final Logger LOGGER = Logger.getLogger(SlowQueryLog.class.getName());
+
+    private final long thresholdNanos;
+
+    private final Level level;
+
+    public SlowQueryLog(long threshold, TimeUnit unit, Level level) {
+        this.thresholdNanos = unit.toNanos(threshold);
+        this.level = level;
+    }
+
+    public SlowQueryLog(long threshold, TimeUnit unit) {
+        this(threshold, unit, Level.WARNING);
+    }
+
+    @Override
+    public void record(QueryEvent event) {
+        if (event.getTotalNanos() < thresholdNanos || !LOGGER.isLoggable(level)) {
+            return;
+        }
+
+        LOGGER.log(level, String.format("Slow query (%.1f ms: build %.1f ms, execute %.1f ms, %d rows, %d duplicates removed) %s.%s%n%s",
+                toMillis(event.getTotalNanos()),
+                toMillis(event.getBuildNanos()),
+                toMillis(event.getExecuteNanos()),
+                event.getRows(),
+                event.getDuplicatesRemoved(),
+                event.getRepositoryClass().getSimpleName(),
+                event.getOperation(),
+                describe(event)));
+    }
+
+    private static double toMillis(long nanos) {
+        return nanos / (double) TimeUnit.MILLISECONDS.toNanos(1);
+    }
+
+    private static String describe(QueryEvent event) {
+        Conditions conditions = event.getConditions();
+        StringBuilder description = new StringBuilder(event.getShape() != null
+                ? event.getShape()
+                : event.getOperation() + " where " + (conditions != null ? conditions : "(none)"));
+
+        if (conditions != null && !conditions.getParameterNames().isEmpty()) {
+            Iterator<String> names = conditions.getParameterNames().iterator();
+            List<Object> values = conditions.getParameterValues();
+
+            description.append(" [");
+
+            for (int i = 0; names.hasNext(); i++) {
+                Object value = values.get(i);
+
+                description.append(i > 0 ? ", " : "")
+                        .append(names.next()).append(": ")
+                        .append(value != null ? value.getClass().getSimpleName() : "null");
+            }
+
+            description.append(']');
+        }
+
+        return description.toString();
+    }
+}
@@ -0,0 +1,20 @@
+package org.msyzdek.jpa.postgresql;
+
+import org.hibernate.dialect.PostgreSQL9Dialect;
+import org.hibernate.dialect.function.SQLFunctionTemplate;
+import org.hibernate.type.StandardBasicTypes;
+
+
+/**
+ * PostgreSQL dialect registering {@value #IN_ARRAY_FUNCTION}(value, array) rendered as {@code value = any(array)},
+ * used by {@link org.msyzdek.jpa.InListStrategy#postgreSQLArray()}.
+ */
+public class PostgreSQLArrayDialect extends PostgreSQL9Dialect {
+
+    public static final String IN_ARRAY_FUNCTION = "in_array";
+
+    public PostgreSQLArrayDialect() {
+        super();
+        registerFunction(IN_ARRAY_FUNCTION, new SQLFunctionTemplate(StandardBasicTypes.BOOLEAN, "(?1 = any(?2))"));
+    }
+}
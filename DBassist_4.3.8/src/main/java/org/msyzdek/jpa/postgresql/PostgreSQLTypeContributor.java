@@ -0,0 +1,17 @@
+package org.msyzdek.jpa.postgresql;
+
+import org.hibernate.metamodel.spi.TypeContributions;
+import org.hibernate.metamodel.spi.TypeContributor;
+import org.hibernate.service.ServiceRegistry;
+
+
+/**
+ * Registers {@link SqlArrayType}, discovered by Hibernate through META-INF/services.
+ */
+public class PostgreSQLTypeContributor implements TypeContributor {
+
+    @Override
+    public void contribute(TypeContributions typeContributions, ServiceRegistry serviceRegistry) {
+        typeContributions.contributeType(SqlArrayType.INSTANCE);
+    }
+}
@@ -0,0 +1,91 @@
+package org.msyzdek.jpa.postgresql;
+
+import java.io.Serializable;
+import java.math.BigDecimal;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.UUID;
+
+
+/**
+ * Value bound as a single JDBC array parameter by {@link SqlArrayType}.
+ */
+public final class SqlArray implements Serializable {
+
+    private static final long serialVersionUID = 1L;
+
+    private static final Map<Class<?>, String> ELEMENT_TYPE_NAMES = new HashMap<Class<?>, String>();
+
+    static {
+        ELEMENT_TYPE_NAMES.put(Long.class, "int8");
+        ELEMENT_TYPE_NAMES.put(Integer.class, "int4");
+        ELEMENT_TYPE_NAMES.put(Short.class, "int2");
+        ELEMENT_TYPE_NAMES.put(BigDecimal.class, "numeric");
+        ELEMENT_TYPE_NAMES.put(Double.class, "float8");
+        ELEMENT_TYPE_NAMES.put(Float.class, "float4");
+        ELEMENT_TYPE_NAMES.put(String.class, "varchar");
+        ELEMENT_TYPE_NAMES.put(UUID.class, "uuid");
+    }
+
+    private final String elementTypeName;
+
+    private final Object[] elements;
+
+    public SqlArray(String elementTypeName, Object[] elements) {
+        this.elementTypeName = elementTypeName;
+        this.elements = elements;
+    }
+
+    /**
+     * Array with the SQL element type derived from the class of the first value (varchar for an empty collection).
+     */
+    public static SqlArray of(Collection<?> values) {
+        Object[] elements = values.toArray();
+        String elementTypeName = "varchar";
+
+        if (elements.length > 0) {
+            elementTypeName = ELEMENT_TYPE_NAMES.get(elements[0].getClass());
+
+            if (elementTypeName == null) {
+                throw new IllegalArgumentException("No SQL array element type known for " + elements[0].getClass().getName());
+            }
+        }
+
+        return new SqlArray(elementTypeName, elements);
+    }
+
+    public String getElementTypeName() {
+        return elementTypeName;
+    }
+
+    public Object[] getElements() {
+        return elements;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) {
+            return true;
+        }
+
+        if (!(o instanceof SqlArray)) {
+            return false;
+        }
+
+        SqlArray other = (SqlArray) o;
+
+        return elementTypeName.equals(other.elementTypeName) && Arrays.equals(elements, other.elements);
+    }
+
+    @Override
+    public int hashCode() {
+        return 31 * elementTypeName.hashCode() + Arrays.hashCode(elements);
+    }
+
+    @Override
+    public String toString() {
+        return elementTypeName + Arrays.toString(elements);
+    }
+}
@@ -0,0 +1,147 @@
+package org.msyzdek.jpa.postgresql;
+
+import org.hibernate.HibernateException;
+import org.hibernate.type.AbstractSingleColumnStandardBasicType;
+import org.hibernate.type.descriptor.ValueBinder;
+import org.hibernate.type.descriptor.ValueExtractor;
+import org.hibernate.type.descriptor.WrapperOptions;
+import org.hibernate.type.descriptor.java.AbstractTypeDescriptor;
+import org.hibernate.type.descriptor.java.JavaTypeDescriptor;
+import org.hibernate.type.descriptor.sql.BasicBinder;
+import org.hibernate.type.descriptor.sql.BasicExtractor;
+import org.hibernate.type.descriptor.sql.SqlTypeDescriptor;
+
+import java.sql.Array;
+import java.sql.CallableStatement;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Types;
+
+
+/**
+ * Binds {@link SqlArray} values with {@link PreparedStatement#setArray}. Registered for the {@link SqlArray} class by
+ * {@link PostgreSQLTypeContributor}, so parameters of that class resolve to this type without explicit typing.
+ */
+public class SqlArrayType extends AbstractSingleColumnStandardBasicType<SqlArray> {
+
+    private static final long serialVersionUID = 1L;
+
+    public static final SqlArrayType INSTANCE = new SqlArrayType();
+
+    public static class SqlArrayTypeDescriptor implements SqlTypeDescriptor {
+
+        private static final long serialVersionUID = 1L;
+
+        public static final SqlArrayTypeDescriptor INSTANCE = new SqlArrayTypeDescriptor();
+
+        @Override
+        public int getSqlType() {
+            return Types.ARRAY;
+        }
+
+        @Override
+        public boolean canBeRemapped() {
+            return true;
+        }
+
+        @Override
+        public <X> ValueBinder<X> getBinder(final JavaTypeDescriptor<X> javaTypeDescriptor) {
+            return new BasicBinder<X>(javaTypeDescriptor, this) {
+
+                @Override
+                protected void doBind(PreparedStatement st, X value, int index, WrapperOptions options) throws SQLException {
+                    SqlArray array = javaTypeDescriptor.unwrap(value, SqlArray.class, options);
+                    st.setArray(index, st.getConnection().createArrayOf(array.getElementTypeName(), array.getElements()));
+                }
+            };
+        }
+
+        @Override
+        public <X> ValueExtractor<X> getExtractor(final JavaTypeDescriptor<X> javaTypeDescriptor) {
+            return new BasicExtractor<X>(javaTypeDescriptor, this) {
+
+                @Override
+                protected X doExtract(ResultSet rs, String name, WrapperOptions options) throws SQLException {
+                    return javaTypeDescriptor.wrap(toSqlArray(rs.getArray(name)), options);
+                }
+
+                @Override
+                protected X doExtract(CallableStatement statement, int index, WrapperOptions options) throws SQLException {
+                    return javaTypeDescriptor.wrap(toSqlArray(statement.getArray(index)), options);
+                }
+
+                @Override
+                protected X doExtract(CallableStatement statement, String name, WrapperOptions options) throws SQLException {
+                    return javaTypeDescriptor.wrap(toSqlArray(statement.getArray(name)), options);
+                }
+            };
+        }
+
+        private static SqlArray toSqlArray(Array array) throws SQLException {
+            return array != null ? new SqlArray(array.getBaseTypeName(), (Object[]) array.getArray()) : null;
+        }
+    }
+
+    public static class SqlArrayJavaTypeDescriptor extends AbstractTypeDescriptor<SqlArray> {
+
+        private static final long serialVersionUID = 1L;
+
+        public static final SqlArrayJavaTypeDescriptor INSTANCE = new SqlArrayJavaTypeDescriptor();
+
+        public SqlArrayJavaTypeDescriptor() {
+            super(SqlArray.class);
+        }
+
+        @Override
+        public String toString(SqlArray value) {
+            return value.toString();
+        }
+
+        @Override
+        public SqlArray fromString(String string) {
+            throw new HibernateException("SqlArray can not be read from a string");
+        }
+
+        @Override
+        @SuppressWarnings("unchecked")
+        public <X> X unwrap(SqlArray value, Class<X> type, WrapperOptions options) {
+            if (value == null) {
+                return null;
+            }
+
+            if (SqlArray.class.isAssignableFrom(type)) {
+                return (X) value;
+            }
+
+            throw unknownUnwrap(type);
+        }
+
+        @Override
+        public <X> SqlArray wrap(X value, WrapperOptions options) {
+            if (value == null) {
+                return null;
+            }
+
+            if (value instanceof SqlArray) {
+                return (SqlArray) value;
+            }
+
+            throw unknownWrap(value.getClass());
+        }
+    }
+
+    public SqlArrayType() {
+        super(SqlArrayTypeDescriptor.INSTANCE, SqlArrayJavaTypeDescriptor.INSTANCE);
+    }
+
+    @Override
+    public String getName() {
+        return "sql_array";
+    }
+
+    @Override
+    public String[] getRegistrationKeys() {
+        return new String[] {getName(), SqlArray.class.getName()};
+    }
+}
@@ -0,0 +1,78 @@
+package org.msyzdek.jpa;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+
+
+public class AdaptiveFetchSizeTest {
+
+    private final AdaptiveFetchSize adaptiveFetchSize = new AdaptiveFetchSize();
+
+    private static QueryShape shape(String kind) {
+        return QueryShape.of(kind, Product.class, null, false, new Conditions(), null);
+    }
+
+    @Test
+    public void unseenShapesUseTheDefaultWithinTheBounds() {
+        QueryShape shape = shape("find");
+
+        assertEquals(500, adaptiveFetchSize.fetchSize(shape, 10, 500));
+        assertEquals(AdaptiveFetchSize.MIN_FETCH_SIZE, adaptiveFetchSize.fetchSize(shape, 10, 1));
+        assertEquals(20, adaptiveFetchSize.fetchSize(shape, 5000, 500));
+        assertEquals(500, adaptiveFetchSize.fetchSize(shape, 0, 500));
+    }
+
+    @Test
+    public void coversTheAverageResultInOneRoundTrip() {
+        QueryShape shape = shape("find");
+
+        adaptiveFetchSize.observe(shape, 100);
+
+        /** one row more, so that the driver learns the end of the result in the same round trip */
+        assertEquals(101, adaptiveFetchSize.fetchSize(shape, 1, 500));
+
+        adaptiveFetchSize.observe(shape, 0);
+
+        /** the average moves by a fifth of the difference */
+        assertEquals(81, adaptiveFetchSize.fetchSize(shape, 1, 500));
+        assertEquals(500, adaptiveFetchSize.fetchSize(shape("findAttribute"), 1, 500));
+    }
+
+    @Test
+    public void smallResultsKeepTheMinimum() {
+        QueryShape shape = shape("find");
+
+        adaptiveFetchSize.observe(shape, 1);
+
+        assertEquals(AdaptiveFetchSize.MIN_FETCH_SIZE, adaptiveFetchSize.fetchSize(shape, 1, 500));
+    }
+
+    @Test
+    public void largeResultsStayWithinTheBufferedValues() {
+        QueryShape shape = shape("find");
+
+        adaptiveFetchSize.observe(shape, 10000000);
+
+        assertEquals(AdaptiveFetchSize.MAX_BUFFERED_VALUES, adaptiveFetchSize.fetchSize(shape, 1, 500));
+        assertEquals(AdaptiveFetchSize.MAX_BUFFERED_VALUES / 40, adaptiveFetchSize.fetchSize(shape, 40, 500));
+    }
+
+    @Test
+    public void tracksABoundedNumberOfShapes() {
+        for (int i = 0; i < 1024; i++) {
+            adaptiveFetchSize.observe(shape("find" + i), 100);
+        }
+
+        QueryShape untracked = shape("find1024");
+        adaptiveFetchSize.observe(untracked, 100);
+
+        assertEquals(500, adaptiveFetchSize.fetchSize(untracked, 1, 500));
+        assertEquals(101, adaptiveFetchSize.fetchSize(shape("find0"), 1, 500));
+
+        /** tracked shapes still learn */
+        adaptiveFetchSize.observe(shape("find0"), 0);
+
+        assertEquals(81, adaptiveFetchSize.fetchSize(shape("find0"), 1, 500));
+    }
+}
@@ -0,0 +1,167 @@
+package org.msyzdek.jpa;
+
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.ClassRule;
+import org.junit.Test;
+
+import javax.persistence.EntityManager;
+import javax.persistence.Tuple;
+import javax.persistence.criteria.JoinType;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.stream.Collectors;
+
+import static org.junit.Assert.assertEquals;
+import static org.msyzdek.jpa.Aggregation.AggregateFunction.COUNT;
+import static org.msyzdek.jpa.Aggregation.AggregateFunction.SUM;
+import static org.msyzdek.jpa.Aggregation.Comparison.GREATER_THAN;
+
+
+public class AggregationTest {
+
+    @ClassRule
+    public static final TestDatabase DATABASE = new TestDatabase(20, 3);
+
+    private static EntityManager entityManager;
+
+    private static ProductRepository repository;
+
+    public static class AmountTotal {
+
+        private final Long amount;
+
+        private final Long total;
+
+        public AmountTotal(Long amount, Long total) {
+            this.amount = amount;
+            this.total = total;
+        }
+
+        @Override
+        public String toString() {
+            return amount + "=" + total;
+        }
+    }
+
+    public static class TypeStatistics {
+
+        private final String type;
+
+        private final Long sum;
+
+        private final Long min;
+
+        private final Long max;
+
+        private final Double avg;
+
+        public TypeStatistics(String type, Long sum, Long min, Long max, Double avg) {
+            this.type = type;
+            this.sum = sum;
+            this.min = min;
+            this.max = max;
+            this.avg = avg;
+        }
+
+        @Override
+        public String toString() {
+            return type + " " + sum + " " + min + " " + max + " " + avg;
+        }
+    }
+
+    @BeforeClass
+    public static void createRepository() {
+        entityManager = DATABASE.createEntityManager();
+        repository = new ProductRepository(entityManager);
+    }
+
+    @AfterClass
+    public static void closeEntityManager() {
+        entityManager.close();
+    }
+
+    private static List<String> sorted(List<?> rows) {
+        return rows.stream().map(Object::toString).sorted().collect(Collectors.toList());
+    }
+
+    private static Aggregation priceSumAbove(long total) {
+        return Aggregation.groupBy("amount").sum("details.price").having(SUM, "details.price", GREATER_THAN, total);
+    }
+
+    @Test
+    public void countsRootsPerGroup() {
+        List<AmountTotal> rows = repository.aggregate(AmountTotal.class, Aggregation.groupBy("amount").count(), new Conditions());
+
+        rows.sort(Comparator.comparing(row -> row.amount));
+
+        assertEquals("[0=2, 1=2, 2=2, 3=2, 4=2, 5=2, 6=2, 7=2, 8=2, 9=2]", rows.toString());
+    }
+
+    @Test
+    public void aggregatesAssociationAttributes() {
+        Aggregation aggregation = Aggregation.groupBy("details.type").sum("details.price").min("details.price").max("details.price").avg("details.price");
+
+        assertEquals(Arrays.asList("type0 2100 10 200 105.0", "type1 2120 11 201 106.0", "type2 2140 12 202 107.0"),
+                sorted(repository.aggregate(TypeStatistics.class, aggregation, new Conditions())));
+    }
+
+    @Test
+    public void sharesJoinsWithTheConditions() {
+        Conditions conditions = new Conditions();
+        conditions.lessThan("amount", 2L);
+        conditions.getJoinConditions("details", JoinType.INNER).equal("type", "type0");
+
+        List<Tuple> rows = repository.aggregateTuples(Aggregation.groupBy("details.type").sum("details.price").count(), conditions);
+
+        assertEquals(1, rows.size());
+        assertEquals("type0", rows.get(0).get("details.type"));
+        assertEquals(Long.valueOf(10 + 100 + 110 + 200), rows.get(0).get("sum(details.price)"));
+        assertEquals(Long.valueOf(4), rows.get(0).get("count(*)"));
+    }
+
+    @Test
+    public void totalsAreASingleRow() {
+        List<Tuple> rows = repository.aggregateTuples(Aggregation.total().count().sum("amount").countDistinct("amount"), new Conditions());
+
+        assertEquals(1, rows.size());
+        assertEquals(Long.valueOf(20), rows.get(0).get("count(*)"));
+        assertEquals(Long.valueOf(90), rows.get(0).get("sum(amount)"));
+        assertEquals(Long.valueOf(10), rows.get(0).get("count_distinct(amount)"));
+    }
+
+    @Test
+    public void havingKeepsMatchingGroups() {
+        /** the details of product i sum up to 30 * i + 3, amount a groups the products a and a + 10 (10 and 20 for 0) */
+        assertEquals("[0=906, 9=846]", sorted(repository.aggregate(AmountTotal.class, priceSumAbove(800L), new Conditions())).toString());
+        assertEquals("[0=906]", sorted(repository.aggregate(AmountTotal.class, priceSumAbove(900L), new Conditions())).toString());
+    }
+
+    @Test
+    public void havingOnAnAggregateThatIsNotSelected() {
+        Conditions conditions = new Conditions();
+        conditions.notIn("name", Arrays.asList("product11", "product12"));
+
+        /** the roots are counted once per joined detail, the groups of amount 1 and 2 keep a single product */
+        Aggregation aggregation = Aggregation.groupBy("amount").sum("details.price").having(COUNT, null, GREATER_THAN, 3L);
+
+        assertEquals(8, repository.aggregate(AmountTotal.class, aggregation, conditions).size());
+    }
+
+    @Test
+    public void describesTheShapeWithoutValues() {
+        assertEquals("group by amount select sum(details.price) having sum(details.price) GREATER_THAN :having0", priceSumAbove(1L).toString());
+        assertEquals("group by  select count(*)", Aggregation.total().count().toString());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void onlyCountsAggregateTheRoot() {
+        Aggregation.total().sum(null);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void rejectsNullHavingValues() {
+        Aggregation.groupBy("amount").having(SUM, "amount", GREATER_THAN, (Long) null);
+    }
+}
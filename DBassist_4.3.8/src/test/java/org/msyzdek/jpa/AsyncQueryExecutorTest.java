@@ -0,0 +1,143 @@
+package org.msyzdek.jpa;
+
+import org.junit.ClassRule;
+import org.junit.Test;
+
+import javax.persistence.EntityManager;
+import javax.persistence.EntityManagerFactory;
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+
+public class AsyncQueryExecutorTest {
+
+    @ClassRule
+    public static final TestDatabase DATABASE = new TestDatabase(10, 1);
+
+    /**
+     * Factory of EntityManager stubs counting the open ones.
+     */
+    private static EntityManagerFactory entityManagerFactory(AtomicInteger open) {
+        return (EntityManagerFactory) Proxy.newProxyInstance(AsyncQueryExecutorTest.class.getClassLoader(), new Class<?>[]{EntityManagerFactory.class}, (factory, factoryMethod, factoryArgs) -> {
+            if (!factoryMethod.getName().equals("createEntityManager")) {
+                throw new UnsupportedOperationException(factoryMethod.getName());
+            }
+
+            open.incrementAndGet();
+
+            return Proxy.newProxyInstance(AsyncQueryExecutorTest.class.getClassLoader(), new Class<?>[]{EntityManager.class}, (entityManager, method, args) -> {
+                if (method.getName().equals("close")) {
+                    open.decrementAndGet();
+                }
+
+                return null;
+            });
+        });
+    }
+
+    @Test
+    public void boundsConcurrentTasksOnAnUnboundedExecutor() throws Exception {
+        ExecutorService executor = Executors.newCachedThreadPool();
+
+        try {
+            AsyncQueryExecutor asyncQueryExecutor = new AsyncQueryExecutor(executor, 2);
+            AtomicInteger open = new AtomicInteger();
+            AtomicInteger maxOpen = new AtomicInteger();
+            CountDownLatch release = new CountDownLatch(1);
+            List<CompletableFuture<Integer>> futures = new ArrayList<CompletableFuture<Integer>>();
+
+            for (int i = 0; i < 8; i++) {
+                int task = i;
+
+                futures.add(asyncQueryExecutor.submit(entityManagerFactory(open), entityManager -> {
+                    maxOpen.accumulateAndGet(open.get(), Math::max);
+
+                    try {
+                        release.await(10, TimeUnit.SECONDS);
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                    }
+
+                    return task;
+                }));
+            }
+
+            Thread.sleep(200);
+            release.countDown();
+
+            for (int i = 0; i < futures.size(); i++) {
+                assertEquals(Integer.valueOf(i), futures.get(i).get(10, TimeUnit.SECONDS));
+            }
+
+            assertEquals(2, maxOpen.get());
+            assertEquals(0, open.get());
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    public void failedTaskClosesItsEntityManagerAndReleasesItsPermit() throws Exception {
+        AsyncQueryExecutor asyncQueryExecutor = new AsyncQueryExecutor(1);
+        AtomicInteger open = new AtomicInteger();
+
+        try {
+            asyncQueryExecutor.<Object>submit(entityManagerFactory(open), entityManager -> {
+                throw new IllegalStateException("failed");
+            }).get(10, TimeUnit.SECONDS);
+            fail("Task did not fail");
+        } catch (ExecutionException e) {
+            assertTrue(e.getCause() instanceof IllegalStateException);
+        }
+
+        assertEquals("done", asyncQueryExecutor.submit(entityManagerFactory(open), entityManager -> "done").get(10, TimeUnit.SECONDS));
+        assertEquals(0, open.get());
+    }
+
+    @Test
+    public void asyncQueriesRunOnEntityManagersOfTheirOwn() throws Exception {
+        EntityManager entityManager = DATABASE.createEntityManager();
+
+        try {
+            ProductRepository repository = new ProductRepository(entityManager) {
+                @Override
+                protected EntityManager currentEntityManager() {
+                    EntityManager current = super.currentEntityManager();
+
+                    if (Thread.currentThread().getName().startsWith("dbassist-query-")) {
+                        assertNotSame(entityManager, current);
+                    } else {
+                        assertSame(entityManager, current);
+                    }
+
+                    return current;
+                }
+            };
+
+            CompletableFuture<List<Product>> products = repository.findAsync(new Conditions(), null, ProductRepository.ORDER_BY_ID);
+            CompletableFuture<Long> count = repository.countAsync(new Conditions());
+
+            assertEquals(10, products.get(10, TimeUnit.SECONDS).size());
+            assertEquals(Long.valueOf(10), count.get(10, TimeUnit.SECONDS));
+            assertFalse(entityManager.contains(products.get().get(0)));
+            assertEquals(10, repository.count(new Conditions()));
+        } finally {
+            entityManager.close();
+        }
+    }
+}
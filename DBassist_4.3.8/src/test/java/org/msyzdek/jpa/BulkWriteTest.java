@@ -0,0 +1,155 @@
+package org.msyzdek.jpa;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+
+import javax.persistence.EntityManager;
+import javax.persistence.criteria.JoinType;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+
+public class BulkWriteTest {
+
+    @Rule
+    public final TestDatabase database = new TestDatabase(20, 2);
+
+    private EntityManager entityManager;
+
+    private ProductRepository repository;
+
+    @Before
+    public void beginTransaction() {
+        entityManager = database.createEntityManager();
+        entityManager.getTransaction().begin();
+        repository = new ProductRepository(entityManager);
+    }
+
+    @After
+    public void rollback() {
+        entityManager.getTransaction().rollback();
+        entityManager.close();
+    }
+
+    private static Conditions byAmount(long amount) {
+        Conditions conditions = new Conditions();
+        conditions.equal("amount", amount);
+
+        return conditions;
+    }
+
+    @Test
+    public void updatesMatchingRows() {
+        Map<String, Object> assignments = new HashMap<String, Object>();
+        assignments.put("amount", 100L);
+        assignments.put("name", null);
+
+        assertEquals(2, repository.updateWhere(byAmount(3L), assignments));
+
+        List<Product> updated = repository.find(byAmount(100L), null, ProductRepository.ORDER_BY_ID);
+
+        assertEquals(2, updated.size());
+        assertNull(updated.get(0).getName());
+        assertEquals(0, repository.count(byAmount(3L)));
+    }
+
+    @Test
+    public void updatesThroughJoinConditions() {
+        Conditions conditions = new Conditions();
+        conditions.getJoinConditions("details", JoinType.INNER).greaterThanOrEqualTo("price", 180L);
+
+        assertEquals(3, repository.updateWhere(conditions, Collections.singletonMap("amount", 100L)));
+        assertEquals(3, repository.count(byAmount(100L)));
+    }
+
+    @Test
+    public void detachesManagedInstancesAndFlushesPendingChanges() {
+        Product product = repository.find(byAmount(4L), null, ProductRepository.ORDER_BY_ID).get(0);
+        product.setName("changed");
+
+        repository.updateWhere(byAmount(4L), Collections.singletonMap("amount", 200L));
+
+        assertFalse(entityManager.contains(product));
+
+        Product reloaded = entityManager.find(Product.class, product.getId());
+
+        assertEquals(Long.valueOf(200L), reloaded.getAmount());
+        assertEquals("changed", reloaded.getName());
+    }
+
+    @Test
+    public void deletesMatchingRows() {
+        entityManager.createQuery("delete from ProductDetail").executeUpdate();
+
+        assertEquals(2, repository.deleteWhere(byAmount(3L)));
+        assertEquals(18, repository.count(new Conditions()));
+    }
+
+    @Test
+    public void deletesThroughJoinConditions() {
+        entityManager.createQuery("delete from ProductDetail where product.id in (select id from Product where amount = 7)").executeUpdate();
+
+        Conditions withoutDetails = new Conditions();
+        withoutDetails.equal("amount", 7L);
+
+        Conditions conditions = new Conditions();
+        conditions.getJoinConditions("details", JoinType.INNER).equal("type", "type0");
+        conditions.equal("amount", 7L);
+
+        assertEquals(0, repository.deleteWhere(conditions));
+        assertEquals(2, repository.deleteWhere(withoutDetails));
+        assertEquals(18, repository.count(new Conditions()));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void requiresConditions() {
+        repository.deleteWhere(null);
+    }
+
+    @Test
+    public void saveAllPersistsNewMergesDetachedAndKeepsManaged() {
+        Product managed = repository.find(byAmount(1L), null, ProductRepository.ORDER_BY_ID).get(0);
+        Product detached = repository.find(byAmount(2L), null, ProductRepository.ORDER_BY_ID).get(0);
+        entityManager.detach(detached);
+        detached.setName("merged");
+        Product created = new Product("created", 50L);
+
+        List<Product> saved = repository.saveAll(Arrays.asList(managed, detached, created), 10);
+
+        assertSame(managed, saved.get(0));
+        assertTrue(entityManager.contains(saved.get(1)));
+        assertEquals("merged", saved.get(1).getName());
+        assertSame(created, saved.get(2));
+        assertNotNull(created.getId());
+        assertEquals(21, repository.count(new Conditions()));
+    }
+
+    @Test
+    public void saveAllClearsEveryInterval() {
+        List<Product> products = new ArrayList<Product>();
+
+        for (int i = 0; i < 7; i++) {
+            products.add(new Product("batch" + i, 60L));
+        }
+
+        List<Product> saved = repository.saveAll(products, 2, 3);
+
+        assertEquals(7, saved.size());
+        assertFalse(entityManager.contains(saved.get(0)));
+        assertTrue(entityManager.contains(saved.get(6)));
+        assertEquals(7, repository.count(byAmount(60L)));
+    }
+}
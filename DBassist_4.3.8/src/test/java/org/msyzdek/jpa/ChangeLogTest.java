@@ -0,0 +1,185 @@
+package org.msyzdek.jpa;
+
+import liquibase.Contexts;
+import liquibase.LabelExpression;
+import liquibase.Liquibase;
+import liquibase.database.Database;
+import liquibase.database.DatabaseFactory;
+import liquibase.database.jvm.JdbcConnection;
+import liquibase.resource.ClassLoaderResourceAccessor;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import javax.persistence.EntityManager;
+import javax.persistence.EntityManagerFactory;
+import javax.persistence.Persistence;
+import java.io.IOException;
+import java.io.InputStream;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+
+public class ChangeLogTest {
+
+    private static final String CHANGELOG = "org.msyzdek.jpa.db.migrations/createEmptyDB.xml";
+
+    private static final String ORIGINAL_CHANGELOG = "org.msyzdek.jpa.db.migrations/originalCreateEmptyDB.xml";
+
+    private static final AtomicInteger DATABASES = new AtomicInteger();
+
+    private String url;
+
+    private Connection connection;
+
+    @Before
+    public void openConnection() throws SQLException {
+        url = "jdbc:h2:mem:changelog" + DATABASES.incrementAndGet() + ";DB_CLOSE_DELAY=-1";
+        connection = DriverManager.getConnection(url, "sa", "");
+    }
+
+    @After
+    public void dropDatabase() throws SQLException {
+        try (Statement statement = connection.createStatement()) {
+            statement.execute("drop all objects");
+        }
+        connection.close();
+    }
+
+    private Liquibase liquibase(ClassLoaderResourceAccessor resourceAccessor) throws Exception {
+        Database database = DatabaseFactory.getInstance().findCorrectDatabaseImplementation(new JdbcConnection(connection));
+        return new Liquibase(CHANGELOG, resourceAccessor, database);
+    }
+
+    private void update() throws Exception {
+        liquibase(new ClassLoaderResourceAccessor()).update(new Contexts());
+    }
+
+    /**
+     * Foreign keys of PRODUCT_DETAILS as "name -> referenced table".
+     */
+    private List<String> foreignKeys() throws SQLException {
+        List<String> foreignKeys = new ArrayList<>();
+
+        try (ResultSet resultSet = connection.getMetaData().getImportedKeys(null, null, "PRODUCT_DETAILS")) {
+            while (resultSet.next()) {
+                foreignKeys.add(resultSet.getString("FK_NAME") + " -> " + resultSet.getString("PKTABLE_NAME"));
+            }
+        }
+
+        return foreignKeys;
+    }
+
+    private List<String> ranChangeSets() throws SQLException {
+        List<String> changeSets = new ArrayList<>();
+
+        try (Statement statement = connection.createStatement();
+             ResultSet resultSet = statement.executeQuery("select ID, EXECTYPE from DATABASECHANGELOG order by ORDEREXECUTED")) {
+            while (resultSet.next()) {
+                changeSets.add(resultSet.getString(1) + " " + resultSet.getString(2));
+            }
+        }
+
+        return changeSets;
+    }
+
+    @Test
+    public void createsDetailsReferencingProducts() throws Exception {
+        update();
+
+        assertEquals(1, foreignKeys().size());
+        assertEquals("PRODUCT_DETAILS_PRODUCTS_FK -> PRODUCTS", foreignKeys().get(0));
+        assertEquals("[1 EXECUTED, 2 EXECUTED, 3 MARK_RAN, 4 EXECUTED]", ranChangeSets().toString());
+
+        try (Statement statement = connection.createStatement()) {
+            statement.execute("insert into PRODUCTS (ID, AMOUNT) values (1, 5)");
+            statement.execute("insert into PRODUCT_DETAILS (ID, PRODUCT_ID) values (1, 1)");
+
+            try {
+                statement.execute("insert into PRODUCT_DETAILS (ID, PRODUCT_ID) values (2, 2)");
+                fail("Detail of a missing product inserted");
+            } catch (SQLException expected) {
+                /** referential integrity violation */
+            }
+        }
+    }
+
+    @Test
+    public void secondUpdateRunsNothing() throws Exception {
+        update();
+
+        assertTrue(liquibase(new ClassLoaderResourceAccessor()).listUnrunChangeSets(new Contexts(), new LabelExpression()).isEmpty());
+        update();
+
+        assertEquals(4, ranChangeSets().size());
+    }
+
+    @Test
+    public void repairsDatabasesCreatedByTheOriginalChangeSet() throws Exception {
+        try (Statement statement = connection.createStatement()) {
+            statement.execute("create table employee (id numeric(8) primary key)");
+        }
+
+        /** the original change log under the same path, so that its history matches the current one */
+        liquibase(new ClassLoaderResourceAccessor() {
+            @Override
+            public Set<InputStream> getResourcesAsStream(String path) throws IOException {
+                return super.getResourcesAsStream(CHANGELOG.equals(path) ? ORIGINAL_CHANGELOG : path);
+            }
+        }).update(new Contexts());
+        assertEquals("[fk_address_employee -> EMPLOYEE]", foreignKeys().toString());
+
+        update();
+
+        assertEquals("[PRODUCT_DETAILS_PRODUCTS_FK -> PRODUCTS]", foreignKeys().toString());
+        assertEquals("[1 EXECUTED, 2 EXECUTED, 3 EXECUTED, 4 EXECUTED]", ranChangeSets().toString());
+    }
+
+    @Test
+    public void testModelMapsTheSchema() throws Exception {
+        update();
+
+        Map<String, String> properties = new HashMap<String, String>();
+        properties.put("hibernate.connection.url", url);
+        properties.put("hibernate.hbm2ddl.auto", "none");
+
+        EntityManagerFactory entityManagerFactory = Persistence.createEntityManagerFactory("test", properties);
+
+        try {
+            EntityManager entityManager = entityManagerFactory.createEntityManager();
+
+            entityManager.getTransaction().begin();
+            Product product = new Product("product1", 3L);
+            entityManager.persist(product);
+            entityManager.persist(new ProductDetail(product, "type0", 30L));
+            entityManager.getTransaction().commit();
+            entityManager.clear();
+
+            Conditions conditions = new Conditions();
+            conditions.equal("amount", 3L);
+
+            List<Product> products = new ProductRepository(entityManager).findProducts(conditions, true);
+
+            assertEquals(1, products.size());
+            assertEquals("product1", products.get(0).getName());
+            assertEquals(Long.valueOf(30L), products.get(0).getDetails().iterator().next().getPrice());
+
+            entityManager.close();
+        } finally {
+            entityManagerFactory.close();
+        }
+    }
+}
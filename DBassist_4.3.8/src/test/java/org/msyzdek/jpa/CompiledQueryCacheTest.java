@@ -0,0 +1,80 @@
+package org.msyzdek.jpa;
+
+import org.junit.ClassRule;
+import org.junit.Test;
+
+import javax.persistence.EntityManager;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.stream.Collectors;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+
+
+public class CompiledQueryCacheTest {
+
+    @ClassRule
+    public static final TestDatabase DATABASE = new TestDatabase(30, 2);
+
+    private static QueryShape shape(String kind) {
+        return QueryShape.of(kind, Product.class, null, false, null, null);
+    }
+
+    private static CompiledQueryCache.CompiledQuery compiledQuery(String jpql) {
+        return new CompiledQueryCache.CompiledQuery(jpql, Collections.<Class<?>>singleton(Product.class), Collections.<String>emptyList(), 1);
+    }
+
+    @Test
+    public void evictsLeastRecentlyUsedShape() {
+        CompiledQueryCache cache = new CompiledQueryCache(2);
+        CompiledQueryCache.CompiledQuery first = compiledQuery("first");
+
+        cache.put(shape("first"), first);
+        cache.put(shape("second"), compiledQuery("second"));
+        assertSame(first, cache.get(shape("first")));
+
+        cache.put(shape("third"), compiledQuery("third"));
+
+        assertEquals(2, cache.size());
+        assertNotNull(cache.get(shape("first")));
+        assertNull(cache.get(shape("second")));
+        assertNotNull(cache.get(shape("third")));
+    }
+
+    @Test
+    public void reusedQueryBindsTheNewValues() {
+        EntityManager entityManager = DATABASE.createEntityManager();
+
+        try {
+            ProductRepository cached = new ProductRepository(entityManager);
+            ProductRepository uncached = new ProductRepository(entityManager, 0);
+
+            for (long amount = 0; amount < 3; amount++) {
+                List<String> names = new ArrayList<String>();
+
+                for (ProductRepository repository : new ProductRepository[]{cached, uncached}) {
+                    Conditions conditions = new Conditions();
+                    conditions.equal("amount", amount);
+                    conditions.lessThan("name", "product3");
+
+                    names.add(repository.find(conditions, null, ProductRepository.ORDER_BY_ID).stream()
+                            .map(Product::getName).collect(Collectors.joining(",")));
+                }
+
+                assertEquals(names.get(1), names.get(0));
+            }
+
+            Conditions conditions = new Conditions();
+            conditions.equal("amount", 1L);
+            conditions.lessThan("name", "product3");
+
+            assertEquals(3, cached.find(conditions, null, ProductRepository.ORDER_BY_ID).size());
+        } finally {
+            entityManager.close();
+        }
+    }
+}
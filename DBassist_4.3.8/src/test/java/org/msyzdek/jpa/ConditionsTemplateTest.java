@@ -0,0 +1,168 @@
+package org.msyzdek.jpa;
+
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.ClassRule;
+import org.junit.Test;
+
+import javax.persistence.EntityManager;
+import javax.persistence.criteria.JoinType;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+
+public class ConditionsTemplateTest {
+
+    @ClassRule
+    public static final TestDatabase DATABASE = new TestDatabase(20, 3);
+
+    private static final ConditionsTemplate SEARCH = ConditionsTemplate.builder()
+            .greaterThanOrEqualTo("amount", "minAmount", Long.class)
+            .join("details", JoinType.INNER).in("type", "types")
+            .build();
+
+    private static EntityManager entityManager;
+
+    private static ProductRepository repository;
+
+    @BeforeClass
+    public static void createRepository() {
+        entityManager = DATABASE.createEntityManager();
+        repository = new ProductRepository(entityManager);
+    }
+
+    @AfterClass
+    public static void closeEntityManager() {
+        entityManager.close();
+    }
+
+    private static Map<String, Object> values(Object minAmount, Object types) {
+        Map<String, Object> values = new HashMap<String, Object>();
+        values.put("minAmount", minAmount);
+        values.put("types", types);
+
+        return values;
+    }
+
+    private static List<Long> ids(List<Product> products) {
+        return products.stream().map(Product::getId).collect(Collectors.toList());
+    }
+
+    private static void assertRejected(Runnable modification) {
+        try {
+            modification.run();
+            fail("Conditions of a template modified");
+        } catch (UnsupportedOperationException expected) {
+            /** read only */
+        }
+    }
+
+    @Test
+    public void placeholdersBecomeParameterNames() {
+        Conditions conditions = SEARCH.bind(values(7L, Arrays.asList("type1", "type2")));
+
+        assertEquals("[minAmount, types]", conditions.getParameterNames().toString());
+        assertEquals(Arrays.asList(7L, Arrays.asList("type1", "type2")), conditions.getParameterValues());
+        assertEquals("{minAmount=class java.lang.Long, types=interface java.util.Collection}", SEARCH.getPlaceholders().toString());
+    }
+
+    @Test
+    public void boundConditionsShareTheFingerprint() {
+        String fingerprint = "amount >= :minAmount and join details INNER {type in (:types)}";
+
+        assertEquals(fingerprint, SEARCH.toString());
+        assertEquals(fingerprint, SEARCH.bind(values(1L, Arrays.asList("type0"))).getFingerprint());
+        assertEquals(fingerprint, SEARCH.bind(values(9L, Arrays.asList("type1", "type2"))).getFingerprint());
+        assertEquals(QueryShape.of("find", Product.class, null, false, SEARCH.bind(values(1L, Arrays.asList("type0"))), null),
+                QueryShape.of("find", Product.class, null, false, SEARCH.bind(values(2L, Arrays.asList("type1", "type2"))), null));
+    }
+
+    @Test
+    public void boundConditionsAreReadOnly() {
+        Conditions conditions = SEARCH.bind(values(7L, Arrays.asList("type1")));
+
+        assertTrue(conditions.isFrozen());
+        assertRejected(() -> conditions.equal("name", "product1"));
+        assertRejected(() -> conditions.getJoinConditions("details", JoinType.INNER).equal("type", "type0"));
+        assertRejected(() -> conditions.getJoinConditions("product", JoinType.INNER));
+    }
+
+    @Test
+    public void findsTheSameRowsAsEquivalentConditions() {
+        Conditions equivalent = new Conditions();
+        equivalent.greaterThanOrEqualTo("amount", 7L);
+        equivalent.getJoinConditions("details", JoinType.INNER).in("type", Arrays.asList("type1", "type2"));
+
+        List<Long> expected = ids(repository.find(equivalent, null, ProductRepository.ORDER_BY_ID));
+
+        assertEquals(6, expected.size());
+        assertEquals(expected, ids(repository.find(SEARCH.bind(values(7L, Arrays.asList("type1", "type2"))), null, ProductRepository.ORDER_BY_ID)));
+        assertEquals(Arrays.asList(9L, 19L), ids(repository.find(SEARCH.bind(values(9L, Arrays.asList("type0"))), null, ProductRepository.ORDER_BY_ID)));
+    }
+
+    @Test
+    public void concurrentBindsKeepTheirValues() {
+        List<Conditions> bound = IntStream.range(0, 1000).parallel()
+                .mapToObj(i -> SEARCH.bind(values((long) i, Arrays.asList("type" + i))))
+                .collect(Collectors.toList());
+
+        for (int i = 0; i < bound.size(); i++) {
+            assertEquals(Arrays.asList((long) i, Arrays.asList("type" + i)), bound.get(i).getParameterValues());
+        }
+    }
+
+    @Test
+    public void keysetPaginationPagesThroughBoundConditions() {
+        Conditions conditions = SEARCH.bind(values(0L, Arrays.asList("type0")));
+        KeysetPage<Product> page = repository.findPage(conditions, null, Keyset.ascending("id"), 5, null);
+
+        assertEquals(Arrays.asList(1L, 2L, 3L, 4L, 5L), ids(page.getContent()));
+        assertEquals(Arrays.asList(6L, 7L, 8L, 9L, 10L),
+                ids(repository.findPage(conditions, null, Keyset.ascending("id"), 5, page.getContinuationToken()).getContent()));
+    }
+
+    @Test
+    public void rejectsInvalidValues() {
+        List<Map<String, Object>> invalid = Arrays.asList(
+                values(null, Arrays.asList("type0")),
+                values(1, Arrays.asList("type0")),
+                values(1L, "type0"));
+
+        for (Map<String, Object> values : invalid) {
+            try {
+                SEARCH.bind(values);
+                fail("Bound " + values);
+            } catch (IllegalArgumentException expected) {
+                /** missing or mistyped */
+            }
+        }
+
+        Map<String, Object> unknown = values(1L, Arrays.asList("type0"));
+        unknown.put("maxAmount", 2L);
+
+        try {
+            SEARCH.bind(unknown);
+            fail("Bound an unknown placeholder");
+        } catch (IllegalArgumentException expected) {
+            assertTrue(expected.getMessage().contains("maxAmount"));
+        }
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void rejectsDuplicatePlaceholders() {
+        ConditionsTemplate.builder().greaterThan("amount", "amount", Long.class).join("details", JoinType.INNER).lessThan("price", "amount", Long.class);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void rejectsInvalidPlaceholders() {
+        ConditionsTemplate.builder().equal("name", "p-1", String.class);
+    }
+}
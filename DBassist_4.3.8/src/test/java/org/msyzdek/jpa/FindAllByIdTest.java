@@ -0,0 +1,121 @@
+package org.msyzdek.jpa;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.ClassRule;
+import org.junit.Test;
+import org.msyzdek.jpa.metrics.QueryEvent;
+
+import javax.persistence.EntityManager;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.LongStream;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+
+public class FindAllByIdTest {
+
+    @ClassRule
+    public static final TestDatabase DATABASE = new TestDatabase(30, 2);
+
+    private EntityManager entityManager;
+
+    private ProductRepository repository;
+
+    private final List<QueryEvent> events = new ArrayList<QueryEvent>();
+
+    @Before
+    public void createRepository() {
+        entityManager = DATABASE.createEntityManager();
+        repository = new ProductRepository(entityManager);
+        repository.setQueryMetrics(events::add);
+    }
+
+    @After
+    public void closeEntityManager() {
+        entityManager.close();
+    }
+
+    private static List<Long> ids(List<Product> products) {
+        return products.stream().map(Product::getId).collect(Collectors.toList());
+    }
+
+    private List<Integer> queriedRows() {
+        return events.stream().map(QueryEvent::getRows).collect(Collectors.toList());
+    }
+
+    @Test
+    public void keepsTheOrderOfTheIdentifiers() {
+        List<Product> products = repository.findAllById(Arrays.asList(5L, 999L, 2L, 5L));
+
+        /** unknown identifiers skipped, repeated ones queried once */
+        assertEquals(Arrays.asList(5L, 2L, 5L), ids(products));
+        assertSame(products.get(0), products.get(2));
+        assertEquals(Collections.singletonList(2), queriedRows());
+    }
+
+    @Test
+    public void queriesInBatches() {
+        List<Long> ids = LongStream.rangeClosed(1, 25).boxed().collect(Collectors.toList());
+
+        assertEquals(ids, ids(repository.findAllById(ids, null, 10)));
+        assertEquals(Arrays.asList(10, 10, 5), queriedRows());
+    }
+
+    @Test
+    public void takesLoadedEntitiesFromThePersistenceContext() {
+        Product loaded = entityManager.find(Product.class, 3L);
+
+        assertSame(loaded, repository.findAllById(Collections.singletonList(3L)).get(0));
+        assertTrue(events.isEmpty());
+
+        List<Product> products = repository.findAllById(Arrays.asList(4L, 3L));
+
+        assertEquals(Arrays.asList(4L, 3L), ids(products));
+        assertSame(loaded, products.get(1));
+        assertEquals(Collections.singletonList(1), queriedRows());
+    }
+
+    @Test
+    public void fetchCallbacksQueryLoadedEntitiesToo() {
+        Product loaded = entityManager.find(Product.class, 3L);
+
+        assertFalse(entityManager.getEntityManagerFactory().getPersistenceUnitUtil().isLoaded(loaded, "details"));
+
+        List<Product> products = repository.findAllById(Arrays.asList(3L, 4L), ProductRepository.FETCH_DETAILS);
+
+        assertSame(loaded, products.get(0));
+        assertTrue(entityManager.getEntityManagerFactory().getPersistenceUnitUtil().isLoaded(loaded, "details"));
+        assertEquals(2, loaded.getDetails().size());
+        assertEquals(Collections.singletonList(2), queriedRows());
+        assertEquals(2, events.get(0).getDuplicatesRemoved());
+    }
+
+    @Test
+    public void removedEntitiesAreNotReturned() {
+        entityManager.getTransaction().begin();
+
+        try {
+            Product product = new Product("removed", 0L);
+            entityManager.persist(product);
+            entityManager.flush();
+            entityManager.remove(product);
+
+            assertEquals(Collections.singletonList(1L), ids(repository.findAllById(Arrays.asList(product.getId(), 1L))));
+        } finally {
+            entityManager.getTransaction().rollback();
+        }
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void rejectsInvalidBatchSizes() {
+        repository.findAllById(Collections.singletonList(1L), null, 0);
+    }
+}
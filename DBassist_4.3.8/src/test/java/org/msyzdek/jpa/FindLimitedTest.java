@@ -0,0 +1,90 @@
+package org.msyzdek.jpa;
+
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.ClassRule;
+import org.junit.Test;
+
+import javax.persistence.EntityManager;
+import javax.persistence.criteria.JoinType;
+import java.util.Arrays;
+import java.util.List;
+import java.util.stream.Collectors;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+
+public class FindLimitedTest {
+
+    @ClassRule
+    public static final TestDatabase DATABASE = new TestDatabase(20, 4);
+
+    private static final AbstractRepository.OrderBy<Product> ORDER_BY_AMOUNT_DESC = (criteriaBuilder, criteriaQuery, root) ->
+            criteriaQuery.orderBy(criteriaBuilder.desc(root.get("amount")), criteriaBuilder.asc(root.get("id")));
+
+    private static EntityManager entityManager;
+
+    private static ProductRepository repository;
+
+    @BeforeClass
+    public static void createRepository() {
+        entityManager = DATABASE.createEntityManager();
+        repository = new ProductRepository(entityManager);
+    }
+
+    @AfterClass
+    public static void closeEntityManager() {
+        entityManager.close();
+    }
+
+    private static List<Long> ids(List<Product> products) {
+        return products.stream().map(Product::getId).collect(Collectors.toList());
+    }
+
+    @Test
+    public void limitsRootsNotJoinedRows() {
+        List<Long> all = ids(repository.find(new Conditions(), null, ORDER_BY_AMOUNT_DESC));
+        List<Product> page = repository.findLimited(new Conditions(), ProductRepository.FETCH_DETAILS, ORDER_BY_AMOUNT_DESC, 5, 6);
+
+        assertEquals(all.subList(5, 11), ids(page));
+
+        for (Product product : page) {
+            assertEquals(4, product.getDetails().size());
+        }
+    }
+
+    @Test
+    public void limitsWithoutFetchCallbacksInOneQuery() {
+        List<Long> all = ids(repository.find(new Conditions(), null, ORDER_BY_AMOUNT_DESC));
+
+        assertEquals(all.subList(18, 20), ids(repository.findLimited(new Conditions(), null, ORDER_BY_AMOUNT_DESC, 18, 10)));
+    }
+
+    @Test
+    public void appliesConditionsInTheFirstPhase() {
+        Conditions conditions = new Conditions();
+        conditions.greaterThanOrEqualTo("amount", 8L);
+
+        List<Product> products = repository.findLimited(conditions, ProductRepository.FETCH_DETAILS, ORDER_BY_AMOUNT_DESC, 0, 10);
+
+        assertEquals(4, products.size());
+        assertTrue(products.stream().allMatch(product -> product.getAmount() >= 8L));
+    }
+
+    @Test
+    public void limitsRootsOfJoinedCollections() {
+        Conditions conditions = new Conditions();
+        conditions.getJoinConditions("details", JoinType.LEFT).in("type", Arrays.asList("type0", "type1"));
+
+        List<Long> all = ids(repository.find(new Conditions(), null, ORDER_BY_AMOUNT_DESC));
+
+        /** every product is joined to two details */
+        assertEquals(all.subList(5, 11), ids(repository.findLimited(conditions, null, ORDER_BY_AMOUNT_DESC, 5, 6)));
+    }
+
+    @Test
+    public void emptyPageSkipsTheSecondPhase() {
+        assertTrue(repository.findLimited(new Conditions(), ProductRepository.FETCH_DETAILS, ORDER_BY_AMOUNT_DESC, 100, 10).isEmpty());
+    }
+}
@@ -0,0 +1,143 @@
+package org.msyzdek.jpa;
+
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.ClassRule;
+import org.junit.Test;
+import org.msyzdek.jpa.postgresql.SqlArray;
+
+import javax.persistence.EntityManager;
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.stream.Collectors;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+
+public class InListStrategyTest {
+
+    @ClassRule
+    public static final TestDatabase DATABASE = new TestDatabase(30, 0);
+
+    private static EntityManager entityManager;
+
+    private static ProductRepository repository;
+
+    @BeforeClass
+    public static void createRepository() {
+        entityManager = DATABASE.createEntityManager();
+        repository = new ProductRepository(entityManager);
+    }
+
+    @AfterClass
+    public static void closeEntityManager() {
+        entityManager.close();
+    }
+
+    private static List<Object> values(int count) {
+        List<Object> values = new ArrayList<Object>();
+
+        for (int i = 0; i < count; i++) {
+            values.add((long) i);
+        }
+
+        return values;
+    }
+
+    private static int padded(int count) {
+        return InListStrategy.Padded.pad(values(count)).size();
+    }
+
+    @Test
+    public void padsToTheNextPowerOfTwo() {
+        assertEquals(0, padded(0));
+        assertEquals(1, padded(1));
+        assertEquals(2, padded(2));
+        assertEquals(4, padded(3));
+        assertEquals(4, padded(4));
+        assertEquals(8, padded(5));
+        assertEquals(16, padded(9));
+        assertEquals(1024, padded(1000));
+    }
+
+    @Test
+    public void padsWithTheLastValue() {
+        assertEquals(Arrays.<Object>asList(0L, 1L, 2L, 2L), InListStrategy.Padded.pad(values(3)));
+    }
+
+    @Test
+    public void capsPaddingAtTheMaximumSize() {
+        assertEquals(6, InListStrategy.Padded.pad(values(5), 6).size());
+        assertEquals(7, InListStrategy.Padded.pad(values(7), 6).size());
+    }
+
+    @Test
+    public void splitsIntoPaddedChunks() {
+        List<Object> chunks = InListStrategy.chunked(4).bind(values(10));
+
+        assertEquals(Arrays.<Object>asList(
+                Arrays.<Object>asList(0L, 1L, 2L, 3L),
+                Arrays.<Object>asList(4L, 5L, 6L, 7L),
+                Arrays.<Object>asList(8L, 9L)), chunks);
+        assertEquals(Collections.singletonList(Arrays.<Object>asList(0L, 1L, 2L, 2L)), InListStrategy.chunked(5).bind(values(3)));
+        assertEquals(Collections.singletonList(Collections.emptyList()), InListStrategy.chunked(5).bind(Collections.emptyList()));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void rejectsEmptyChunks() {
+        InListStrategy.chunked(0);
+    }
+
+    @Test
+    public void singleBindsOneParameter() {
+        List<Object> bound = InListStrategy.single().bind(values(5));
+
+        assertEquals(1, bound.size());
+        assertEquals(values(5), bound.get(0));
+    }
+
+    @Test
+    public void arrayElementTypeFollowsTheFirstValue() {
+        assertEquals("int8", SqlArray.of(Arrays.asList(1L, 2L)).getElementTypeName());
+        assertEquals("numeric", SqlArray.of(Collections.singletonList(BigDecimal.ONE)).getElementTypeName());
+        assertEquals("varchar", SqlArray.of(Collections.emptyList()).getElementTypeName());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void arrayRejectsUnknownElementTypes() {
+        SqlArray.of(Collections.singletonList(new Object()));
+    }
+
+    @Test
+    public void strategiesSelectTheSameRows() {
+        List<Object> amounts = Arrays.<Object>asList(1L, 3L, 4L, 8L, 9L);
+
+        for (InListStrategy strategy : Arrays.asList(InListStrategy.padded(), InListStrategy.chunked(2))) {
+            Conditions single = new Conditions();
+            single.in("amount", amounts);
+
+            Conditions other = new Conditions();
+            other.in("amount", amounts, strategy);
+
+            Conditions notIn = new Conditions();
+            notIn.setInListStrategy(strategy);
+            notIn.notIn("amount", amounts);
+
+            List<Long> expected = ids(repository.find(single, null, ProductRepository.ORDER_BY_ID));
+            List<Long> excluded = ids(repository.find(notIn, null, ProductRepository.ORDER_BY_ID));
+
+            assertEquals(15, expected.size());
+            assertEquals(expected, ids(repository.find(other, null, ProductRepository.ORDER_BY_ID)));
+            assertEquals(15, excluded.size());
+            assertTrue(Collections.disjoint(expected, excluded));
+        }
+    }
+
+    private static List<Long> ids(List<Product> products) {
+        return products.stream().map(Product::getId).collect(Collectors.toList());
+    }
+}
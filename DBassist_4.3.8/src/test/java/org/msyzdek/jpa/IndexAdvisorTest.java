@@ -0,0 +1,215 @@
+package org.msyzdek.jpa;
+
+import liquibase.Contexts;
+import liquibase.Liquibase;
+import liquibase.database.DatabaseFactory;
+import liquibase.database.jvm.JdbcConnection;
+import liquibase.resource.FileSystemResourceAccessor;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import javax.persistence.criteria.JoinType;
+import java.io.File;
+import java.io.FileWriter;
+import java.io.StringWriter;
+import java.io.Writer;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.SQLException;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.stream.Collectors;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+
+public class IndexAdvisorTest {
+
+    @Rule
+    public final TestDatabase database = new TestDatabase();
+
+    @Rule
+    public final TemporaryFolder folder = new TemporaryFolder();
+
+    private IndexAdvisor indexAdvisor;
+
+    private Connection connection;
+
+    @Before
+    public void openConnection() throws SQLException {
+        indexAdvisor = new IndexAdvisor(database.getEntityManagerFactory());
+        connection = DriverManager.getConnection((String) database.getEntityManagerFactory().getProperties().get("hibernate.connection.url"), "sa", "");
+    }
+
+    @After
+    public void closeConnection() throws SQLException {
+        connection.close();
+    }
+
+    private static IndexAdvisor.Candidate candidate(List<String> leadingColumnNames, List<String> orderedColumnNames) {
+        return new IndexAdvisor.Candidate("T", leadingColumnNames, orderedColumnNames);
+    }
+
+    private void record(Conditions conditions, List<String> orderPaths, long millis) {
+        indexAdvisor.record(Product.class, null, conditions, orderPaths, millis * 1000000);
+    }
+
+    /**
+     * Proposals as "TABLE(COLUMN, ...) calls".
+     */
+    private List<String> proposals() throws SQLException {
+        return indexAdvisor.propose(connection).stream()
+                .map(proposal -> proposal.getTableName() + proposal.getColumnNames().toString().replace('[', '(').replace(']', ')')
+                        + " " + proposal.getCalls())
+                .collect(Collectors.toList());
+    }
+
+    private static Conditions byAmountAndName() {
+        Conditions conditions = new Conditions();
+        conditions.equal("name", "product1");
+        conditions.equal("amount", 1L);
+
+        return conditions;
+    }
+
+    private static Conditions byDetailPrice() {
+        Conditions conditions = new Conditions();
+        conditions.getJoinConditions("details", JoinType.INNER).greaterThan("price", 10L);
+
+        return conditions;
+    }
+
+    @Test
+    public void leadingColumnsAreServedInAnyOrder() {
+        IndexAdvisor.Candidate candidate = candidate(Arrays.asList("A", "B"), Collections.singletonList("C"));
+
+        assertTrue(candidate.isServedBy(Arrays.asList("A", "B", "C"), false));
+        assertTrue(candidate.isServedBy(Arrays.asList("B", "A", "C", "D"), false));
+        assertFalse(candidate.isServedBy(Arrays.asList("A", "C", "B"), false));
+        assertFalse(candidate.isServedBy(Arrays.asList("A", "B", "D"), false));
+        assertFalse(candidate.isServedBy(Arrays.asList("A", "B"), false));
+        assertFalse(candidate.isServedBy(Collections.<String>emptyList(), true));
+    }
+
+    @Test
+    public void orderedColumnsKeepTheirOrder() {
+        IndexAdvisor.Candidate candidate = candidate(Collections.singletonList("A"), Arrays.asList("B", "C"));
+
+        assertTrue(candidate.isServedBy(Arrays.asList("A", "B", "C"), false));
+        assertFalse(candidate.isServedBy(Arrays.asList("A", "C", "B"), false));
+        assertFalse(candidate.isServedBy(Arrays.asList("B", "A", "C"), false));
+    }
+
+    @Test
+    public void uniqueIndexesOnLeadingColumnsServe() {
+        IndexAdvisor.Candidate candidate = candidate(Arrays.asList("A", "B"), Collections.singletonList("C"));
+
+        assertTrue(candidate.isServedBy(Collections.singletonList("B"), true));
+        assertTrue(candidate.isServedBy(Arrays.asList("B", "A"), true));
+        assertFalse(candidate.isServedBy(Collections.singletonList("B"), false));
+        assertFalse(candidate.isServedBy(Arrays.asList("A", "C"), true));
+    }
+
+    @Test
+    public void columnNamesAreComparedWithoutCaseAndQuotes() {
+        IndexAdvisor.Candidate candidate = candidate(Collections.singletonList("\"amount\""), Collections.singletonList("`Id`"));
+
+        assertTrue(candidate.isServedBy(Arrays.asList("AMOUNT", "ID"), false));
+    }
+
+    @Test
+    public void proposesEqualityColumnsThenOrderColumns() throws SQLException {
+        record(byAmountAndName(), Arrays.asList("id", "details.type"), 5);
+
+        /** equality columns sorted, order paths of joined entities are left out */
+        assertEquals(Collections.singletonList("PRODUCTS(AMOUNT, NAME, ID) 1"), proposals());
+    }
+
+    @Test
+    public void proposesTheJoinKeyAndTheFirstRange() throws SQLException {
+        Conditions conditions = byDetailPrice();
+        conditions.getJoinConditions("details", JoinType.INNER).lessThan("id", 100L);
+
+        record(conditions, Collections.<String>emptyList(), 5);
+
+        assertEquals(Collections.singletonList("PRODUCT_DETAILS(PRODUCT_ID, PRICE) 1"), proposals());
+    }
+
+    @Test
+    public void leavesOutCandidatesServedByTheDatabase() throws SQLException {
+        Conditions byId = new Conditions();
+        byId.equal("id", 1L);
+
+        Conditions anyDetail = new Conditions();
+        anyDetail.getJoinConditions("details", JoinType.INNER);
+
+        /** primary key of PRODUCTS and index of the PRODUCT_ID foreign key */
+        record(byId, Collections.<String>emptyList(), 5);
+        record(anyDetail, Collections.<String>emptyList(), 5);
+
+        assertEquals(Collections.<String>emptyList(), proposals());
+    }
+
+    @Test
+    public void mergesCandidatesServedByLongerProposals() throws SQLException {
+        Conditions byAmount = new Conditions();
+        byAmount.equal("amount", 1L);
+
+        Conditions byName = new Conditions();
+        byName.equal("name", "product1");
+
+        record(byAmountAndName(), Collections.singletonList("id"), 1);
+        record(byAmount, Collections.<String>emptyList(), 2);
+        record(byAmount, Collections.<String>emptyList(), 3);
+        record(byName, Collections.<String>emptyList(), 4);
+
+        List<IndexAdvisor.Proposal> proposals = indexAdvisor.propose(connection);
+
+        /** the most time consuming first */
+        assertEquals(Arrays.asList("PRODUCTS(AMOUNT, NAME, ID) 3", "PRODUCTS(NAME) 1"), proposals());
+        assertEquals(6000000, proposals.get(0).getTotalNanos());
+        assertEquals("PRODUCTS_AMOUNT_NAME_ID_IX", proposals.get(0).getIndexName());
+        assertEquals(2, proposals.get(0).getQueries().size());
+    }
+
+    @Test
+    public void resetForgetsTheRecordedQueries() throws SQLException {
+        record(byAmountAndName(), Collections.<String>emptyList(), 1);
+        indexAdvisor.reset();
+
+        assertEquals(Collections.<String>emptyList(), proposals());
+    }
+
+    @Test
+    public void writesAChangeLogLiquibaseApplies() throws Exception {
+        record(byAmountAndName(), Collections.singletonList("id"), 1);
+        record(byDetailPrice(), Collections.<String>emptyList(), 2);
+
+        StringWriter changeLog = new StringWriter();
+        indexAdvisor.writeChangeLog(connection, changeLog, "tests & co");
+
+        assertTrue(changeLog.toString().contains("<changeSet author=\"tests &amp; co\" id=\"PRODUCTS_AMOUNT_NAME_ID_IX\""));
+        assertTrue(changeLog.toString().contains("<createIndex indexName=\"PRODUCT_DETAILS_PRODUCT_ID_PRICE_IX\" tableName=\"PRODUCT_DETAILS\">\n"
+                + "            <column name=\"PRODUCT_ID\"/>\n"
+                + "            <column name=\"PRICE\"/>\n"
+                + "        </createIndex>"));
+
+        File file = folder.newFile("indexes.xml");
+
+        try (Writer writer = new FileWriter(file)) {
+            writer.write(changeLog.toString());
+        }
+
+        new Liquibase(file.getName(), new FileSystemResourceAccessor(folder.getRoot().getAbsolutePath()),
+                DatabaseFactory.getInstance().findCorrectDatabaseImplementation(new JdbcConnection(connection))).update(new Contexts());
+
+        /** the applied indexes serve the recorded queries */
+        assertEquals(Collections.<String>emptyList(), proposals());
+    }
+}
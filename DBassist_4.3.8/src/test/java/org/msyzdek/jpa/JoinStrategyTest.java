@@ -0,0 +1,145 @@
+package org.msyzdek.jpa;
+
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.ClassRule;
+import org.junit.Test;
+import org.msyzdek.jpa.metrics.QueryEvent;
+
+import javax.persistence.EntityManager;
+import javax.persistence.criteria.JoinType;
+import javax.persistence.metamodel.ManagedType;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+
+public class JoinStrategyTest {
+
+    @ClassRule
+    public static final TestDatabase DATABASE = new TestDatabase(10, 3);
+
+    private static EntityManager entityManager;
+
+    private static ProductRepository repository;
+
+    private static ManagedType<Product> products;
+
+    private static ManagedType<ProductDetail> details;
+
+    @BeforeClass
+    public static void createRepository() {
+        entityManager = DATABASE.createEntityManager();
+        repository = new ProductRepository(entityManager);
+        products = entityManager.getMetamodel().managedType(Product.class);
+        details = entityManager.getMetamodel().managedType(ProductDetail.class);
+    }
+
+    @AfterClass
+    public static void closeEntityManager() {
+        entityManager.close();
+    }
+
+    private static Conditions byTypes(JoinType joinType, JoinStrategy joinStrategy) {
+        Conditions conditions = new Conditions();
+        conditions.getJoinConditions("details", joinType, joinStrategy).in("type", Arrays.asList("type0", "type1"));
+
+        return conditions;
+    }
+
+    /**
+     * Finds with the conditions and returns the rows removed as fetch join duplicates.
+     */
+    private static int duplicatesRemoved(Conditions conditions, int expectedRoots) {
+        List<QueryEvent> events = new ArrayList<>();
+
+        repository.setQueryMetrics(events::add);
+
+        try {
+            assertEquals(expectedRoots, repository.find(conditions, null, ProductRepository.ORDER_BY_ID).size());
+        } finally {
+            repository.setQueryMetrics(null);
+        }
+
+        return events.get(0).getDuplicatesRemoved();
+    }
+
+    @Test
+    public void innerCollectionJoinsBecomeExists() {
+        assertFalse(byTypes(JoinType.INNER, JoinStrategy.AUTO).multipliesRows(products));
+        assertEquals(0, duplicatesRemoved(byTypes(JoinType.INNER, JoinStrategy.AUTO), 10));
+        assertEquals(10, repository.count(byTypes(JoinType.INNER, JoinStrategy.AUTO)));
+    }
+
+    @Test
+    public void explicitJoinRepeatsRoots() {
+        assertTrue(byTypes(JoinType.INNER, JoinStrategy.JOIN).multipliesRows(products));
+        assertEquals(10, duplicatesRemoved(byTypes(JoinType.INNER, JoinStrategy.JOIN), 10));
+    }
+
+    @Test
+    public void outerJoinsAreKept() {
+        assertTrue(byTypes(JoinType.LEFT, JoinStrategy.AUTO).multipliesRows(products));
+        assertEquals(10, duplicatesRemoved(byTypes(JoinType.LEFT, JoinStrategy.AUTO), 10));
+    }
+
+    @Test
+    public void explicitExistsExcludesRootsWithoutMatchWhateverTheJoinType() {
+        Conditions conditions = new Conditions();
+        conditions.getJoinConditions("details", JoinType.LEFT, JoinStrategy.EXISTS).greaterThan("price", 95L);
+
+        assertFalse(conditions.multipliesRows(products));
+        assertEquals(0, duplicatesRemoved(conditions, 1));
+    }
+
+    @Test
+    public void collectionsReferencedByOrAreJoined() {
+        Conditions conditions = new Conditions();
+        Conditions joinConditions = conditions.getJoinConditions("details", JoinType.INNER);
+        conditions.or(conditions.equal("amount", 1L), joinConditions, joinConditions.equal("type", "type2"));
+
+        assertTrue(conditions.multipliesRows(products));
+        assertEquals(10, repository.find(conditions, null, ProductRepository.ORDER_BY_ID).size());
+    }
+
+    @Test
+    public void singularJoinsDoNotMultiplyRows() {
+        Conditions conditions = new Conditions();
+        conditions.getJoinConditions("product", JoinType.LEFT).equal("amount", 1L);
+
+        assertFalse(conditions.multipliesRows(details));
+
+        conditions.getJoinConditions("product", JoinType.LEFT).getJoinConditions("details", JoinType.LEFT).equal("type", "type0");
+
+        assertTrue(conditions.multipliesRows(details));
+    }
+
+    @Test
+    public void fetchedCollectionsAreJoinedByAuto() {
+        for (Product product : repository.find(byTypes(JoinType.INNER, JoinStrategy.AUTO), ProductRepository.FETCH_DETAILS, ProductRepository.ORDER_BY_ID)) {
+            assertEquals(2, product.getDetails().size());
+        }
+
+        entityManager.clear();
+    }
+
+    @Test
+    public void existsLeavesFetchedCollectionsComplete() {
+        for (Product product : repository.find(byTypes(JoinType.INNER, JoinStrategy.EXISTS), ProductRepository.FETCH_DETAILS, ProductRepository.ORDER_BY_ID)) {
+            assertEquals(3, product.getDetails().size());
+        }
+
+        entityManager.clear();
+    }
+
+    @Test
+    public void explicitStrategiesArePartOfTheFingerprint() {
+        assertEquals("join details INNER {type in (:p0)}", byTypes(JoinType.INNER, JoinStrategy.AUTO).getFingerprint());
+        assertEquals("join details INNER EXISTS {type in (:p0)}", byTypes(JoinType.INNER, JoinStrategy.EXISTS).getFingerprint());
+        assertEquals("join details INNER JOIN {type in (:p0)}", byTypes(JoinType.INNER, JoinStrategy.JOIN).getFingerprint());
+    }
+}
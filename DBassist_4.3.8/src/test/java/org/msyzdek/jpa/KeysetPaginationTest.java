@@ -0,0 +1,150 @@
+package org.msyzdek.jpa;
+
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.ClassRule;
+import org.junit.Test;
+
+import javax.persistence.EntityManager;
+import javax.persistence.criteria.JoinType;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.stream.Collectors;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+
+
+public class KeysetPaginationTest {
+
+    @ClassRule
+    public static final TestDatabase DATABASE = new TestDatabase(25, 2);
+
+    private static EntityManager entityManager;
+
+    private static ProductRepository repository;
+
+    @BeforeClass
+    public static void createRepository() {
+        entityManager = DATABASE.createEntityManager();
+        repository = new ProductRepository(entityManager);
+    }
+
+    @AfterClass
+    public static void closeEntityManager() {
+        entityManager.close();
+    }
+
+    private static List<Long> expectedIds() {
+        return repository.find(new Conditions(), null, ProductRepository.ORDER_BY_ID).stream()
+                .sorted(Comparator.comparing(Product::getAmount).reversed().thenComparing(Product::getId))
+                .map(Product::getId)
+                .collect(Collectors.toList());
+    }
+
+    private static Conditions belowAmount(long amount) {
+        Conditions conditions = new Conditions();
+        conditions.lessThan("amount", amount);
+
+        return conditions;
+    }
+
+    private static List<Long> readAllPages(boolean fetchDetails, int pageSize) {
+        return readAllPages(belowAmount(100L), fetchDetails, pageSize);
+    }
+
+    /**
+     * Passes the same conditions for every page.
+     */
+    private static List<Long> readAllPages(Conditions conditions, boolean fetchDetails, int pageSize) {
+        List<Long> ids = new ArrayList<Long>();
+        String token = null;
+
+        do {
+            KeysetPage<Product> page = repository.findPage(conditions, fetchDetails ? ProductRepository.FETCH_DETAILS : null,
+                    Keyset.descending("amount"), pageSize, token);
+
+            for (Product product : page.getContent()) {
+                ids.add(product.getId());
+
+                if (fetchDetails) {
+                    assertEquals(2, product.getDetails().size());
+                }
+            }
+
+            assertEquals(page.hasNext() ? pageSize : page.getContent().size(), page.getContent().size());
+            token = page.getContinuationToken();
+        } while (token != null);
+
+        return ids;
+    }
+
+    @Test
+    public void pagesCoverEveryRowOnceInKeysetOrder() {
+        assertEquals(expectedIds(), readAllPages(false, 7));
+        assertEquals(expectedIds(), readAllPages(false, 1));
+        assertEquals(expectedIds(), readAllPages(false, 25));
+    }
+
+    @Test
+    public void pagesWithFetchedCollectionsHaveFullSize() {
+        assertEquals(expectedIds(), readAllPages(true, 4));
+    }
+
+    @Test
+    public void pagesOfJoinedCollectionsHaveFullSize() {
+        Conditions conditions = new Conditions();
+        conditions.getJoinConditions("details", JoinType.LEFT).in("type", Arrays.asList("type0", "type1"));
+
+        /** every product is joined to both details */
+        assertEquals(expectedIds(), readAllPages(conditions, false, 4));
+        assertEquals(expectedIds(), readAllPages(conditions, true, 4));
+    }
+
+    @Test
+    public void conditionsAreLeftUnchanged() {
+        Conditions conditions = belowAmount(100L);
+
+        readAllPages(conditions, false, 10);
+
+        assertEquals(Collections.singletonList(100L), conditions.getParameterValues());
+        assertEquals("amount < :p0", conditions.getFingerprint());
+    }
+
+    @Test
+    public void templateConditionsPageThrough() {
+        ConditionsTemplate template = ConditionsTemplate.builder().lessThan("amount", "maxAmount", Long.class).build();
+
+        assertEquals(expectedIds(), readAllPages(template.bind(Collections.singletonMap("maxAmount", 100L)), false, 7));
+    }
+
+    @Test
+    public void lastPageHasNoToken() {
+        KeysetPage<Product> page = repository.findPage(null, null, Keyset.ascending("id"), 100, null);
+
+        assertEquals(25, page.getContent().size());
+        assertFalse(page.hasNext());
+        assertNull(page.getContinuationToken());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void rejectsEmptyPages() {
+        repository.findPage(null, null, Keyset.ascending("id"), 0, null);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void rejectsNullableKeysetAttributes() {
+        repository.findPage(null, null, Keyset.ascending("name"), 10, null);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void rejectsTokenOfAnotherKeyset() {
+        String token = repository.findPage(null, null, Keyset.descending("amount"), 3, null).getContinuationToken();
+
+        repository.findPage(null, null, Keyset.ascending("id"), 3, token);
+    }
+}
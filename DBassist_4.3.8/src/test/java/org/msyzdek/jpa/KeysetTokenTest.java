@@ -0,0 +1,117 @@
+package org.msyzdek.jpa;
+
+import org.junit.Test;
+
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.sql.Time;
+import java.sql.Timestamp;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.OffsetDateTime;
+import java.time.ZoneOffset;
+import java.util.Base64;
+import java.util.Date;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+
+public class KeysetTokenTest {
+
+    private static void assertRejected(String token, Class<?>... types) {
+        try {
+            KeysetToken.decode(token, types);
+            fail("Token accepted");
+        } catch (IllegalArgumentException expected) {
+            // rejected
+        }
+    }
+
+    private static byte[] bytes(String token) {
+        return Base64.getUrlDecoder().decode(token);
+    }
+
+    private static String token(byte[] bytes) {
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(bytes);
+    }
+
+    @Test
+    public void decodesEncodedValues() {
+        Timestamp timestamp = new Timestamp(1420070400123L);
+        timestamp.setNanos(123456789);
+        Object[] values = {"name", 1L, 2, (short) 3, 4.5d, 5.5f, new BigDecimal("6.25"), new BigInteger("12345678901234567890"),
+                timestamp, new Date(1420070400000L), Instant.ofEpochSecond(1420070400L, 42),
+                OffsetDateTime.of(2015, 1, 1, 12, 0, 0, 0, ZoneOffset.ofHours(2)), LocalDate.of(2015, 1, 1), true};
+        Class<?>[] types = new Class<?>[values.length];
+
+        for (int i = 0; i < values.length; i++) {
+            types[i] = values[i].getClass();
+        }
+
+        String token = KeysetToken.encode(values);
+
+        assertArrayEquals(values, KeysetToken.decode(token, types));
+        assertTrue(token.matches("[A-Za-z0-9_-]+"));
+    }
+
+    @Test
+    public void convertsValuesToTheAttributeTypes() {
+        String token = KeysetToken.encode(new Object[]{7L, true, new java.sql.Date(86400000L), new Time(3600000L)});
+
+        Object[] values = KeysetToken.decode(token, new Class<?>[]{long.class, boolean.class, java.sql.Date.class, Time.class});
+
+        assertEquals(7L, values[0]);
+        assertEquals(true, values[1]);
+        assertEquals(java.sql.Date.class, values[2].getClass());
+        assertEquals(86400000L, ((Date) values[2]).getTime());
+        assertEquals(Time.class, values[3].getClass());
+        assertEquals(3600000L, ((Date) values[3]).getTime());
+    }
+
+    @Test
+    public void rejectsValuesOfAnotherType() {
+        String token = KeysetToken.encode(new Object[]{"name", 1L});
+
+        assertRejected(token, Long.class, Long.class);
+        assertRejected(token, String.class, int.class);
+        assertRejected(token, String.class);
+        assertRejected(token, String.class, Long.class, Long.class);
+    }
+
+    @Test
+    public void rejectsTamperedTokens() {
+        String token = KeysetToken.encode(new Object[]{"name", 1L});
+        byte[] bytes = bytes(token);
+
+        assertRejected("not a token!", String.class, Long.class);
+        assertRejected("", String.class, Long.class);
+        assertRejected(token.substring(0, token.length() - 3), String.class, Long.class);
+
+        byte[] version = bytes.clone();
+        version[0] = 2;
+        assertRejected(token(version), String.class, Long.class);
+
+        byte[] tag = bytes.clone();
+        tag[3] = 'X';
+        assertRejected(token(tag), String.class, Long.class);
+
+        byte[] trailing = new byte[bytes.length + 1];
+        System.arraycopy(bytes, 0, trailing, 0, bytes.length);
+        assertRejected(token(trailing), String.class, Long.class);
+    }
+
+    @Test
+    public void rejectsMalformedOffsetDateTime() {
+        byte[] bytes = {1, 0, 1, 'o', 0, 3, 'a', 'b', 'c'};
+
+        assertRejected(token(bytes), OffsetDateTime.class);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void encodeRejectsUnsupportedValues() {
+        KeysetToken.encode(new Object[]{new Object()});
+    }
+}
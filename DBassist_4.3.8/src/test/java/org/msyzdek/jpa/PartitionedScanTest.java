@@ -0,0 +1,227 @@
+package org.msyzdek.jpa;
+
+import org.hibernate.LazyInitializationException;
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.ClassRule;
+import org.junit.Test;
+
+import javax.persistence.EntityManager;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+import java.util.TreeSet;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+
+public class PartitionedScanTest {
+
+    @ClassRule
+    public static final TestDatabase DATABASE = new TestDatabase(50, 2);
+
+    private static final ConditionsTemplate BY_AMOUNT = ConditionsTemplate.builder().equal("amount", "amount", Long.class).build();
+
+    private static EntityManager entityManager;
+
+    private static ProductRepository repository;
+
+    @BeforeClass
+    public static void createRepository() {
+        entityManager = DATABASE.createEntityManager();
+        repository = new ProductRepository(entityManager);
+        repository.setAsyncQueryExecutor(new AsyncQueryExecutor(4));
+    }
+
+    @AfterClass
+    public static void closeEntityManager() {
+        entityManager.close();
+    }
+
+    private static List<long[]> split(long min, long max, int partitions) {
+        return new ArrayList<long[]>(AbstractRepository.splitIdRange(min, max, partitions));
+    }
+
+    private static String describe(List<long[]> ranges) {
+        StringBuilder description = new StringBuilder();
+
+        for (long[] range : ranges) {
+            description.append(description.length() > 0 ? " " : "")
+                    .append('[').append(range[0]).append(", ").append(range[1]).append(range[2] == 1 ? "]" : ")");
+        }
+
+        return description.toString();
+    }
+
+    /**
+     * Ranges are contiguous, cover [min, max] and are at most as many as requested.
+     */
+    private static void assertCovers(long min, long max, int partitions) {
+        List<long[]> ranges = split(min, max, partitions);
+
+        assertTrue(ranges.size() <= partitions);
+        assertEquals(min, ranges.get(0)[0]);
+
+        for (int i = 0; i < ranges.size() - 1; i++) {
+            assertEquals(0, ranges.get(i)[2]);
+            assertTrue(ranges.get(i)[0] < ranges.get(i)[1]);
+            assertEquals(ranges.get(i)[1], ranges.get(i + 1)[0]);
+        }
+
+        long[] last = ranges.get(ranges.size() - 1);
+
+        assertEquals(1, last[2]);
+        assertTrue(last[0] <= last[1]);
+        assertEquals(max, last[1]);
+    }
+
+    private static Conditions byAmountBelow(long amount) {
+        Conditions conditions = new Conditions();
+        conditions.lessThan("amount", amount);
+
+        return conditions;
+    }
+
+    @Test
+    public void splitsIntoRangesOfEqualWidth() {
+        assertEquals("[1, 5) [5, 9) [9, 10]", describe(split(1, 10, 3)));
+        assertEquals("[0, 25) [25, 50) [50, 75) [75, 99]", describe(split(0, 99, 4)));
+        assertEquals("[7, 7]", describe(split(7, 7, 4)));
+        assertEquals("[1, 2) [2, 3) [3, 3]", describe(split(1, 3, 20)));
+    }
+
+    @Test
+    public void splitsRangesAtTheEndsOfTheLongDomain() {
+        assertEquals("[9223372036854775802, 9223372036854775805) [9223372036854775805, 9223372036854775807]",
+                describe(split(Long.MAX_VALUE - 5, Long.MAX_VALUE, 2)));
+        assertEquals("[-9223372036854775808, -9223372036854775806) [-9223372036854775806, -9223372036854775804) "
+                        + "[-9223372036854775804, -9223372036854775802) [-9223372036854775802, -9223372036854775801]",
+                describe(split(Long.MIN_VALUE, Long.MIN_VALUE + 7, 4)));
+        assertEquals("[-9223372036854775808, 9223372036854775807]", describe(split(Long.MIN_VALUE, Long.MAX_VALUE, 1)));
+        assertEquals("[-9223372036854775808, 0) [0, 9223372036854775807]", describe(split(Long.MIN_VALUE, Long.MAX_VALUE, 2)));
+    }
+
+    @Test
+    public void rangesCoverTheWholeInterval() {
+        for (int partitions : Arrays.asList(1, 2, 3, 7, 16, 1000)) {
+            assertCovers(0, 0, partitions);
+            assertCovers(1, 1000, partitions);
+            assertCovers(-500, 499, partitions);
+            assertCovers(Long.MIN_VALUE, Long.MAX_VALUE, partitions);
+            assertCovers(Long.MIN_VALUE, 0, partitions);
+            assertCovers(-1, Long.MAX_VALUE, partitions);
+            assertCovers(Long.MAX_VALUE - 999, Long.MAX_VALUE, partitions);
+        }
+    }
+
+    @Test
+    public void rejectsInvalidRanges() {
+        for (long[] invalid : new long[][]{{2, 1, 1}, {1, 2, 0}, {1, 2, -1}}) {
+            try {
+                AbstractRepository.splitIdRange(invalid[0], invalid[1], (int) invalid[2]);
+                fail("Split " + Arrays.toString(invalid));
+            } catch (IllegalArgumentException expected) {
+                /** empty range or no partition */
+            }
+        }
+    }
+
+    @Test
+    public void scansEveryMatchingRowOnce() {
+        List<Product> rows = new ArrayList<Product>();
+        List<Integer> batchSizes = new ArrayList<Integer>();
+
+        long count = repository.scanPartitioned(() -> byAmountBelow(5L), ProductRepository.FETCH_DETAILS, 3, 4, batch -> {
+            batchSizes.add(batch.size());
+            rows.addAll(batch);
+        });
+
+        assertEquals(25, count);
+        assertEquals(25, rows.size());
+
+        Set<Long> ids = new TreeSet<Long>();
+
+        for (Product product : rows) {
+            assertTrue(product.getAmount() < 5L);
+            assertEquals(2, product.getDetails().size());
+            assertFalse(entityManager.contains(product));
+            ids.add(product.getId());
+        }
+
+        assertEquals(25, ids.size());
+        assertTrue(batchSizes.stream().allMatch(size -> size >= 1 && size <= 4));
+    }
+
+    @Test
+    public void consumedRowsAreDetached() {
+        List<Long> initialized = Collections.synchronizedList(new ArrayList<Long>());
+
+        /** the last row of every batch included */
+        long count = repository.scanPartitioned(() -> byAmountBelow(5L), null, 2, 3, batch -> {
+            for (Product product : batch) {
+                try {
+                    product.getDetails().size();
+                    initialized.add(product.getId());
+                } catch (LazyInitializationException expected) {
+                    /** not fetched */
+                }
+            }
+        });
+
+        assertEquals(25, count);
+        assertEquals(Collections.<Long>emptyList(), initialized);
+    }
+
+    @Test
+    public void scansNothingWithoutMatchingRows() {
+        assertEquals(0, repository.scanPartitioned(() -> byAmountBelow(0L), null, 2, 10, batch -> fail("Consumed " + batch)));
+    }
+
+    @Test
+    public void consumerFailureCancelsTheScan() {
+        try {
+            repository.scanPartitioned(Conditions::new, null, 2, 1, batch -> {
+                throw new IllegalStateException("consumer failed");
+            });
+            fail("Consumer failure swallowed");
+        } catch (IllegalStateException expected) {
+            assertEquals("consumer failed", expected.getMessage());
+        }
+
+        /** the workers returned their permits */
+        assertEquals(50, repository.scanPartitioned(Conditions::new, null, 4, 7, batch -> {
+        }));
+    }
+
+    @Test
+    public void rejectsConditionsOfTemplates() {
+        try {
+            repository.scanPartitioned(() -> BY_AMOUNT.bind(Collections.singletonMap("amount", 1L)), null, 2, 10, batch -> {
+            });
+            fail("Read only conditions accepted");
+        } catch (IllegalArgumentException expected) {
+            assertTrue(expected.getMessage().contains("template"));
+        }
+    }
+
+    @Test
+    public void rejectsInvalidParallelismAndBatchSize() {
+        List<String> failures = new ArrayList<String>();
+
+        for (int[] invalid : new int[][]{{0, 10}, {2, 0}}) {
+            try {
+                repository.scanPartitioned(Conditions::new, null, invalid[0], invalid[1], batch -> {
+                });
+            } catch (IllegalArgumentException expected) {
+                failures.add(expected.getMessage());
+            }
+        }
+
+        assertEquals(2, failures.size());
+    }
+}
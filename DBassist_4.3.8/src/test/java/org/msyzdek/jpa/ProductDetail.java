@@ -0,0 +1,57 @@
+package org.msyzdek.jpa;
+
+import javax.persistence.Column;
+import javax.persistence.Entity;
+import javax.persistence.GeneratedValue;
+import javax.persistence.GenerationType;
+import javax.persistence.Id;
+import javax.persistence.JoinColumn;
+import javax.persistence.ManyToOne;
+import javax.persistence.Table;
+
+
+@Entity
+@Table(name = "PRODUCT_DETAILS")
+public class ProductDetail {
+
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    @Column(name = "ID")
+    private Long id;
+
+    @Column(name = "TYPE")
+    private String type;
+
+    @Column(name = "PRICE")
+    private Long price;
+
+    @ManyToOne(optional = false)
+    @JoinColumn(name = "PRODUCT_ID")
+    private Product product;
+
+    public ProductDetail() {
+    }
+
+    public ProductDetail(Product product, String type, Long price) {
+        this.product = product;
+        this.type = type;
+        this.price = price;
+        product.getDetails().add(this);
+    }
+
+    public Long getId() {
+        return id;
+    }
+
+    public String getType() {
+        return type;
+    }
+
+    public Long getPrice() {
+        return price;
+    }
+
+    public Product getProduct() {
+        return product;
+    }
+}
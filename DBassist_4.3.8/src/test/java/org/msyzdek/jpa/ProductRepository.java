@@ -0,0 +1,51 @@
+package org.msyzdek.jpa;
+
+import javax.persistence.EntityManager;
+import javax.persistence.criteria.FetchParent;
+import javax.persistence.criteria.JoinType;
+import java.util.Collections;
+import java.util.List;
+import java.util.function.Function;
+
+
+/**
+ * Repository of the test entities, tests of this package call the protected API directly. The public methods serve
+ * DBassist-benchmarks and PostgreSQL-example, which share this model through the test jar.
+ */
+public class ProductRepository extends AbstractRepository<Product> {
+
+    static final List<Function<FetchParent<?, ?>, FetchParent<?, ?>>> FETCH_DETAILS =
+            Collections.singletonList(ProductRepository::fetchDetails);
+
+    static final OrderBy<Product> ORDER_BY_ID = (criteriaBuilder, criteriaQuery, root) -> criteriaQuery.orderBy(criteriaBuilder.asc(root.get("id")));
+
+    public ProductRepository(EntityManager entityManager) {
+        super(Product.class);
+        this.entityManager = entityManager;
+    }
+
+    ProductRepository(EntityManager entityManager, int compiledQueryCacheSize) {
+        super(Product.class, compiledQueryCacheSize);
+        this.entityManager = entityManager;
+    }
+
+    private static FetchParent<?, ?> fetchDetails(FetchParent<?, ?> root) {
+        return (FetchParent<?, ?>) root.fetch("details", JoinType.LEFT);
+    }
+
+    public void adviseIndexes(IndexAdvisor indexAdvisor) {
+        setIndexAdvisor(indexAdvisor);
+    }
+
+    public List<Product> findProducts(Conditions conditions, boolean fetchDetails) {
+        return find(conditions, fetchDetails ? FETCH_DETAILS : null, ORDER_BY_ID);
+    }
+
+    public List<Long> findAmounts(Conditions conditions) {
+        return findAttribute(Long.class, "amount", conditions, null, ORDER_BY_ID, null);
+    }
+
+    public long countProducts(Conditions conditions) {
+        return count(conditions);
+    }
+}
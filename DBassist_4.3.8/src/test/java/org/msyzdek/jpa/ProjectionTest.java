@@ -0,0 +1,145 @@
+package org.msyzdek.jpa;
+
+import org.hibernate.Session;
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.ClassRule;
+import org.junit.Test;
+
+import javax.persistence.EntityManager;
+import javax.persistence.Tuple;
+import javax.persistence.criteria.JoinType;
+import java.util.Arrays;
+import java.util.List;
+import java.util.stream.Collectors;
+
+import static org.junit.Assert.assertEquals;
+
+
+public class ProjectionTest {
+
+    @ClassRule
+    public static final TestDatabase DATABASE = new TestDatabase(10, 2);
+
+    private static EntityManager entityManager;
+
+    private static ProductRepository repository;
+
+    public static class ProductSummary {
+
+        private final Long id;
+
+        private final String name;
+
+        private final Long amount;
+
+        public ProductSummary(Long id, String name, Long amount) {
+            this.id = id;
+            this.name = name;
+            this.amount = amount;
+        }
+
+        @Override
+        public String toString() {
+            return id + " " + name + " " + amount;
+        }
+    }
+
+    public static class DetailRow {
+
+        private final String name;
+
+        private final String type;
+
+        private final Long price;
+
+        public DetailRow(String name, String type, Long price) {
+            this.name = name;
+            this.type = type;
+            this.price = price;
+        }
+
+        @Override
+        public String toString() {
+            return name + " " + type + " " + price;
+        }
+    }
+
+    @BeforeClass
+    public static void createRepository() {
+        entityManager = DATABASE.createEntityManager();
+        repository = new ProductRepository(entityManager);
+    }
+
+    @AfterClass
+    public static void closeEntityManager() {
+        entityManager.close();
+    }
+
+    private static Conditions amountBelow(long amount) {
+        Conditions conditions = new Conditions();
+        conditions.lessThan("amount", amount);
+
+        return conditions;
+    }
+
+    private static List<String> sorted(List<?> rows) {
+        return rows.stream().map(Object::toString).sorted().collect(Collectors.toList());
+    }
+
+    @Test
+    public void selectsAttributesIntoTheProjection() {
+        List<ProductSummary> summaries = repository.findProjection(ProductSummary.class, Arrays.asList("id", "name", "amount"),
+                amountBelow(3L), ProductRepository.ORDER_BY_ID, false);
+
+        assertEquals("[1 product1 1, 2 product2 2, 10 product10 0]", summaries.toString());
+        assertEquals(0, entityManager.unwrap(Session.class).getStatistics().getEntityCount());
+    }
+
+    @Test
+    public void reusedQueryBindsNewValues() {
+        repository.findProjection(ProductSummary.class, Arrays.asList("id", "name", "amount"), amountBelow(3L), ProductRepository.ORDER_BY_ID, false);
+
+        assertEquals("[10 product10 0]", repository.findProjection(ProductSummary.class, Arrays.asList("id", "name", "amount"),
+                amountBelow(1L), ProductRepository.ORDER_BY_ID, false).toString());
+    }
+
+    @Test
+    public void leftJoinsAssociationsWithoutJoinConditions() {
+        List<DetailRow> rows = repository.findProjection(DetailRow.class, Arrays.asList("name", "details.type", "details.price"),
+                amountBelow(2L), null, false);
+
+        assertEquals("[product1 type0 10, product1 type1 11, product10 type0 100, product10 type1 101]", sorted(rows).toString());
+    }
+
+    @Test
+    public void sharesJoinsWithTheConditions() {
+        Conditions conditions = amountBelow(2L);
+        Conditions details = conditions.getJoinConditions("details", JoinType.INNER);
+        details.equal("type", "type1");
+
+        List<DetailRow> rows = repository.findProjection(DetailRow.class, Arrays.asList("name", "details.type", "details.price"),
+                conditions, null, false);
+
+        assertEquals("[product1 type1 11, product10 type1 101]", sorted(rows).toString());
+    }
+
+    @Test
+    public void tuplesAreAliasedByAttributePath() {
+        Conditions conditions = amountBelow(2L);
+        conditions.getJoinConditions("details", JoinType.INNER).greaterThan("price", 100L);
+
+        List<Tuple> tuples = repository.findTuples(Arrays.asList("id", "details.price"), conditions, ProductRepository.ORDER_BY_ID, false);
+
+        assertEquals(1, tuples.size());
+        assertEquals(Long.valueOf(10), tuples.get(0).get("id", Long.class));
+        assertEquals(Long.valueOf(101), tuples.get(0).get("details.price", Long.class));
+    }
+
+    @Test
+    public void distinctTuples() {
+        List<Tuple> tuples = repository.findTuples(Arrays.asList("details.type"), amountBelow(5L), null, true);
+
+        assertEquals("[type0, type1]", sorted(tuples.stream().map(tuple -> tuple.get("details.type")).collect(Collectors.toList())).toString());
+    }
+}
@@ -0,0 +1,185 @@
+package org.msyzdek.jpa;
+
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.ClassRule;
+import org.junit.Test;
+
+import javax.persistence.EntityManager;
+import javax.persistence.criteria.FetchParent;
+import javax.persistence.criteria.JoinType;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+import java.util.stream.LongStream;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+import static org.msyzdek.jpa.QueryLimits.Overflow.FAIL;
+import static org.msyzdek.jpa.QueryLimits.Overflow.TRUNCATE;
+
+
+public class QueryLimitsTest {
+
+    @ClassRule
+    public static final TestDatabase DATABASE = new TestDatabase(20, 4);
+
+    private static EntityManager entityManager;
+
+    private static ProductRepository repository;
+
+    @BeforeClass
+    public static void createRepository() {
+        entityManager = DATABASE.createEntityManager();
+        repository = new ProductRepository(entityManager);
+    }
+
+    @AfterClass
+    public static void closeEntityManager() {
+        entityManager.close();
+    }
+
+    private static List<Long> ids(List<Product> products) {
+        return products.stream().map(Product::getId).collect(Collectors.toList());
+    }
+
+    private static List<Long> range(long from, long to) {
+        return LongStream.rangeClosed(from, to).boxed().collect(Collectors.toList());
+    }
+
+    private static List<Product> find(List<Function<FetchParent<?, ?>, FetchParent<?, ?>>> fetchCallbacks, QueryLimits queryLimits) {
+        return repository.find(new Conditions(), fetchCallbacks, ProductRepository.ORDER_BY_ID, null, queryLimits);
+    }
+
+    private static void assertExceeded(int maxRows, Runnable query) {
+        try {
+            query.run();
+            fail("Result of more than " + maxRows + " rows returned");
+        } catch (ResultSizeExceededException expected) {
+            assertEquals(maxRows, expected.getMaxRows());
+            assertEquals("Query of " + Product.class.getName() + " returned more than " + maxRows + " rows", expected.getMessage());
+        }
+    }
+
+    @Test
+    public void ownValuesOverrideTheDefaults() {
+        QueryLimits defaults = QueryLimits.none().withMaxRows(100, FAIL).withTimeout(10, TimeUnit.SECONDS).withFetchSize(50);
+        QueryLimits limits = QueryLimits.none().withMaxRows(5, TRUNCATE).withTimeout(2, TimeUnit.SECONDS).withAdaptiveFetchSize().orElse(defaults);
+
+        assertEquals(5, limits.getMaxRows());
+        assertEquals(TRUNCATE, limits.getOverflow());
+        assertEquals(2000, limits.getTimeoutMillis());
+        assertTrue(limits.isAdaptiveFetchSize());
+        assertEquals(0, limits.getFetchSize());
+    }
+
+    @Test
+    public void unsetValuesFallBackToTheDefaults() {
+        QueryLimits defaults = QueryLimits.none().withMaxRows(100, TRUNCATE).withTimeout(10, TimeUnit.SECONDS).withAdaptiveFetchSize();
+        QueryLimits limits = QueryLimits.none().orElse(defaults);
+
+        assertEquals(100, limits.getMaxRows());
+        assertEquals(TRUNCATE, limits.getOverflow());
+        assertEquals(10000, limits.getTimeoutMillis());
+        assertTrue(limits.isAdaptiveFetchSize());
+
+        /** the overflow goes with the maximum it belongs to */
+        limits = QueryLimits.none().withFetchSize(50).orElse(defaults);
+
+        assertEquals(TRUNCATE, limits.getOverflow());
+        assertFalse(limits.isAdaptiveFetchSize());
+        assertEquals(50, limits.getFetchSize());
+    }
+
+    @Test
+    public void withoutMaxRowsKeepsTheOtherLimits() {
+        QueryLimits limits = QueryLimits.none().withMaxRows(5, TRUNCATE).withTimeout(1, TimeUnit.MINUTES).withFetchSize(50).withoutMaxRows();
+
+        assertEquals("maxRows 0 FAIL, timeout 60000 ms, fetch size 50", limits.toString());
+        assertEquals("maxRows 0 FAIL, timeout 0 ms, fetch size adaptive", QueryLimits.none().withAdaptiveFetchSize().toString());
+    }
+
+    @Test
+    public void rejectsValuesBelowOne() {
+        List<Runnable> invalid = Arrays.asList(
+                () -> QueryLimits.none().withMaxRows(0, FAIL),
+                () -> QueryLimits.none().withTimeout(0, TimeUnit.SECONDS),
+                () -> QueryLimits.none().withFetchSize(-1));
+
+        for (Runnable limits : invalid) {
+            try {
+                limits.run();
+                fail("Invalid limit accepted");
+            } catch (IllegalArgumentException expected) {
+                /** unset values are expressed by not calling the method */
+            }
+        }
+    }
+
+    @Test
+    public void failsOrTruncatesAboveTheMaximum() {
+        assertExceeded(19, () -> find(null, QueryLimits.none().withMaxRows(19, FAIL)));
+        assertEquals(range(1, 20), ids(find(null, QueryLimits.none().withMaxRows(20, FAIL))));
+        assertEquals(range(1, 5), ids(find(null, QueryLimits.none().withMaxRows(5, TRUNCATE))));
+    }
+
+    @Test
+    public void fetchedCollectionsCountRootsNotRows() {
+        /** a single query would read 80 joined rows */
+        assertEquals(range(1, 20), ids(find(ProductRepository.FETCH_DETAILS, QueryLimits.none().withMaxRows(20, FAIL))));
+        assertExceeded(19, () -> find(ProductRepository.FETCH_DETAILS, QueryLimits.none().withMaxRows(19, FAIL)));
+
+        List<Product> products = find(ProductRepository.FETCH_DETAILS, QueryLimits.none().withMaxRows(3, TRUNCATE));
+
+        assertEquals(range(1, 3), ids(products));
+        assertTrue(products.stream().allMatch(product -> product.getDetails().size() == 4));
+
+        entityManager.clear();
+    }
+
+    @Test
+    public void joinedCollectionsCountRootsNotRows() {
+        Conditions conditions = new Conditions();
+        conditions.getJoinConditions("details", JoinType.LEFT).in("type", Arrays.asList("type0", "type1"));
+
+        assertEquals(range(1, 20), ids(repository.find(conditions, null, ProductRepository.ORDER_BY_ID, null, QueryLimits.none().withMaxRows(20, FAIL))));
+    }
+
+    @Test
+    public void limitsStatelessAndAttributeQueries() {
+        assertEquals(range(1, 4), ids(repository.find(new Conditions(), null, ProductRepository.ORDER_BY_ID, QueryMode.STATELESS,
+                QueryLimits.none().withMaxRows(4, TRUNCATE))));
+        assertEquals(5, repository.findAttributeDistinct(Long.class, "amount", new Conditions(), null, null, null,
+                QueryLimits.none().withMaxRows(5, TRUNCATE)).size());
+        assertExceeded(9, () -> repository.findAttributeDistinct(Long.class, "amount", new Conditions(), null, null, null,
+                QueryLimits.none().withMaxRows(9, FAIL)));
+    }
+
+    @Test
+    public void callsOverrideTheRepositoryDefaults() {
+        repository.setDefaultQueryLimits(QueryLimits.none().withMaxRows(3, TRUNCATE));
+
+        try {
+            assertEquals(range(1, 3), ids(find(null, null)));
+            assertEquals(range(1, 3), ids(find(null, QueryLimits.none().withTimeout(5, TimeUnit.SECONDS))));
+            assertEquals(range(1, 6), ids(find(null, QueryLimits.none().withMaxRows(6, TRUNCATE))));
+        } finally {
+            repository.setDefaultQueryLimits(null);
+        }
+
+        assertEquals(20, find(null, null).size());
+    }
+
+    @Test
+    public void adaptiveFetchSizeReturnsCompleteResults() {
+        for (int i = 0; i < 3; i++) {
+            assertEquals(range(1, 20), ids(find(ProductRepository.FETCH_DETAILS, QueryLimits.none().withAdaptiveFetchSize())));
+        }
+
+        entityManager.clear();
+    }
+}
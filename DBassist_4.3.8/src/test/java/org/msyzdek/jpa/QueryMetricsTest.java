@@ -0,0 +1,97 @@
+package org.msyzdek.jpa;
+
+import org.junit.AfterClass;
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.ClassRule;
+import org.junit.Test;
+import org.msyzdek.jpa.metrics.QueryEvent;
+
+import javax.persistence.EntityManager;
+import javax.persistence.criteria.JoinType;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+
+public class QueryMetricsTest {
+
+    @ClassRule
+    public static final TestDatabase DATABASE = new TestDatabase(10, 3);
+
+    private static EntityManager entityManager;
+
+    private static ProductRepository repository;
+
+    private final List<QueryEvent> events = new ArrayList<>();
+
+    @BeforeClass
+    public static void createRepository() {
+        entityManager = DATABASE.createEntityManager();
+        repository = new ProductRepository(entityManager);
+    }
+
+    @AfterClass
+    public static void closeEntityManager() {
+        entityManager.close();
+    }
+
+    @Before
+    public void recordEvents() {
+        repository.setQueryMetrics(events::add);
+    }
+
+    @Test
+    public void reportsRowsAndRemovedDuplicates() {
+        Conditions conditions = new Conditions();
+        conditions.lessThan("amount", 5L);
+
+        repository.find(conditions, ProductRepository.FETCH_DETAILS, ProductRepository.ORDER_BY_ID);
+
+        assertEquals(1, events.size());
+
+        QueryEvent event = events.get(0);
+
+        assertEquals(ProductRepository.class, event.getRepositoryClass());
+        assertEquals("find", event.getOperation());
+        assertSame(conditions, event.getConditions());
+        assertTrue(event.getShape(), event.getShape().contains("amount < :p0"));
+        assertEquals(5, event.getRows());
+        assertEquals(10, event.getDuplicatesRemoved());
+        assertTrue(event.getBuildNanos() > 0);
+        assertTrue(event.getExecuteNanos() > 0);
+    }
+
+    @Test
+    public void reportsCounts() {
+        repository.count(new Conditions());
+
+        assertEquals("count", events.get(0).getOperation());
+        assertEquals(1, events.get(0).getRows());
+    }
+
+    @Test
+    public void reportsUnshapedQueries() {
+        Conditions conditions = new Conditions();
+        Conditions details = conditions.getJoinConditions("details", JoinType.LEFT);
+        conditions.or((cb, root) -> cb.isNull(root.get("name")), details, details.equal("type", "type0"));
+
+        repository.find(conditions, null, ProductRepository.ORDER_BY_ID);
+
+        assertNull(events.get(0).getShape());
+        assertEquals("unshaped", events.get(0).getShapeId());
+        assertEquals(10, events.get(0).getRows());
+    }
+
+    @Test
+    public void nullDisablesInstrumentation() {
+        repository.setQueryMetrics(null);
+        repository.count(new Conditions());
+
+        assertTrue(events.isEmpty());
+    }
+}
@@ -0,0 +1,160 @@
+package org.msyzdek.jpa;
+
+import org.hibernate.Session;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.ClassRule;
+import org.junit.Test;
+
+import javax.persistence.EntityManager;
+import javax.persistence.criteria.JoinType;
+import java.util.Collections;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+
+public class QueryModeTest {
+
+    @ClassRule
+    public static final TestDatabase DATABASE = new TestDatabase(10, 3);
+
+    private EntityManager entityManager;
+
+    private ProductRepository repository;
+
+    @Before
+    public void beginTransaction() {
+        entityManager = DATABASE.createEntityManager();
+        entityManager.getTransaction().begin();
+        repository = new ProductRepository(entityManager);
+    }
+
+    @After
+    public void rollback() {
+        entityManager.getTransaction().rollback();
+        entityManager.close();
+    }
+
+    private static Conditions byAmount(long amount) {
+        Conditions conditions = new Conditions();
+        conditions.equal("amount", amount);
+
+        return conditions;
+    }
+
+    private long countByName(String name) {
+        return (Long) entityManager.createQuery("select count(p) from Product p where p.name = :name")
+                .setParameter("name", name)
+                .getSingleResult();
+    }
+
+    @Test
+    public void readOnlyEntitiesAreNotDirtyChecked() {
+        List<Product> products = repository.find(byAmount(3L), null, ProductRepository.ORDER_BY_ID, QueryMode.READ_ONLY);
+
+        assertEquals(1, products.size());
+        assertTrue(entityManager.unwrap(Session.class).isReadOnly(products.get(0)));
+
+        products.get(0).setName("changed");
+        entityManager.flush();
+
+        assertEquals(0, countByName("changed"));
+    }
+
+    @Test
+    public void readOnlyQueriesDoNotFlush() {
+        Product product = repository.find(byAmount(3L), null, null).get(0);
+        product.setAmount(42L);
+
+        assertTrue(repository.find(byAmount(42L), null, null, QueryMode.READ_ONLY).isEmpty());
+        assertEquals(1, repository.find(byAmount(42L), null, null, QueryMode.MANAGED).size());
+    }
+
+    @Test
+    public void defaultQueryModeAppliesToEveryQuery() {
+        repository.setDefaultQueryMode(QueryMode.READ_ONLY);
+
+        Product product = repository.find(byAmount(4L), null, null).get(0);
+
+        assertTrue(entityManager.unwrap(Session.class).isReadOnly(product));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void statelessIsNotADefault() {
+        repository.setDefaultQueryMode(QueryMode.STATELESS);
+    }
+
+    @Test
+    public void statelessEntitiesAreDetached() {
+        List<Product> products = repository.find(new Conditions(), ProductRepository.FETCH_DETAILS, ProductRepository.ORDER_BY_ID, QueryMode.STATELESS);
+
+        assertEquals(10, products.size());
+
+        for (Product product : products) {
+            assertFalse(entityManager.contains(product));
+            assertEquals(3, product.getDetails().size());
+        }
+    }
+
+    @Test
+    public void statelessQueriesJoinTheTransaction() {
+        Product product = repository.find(byAmount(5L), null, null).get(0);
+        product.setAmount(42L);
+        entityManager.flush();
+
+        List<Product> products = repository.find(byAmount(42L), null, null, QueryMode.STATELESS);
+
+        assertEquals(1, products.size());
+        assertEquals(product.getId(), products.get(0).getId());
+
+        /** the borrowed connection is still usable */
+        assertEquals(1, repository.count(byAmount(42L)));
+    }
+
+    @Test
+    public void statelessQueriesRejectImplicitParameters() {
+        Conditions conditions = new Conditions();
+        Conditions details = conditions.getJoinConditions("details", JoinType.LEFT);
+        conditions.or((cb, root) -> cb.equal(root.get("name"), cb.literal("product1")), details, details.equal("type", "none"));
+
+        try {
+            repository.find(conditions, null, null, QueryMode.STATELESS);
+            fail("Literal bound as an implicit parameter");
+        } catch (UnsupportedOperationException expected) {
+            /** Hibernate binds string literals as parameters the conditions do not know */
+        }
+    }
+
+    @Test
+    public void statelessStreamReadsCommittedRows() {
+        Product product = repository.find(byAmount(6L), null, null).get(0);
+        product.setAmount(42L);
+        entityManager.flush();
+
+        try (Stream<Product> stream = repository.stream(new Conditions(), Collections.emptyList(), ProductRepository.ORDER_BY_ID, 4, QueryMode.STATELESS)) {
+            List<Product> products = stream.collect(Collectors.toList());
+
+            assertEquals(10, products.size());
+            assertTrue(products.stream().noneMatch(entityManager::contains));
+            assertTrue(products.stream().noneMatch(streamed -> streamed.getAmount() == 42L));
+        }
+    }
+
+    @Test
+    public void statelessStreamsClosedEarlyEndTheirReadTransaction() {
+        /** more streams than the pool holds connections */
+        for (int i = 0; i < 30; i++) {
+            try (Stream<Product> stream = repository.stream(new Conditions(), Collections.emptyList(), ProductRepository.ORDER_BY_ID, 4, QueryMode.STATELESS)) {
+                assertEquals(Long.valueOf(1L), stream.findFirst().get().getId());
+            }
+        }
+
+        assertEquals(10, repository.find(new Conditions(), null, null, QueryMode.STATELESS).size());
+    }
+}
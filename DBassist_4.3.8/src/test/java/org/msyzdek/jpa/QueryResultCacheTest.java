@@ -0,0 +1,173 @@
+package org.msyzdek.jpa;
+
+import org.junit.ClassRule;
+import org.junit.Test;
+
+import javax.persistence.EntityManager;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+
+public class QueryResultCacheTest {
+
+    @ClassRule
+    public static final TestDatabase DATABASE = new TestDatabase(10, 1);
+
+    /**
+     * Entity type no other test writes, the write tracker is global.
+     */
+    private static final class Unwritten {
+    }
+
+    private static final class Written {
+    }
+
+    private static QueryResultCache.Key key(String kind, Object... values) {
+        return new QueryResultCache.Key(QueryShape.of(kind, Product.class, null, false, null, null), null, Arrays.asList(values));
+    }
+
+    private static long generation() {
+        return EntityWriteTracker.currentGeneration();
+    }
+
+    @Test
+    public void keyIncludesValuesAndMode() {
+        QueryShape shape = QueryShape.of("find", Product.class, null, false, null, null);
+
+        assertEquals(key("find", 1L), key("find", 1L));
+        assertNotEquals(key("find", 1L), key("find", 2L));
+        assertNotEquals(key("find", 1L), new QueryResultCache.Key(shape, QueryMode.READ_ONLY, Collections.<Object>singletonList(1L)));
+    }
+
+    @Test
+    public void evictsLeastRecentlyUsedEntries() {
+        QueryResultCache cache = new QueryResultCache(2, TimeUnit.MINUTES.toNanos(1));
+        long generation = generation();
+
+        cache.put(key("find", 1L), "one", Collections.<Class<?>>singleton(Unwritten.class), generation);
+        cache.put(key("find", 2L), "two", Collections.<Class<?>>singleton(Unwritten.class), generation);
+        assertEquals("one", cache.get(key("find", 1L)));
+        cache.put(key("find", 3L), "three", Collections.<Class<?>>singleton(Unwritten.class), generation);
+
+        assertEquals("one", cache.get(key("find", 1L)));
+        assertNull(cache.get(key("find", 2L)));
+        assertEquals("three", cache.get(key("find", 3L)));
+    }
+
+    @Test
+    public void expiresAfterTheTimeToLive() throws InterruptedException {
+        QueryResultCache cache = new QueryResultCache(10, TimeUnit.MILLISECONDS.toNanos(20));
+
+        cache.put(key("find", 1L), "one", Collections.<Class<?>>singleton(Unwritten.class), generation());
+        assertEquals("one", cache.get(key("find", 1L)));
+
+        Thread.sleep(50);
+
+        assertNull(cache.get(key("find", 1L)));
+    }
+
+    @Test
+    public void dropsEntriesOfWrittenTypes() {
+        QueryResultCache cache = new QueryResultCache(10, TimeUnit.MINUTES.toNanos(1));
+        long generation = generation();
+
+        cache.put(key("find", 1L), "one", Collections.<Class<?>>singleton(Written.class), generation);
+        assertEquals("one", cache.get(key("find", 1L)));
+
+        EntityWriteTracker.written(Written.class);
+
+        assertNull(cache.get(key("find", 1L)));
+    }
+
+    @Test
+    public void skipsResultsReadWhileTheirTypeWasWritten() {
+        QueryResultCache cache = new QueryResultCache(10, TimeUnit.MINUTES.toNanos(1));
+        long generation = generation();
+
+        EntityWriteTracker.written(Written.class);
+        cache.put(key("find", 1L), "one", Collections.<Class<?>>singleton(Written.class), generation);
+
+        assertNull(cache.get(key("find", 1L)));
+    }
+
+    @Test
+    public void cachedEntitiesAreLoadedIntoTheCallersPersistenceContext() {
+        EntityManager first = DATABASE.createEntityManager();
+        EntityManager second = DATABASE.createEntityManager();
+        List<String> operations = new CopyOnWriteArrayList<String>();
+
+        try {
+            ProductRepository repository = new ProductRepository(first);
+            repository.enableResultCache(10, 1, TimeUnit.MINUTES);
+            repository.setQueryMetrics(event -> operations.add(event.getOperation()));
+
+            List<Product> firstProducts = repository.find(byAmount(3L), null, ProductRepository.ORDER_BY_ID);
+
+            /**
+             * The same repository on another persistence context, as with a container-managed EntityManager.
+             */
+            repository.entityManager = second;
+            List<Product> secondProducts = repository.find(byAmount(3L), null, ProductRepository.ORDER_BY_ID);
+
+            assertEquals(1, firstProducts.size());
+            assertEquals(firstProducts.get(0).getId(), secondProducts.get(0).getId());
+            assertNotSame(firstProducts.get(0), secondProducts.get(0));
+            assertTrue(second.contains(secondProducts.get(0)));
+
+            repository.entityManager = first;
+            assertSame(firstProducts.get(0), repository.find(byAmount(3L), null, ProductRepository.ORDER_BY_ID).get(0));
+
+            for (int i = 0; i < 3; i++) {
+                assertEquals(1, repository.count(byAmount(3L)));
+            }
+
+            assertEquals(1, Collections.frequency(operations, "find"));
+            assertEquals(1, Collections.frequency(operations, "count"));
+        } finally {
+            first.close();
+            second.close();
+        }
+    }
+
+    @Test
+    public void writesInvalidateCachedResults() {
+        EntityManager entityManager = DATABASE.createEntityManager();
+
+        try {
+            ProductRepository repository = new ProductRepository(entityManager);
+            repository.enableResultCache(10, 1, TimeUnit.MINUTES);
+
+            assertEquals(1, repository.count(byAmount(5L)));
+            assertEquals(1, repository.count(byAmount(5L)));
+
+            DATABASE.inTransaction(writer -> {
+                writer.persist(new Product("added", 5L));
+            });
+
+            assertEquals(2, repository.count(byAmount(5L)));
+            assertEquals(2, repository.find(byAmount(5L), null, ProductRepository.ORDER_BY_ID).size());
+        } finally {
+            entityManager.close();
+            DATABASE.inTransaction(writer -> {
+                writer.createQuery("delete from Product where name = 'added'").executeUpdate();
+            });
+        }
+    }
+
+    private static Conditions byAmount(long amount) {
+        Conditions conditions = new Conditions();
+        conditions.equal("amount", amount);
+
+        return conditions;
+    }
+}
@@ -0,0 +1,115 @@
+package org.msyzdek.jpa;
+
+import org.junit.Test;
+
+import javax.persistence.criteria.FetchParent;
+import javax.persistence.criteria.JoinType;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.function.Function;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+
+
+public class QueryShapeTest {
+
+    private static final Function<FetchParent<?, ?>, FetchParent<?, ?>> FETCH_DETAILS = root -> (FetchParent<?, ?>) root.fetch("details");
+
+    private static Conditions conditions(String name, long minAmount, String type) {
+        Conditions conditions = new Conditions();
+        conditions.equal("name", name);
+        conditions.greaterThan("amount", minAmount);
+        conditions.getJoinConditions("details", JoinType.INNER).equal("type", type);
+
+        return conditions;
+    }
+
+    @Test
+    public void fingerprintDoesNotDependOnValues() {
+        assertEquals(conditions("a", 1, "x").getFingerprint(), conditions("b", 2, "y").getFingerprint());
+        assertEquals("name = :p0 and amount > :p1 and join details INNER {type = :p2}", conditions("a", 1, "x").getFingerprint());
+    }
+
+    @Test
+    public void fingerprintDependsOnOperatorsAndJoins() {
+        Conditions lessThan = new Conditions();
+        lessThan.equal("name", "a");
+        lessThan.lessThan("amount", 1L);
+        lessThan.getJoinConditions("details", JoinType.INNER).equal("type", "x");
+
+        Conditions leftJoin = new Conditions();
+        leftJoin.equal("name", "a");
+        leftJoin.greaterThan("amount", 1L);
+        leftJoin.getJoinConditions("details", JoinType.LEFT).equal("type", "x");
+
+        assertNotEquals(conditions("a", 1, "x").getFingerprint(), lessThan.getFingerprint());
+        assertNotEquals(conditions("a", 1, "x").getFingerprint(), leftJoin.getFingerprint());
+    }
+
+    @Test
+    public void fingerprintOfInListDependsOnTheStrategy() {
+        Conditions single = new Conditions();
+        single.in("amount", Arrays.asList(1L, 2L));
+
+        Conditions otherSize = new Conditions();
+        otherSize.in("amount", Arrays.asList(1L, 2L, 3L));
+
+        Conditions padded = new Conditions();
+        padded.in("amount", Arrays.asList(1L, 2L, 3L), InListStrategy.padded());
+
+        assertEquals(single.getFingerprint(), otherSize.getFingerprint());
+        assertNotEquals(single.getFingerprint(), padded.getFingerprint());
+    }
+
+    @Test
+    public void conditionOfUnknownShapeHasNoFingerprint() {
+        Conditions conditions = new Conditions();
+        Conditions details = conditions.getJoinConditions("details", JoinType.LEFT);
+        conditions.or((cb, root) -> cb.isNull(root.get("name")), details, details.equal("type", "x"));
+
+        assertNull(conditions.getFingerprint());
+        assertNull(QueryShape.of("find", Product.class, null, false, conditions, null));
+    }
+
+    @Test
+    public void shapesOfEqualConditionsAreEqual() {
+        QueryShape shape = QueryShape.of("find", Product.class, null, false, conditions("a", 1, "x"),
+                Collections.singletonList(FETCH_DETAILS), ProductRepository.ORDER_BY_ID);
+        QueryShape other = QueryShape.of("find", Product.class, null, false, conditions("b", 2, "y"),
+                Collections.singletonList(FETCH_DETAILS), ProductRepository.ORDER_BY_ID);
+
+        assertNotNull(shape);
+        assertEquals(shape, other);
+        assertEquals(shape.hashCode(), other.hashCode());
+        assertEquals(shape.toString(), other.toString());
+    }
+
+    @Test
+    public void shapeDependsOnKindResultAndCallbacks() {
+        Conditions conditions = conditions("a", 1, "x");
+        QueryShape shape = QueryShape.of("find", Product.class, null, false, conditions, null, ProductRepository.ORDER_BY_ID);
+
+        assertNotEquals(shape, QueryShape.of("count", Product.class, null, false, conditions, null, ProductRepository.ORDER_BY_ID));
+        assertNotEquals(shape, QueryShape.of("find", ProductDetail.class, null, false, conditions, null, ProductRepository.ORDER_BY_ID));
+        assertNotEquals(shape, QueryShape.of("find", Product.class, "name", false, conditions, null, ProductRepository.ORDER_BY_ID));
+        assertNotEquals(shape, QueryShape.of("find", Product.class, null, true, conditions, null, ProductRepository.ORDER_BY_ID));
+        assertNotEquals(shape, QueryShape.of("find", Product.class, null, false, conditions, null, (AbstractRepository.OrderBy<Product>) (cb, query, root) -> {
+        }));
+        assertNotEquals(shape, QueryShape.of("find", Product.class, null, false, conditions, Collections.singletonList(FETCH_DETAILS), ProductRepository.ORDER_BY_ID));
+    }
+
+    @Test
+    public void capturingCallbackHasNoShape() {
+        String attributeName = "amount";
+        AbstractRepository.OrderBy<Product> capturing = (cb, query, root) -> query.orderBy(cb.asc(root.get(attributeName)));
+        List<Function<FetchParent<?, ?>, FetchParent<?, ?>>> capturingFetch = Collections.singletonList(root -> (FetchParent<?, ?>) root.fetch(attributeName));
+
+        assertNull(QueryShape.of("find", Product.class, null, false, null, null, capturing));
+        assertNull(QueryShape.of("find", Product.class, null, false, null, capturingFetch));
+        assertNotNull(QueryShape.of("find", Product.class, null, false, null, null, (Object) null));
+    }
+}
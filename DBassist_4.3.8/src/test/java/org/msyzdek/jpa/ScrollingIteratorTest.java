@@ -0,0 +1,138 @@
+package org.msyzdek.jpa;
+
+import org.hibernate.ScrollableResults;
+import org.junit.ClassRule;
+import org.junit.Test;
+
+import javax.persistence.EntityManager;
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+
+public class ScrollingIteratorTest {
+
+    @ClassRule
+    public static final TestDatabase DATABASE = new TestDatabase(20, 3);
+
+    /**
+     * Rows of the results are strings, their identifier is the part before the colon.
+     */
+    private static final Function<Object, Object> PREFIX = row -> ((String) row).split(":")[0];
+
+    private static ScrollableResults results(AtomicBoolean closed, Object... rows) {
+        Iterator<Object> iterator = Arrays.asList(rows).iterator();
+        Object[] current = new Object[1];
+
+        return (ScrollableResults) Proxy.newProxyInstance(ScrollingIteratorTest.class.getClassLoader(), new Class<?>[]{ScrollableResults.class}, (proxy, method, args) -> {
+            switch (method.getName()) {
+                case "next":
+                    if (!iterator.hasNext()) {
+                        return false;
+                    }
+
+                    current[0] = iterator.next();
+                    return true;
+                case "get":
+                    return current[0];
+                case "close":
+                    closed.set(true);
+                    return null;
+                default:
+                    throw new UnsupportedOperationException(method.getName());
+            }
+        });
+    }
+
+    private static List<String> drain(Iterator<String> iterator) {
+        List<String> rows = new ArrayList<String>();
+        iterator.forEachRemaining(rows::add);
+
+        return rows;
+    }
+
+    @Test
+    public void skipsAdjacentRowsOfTheSameEntity() {
+        AtomicBoolean closed = new AtomicBoolean();
+        ScrollingIterator<String> iterator = new ScrollingIterator<String>(null,
+                results(closed, "1:a", "1:b", "2:a", "3:a", "3:b", "3:c", "1:c"), PREFIX);
+
+        assertEquals(Arrays.asList("1:a", "2:a", "3:a", "1:c"), drain(iterator));
+        assertTrue(closed.get());
+    }
+
+    @Test
+    public void keepsDuplicatesOfAttributeRows() {
+        AtomicBoolean closed = new AtomicBoolean();
+        ScrollingIterator<String> iterator = new ScrollingIterator<String>(null, results(closed, "1", "1", "2"), null);
+
+        assertEquals(Arrays.asList("1", "1", "2"), drain(iterator));
+    }
+
+    @Test
+    public void hasNextDoesNotAdvanceTwice() {
+        ScrollingIterator<String> iterator = new ScrollingIterator<String>(null, results(new AtomicBoolean(), "1:a", "2:a"), PREFIX);
+
+        assertTrue(iterator.hasNext());
+        assertTrue(iterator.hasNext());
+        assertEquals("1:a", iterator.next());
+        assertEquals("2:a", iterator.next());
+        assertFalse(iterator.hasNext());
+    }
+
+    @Test(expected = NoSuchElementException.class)
+    public void nextFailsAfterTheLastRow() {
+        ScrollingIterator<String> iterator = new ScrollingIterator<String>(null, results(new AtomicBoolean()), PREFIX);
+
+        iterator.next();
+    }
+
+    @Test
+    public void closeStopsIteration() {
+        AtomicBoolean closed = new AtomicBoolean();
+        ScrollingIterator<String> iterator = new ScrollingIterator<String>(null, results(closed, "1:a", "2:a"), PREFIX);
+
+        assertEquals("1:a", iterator.next());
+        iterator.close();
+
+        assertTrue(closed.get());
+        assertFalse(iterator.hasNext());
+    }
+
+    @Test
+    public void streamEmitsEveryProductOnceAndEvictsIt() {
+        EntityManager entityManager = DATABASE.createEntityManager();
+
+        try {
+            entityManager.getTransaction().begin();
+            ProductRepository repository = new ProductRepository(entityManager);
+            List<Product> products;
+
+            try (Stream<Product> stream = repository.stream(new Conditions(), ProductRepository.FETCH_DETAILS, ProductRepository.ORDER_BY_ID, 7)) {
+                products = stream.collect(Collectors.toList());
+            }
+
+            assertEquals(20, products.size());
+            assertEquals(20, products.stream().map(Product::getId).distinct().count());
+
+            for (Product product : products) {
+                assertEquals(3, product.getDetails().size());
+                assertFalse(entityManager.contains(product));
+            }
+        } finally {
+            entityManager.getTransaction().rollback();
+            entityManager.close();
+        }
+    }
+}
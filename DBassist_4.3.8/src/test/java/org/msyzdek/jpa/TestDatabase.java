@@ -0,0 +1,95 @@
+package org.msyzdek.jpa;
+
+import org.junit.rules.ExternalResource;
+
+import javax.persistence.EntityManager;
+import javax.persistence.EntityManagerFactory;
+import javax.persistence.EntityTransaction;
+import javax.persistence.Persistence;
+import java.util.Collections;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+import java.util.function.Function;
+
+
+/**
+ * In-memory H2 database of the "test" persistence unit, used as a class rule. Every instance gets a database of its
+ * own, optionally filled with products whose amount is their number modulo 10 and whose details have the types
+ * type0, type1, ... and the prices 10 * product number + detail number.
+ */
+class TestDatabase extends ExternalResource {
+
+    private static final AtomicInteger DATABASES = new AtomicInteger();
+
+    private final int products;
+
+    private final int detailsPerProduct;
+
+    private EntityManagerFactory entityManagerFactory;
+
+    TestDatabase() {
+        this(0, 0);
+    }
+
+    TestDatabase(int products, int detailsPerProduct) {
+        this.products = products;
+        this.detailsPerProduct = detailsPerProduct;
+    }
+
+    @Override
+    protected void before() {
+        String url = "jdbc:h2:mem:test" + DATABASES.incrementAndGet() + ";DB_CLOSE_DELAY=-1";
+        entityManagerFactory = Persistence.createEntityManagerFactory("test",
+                Collections.singletonMap("hibernate.connection.url", url));
+
+        inTransaction(entityManager -> {
+            for (int i = 1; i <= products; i++) {
+                Product product = new Product("product" + i, (long) (i % 10));
+                entityManager.persist(product);
+
+                for (int j = 0; j < detailsPerProduct; j++) {
+                    entityManager.persist(new ProductDetail(product, "type" + j, (long) (i * 10 + j)));
+                }
+            }
+        });
+    }
+
+    @Override
+    protected void after() {
+        entityManagerFactory.close();
+    }
+
+    EntityManagerFactory getEntityManagerFactory() {
+        return entityManagerFactory;
+    }
+
+    EntityManager createEntityManager() {
+        return entityManagerFactory.createEntityManager();
+    }
+
+    void inTransaction(Consumer<EntityManager> work) {
+        inTransactionReturning(entityManager -> {
+            work.accept(entityManager);
+            return null;
+        });
+    }
+
+    <R> R inTransactionReturning(Function<EntityManager, R> work) {
+        EntityManager entityManager = createEntityManager();
+        EntityTransaction transaction = entityManager.getTransaction();
+
+        try {
+            transaction.begin();
+            R result = work.apply(entityManager);
+            transaction.commit();
+
+            return result;
+        } finally {
+            if (transaction.isActive()) {
+                transaction.rollback();
+            }
+
+            entityManager.close();
+        }
+    }
+}
@@ -0,0 +1,128 @@
+package org.msyzdek.jpa.date;
+
+import org.junit.Test;
+
+import java.lang.reflect.Proxy;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLFeatureNotSupportedException;
+import java.sql.Timestamp;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Calendar;
+import java.util.Date;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+
+public class UtcJdbcValuesTest {
+
+    @Test
+    public void localDateIsTheUtcDay() {
+        assertEquals(LocalDate.of(1970, 1, 1), UtcJdbcValues.toLocalDate(0L));
+        assertEquals(LocalDate.of(1970, 1, 1), UtcJdbcValues.toLocalDate(UtcJdbcValues.MILLIS_PER_DAY - 1));
+        assertEquals(LocalDate.of(1969, 12, 31), UtcJdbcValues.toLocalDate(-1L));
+        assertEquals(LocalDate.of(2015, 1, 1), UtcJdbcValues.toLocalDate(1420070400000L));
+    }
+
+    @Test
+    public void localDateTimeKeepsTheMilliseconds() {
+        assertEquals(LocalDateTime.of(2015, 1, 1, 0, 0, 0, 123000000), UtcJdbcValues.toLocalDateTime(new Date(1420070400123L)));
+        assertEquals(LocalDateTime.of(1969, 12, 31, 23, 59, 59, 999000000), UtcJdbcValues.toLocalDateTime(new Date(-1L)));
+    }
+
+    @Test
+    public void localDateTimeKeepsTheNanosecondsOfTimestamps() {
+        Timestamp timestamp = new Timestamp(1420070400000L);
+        timestamp.setNanos(123456789);
+
+        assertEquals(LocalDateTime.of(2015, 1, 1, 0, 0, 0, 123456789), UtcJdbcValues.toLocalDateTime(timestamp));
+    }
+
+    @Test
+    public void convertsBackToJdbcValues() {
+        LocalDateTime dateTime = LocalDateTime.of(1969, 7, 20, 20, 17, 40, 123456789);
+        Timestamp timestamp = UtcJdbcValues.toTimestamp(dateTime);
+
+        assertEquals(dateTime, UtcJdbcValues.toLocalDateTime(timestamp));
+        assertEquals(123456789, timestamp.getNanos());
+        assertEquals(-14182940L * 1000L + 123L, timestamp.getTime());
+        assertEquals(-UtcJdbcValues.MILLIS_PER_DAY, UtcJdbcValues.toSqlDate(LocalDate.of(1969, 12, 31)).getTime());
+    }
+
+    @Test
+    public void nullStaysNull() {
+        assertNull(UtcJdbcValues.toSqlDate(null));
+        assertNull(UtcJdbcValues.toTimestamp(null));
+    }
+
+    /**
+     * Result sets and statements of drivers without the java.time mappings, an interface per test keeps the detected
+     * fallback to that test.
+     */
+    private interface Jdbc41ResultSet extends ResultSet {
+    }
+
+    private interface Jdbc41NullResultSet extends ResultSet {
+    }
+
+    private interface Jdbc41PreparedStatement extends PreparedStatement {
+    }
+
+    /**
+     * Proxy recording the called methods, the java.time ones unsupported, the calendar ones returning the given value.
+     */
+    @SuppressWarnings("unchecked")
+    private static <T> T jdbc41(Class<T> type, List<String> calls, Object value) {
+        return (T) Proxy.newProxyInstance(type.getClassLoader(), new Class<?>[]{type}, (proxy, method, args) -> {
+            calls.add(method.getName());
+
+            if (method.getName().equals("getObject") || method.getName().equals("setObject")) {
+                throw new SQLFeatureNotSupportedException();
+            }
+
+            if (args != null && args[args.length - 1] instanceof Calendar) {
+                assertEquals("UTC", ((Calendar) args[args.length - 1]).getTimeZone().getID());
+            }
+
+            if (method.getName().startsWith("set")) {
+                assertEquals(value, args[1]);
+            }
+
+            return method.getName().startsWith("get") ? value : null;
+        });
+    }
+
+    @Test
+    public void driversWithoutJavaTimeFallBackToACalendar() throws Exception {
+        LocalDateTime dateTime = LocalDateTime.of(2015, 1, 1, 12, 30, 0, 123456789);
+        List<String> calls = new ArrayList<String>();
+        ResultSet rs = jdbc41(Jdbc41ResultSet.class, calls, UtcJdbcValues.toTimestamp(dateTime));
+
+        assertEquals(dateTime, UtcJdbcValues.getLocalDateTime(rs, "CREATED"));
+        assertEquals(dateTime, UtcJdbcValues.getLocalDateTime(rs, "CREATED"));
+
+        /** the unsupported call is tried once per class */
+        assertEquals(Arrays.asList("getObject", "getTimestamp", "getTimestamp"), calls);
+
+        calls.clear();
+        PreparedStatement st = jdbc41(Jdbc41PreparedStatement.class, calls, UtcJdbcValues.toSqlDate(LocalDate.of(1969, 12, 31)));
+
+        UtcJdbcValues.setLocalDate(st, 1, LocalDate.of(1969, 12, 31));
+        UtcJdbcValues.setLocalDate(st, 1, LocalDate.of(1969, 12, 31));
+
+        assertEquals(Arrays.asList("setObject", "setDate", "setDate"), calls);
+    }
+
+    @Test
+    public void calendarFallbackKeepsNull() throws Exception {
+        ResultSet rs = jdbc41(Jdbc41NullResultSet.class, new ArrayList<String>(), null);
+
+        assertNull(UtcJdbcValues.getLocalDateTime(rs, "CREATED"));
+        assertNull(UtcJdbcValues.getLocalDate(rs, "CREATED"));
+    }
+}
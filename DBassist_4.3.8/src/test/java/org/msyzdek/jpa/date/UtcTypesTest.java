@@ -0,0 +1,151 @@
+package org.msyzdek.jpa.date;
+
+import org.hibernate.type.descriptor.WrapperOptions;
+import org.hibernate.type.descriptor.java.JavaTypeDescriptor;
+import org.hibernate.type.descriptor.sql.SqlTypeDescriptor;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.msyzdek.utc.hibernate.types.UtcDateType;
+
+import java.lang.reflect.Proxy;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.OffsetDateTime;
+import java.time.ZoneOffset;
+import java.util.Date;
+import java.util.TimeZone;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+
+/**
+ * Binds and extracts the UTC types through JDBC stubs, under a default time zone far from UTC.
+ */
+public class UtcTypesTest {
+
+    private static final long MILLIS = 1420070400123L;
+
+    private static final WrapperOptions OPTIONS = (WrapperOptions) Proxy.newProxyInstance(UtcTypesTest.class.getClassLoader(),
+            new Class<?>[]{WrapperOptions.class}, (proxy, method, args) -> null);
+
+    private TimeZone defaultTimeZone;
+
+    /**
+     * Value of the last setObject call.
+     */
+    private Object bound;
+
+    @Before
+    public void setDefaultTimeZone() {
+        defaultTimeZone = TimeZone.getDefault();
+        TimeZone.setDefault(TimeZone.getTimeZone("Pacific/Kiritimati"));
+    }
+
+    @After
+    public void restoreDefaultTimeZone() {
+        TimeZone.setDefault(defaultTimeZone);
+    }
+
+    private PreparedStatement statement() {
+        return (PreparedStatement) Proxy.newProxyInstance(getClass().getClassLoader(), new Class<?>[]{PreparedStatement.class}, (proxy, method, args) -> {
+            if (!method.getName().equals("setObject") || args.length != 2) {
+                throw new UnsupportedOperationException(method.getName());
+            }
+
+            bound = args[1];
+            return null;
+        });
+    }
+
+    private static ResultSet resultSet(Object value) {
+        return (ResultSet) Proxy.newProxyInstance(UtcTypesTest.class.getClassLoader(), new Class<?>[]{ResultSet.class}, (proxy, method, args) -> {
+            if (method.getName().equals("getObject") && args.length == 2) {
+                return ((Class<?>) args[1]).cast(value);
+            } else if (method.getName().equals("wasNull")) {
+                return value == null;
+            }
+
+            throw new UnsupportedOperationException(method.getName());
+        });
+    }
+
+    private <X> Object bind(SqlTypeDescriptor sqlTypeDescriptor, JavaTypeDescriptor<X> javaTypeDescriptor, X value) throws SQLException {
+        sqlTypeDescriptor.getBinder(javaTypeDescriptor).bind(statement(), value, 1, OPTIONS);
+
+        return bound;
+    }
+
+    private static <X> X extract(SqlTypeDescriptor sqlTypeDescriptor, JavaTypeDescriptor<X> javaTypeDescriptor, Object value) throws SQLException {
+        return sqlTypeDescriptor.getExtractor(javaTypeDescriptor).extract(resultSet(value), "VALUE", OPTIONS);
+    }
+
+    @Test
+    public void timestampIsBoundAsUtcWallClockTime() throws SQLException {
+        UtcTimestampType type = UtcTimestampType.INSTANCE;
+        LocalDateTime expected = LocalDateTime.of(2015, 1, 1, 0, 0, 0, 123000000);
+
+        assertEquals(expected, bind(type.getSqlTypeDescriptor(), type.getJavaTypeDescriptor(), new Date(MILLIS)));
+        assertEquals(MILLIS, extract(type.getSqlTypeDescriptor(), type.getJavaTypeDescriptor(), expected).getTime());
+        assertNull(extract(type.getSqlTypeDescriptor(), type.getJavaTypeDescriptor(), null));
+    }
+
+    @Test
+    public void timestampKeepsNanoseconds() throws SQLException {
+        UtcTimestampType type = UtcTimestampType.INSTANCE;
+        LocalDateTime dateTime = LocalDateTime.of(2015, 1, 1, 0, 0, 0, 123456789);
+
+        Timestamp extracted = (Timestamp) extract(type.getSqlTypeDescriptor(), type.getJavaTypeDescriptor(), dateTime);
+
+        assertEquals(123456789, extracted.getNanos());
+        assertEquals(dateTime, bind(type.getSqlTypeDescriptor(), type.getJavaTypeDescriptor(), extracted));
+    }
+
+    @Test
+    public void instantRoundTrips() throws SQLException {
+        UtcInstantType type = UtcInstantType.INSTANCE;
+        Instant instant = Instant.ofEpochSecond(1420070400L, 123456789);
+
+        Object value = bind(type.getSqlTypeDescriptor(), type.getJavaTypeDescriptor(), instant);
+
+        assertEquals(LocalDateTime.of(2015, 1, 1, 0, 0, 0, 123456789), value);
+        assertEquals(instant, extract(type.getSqlTypeDescriptor(), type.getJavaTypeDescriptor(), value));
+    }
+
+    @Test
+    public void offsetDateTimeIsNormalizedToUtc() throws SQLException {
+        UtcOffsetDateTimeType type = UtcOffsetDateTimeType.INSTANCE;
+        OffsetDateTime dateTime = OffsetDateTime.of(2015, 1, 1, 2, 0, 0, 0, ZoneOffset.ofHours(2));
+
+        Object value = bind(type.getSqlTypeDescriptor(), type.getJavaTypeDescriptor(), dateTime);
+
+        assertEquals(LocalDateTime.of(2015, 1, 1, 0, 0), value);
+        assertEquals(dateTime.toInstant(), extract(type.getSqlTypeDescriptor(), type.getJavaTypeDescriptor(), value).toInstant());
+    }
+
+    @Test
+    public void localDateIsBoundAsItIs() throws SQLException {
+        UtcLocalDateType type = UtcLocalDateType.INSTANCE;
+        LocalDate date = LocalDate.of(2015, 1, 1);
+
+        assertEquals(date, bind(type.getSqlTypeDescriptor(), type.getJavaTypeDescriptor(), date));
+        assertEquals(date, extract(type.getSqlTypeDescriptor(), type.getJavaTypeDescriptor(), date));
+    }
+
+    @Test
+    public void dateTypeUsesTheUtcDay() throws SQLException {
+        UtcDateType type = new UtcDateType();
+
+        type.set(statement(), new Date(MILLIS - 124), 1);
+
+        assertEquals(LocalDate.of(2014, 12, 31), bound);
+        assertEquals(MILLIS - 123, ((Date) type.get(resultSet(LocalDate.of(2015, 1, 1)), "VALUE")).getTime());
+        assertNull(type.get(resultSet(null), "VALUE"));
+    }
+}
@@ -0,0 +1,96 @@
+package org.msyzdek.jpa.metrics;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+
+public class LatencyHistogramTest {
+
+    private static void assertBucketHolds(long value) {
+        int index = LatencyHistogram.index(value);
+        long upperBound = LatencyHistogram.upperBound(index);
+
+        assertTrue(value + " above the upper bound " + upperBound, value <= upperBound);
+        assertTrue(value + " exceeds the 25% relative error", upperBound - value <= value / 4);
+
+        if (index > 0) {
+            assertTrue(value + " fits the previous bucket", LatencyHistogram.upperBound(index - 1) < value);
+        }
+    }
+
+    @Test
+    public void smallValuesHaveBucketsOfTheirOwn() {
+        for (int value = 0; value < 4; value++) {
+            assertEquals(value, LatencyHistogram.index(value));
+            assertEquals(value, LatencyHistogram.upperBound(value));
+        }
+
+        assertEquals(0, LatencyHistogram.index(-5));
+    }
+
+    @Test
+    public void fourBucketsPerPowerOfTwo() {
+        assertEquals(4, LatencyHistogram.index(4));
+        assertEquals(7, LatencyHistogram.index(7));
+        assertEquals(8, LatencyHistogram.index(8));
+        assertEquals(8, LatencyHistogram.index(9));
+        assertEquals(9, LatencyHistogram.index(10));
+        assertEquals(11, LatencyHistogram.index(15));
+        assertEquals(12, LatencyHistogram.index(16));
+
+        assertEquals(9, LatencyHistogram.upperBound(8));
+        assertEquals(19, LatencyHistogram.upperBound(12));
+    }
+
+    @Test
+    public void bucketsAreContiguous() {
+        for (long value = 0; value < 100000; value++) {
+            assertBucketHolds(value);
+        }
+
+        for (int bit = 17; bit < 63; bit++) {
+            assertBucketHolds((1L << bit) - 1);
+            assertBucketHolds(1L << bit);
+            assertBucketHolds((1L << bit) + 1);
+            assertBucketHolds((1L << bit) + (1L << (bit - 1)) + 12345);
+        }
+    }
+
+    @Test
+    public void maxValueFitsTheLastBucket() {
+        int index = LatencyHistogram.index(Long.MAX_VALUE);
+
+        assertTrue(index < 64 * 4);
+        assertEquals(Long.MAX_VALUE, LatencyHistogram.upperBound(index));
+    }
+
+    @Test
+    public void percentiles() {
+        LatencyHistogram histogram = new LatencyHistogram();
+
+        assertEquals(0, histogram.getPercentile(50));
+
+        for (int i = 0; i < 990; i++) {
+            histogram.record(1000);
+        }
+
+        for (int i = 0; i < 10; i++) {
+            histogram.record(1000000);
+        }
+
+        long fast = LatencyHistogram.upperBound(LatencyHistogram.index(1000));
+        long slow = LatencyHistogram.upperBound(LatencyHistogram.index(1000000));
+
+        assertEquals(fast, histogram.getPercentile(0));
+        assertEquals(fast, histogram.getPercentile(50));
+        assertEquals(fast, histogram.getPercentile(99));
+        assertEquals(slow, histogram.getPercentile(99.9));
+        assertEquals(slow, histogram.getPercentile(100));
+
+        histogram.reset();
+
+        assertEquals(0, histogram.getPercentile(100));
+    }
+}
@@ -0,0 +1,112 @@
+package org.msyzdek.jpa.metrics;
+
+import org.junit.Test;
+
+import javax.management.MBeanServer;
+import javax.management.MBeanServerFactory;
+import javax.management.ObjectName;
+import java.util.Set;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+
+public class QueryStatisticsTest {
+
+    private static final String SHAPE = "find org.msyzdek.jpa.Product where amount = :p0";
+
+    /**
+     * Server of its own per test, not kept by the factory.
+     */
+    private final MBeanServer mBeanServer = MBeanServerFactory.newMBeanServer();
+
+    private static QueryEvent event(String operation, String shape, long buildMillis, long executeMillis, int rows) {
+        return new QueryEvent(QueryStatisticsTest.class, operation, shape, null,
+                buildMillis * 1000000, executeMillis * 1000000, rows, rows / 2);
+    }
+
+    private Set<ObjectName> registered() throws Exception {
+        return mBeanServer.queryNames(new ObjectName("test:type=QueryStatistics,*"), null);
+    }
+
+    @Test
+    public void aggregatesEvents() {
+        QueryStatistics statistics = new QueryStatistics("repository", "find", SHAPE);
+
+        statistics.record(event("find", SHAPE, 1, 3, 10));
+        statistics.record(event("find", SHAPE, 3, 5, 20));
+
+        assertEquals(2, statistics.getCount());
+        assertEquals(30, statistics.getRows());
+        assertEquals(15, statistics.getDuplicatesRemoved());
+        assertEquals(2.0, statistics.getAverageBuildMillis(), 0.001);
+        assertEquals(4.0, statistics.getAverageExecuteMillis(), 0.001);
+        assertEquals(8.0, statistics.getMaxMillis(), 0.001);
+        assertTrue(statistics.getP50Millis() >= 4.0 && statistics.getP50Millis() <= 5.0);
+        assertTrue(statistics.getP999Millis() >= 8.0 && statistics.getP999Millis() <= 10.0);
+
+        statistics.reset();
+
+        assertEquals(0, statistics.getCount());
+        assertEquals(0, statistics.getRows());
+        assertEquals(0.0, statistics.getAverageBuildMillis(), 0);
+        assertEquals(0.0, statistics.getMaxMillis(), 0);
+        assertEquals(0.0, statistics.getP99Millis(), 0);
+    }
+
+    @Test
+    public void registersStatisticsPerOperationAndShape() throws Exception {
+        JmxQueryMetrics metrics = new JmxQueryMetrics(mBeanServer, "test");
+        QueryEvent event = event("find", SHAPE, 1, 1, 4);
+
+        metrics.record(event);
+        metrics.record(event("find", SHAPE, 1, 1, 6));
+        metrics.record(event("count", "count org.msyzdek.jpa.Product", 1, 1, 1));
+        metrics.record(event("find", null, 1, 1, 1));
+
+        assertEquals(3, registered().size());
+
+        ObjectName name = new ObjectName("test:type=QueryStatistics,repository=\"QueryStatisticsTest\",operation=find,shape="
+                + event.getShapeId());
+
+        assertEquals(2L, mBeanServer.getAttribute(name, "Count"));
+        assertEquals(10L, mBeanServer.getAttribute(name, "Rows"));
+        assertEquals(SHAPE, mBeanServer.getAttribute(name, "Shape"));
+        assertEquals(QueryStatisticsTest.class.getName(), mBeanServer.getAttribute(name, "Repository"));
+        assertEquals(1, mBeanServer.queryNames(new ObjectName("test:type=QueryStatistics,shape=unshaped,*"), null).size());
+
+        mBeanServer.invoke(name, "reset", null, null);
+
+        assertEquals(0L, mBeanServer.getAttribute(name, "Count"));
+
+        metrics.close();
+
+        assertTrue(registered().isEmpty());
+    }
+
+    @Test
+    public void secondInstanceKeepsCountingLocally() throws Exception {
+        JmxQueryMetrics first = new JmxQueryMetrics(mBeanServer, "test");
+        JmxQueryMetrics second = new JmxQueryMetrics(mBeanServer, "test");
+
+        first.record(event("find", SHAPE, 1, 1, 1));
+        second.record(event("find", SHAPE, 1, 1, 1));
+
+        assertEquals(1, registered().size());
+        assertEquals(1L, mBeanServer.getAttribute(registered().iterator().next(), "Count"));
+
+        first.close();
+        second.close();
+    }
+
+    @Test
+    public void compositeForwardsToAllMetrics() {
+        QueryStatistics first = new QueryStatistics("repository", "find", SHAPE);
+        QueryStatistics second = new QueryStatistics("repository", "find", SHAPE);
+
+        QueryMetrics.composite(first::record, second::record).record(event("find", SHAPE, 1, 1, 1));
+
+        assertEquals(1, first.getCount());
+        assertEquals(1, second.getCount());
+    }
+}
@@ -0,0 +1,92 @@
+package org.msyzdek.jpa.metrics;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.msyzdek.jpa.Conditions;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Handler;
+import java.util.logging.Level;
+import java.util.logging.LogRecord;
+import java.util.logging.Logger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+
+public class SlowQueryLogTest {
+
+    private static final Logger LOGGER = Logger.getLogger(SlowQueryLog.class.getName());
+
+    private final List<LogRecord> records = new ArrayList<>();
+
+    private final Handler handler = new Handler() {
+        @Override
+        public void publish(LogRecord record) {
+            records.add(record);
+        }
+
+        @Override
+        public void flush() {
+        }
+
+        @Override
+        public void close() {
+        }
+    };
+
+    @Before
+    public void captureLog() {
+        LOGGER.addHandler(handler);
+        LOGGER.setUseParentHandlers(false);
+    }
+
+    @After
+    public void releaseLog() {
+        LOGGER.removeHandler(handler);
+        LOGGER.setUseParentHandlers(true);
+    }
+
+    private static QueryEvent event(Conditions conditions, String shape, long executeMillis) {
+        return new QueryEvent(SlowQueryLogTest.class, "find", shape, conditions,
+                TimeUnit.MILLISECONDS.toNanos(1), TimeUnit.MILLISECONDS.toNanos(executeMillis), 12, 36);
+    }
+
+    @Test
+    public void skipsFastQueries() {
+        new SlowQueryLog(100, TimeUnit.MILLISECONDS).record(event(new Conditions(), null, 98));
+
+        assertTrue(records.isEmpty());
+    }
+
+    @Test
+    public void logsSlowQueriesWithMaskedValues() {
+        Conditions conditions = new Conditions();
+        conditions.equal("name", "secret");
+        conditions.greaterThanOrEqualTo("amount", 42L);
+
+        new SlowQueryLog(100, TimeUnit.MILLISECONDS).record(event(conditions, "find Product where " + conditions, 99));
+
+        assertEquals(1, records.size());
+        assertEquals(Level.WARNING, records.get(0).getLevel());
+
+        String message = records.get(0).getMessage();
+
+        assertTrue(message, message.startsWith("Slow query (100.0 ms: build 1.0 ms, execute 99.0 ms, 12 rows, 36 duplicates removed) SlowQueryLogTest.find"));
+        assertTrue(message, message.endsWith("find Product where name = :p0 and amount >= :p1 [p0: String, p1: Long]"));
+        assertFalse(message, message.contains("secret"));
+        assertFalse(message, message.contains("42"));
+    }
+
+    @Test
+    public void describesUnshapedQueriesByTheirConditions() {
+        new SlowQueryLog(0, TimeUnit.MILLISECONDS, Level.INFO).record(event(null, null, 1));
+
+        assertEquals(Level.INFO, records.get(0).getLevel());
+        assertTrue(records.get(0).getMessage().endsWith("find where (none)"));
+    }
+}
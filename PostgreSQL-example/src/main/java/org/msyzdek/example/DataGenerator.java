@@ -0,0 +1,111 @@
+package org.msyzdek.example;
+
+import liquibase.Contexts;
+import liquibase.Liquibase;
+import liquibase.database.Database;
+import liquibase.database.DatabaseFactory;
+import liquibase.database.jvm.JdbcConnection;
+import liquibase.resource.ClassLoaderResourceAccessor;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.Random;
+
+
+/**
+ * Applies the changelog and fills PRODUCTS and PRODUCT_DETAILS with reproducible random data.
+ */
+public class DataGenerator {
+
+    static final String CHANGELOG = "org.msyzdek.jpa.db.migrations/createEmptyDB.xml";
+
+    static final String[] DETAIL_TYPES = {"BOOK", "MUSIC", "MOVIE", "GAME", "TOY", "FOOD", "TOOL", "CLOTHES"};
+
+    static final int MAX_AMOUNT = 1000;
+
+    static final int MAX_PRICE = 10000;
+
+    private static final int BATCH_SIZE = 1000;
+
+    private final Connection connection;
+
+    public DataGenerator(Connection connection) {
+        this.connection = connection;
+    }
+
+    public void applyChangelog() throws Exception {
+        Database database = DatabaseFactory.getInstance().findCorrectDatabaseImplementation(new JdbcConnection(connection));
+
+        new Liquibase(CHANGELOG, new ClassLoaderResourceAccessor(), database).update(new Contexts());
+    }
+
+    /**
+     * Generates the rows unless the tables already hold data, e.g. a PostgreSQL database of an earlier run.
+     *
+     * @return number of products in the database
+     */
+    public long generate(int products, int detailsPerProduct, long seed) throws SQLException {
+        long existing = countProducts();
+
+        if (existing > 0) {
+            return existing;
+        }
+
+        Random random = new Random(seed);
+        boolean autoCommit = connection.getAutoCommit();
+        connection.setAutoCommit(false);
+
+        try (PreparedStatement insertProduct = connection.prepareStatement("insert into \"PRODUCTS\" (\"ID\", \"AMOUNT\") values (?, ?)");
+             PreparedStatement insertDetail = connection.prepareStatement(
+                     "insert into \"PRODUCT_DETAILS\" (\"ID\", \"TYPE\", \"PRICE\", \"NAME\", \"PRODUCT_ID\") values (?, ?, ?, ?, ?)")) {
+            long detailId = 1;
+
+            for (long productId = 1; productId <= products; productId++) {
+                insertProduct.setLong(1, productId);
+                insertProduct.setLong(2, random.nextInt(MAX_AMOUNT));
+                insertProduct.addBatch();
+
+                for (int i = 0; i < detailsPerProduct; i++, detailId++) {
+                    insertDetail.setLong(1, detailId);
+                    insertDetail.setString(2, DETAIL_TYPES[random.nextInt(DETAIL_TYPES.length)]);
+                    insertDetail.setLong(3, random.nextInt(MAX_PRICE));
+                    insertDetail.setString(4, "detail " + detailId);
+                    insertDetail.setLong(5, productId);
+                    insertDetail.addBatch();
+                }
+
+                if (productId % BATCH_SIZE == 0) {
+                    insertProduct.executeBatch();
+                    insertDetail.executeBatch();
+                    connection.commit();
+                }
+            }
+
+            insertProduct.executeBatch();
+            insertDetail.executeBatch();
+            connection.commit();
+        } finally {
+            connection.setAutoCommit(autoCommit);
+        }
+
+        try (Statement statement = connection.createStatement()) {
+            statement.execute("analyze");
+        } catch (SQLException e) {
+            // Statistics are refreshed by the database eventually
+        }
+
+        return products;
+    }
+
+    private long countProducts() throws SQLException {
+        try (Statement statement = connection.createStatement();
+             ResultSet resultSet = statement.executeQuery("select count(*) from \"PRODUCTS\"")) {
+            resultSet.next();
+
+            return resultSet.getLong(1);
+        }
+    }
+}
@@ -0,0 +1,299 @@
+package org.msyzdek.example;
+
+import org.msyzdek.jpa.Conditions;
+import org.msyzdek.jpa.IndexAdvisor;
+import org.msyzdek.jpa.ProductRepository;
+import org.msyzdek.jpa.metrics.LatencyHistogram;
+
+import javax.persistence.EntityManager;
+import javax.persistence.EntityManagerFactory;
+import javax.persistence.Persistence;
+import javax.persistence.criteria.JoinType;
+import java.io.FileWriter;
+import java.io.Writer;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.atomic.LongAdder;
+
+
+/**
+ * Mixed multi-threaded workload against PRODUCTS and PRODUCT_DETAILS reporting throughput and latency percentiles per
+ * repository call. Options are system properties:
+ * <ul>
+ * <li>url, user, password: database, by default H2 in memory in PostgreSQL compatibility mode</li>
+ * <li>products (10000), detailsPerProduct (5), seed (42): generated data, skipped when PRODUCTS is not empty</li>
+ * <li>threads (8), warmupSeconds (10), durationSeconds (30)</li>
+ * <li>mix: relative weight of the operations, e.g. {@code find:40,findWithDetails:20,findByDetailType:15,count:15,findAttribute:10}</li>
+ * <li>indexAdvice: file the indexes proposed by the {@link IndexAdvisor} are written to as a Liquibase change log</li>
+ * </ul>
+ * All threads share one repository whose EntityManager delegates to the EntityManager of the calling thread, as a
+ * container-managed EntityManager does.
+ */
+public class LoadTest {
+
+    private static final String DEFAULT_URL = "jdbc:h2:mem:loadtest;MODE=PostgreSQL;DB_CLOSE_DELAY=-1";
+
+    private static final String DEFAULT_MIX = "find:40,findWithDetails:20,findByDetailType:15,count:15,findAttribute:10";
+
+    /**
+     * Width of the amount range read by the range queries.
+     */
+    private static final int AMOUNT_RANGE = 10;
+
+    private interface Operation {
+        int execute(ProductRepository repository, ThreadLocalRandom random);
+    }
+
+    private static final class OperationStatistics {
+
+        private final String name;
+
+        private final int weight;
+
+        private final Operation operation;
+
+        private final LatencyHistogram latencies = new LatencyHistogram();
+
+        private final LongAdder count = new LongAdder();
+
+        private final LongAdder rows = new LongAdder();
+
+        private OperationStatistics(String name, int weight, Operation operation) {
+            this.name = name;
+            this.weight = weight;
+            this.operation = operation;
+        }
+    }
+
+    private static final Map<String, Operation> OPERATIONS = new LinkedHashMap<String, Operation>();
+
+    static {
+        OPERATIONS.put("find", (repository, random) -> repository.findProducts(byAmount(random), false).size());
+        OPERATIONS.put("findWithDetails", (repository, random) -> repository.findProducts(byAmount(random), true).size());
+        OPERATIONS.put("findByDetailType", (repository, random) -> {
+            Conditions conditions = byAmountRange(random);
+            String type = DataGenerator.DETAIL_TYPES[random.nextInt(DataGenerator.DETAIL_TYPES.length)];
+            conditions.getJoinConditions("details", JoinType.INNER).equal("type", type);
+
+            return repository.findProducts(conditions, false).size();
+        });
+        OPERATIONS.put("count", (repository, random) -> {
+            Conditions conditions = new Conditions();
+            conditions.getJoinConditions("details", JoinType.INNER).greaterThanOrEqualTo("price", (long) random.nextInt(DataGenerator.MAX_PRICE));
+            repository.countProducts(conditions);
+            return 1;
+        });
+        OPERATIONS.put("findAttribute", (repository, random) -> repository.findAmounts(byAmountRange(random)).size());
+    }
+
+    private static Conditions byAmount(ThreadLocalRandom random) {
+        Conditions conditions = new Conditions();
+        conditions.equal("amount", (long) random.nextInt(DataGenerator.MAX_AMOUNT));
+
+        return conditions;
+    }
+
+    private static Conditions byAmountRange(ThreadLocalRandom random) {
+        long minAmount = random.nextInt(DataGenerator.MAX_AMOUNT - AMOUNT_RANGE);
+        Conditions conditions = new Conditions();
+        conditions.isBetween("amount", minAmount, minAmount + AMOUNT_RANGE);
+
+        return conditions;
+    }
+
+    public static void main(String[] args) throws Exception {
+        String url = System.getProperty("url", DEFAULT_URL);
+        String user = System.getProperty("user", "sa");
+        String password = System.getProperty("password", "");
+        int products = Integer.getInteger("products", 10000);
+        int detailsPerProduct = Integer.getInteger("detailsPerProduct", 5);
+        long seed = Long.getLong("seed", 42L);
+        int threads = Integer.getInteger("threads", 8);
+        int warmupSeconds = Integer.getInteger("warmupSeconds", 10);
+        int durationSeconds = Integer.getInteger("durationSeconds", 30);
+        List<OperationStatistics> mix = parseMix(System.getProperty("mix", DEFAULT_MIX));
+        String indexAdvice = System.getProperty("indexAdvice");
+
+        // Keeps an in-memory database alive until the end of the run
+        try (Connection connection = DriverManager.getConnection(url, user, password)) {
+            DataGenerator dataGenerator = new DataGenerator(connection);
+            long start = System.nanoTime();
+
+            dataGenerator.applyChangelog();
+            long productCount = dataGenerator.generate(products, detailsPerProduct, seed);
+
+            System.out.printf("%s: %d products ready in %d s%n", url, productCount, TimeUnit.NANOSECONDS.toSeconds(System.nanoTime() - start));
+
+            EntityManagerFactory entityManagerFactory = Persistence.createEntityManagerFactory("example", persistenceProperties(url, user, password, threads));
+
+            IndexAdvisor indexAdvisor = indexAdvice != null ? new IndexAdvisor(entityManagerFactory) : null;
+
+            try {
+                run(entityManagerFactory, indexAdvisor, mix, threads, warmupSeconds, durationSeconds);
+
+                if (indexAdvisor != null) {
+                    try (Writer writer = new FileWriter(indexAdvice)) {
+                        indexAdvisor.writeChangeLog(connection, writer, "index-advisor");
+                    }
+
+                    indexAdvisor.propose(connection).forEach(proposal -> System.out.println("Proposed " + proposal));
+                }
+            } finally {
+                entityManagerFactory.close();
+            }
+        }
+    }
+
+    private static Map<String, String> persistenceProperties(String url, String user, String password, int threads) {
+        Map<String, String> properties = new HashMap<String, String>();
+
+        properties.put("javax.persistence.jdbc.url", url);
+        properties.put("javax.persistence.jdbc.user", user);
+        properties.put("javax.persistence.jdbc.password", password);
+        properties.put("hibernate.connection.pool_size", String.valueOf(threads));
+        properties.put("hibernate.dialect", url.startsWith("jdbc:postgresql:")
+                ? "org.hibernate.dialect.PostgreSQL9Dialect"
+                : "org.hibernate.dialect.H2Dialect");
+
+        return properties;
+    }
+
+    private static List<OperationStatistics> parseMix(String mix) {
+        List<OperationStatistics> statistics = new ArrayList<OperationStatistics>();
+
+        for (String entry : mix.split(",")) {
+            String[] nameAndWeight = entry.trim().split(":");
+            Operation operation = OPERATIONS.get(nameAndWeight[0]);
+
+            if (operation == null || nameAndWeight.length != 2) {
+                throw new IllegalArgumentException("Invalid mix entry " + entry + ", operations are " + OPERATIONS.keySet());
+            }
+
+            statistics.add(new OperationStatistics(nameAndWeight[0], Integer.parseInt(nameAndWeight[1]), operation));
+        }
+
+        return statistics;
+    }
+
+    private static void run(EntityManagerFactory entityManagerFactory,
+                            IndexAdvisor indexAdvisor,
+                            List<OperationStatistics> mix,
+                            int threads,
+                            int warmupSeconds,
+                            int durationSeconds) throws InterruptedException {
+        ThreadLocal<EntityManager> threadEntityManager = new ThreadLocal<EntityManager>();
+        ProductRepository repository = new ProductRepository(sharedEntityManager(threadEntityManager));
+        repository.adviseIndexes(indexAdvisor);
+        int totalWeight = mix.stream().mapToInt(statistics -> statistics.weight).sum();
+
+        long measureFrom = System.nanoTime() + TimeUnit.SECONDS.toNanos(warmupSeconds);
+        long measureUntil = measureFrom + TimeUnit.SECONDS.toNanos(durationSeconds);
+        CountDownLatch finished = new CountDownLatch(threads);
+        AtomicReference<Throwable> failure = new AtomicReference<Throwable>();
+
+        for (int i = 0; i < threads; i++) {
+            Thread worker = new Thread(() -> {
+                EntityManager entityManager = entityManagerFactory.createEntityManager();
+                threadEntityManager.set(entityManager);
+
+                try {
+                    ThreadLocalRandom random = ThreadLocalRandom.current();
+
+                    for (long now = System.nanoTime(); now < measureUntil && failure.get() == null; now = System.nanoTime()) {
+                        OperationStatistics statistics = pick(mix, random.nextInt(totalWeight));
+                        long startNanos = System.nanoTime();
+                        int rows = statistics.operation.execute(repository, random);
+                        long endNanos = System.nanoTime();
+
+                        entityManager.clear();
+
+                        if (startNanos >= measureFrom) {
+                            statistics.latencies.record(endNanos - startNanos);
+                            statistics.count.increment();
+                            statistics.rows.add(rows);
+                        }
+                    }
+                } catch (RuntimeException | Error e) {
+                    failure.compareAndSet(null, e);
+                } finally {
+                    threadEntityManager.remove();
+                    entityManager.close();
+                    finished.countDown();
+                }
+            }, "load-test-" + i);
+
+            worker.start();
+        }
+
+        finished.await();
+
+        if (failure.get() != null) {
+            throw new IllegalStateException("Load test failed", failure.get());
+        }
+
+        report(mix, threads, durationSeconds);
+    }
+
+    private static OperationStatistics pick(List<OperationStatistics> mix, int weight) {
+        for (OperationStatistics statistics : mix) {
+            weight -= statistics.weight;
+
+            if (weight < 0) {
+                return statistics;
+            }
+        }
+
+        return mix.get(mix.size() - 1);
+    }
+
+    /**
+     * EntityManager delegating every call to the EntityManager bound to the calling thread.
+     */
+    private static EntityManager sharedEntityManager(ThreadLocal<EntityManager> threadEntityManager) {
+        return (EntityManager) Proxy.newProxyInstance(LoadTest.class.getClassLoader(), new Class<?>[]{EntityManager.class}, (proxy, method, methodArgs) -> {
+            try {
+                return method.invoke(threadEntityManager.get(), methodArgs);
+            } catch (InvocationTargetException e) {
+                throw e.getCause();
+            }
+        });
+    }
+
+    private static void report(List<OperationStatistics> mix, int threads, int durationSeconds) {
+        long totalCount = 0;
+
+        System.out.printf("%n%d threads, %d s measured%n", threads, durationSeconds);
+        System.out.printf("%-18s %10s %10s %10s %10s %10s %10s%n", "operation", "calls", "calls/s", "rows/call", "p50 ms", "p99 ms", "p999 ms");
+
+        for (OperationStatistics statistics : mix) {
+            long count = statistics.count.sum();
+            totalCount += count;
+
+            System.out.printf("%-18s %10d %10.1f %10.1f %10.3f %10.3f %10.3f%n",
+                    statistics.name,
+                    count,
+                    count / (double) durationSeconds,
+                    count > 0 ? statistics.rows.sum() / (double) count : 0,
+                    toMillis(statistics.latencies.getPercentile(50)),
+                    toMillis(statistics.latencies.getPercentile(99)),
+                    toMillis(statistics.latencies.getPercentile(99.9)));
+        }
+
+        System.out.printf("%-18s %10d %10.1f%n", "total", totalCount, totalCount / (double) durationSeconds);
+    }
+
+    private static double toMillis(long nanos) {
+        return nanos / (double) TimeUnit.MILLISECONDS.toNanos(1);
+    }
+}